@@ -0,0 +1,79 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Scaling benchmark for marshalling structures to the native library, on
+ * branched chains of 10 to 1000 atoms with a 0D stereo parity at every
+ * branch point.  Times packing them for the native code and generating
+ * their InChIs; the time per atom should stay roughly flat as the
+ * structures grow.  Run with:
+ * <pre>mvn -P benchmark -DskipTests verify -Djmh.include=AtomIndexBenchmark</pre>
+ *
+ * @author Sam Adams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class AtomIndexBenchmark {
+
+    @Param({"10", "30", "100", "300", "1000"})
+    public int atoms;
+
+    private JniInchiInput input;
+
+    @Setup
+    public void setUp() throws JniInchiException {
+        input = TestJniInchiWrapper.getBranchedChain(atoms);
+        JniInchiOutput output = JniInchiWrapper.getStdInchi(input);
+        if (output.getReturnStatus() != INCHI_RET.OKAY) {
+            throw new IllegalStateException(output.getReturnStatus() + " " + output.getMessage());
+        }
+    }
+
+    @Benchmark
+    public JniInchiPackedStructure pack() {
+        return new JniInchiPackedStructure(input);
+    }
+
+    @Benchmark
+    public JniInchiOutput getStdInchi() throws JniInchiException {
+        return JniInchiWrapper.getStdInchi(input);
+    }
+
+}
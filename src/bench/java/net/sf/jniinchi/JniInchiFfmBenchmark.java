@@ -0,0 +1,103 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Compares the JNI glue with the {@link JniInchiFfmEngine}, on the
+ * molecules of {@link JniInchiWrapperBenchmark}.  The <tt>ffm</tt> backend
+ * needs Java 22 or later; run with, e.g.:
+ * <pre>mvn -P benchmark -DskipTests verify -Djmh.include=JniInchiFfmBenchmark</pre>
+ *
+ * @author Sam Adams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Threads(1)
+public class JniInchiFfmBenchmark {
+
+    @Param({"jni", "ffm"})
+    public String backend;
+
+    @Param({"ethane", "alanine3D", "chain100", "chain1000"})
+    public String molecule;
+
+    private JniInchiInput input;
+
+    private JniInchiInputInchi inchiInput;
+
+    private String inchi;
+
+    @Setup
+    public void setUp() throws JniInchiException {
+        if ("ffm".equals(backend)) {
+            JniInchiWrapper.setEngine(new JniInchiFfmEngine());
+        } else if (!"jni".equals(backend)) {
+            throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+        input = JniInchiWrapperBenchmark.getMolecule(molecule);
+        inchi = JniInchiWrapper.getStdInchi(input).getInchi();
+        inchiInput = new JniInchiInputInchi(inchi);
+    }
+
+    @TearDown
+    public void tearDown() {
+        JniInchiWrapper.setEngine(null);
+    }
+
+    @Benchmark
+    public JniInchiOutput getInchi() throws JniInchiException {
+        return JniInchiWrapper.getInchi(input);
+    }
+
+    @Benchmark
+    public JniInchiOutput getStdInchi() throws JniInchiException {
+        return JniInchiWrapper.getStdInchi(input);
+    }
+
+    @Benchmark
+    public JniInchiOutputStructure getStructureFromInchi() throws JniInchiException {
+        return JniInchiWrapper.getStructureFromInchi(inchiInput);
+    }
+
+    @Benchmark
+    public JniInchiOutputKey getInchiKey() throws JniInchiException {
+        return JniInchiWrapper.getInchiKey(inchi);
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>JMH benchmarks of the {@link JniInchiWrapper} entry points, reporting
+ * throughput and sampled latency percentiles.  The molecules are those built
+ * in {@link TestJniInchiWrapper}, including branched chains of 100 and 1000
+ * atoms.
+ *
+ * <p>Subclasses set the number of threads;
+ * {@link SingleThreadedBenchmark} runs on one thread and
+ * {@link ContendedBenchmark} on several, competing for the native library
+ * lock.  Run with:
+ * <pre>mvn -P benchmark -DskipTests verify</pre>
+ * or, to run a subset, e.g.:
+ * <pre>mvn -P benchmark -DskipTests verify -Djmh.include=Contended.*getInchiKey</pre>
+ *
+ * @author Sam Adams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class JniInchiWrapperBenchmark {
+
+    @Param({"ethane", "sodiumHydroxide", "dichloroethene0D", "alanine3D", "chain100", "chain1000"})
+    public String molecule;
+
+    private JniInchiInput input;
+
+    private JniInchiInput leanInput;
+
+    private JniInchiInputInchi inchiInput;
+
+    private String inchi;
+
+    private String auxInfo;
+
+    private String key;
+
+    @Setup
+    public void setUp() throws JniInchiException {
+        input = getMolecule(molecule);
+        leanInput = getMolecule(molecule);
+        leanInput.setLeanOutput();
+        JniInchiOutput output = JniInchiWrapper.getStdInchi(input);
+        if (output.getReturnStatus() != INCHI_RET.OKAY && output.getReturnStatus() != INCHI_RET.WARNING) {
+            throw new IllegalStateException(molecule + ": " + output.getReturnStatus() + " " + output.getMessage());
+        }
+        inchi = output.getInchi();
+        auxInfo = output.getAuxInfo();
+        inchiInput = new JniInchiInputInchi(inchi);
+        key = JniInchiWrapper.getInchiKey(inchi).getKey();
+    }
+
+    static JniInchiInput getMolecule(String name) throws JniInchiException {
+        if ("ethane".equals(name)) {
+            return TestJniInchiWrapper.getEthane("");
+        }
+        if ("sodiumHydroxide".equals(name)) {
+            return TestJniInchiWrapper.getSodiumHydroxide("");
+        }
+        if ("dichloroethene0D".equals(name)) {
+            return TestJniInchiWrapper.getE12dichloroethene0D("");
+        }
+        if ("alanine3D".equals(name)) {
+            return TestJniInchiWrapper.getLAlanine3D("");
+        }
+        if ("chain100".equals(name)) {
+            return TestJniInchiWrapper.getBranchedChain(100);
+        }
+        if ("chain1000".equals(name)) {
+            return TestJniInchiWrapper.getBranchedChain(1000);
+        }
+        throw new IllegalArgumentException("Unknown molecule: " + name);
+    }
+
+    @Benchmark
+    public JniInchiOutput getInchi() throws JniInchiException {
+        return JniInchiWrapper.getInchi(input);
+    }
+
+    @Benchmark
+    public JniInchiOutput getStdInchi() throws JniInchiException {
+        return JniInchiWrapper.getStdInchi(input);
+    }
+
+    /**
+     * As {@link #getStdInchi()}, with {@link JniInchiInput#setLeanOutput()}.
+     */
+    @Benchmark
+    public JniInchiOutput getStdInchiLean() throws JniInchiException {
+        return JniInchiWrapper.getStdInchi(leanInput);
+    }
+
+    @Benchmark
+    public JniInchiOutput getInchiFromInchi() throws JniInchiException {
+        return JniInchiWrapper.getInchiFromInchi(inchiInput);
+    }
+
+    @Benchmark
+    public JniInchiOutputStructure getStructureFromInchi() throws JniInchiException {
+        return JniInchiWrapper.getStructureFromInchi(inchiInput);
+    }
+
+    @Benchmark
+    public JniInchiOutputKey getInchiKey() throws JniInchiException {
+        return JniInchiWrapper.getInchiKey(inchi);
+    }
+
+    /**
+     * As {@link #getInchiKey()}, also calculating both hash extensions.
+     */
+    @Benchmark
+    public JniInchiOutputKey getInchiKeyWithExtensions() throws JniInchiException {
+        return JniInchiWrapper.getInchiKey(inchi, true, true);
+    }
+
+    @Benchmark
+    public INCHI_STATUS checkInchi() throws JniInchiException {
+        return JniInchiWrapper.checkInchi(inchi, false);
+    }
+
+    @Benchmark
+    public INCHI_STATUS checkInchiStrict() throws JniInchiException {
+        return JniInchiWrapper.checkInchi(inchi, true);
+    }
+
+    @Benchmark
+    public INCHI_KEY_STATUS checkInchiKey() throws JniInchiException {
+        return JniInchiWrapper.checkInchiKey(key);
+    }
+
+    @Benchmark
+    public JniInchiInputData getInputFromAuxInfo() throws JniInchiException {
+        return JniInchiWrapper.getInputFromAuxInfo(auxInfo);
+    }
+
+}
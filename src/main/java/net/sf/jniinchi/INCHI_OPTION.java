@@ -18,6 +18,10 @@
  */
 package net.sf.jniinchi;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 
 /**
  * Type-safe enumeration of InChI options.  See <tt>inchi_api.h</tt>.
@@ -103,7 +107,11 @@ public enum INCHI_OPTION {
     /**
      * Set time-out per structure in seconds; W0 means unlimited. In InChI
      * library the default value is unlimited
+     * @deprecated  Passes the literal option <tt>-Wnumber</tt>; give the
+     *              time-out in an options string, such as <tt>-W5</tt>, or use
+     *              {@link JniInchiOptions#withTimeout(long, java.util.concurrent.TimeUnit)}
      */
+    @Deprecated
     Wnumber,
 
     /**
@@ -134,7 +142,14 @@ public enum INCHI_OPTION {
     /**
      * Include Arsines Stereochemistry
      */
-    SAsXYZ;
+    SAsXYZ,
+
+    /**
+     * Do not build the log (default: Build).  Recognised by the InChI
+     * library bundled with JNI-InChI, for structure to InChI calculations
+     * only; other builds of the library ignore it.
+     */
+    NoLog;
 
     /* -- DOESN'T WORK
      * Generate InChIKey
@@ -142,13 +157,19 @@ public enum INCHI_OPTION {
     Key,
     */
 
-    public static INCHI_OPTION valueOfIgnoreCase(String string) {
+    /**
+     * Options by upper case name.
+     */
+    private static final Map<String, INCHI_OPTION> BY_NAME = new HashMap<String, INCHI_OPTION>();
+
+    static {
         for (INCHI_OPTION option : INCHI_OPTION.values()) {
-            if (option.name().equalsIgnoreCase(string)) {
-                return option;
-            }
+            BY_NAME.put(option.name().toUpperCase(Locale.ENGLISH), option);
         }
-        return null;
+    }
+
+    public static INCHI_OPTION valueOfIgnoreCase(String string) {
+        return string == null ? null : BY_NAME.get(string.toUpperCase(Locale.ENGLISH));
     }
 
 }
@@ -35,6 +35,11 @@ package net.sf.jniinchi;
  * BUSY     (5)     Previous call to InChI has not returned yet<br>
  * </tt>
  * <p>See <tt>inchi_api.h</tt>.
+ *
+ * <p>JNI-InChI return values:<br>
+ * <tt>
+ * TIMEOUT  (6)     Time-out per structure exceeded: no InChI has been created<br>
+ * </tt>
  * @author Sam Adams
  */
 public enum INCHI_RET {
@@ -77,9 +82,21 @@ public enum INCHI_RET {
     /**
      * Previuos call to InChI has not returned yet.
      */
-    BUSY(5);
+    BUSY(5),
+
+    /**
+     * Time-out per structure exceeded, or calculation cancelled (see
+     * {@link JniInchiCancellation}): no InChI has been created.  The InChI
+     * library reports this as ERROR, with the message "Time limit exceeded".
+     */
+    TIMEOUT(6);
+
 
 
+    /**
+     * Message the InChI library gives for a structure that ran out of time.
+     */
+    static final String TIMEOUT_MESSAGE = "Time limit exceeded";
 
     /**
      * Internal InChI index (from inchi_api.h).
@@ -115,9 +132,22 @@ public enum INCHI_RET {
                 return UNKNOWN;
             case 5:
                 return BUSY;
+            case 6:
+                return TIMEOUT;
             default:
                 return null;
         }
     }
+
+    /**
+     * Returns the status for a value returned by the InChI library, telling a
+     * structure that ran out of time apart from other errors by its message.
+     */
+    static INCHI_RET getValue(int ret, String message) {
+        if (ret == 2 && message != null && message.contains(TIMEOUT_MESSAGE)) {
+            return TIMEOUT;
+        }
+        return getValue(ret);
+    }
     
 }
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Runs InChI calculations asynchronously, on a dedicated thread that owns
+ * the native library, returning {@link CompletableFuture}s.  Callers are not
+ * parked waiting for the native library lock; instead requests wait in a
+ * bounded queue, and once it is full new requests are handled according to
+ * the executor's {@link RejectionPolicy}.
+ *
+ * <p>Calculations are made through the static {@link JniInchiWrapper}
+ * methods, so any worker pool or caches set there are used.  Failures,
+ * including rejected requests, complete the returned future exceptionally.
+ * Cancelling a future returned by {@link #getInchi(JniInchiInput)} or
+ * {@link #getStdInchi(JniInchiInput)} also stops its calculation if it is
+ * in progress in the native library, see {@link JniInchiCancellation},
+ * where the library supports it.
+ *
+ * <p>The static <tt>JniInchiWrapper.*Async</tt> methods use a shared
+ * executor, see {@link JniInchiWrapper#setAsyncExecutor(JniInchiAsyncExecutor)}.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiAsyncExecutor {
+
+    /**
+     * Default maximum number of queued requests.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * How requests are handled when the queue is full.
+     */
+    public enum RejectionPolicy {
+
+        /**
+         * The future fails immediately with a
+         * {@link RejectedExecutionException}.
+         */
+        FAIL_FAST,
+
+        /**
+         * The calculation is run on the calling thread, which waits for the
+         * native library lock.
+         */
+        CALLER_RUNS,
+
+        /**
+         * The calling thread blocks until there is space in the queue.
+         */
+        BLOCK
+
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    private final RejectionPolicy policy;
+
+    private final int queueCapacity;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong startedCount = new AtomicLong();
+
+    private final AtomicLong totalQueueDelay = new AtomicLong();
+
+    private final AtomicLong maxQueueDelay = new AtomicLong();
+
+    /**
+     * Creates an executor with the default queue capacity, which fails
+     * requests once the queue is full.
+     */
+    public JniInchiAsyncExecutor() {
+        this(DEFAULT_QUEUE_CAPACITY, RejectionPolicy.FAIL_FAST);
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param queueCapacity  Maximum number of requests waiting to run
+     * @param policy         How requests are handled when the queue is full
+     */
+    public JniInchiAsyncExecutor(int queueCapacity, RejectionPolicy policy) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Null rejection policy");
+        }
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "jniinchi-async");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+                        reject((Task<?>) r, e);
+                    }
+                });
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return policy;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the number of requests waiting to run.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of requests failed because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of requests that have started to run, including
+     * those run by calling threads.
+     */
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+
+    /**
+     * Returns the mean time requests waited before starting to run.
+     */
+    public long getMeanQueueDelay(TimeUnit unit) {
+        long n = startedCount.get();
+        return n == 0 ? 0 : unit.convert(totalQueueDelay.get() / n, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time a request waited before starting to run.
+     */
+    public long getMaxQueueDelay(TimeUnit unit) {
+        return unit.convert(maxQueueDelay.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops accepting requests.  Those already queued are still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public CompletableFuture<JniInchiOutput> getInchi(final JniInchiInput input) {
+        return submit(new Task<JniInchiOutput>() {
+            JniInchiOutput call() throws JniInchiException {
+                return JniInchiWrapper.isCancellationSupported() ? JniInchiWrapper.getInchi(input, cancellation) : JniInchiWrapper.getInchi(input);
+            }
+        });
+    }
+
+    public CompletableFuture<JniInchiOutput> getStdInchi(final JniInchiInput input) {
+        return submit(new Task<JniInchiOutput>() {
+            JniInchiOutput call() throws JniInchiException {
+                return JniInchiWrapper.isCancellationSupported() ? JniInchiWrapper.getStdInchi(input, cancellation) : JniInchiWrapper.getStdInchi(input);
+            }
+        });
+    }
+
+    public CompletableFuture<JniInchiOutput> getInchiFromInchi(final JniInchiInputInchi input) {
+        return submit(new Task<JniInchiOutput>() {
+            JniInchiOutput call() throws JniInchiException {
+                return JniInchiWrapper.getInchiFromInchi(input);
+            }
+        });
+    }
+
+    public CompletableFuture<JniInchiOutputStructure> getStructureFromInchi(final JniInchiInputInchi input) {
+        return submit(new Task<JniInchiOutputStructure>() {
+            JniInchiOutputStructure call() throws JniInchiException {
+                return JniInchiWrapper.getStructureFromInchi(input);
+            }
+        });
+    }
+
+    public CompletableFuture<JniInchiOutputKey> getInchiKey(final String inchi) {
+        return submit(new Task<JniInchiOutputKey>() {
+            JniInchiOutputKey call() throws JniInchiException {
+                return JniInchiWrapper.getInchiKey(inchi);
+            }
+        });
+    }
+
+    public CompletableFuture<INCHI_KEY_STATUS> checkInchiKey(final String key) {
+        return submit(new Task<INCHI_KEY_STATUS>() {
+            INCHI_KEY_STATUS call() throws JniInchiException {
+                return JniInchiWrapper.checkInchiKey(key);
+            }
+        });
+    }
+
+    public CompletableFuture<INCHI_STATUS> checkInchi(final String inchi, final boolean strict) {
+        return submit(new Task<INCHI_STATUS>() {
+            INCHI_STATUS call() throws JniInchiException {
+                return JniInchiWrapper.checkInchi(inchi, strict);
+            }
+        });
+    }
+
+    public CompletableFuture<JniInchiInputData> getInputFromAuxInfo(final String auxInfo) {
+        return submit(new Task<JniInchiInputData>() {
+            JniInchiInputData call() throws JniInchiException {
+                return JniInchiWrapper.getInputFromAuxInfo(auxInfo);
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Task<T> task) {
+        executor.execute(task);
+        return task.future;
+    }
+
+    /**
+     * Called on the submitting thread when the queue is full, or the
+     * executor is shut down.
+     */
+    private void reject(Task<?> task, ThreadPoolExecutor e) {
+        if (!e.isShutdown()) {
+            switch (policy) {
+                case CALLER_RUNS:
+                    task.run();
+                    return;
+                case BLOCK:
+                    try {
+                        e.getQueue().put(task);
+                        // Shut down while waiting; take the task back if it has not been run
+                        if (e.isShutdown() && e.getQueue().remove(task)) {
+                            break;
+                        }
+                        return;
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        task.future.completeExceptionally(ex);
+                        return;
+                    }
+                default:
+                    break;
+            }
+        }
+        rejectedCount.incrementAndGet();
+        task.future.completeExceptionally(new RejectedExecutionException(
+                e.isShutdown() ? "Executor shut down" : "Queue full (" + queueCapacity + ")"));
+    }
+
+    /**
+     * A calculation, and the future it completes.
+     */
+    private abstract class Task<T> implements Runnable {
+
+        /**
+         * Cancelled with the future, to stop a calculation in progress.
+         */
+        final JniInchiCancellation cancellation = new JniInchiCancellation();
+
+        final CompletableFuture<T> future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    cancellation.cancel();
+                }
+                return cancelled;
+            }
+        };
+
+        final long submitted = System.nanoTime();
+
+        abstract T call() throws JniInchiException;
+
+        public void run() {
+            long delay = System.nanoTime() - submitted;
+            totalQueueDelay.addAndGet(delay);
+            long max;
+            while (delay > (max = maxQueueDelay.get()) && !maxQueueDelay.compareAndSet(max, delay)) {
+                // retry
+            }
+            startedCount.incrementAndGet();
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+}
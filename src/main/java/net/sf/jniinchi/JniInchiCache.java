@@ -0,0 +1,246 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A size-bounded, thread-safe cache of results, with hit, miss and
+ * eviction counts.  Lookups never take the native library lock.
+ *
+ * <p>Entries are evicted in least-recently-used or insertion order once the
+ * capacity is reached.  Caches of {@value #SEGMENT_THRESHOLD} or more
+ * entries are split into {@value #NUM_SEGMENTS} independently locked
+ * segments, chosen by key hash, to reduce contention; eviction then applies
+ * within each segment, so is approximately, rather than strictly, in order
+ * across the whole cache.
+ *
+ * <p>Install a cache with, for example,
+ * {@link JniInchiWrapper#setInchiKeyCache(JniInchiCache)}.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiCache<K, V> {
+
+    /**
+     * Order in which entries are evicted.
+     */
+    public enum Eviction {
+        /** Least recently read or written first. */
+        LRU,
+        /** Least recently added first. */
+        FIFO
+    }
+
+    static final int SEGMENT_THRESHOLD = 256;
+    static final int NUM_SEGMENTS = 16;
+
+    private final int capacity;
+    private final Eviction eviction;
+    private final Segment<K, V>[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a least-recently-used cache.
+     *
+     * @param capacity  Maximum number of entries
+     */
+    public JniInchiCache(int capacity) {
+        this(capacity, Eviction.LRU);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity  Maximum number of entries
+     * @param eviction  Eviction order
+     */
+    public JniInchiCache(int capacity, Eviction eviction) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        if (eviction == null) {
+            throw new IllegalArgumentException("Null eviction");
+        }
+        this.capacity = capacity;
+        this.eviction = eviction;
+        int n = capacity < SEGMENT_THRESHOLD ? 1 : NUM_SEGMENTS;
+        segments = newSegments(n);
+        for (int i = 0; i < n; i++) {
+            // Spread any remainder over the first segments, so sizes sum to capacity
+            segments[i] = new Segment<K, V>(capacity / n + (i < capacity % n ? 1 : 0),
+                    eviction == Eviction.LRU, evictions);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegments(int n) {
+        return (Segment<K, V>[]) new Segment<?, ?>[n];
+    }
+
+    private Segment<K, V> segment(Object key) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * Returns the value cached for a key, or null.  Counts a hit or a miss.
+     *
+     * @param key
+     * @return
+     */
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Null key");
+        }
+        V value = segment(key).get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting another entry if the cache is full.
+     *
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Null key or value");
+        }
+        segment(key).put(key, value);
+    }
+
+    /**
+     * Removes all entries.  Counts are not reset.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns the number of entries cached.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts to zero.
+     */
+    public void resetCounts() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "JniInchiCache[size=" + size() + ", capacity=" + capacity + ", eviction=" + eviction
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+
+
+    /**
+     * Part of the cache, guarded by its own lock.
+     */
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final AtomicLong evictions;
+
+        Segment(int capacity, boolean accessOrder, AtomicLong evictions) {
+            super(16, 0.75f, accessOrder);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized V get(Object key) {
+            return super.get(key);
+        }
+
+        @Override
+        public synchronized V put(K key, V value) {
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+    }
+
+}
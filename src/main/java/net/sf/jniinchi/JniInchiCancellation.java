@@ -0,0 +1,122 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Stops InChI calculations that are in progress in the native library,
+ * from any thread.  Java interrupts have no effect on a thread running
+ * native code, so a calculation that is to be stopped early is passed a
+ * cancellation, see {@link JniInchiWrapper#getInchi(JniInchiInput, JniInchiCancellation)}.
+ * Once {@link #cancel()} has been called, the calculation stops at the
+ * next point where the library checks its time limit, releases the native
+ * library and returns {@link INCHI_RET#TIMEOUT}.  A calculation that has
+ * not yet started returns TIMEOUT without calling the library.
+ *
+ * <p>The library checks its time limit during canonicalisation, where
+ * runaway calculations spend their time; other stages run to completion.
+ *
+ * <p>A cancellation may be passed to several calculations, which are all
+ * stopped by one call to {@link #cancel()}.  It cannot be reset.
+ *
+ * @author Sam Adams
+ */
+public final class JniInchiCancellation {
+
+    /**
+     * Thread that cancels calculations whose deadline has passed.
+     */
+    private static volatile ScheduledThreadPoolExecutor watchdog;
+
+    /**
+     * Flag read by the native code: the first int is set non-zero once
+     * cancelled.
+     */
+    final ByteBuffer flag = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Stops the calculations passed this cancellation.
+     */
+    public void cancel() {
+        cancelled = true;
+        flag.putInt(0, 1);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels after the given time, on a shared watchdog thread.
+     * @param timeout  Time to wait, 0 or more
+     * @param unit     Unit of the time to wait
+     */
+    public void cancelAfter(long timeout, TimeUnit unit) {
+        schedule(timeout, unit);
+    }
+
+    /**
+     * Cancels after the given time, on a shared watchdog thread.
+     * @return  future of the scheduled cancellation, to cancel once it is
+     *          no longer needed
+     */
+    ScheduledFuture<?> schedule(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("Null time unit");
+        }
+        return getWatchdog().schedule(new Runnable() {
+            public void run() {
+                cancel();
+            }
+        }, timeout, unit);
+    }
+
+    private static ScheduledThreadPoolExecutor getWatchdog() {
+        ScheduledThreadPoolExecutor result = watchdog;
+        if (result == null) {
+            synchronized (JniInchiCancellation.class) {
+                result = watchdog;
+                if (result == null) {
+                    result = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "jniinchi-watchdog");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                    result.setRemoveOnCancelPolicy(true);
+                    watchdog = result;
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,585 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.Arrays;
+
+/**
+ * <p>A structure held in growable primitive arrays rather than as atom, bond
+ * and stereo parity objects, for keeping large numbers of molecules in
+ * memory.  Atoms, bonds and parities are referred to by index, in the order
+ * they were added.
+ *
+ * <p>The arrays are in the layout read by the native code (see
+ * {@link JniInchiPackedStructure}), so are passed to it as they stand by
+ * {@link JniInchiWrapper#getInchi(JniInchiCompactStructure, String)}.  An
+ * atom takes 34 bytes, plus 24 for coordinates once any atom has a non-zero
+ * coordinate; a bond 16 bytes; a stereo parity 28 bytes.  Arrays grow by
+ * doubling; {@link #trimToSize()} releases the spare capacity.
+ *
+ * <p>Atom and bond objects can be created on demand with
+ * {@link #getAtom(int)}, {@link #getBond(int)} and {@link #toStructure()}.
+ * These are copies: changes to them are not written back.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiCompactStructure {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Coordinates used for structures with none of their own.  Large enough
+     * for any structure the native code will accept.
+     */
+    private static final double[] ZERO_COORDS = new double[JniInchiStructureBuffer.MAX_ATOMS * JniInchiPackedStructure.COORDS_PER_ATOM];
+
+    private int numAtoms;
+    private int numBonds;
+    private int numStereo0D;
+
+    /**
+     * x, y, z per atom.  Null until a non-zero coordinate is set.
+     */
+    private double[] coords;
+
+    /**
+     * Charge, radical, implicit H, 1H, 2H, 3H, isotopic mass per atom.
+     */
+    private int[] atoms;
+
+    /**
+     * Element symbol per atom, zero padded.
+     */
+    private byte[] elements;
+
+    /**
+     * Origin atom, target atom, type, stereo per bond.
+     */
+    private int[] bonds;
+
+    /**
+     * Central atom, neighbours 0-3, type, parity per stereo parity.
+     */
+    private int[] stereo0D;
+
+
+    /**
+     * Creates an empty structure.
+     */
+    public JniInchiCompactStructure() {
+        this(DEFAULT_CAPACITY, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty structure, with room for the given number of atoms and
+     * bonds before its arrays need to grow.
+     *
+     * @param atomCapacity
+     * @param bondCapacity
+     */
+    public JniInchiCompactStructure(int atomCapacity, int bondCapacity) {
+        if (atomCapacity < 0 || bondCapacity < 0) {
+            throw new IllegalArgumentException("Negative capacity");
+        }
+        atoms = new int[atomCapacity * JniInchiPackedStructure.INTS_PER_ATOM];
+        elements = new byte[atomCapacity * JniInchiPackedStructure.ATOM_EL_LEN];
+        bonds = new int[bondCapacity * JniInchiPackedStructure.INTS_PER_BOND];
+        stereo0D = new int[0];
+    }
+
+    /**
+     * Creates a compact copy of a structure.
+     *
+     * @param structure
+     */
+    public JniInchiCompactStructure(JniInchiStructure structure) {
+        JniInchiPackedStructure packed = new JniInchiPackedStructure(structure, "");
+        numAtoms = packed.numAtoms;
+        numBonds = packed.numBonds;
+        numStereo0D = packed.numStereo0D;
+        atoms = packed.atoms;
+        elements = packed.elements;
+        bonds = packed.bonds;
+        stereo0D = packed.stereo0D;
+        for (double c : packed.coords) {
+            if (c != 0) {
+                coords = packed.coords;
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Returns number of atoms in structure.
+     */
+    public int getNumAtoms() {
+        return numAtoms;
+    }
+
+    /**
+     * Returns number of bonds in structure.
+     */
+    public int getNumBonds() {
+        return numBonds;
+    }
+
+    /**
+     * Returns number of stereo parities in structure.
+     */
+    public int getNumStereo0D() {
+        return numStereo0D;
+    }
+
+
+    /**
+     * Adds an atom with zero coordinates.
+     *
+     * @param el  Chemical element symbol
+     * @return    Index of added atom
+     */
+    public int addAtom(String el) {
+        return addAtom(0, 0, 0, el);
+    }
+
+    /**
+     * Adds an atom.  Other properties are as for a new {@link JniInchiAtom}:
+     * no charge or radical, implicit H added by InChI, non-isotopic.
+     *
+     * @param x   x-coordinate
+     * @param y   y-coordinate
+     * @param z   z-coordinate
+     * @param el  Chemical element symbol
+     * @return    Index of added atom
+     */
+    public int addAtom(double x, double y, double z, String el) {
+        if (el == null) {
+            throw new NullPointerException("Chemical element must not be null");
+        }
+        int i = numAtoms;
+        if (elements.length < (i + 1) * JniInchiPackedStructure.ATOM_EL_LEN) {
+            int capacity = Math.max(DEFAULT_CAPACITY, 2 * i);
+            atoms = Arrays.copyOf(atoms, capacity * JniInchiPackedStructure.INTS_PER_ATOM);
+            elements = Arrays.copyOf(elements, capacity * JniInchiPackedStructure.ATOM_EL_LEN);
+        }
+        JniInchiPackedStructure.packElement(el, elements, i * JniInchiPackedStructure.ATOM_EL_LEN);
+        int a = i * JniInchiPackedStructure.INTS_PER_ATOM;
+        Arrays.fill(atoms, a, a + JniInchiPackedStructure.INTS_PER_ATOM, 0);
+        atoms[a + 2] = -1;
+        numAtoms++;
+        if (coords != null || x != 0 || y != 0 || z != 0) {
+            setCoordinates(i, x, y, z);
+        }
+        return i;
+    }
+
+    /**
+     * Sets the coordinates of an atom.
+     *
+     * @param atom  Atom index
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void setCoordinates(int atom, double x, double y, double z) {
+        checkAtom(atom);
+        int required = (atom + 1) * JniInchiPackedStructure.COORDS_PER_ATOM;
+        if (coords == null) {
+            coords = new double[atoms.length / JniInchiPackedStructure.INTS_PER_ATOM * JniInchiPackedStructure.COORDS_PER_ATOM];
+        }
+        if (coords.length < required) {
+            coords = Arrays.copyOf(coords, atoms.length / JniInchiPackedStructure.INTS_PER_ATOM * JniInchiPackedStructure.COORDS_PER_ATOM);
+        }
+        int c = atom * JniInchiPackedStructure.COORDS_PER_ATOM;
+        coords[c] = x;
+        coords[c + 1] = y;
+        coords[c + 2] = z;
+    }
+
+    /**
+     * Sets charge on atom.
+     */
+    public void setCharge(int atom, int charge) {
+        setAtomProperty(atom, 0, charge);
+    }
+
+    /**
+     * Sets radical status of atom.
+     */
+    public void setRadical(int atom, INCHI_RADICAL radical) {
+        setAtomProperty(atom, 1, radical.getIndx());
+    }
+
+    /**
+     * Sets number of implicit hydrogens on atom. If set to -1, InChI will add
+     * implicit H automatically.
+     */
+    public void setImplicitH(int atom, int n) {
+        setAtomProperty(atom, 2, n);
+    }
+
+    /**
+     * Sets number of implicit protium (1H) on atom.
+     */
+    public void setImplicitProtium(int atom, int n) {
+        setAtomProperty(atom, 3, n);
+    }
+
+    /**
+     * Sets number of implicit deuterium (2H) on atom.
+     */
+    public void setImplicitDeuterium(int atom, int n) {
+        setAtomProperty(atom, 4, n);
+    }
+
+    /**
+     * Sets number of implicit tritium (3H) on atom.
+     */
+    public void setImplicitTritium(int atom, int n) {
+        setAtomProperty(atom, 5, n);
+    }
+
+    /**
+     * Sets isotopic mass. If set to 0, non-isotopic.
+     */
+    public void setIsotopicMass(int atom, int mass) {
+        setAtomProperty(atom, 6, mass);
+    }
+
+    /**
+     * Sets isotopic mass, relative to standard mass.
+     */
+    public void setIsotopicMassShift(int atom, int shift) {
+        setAtomProperty(atom, 6, JniInchiAtom.ISOTOPIC_SHIFT_FLAG + shift);
+    }
+
+
+    /**
+     * Adds a bond with no stereo definition.
+     *
+     * @param origin  Origin atom index
+     * @param target  Target atom index
+     * @param type    Bond type
+     * @return        Index of added bond
+     */
+    public int addBond(int origin, int target, INCHI_BOND_TYPE type) {
+        return addBond(origin, target, type, INCHI_BOND_STEREO.NONE);
+    }
+
+    /**
+     * Adds a bond.
+     *
+     * @param origin  Origin atom index
+     * @param target  Target atom index
+     * @param type    Bond type
+     * @param stereo  Bond 2D stereo definition
+     * @return        Index of added bond
+     */
+    public int addBond(int origin, int target, INCHI_BOND_TYPE type, INCHI_BOND_STEREO stereo) {
+        if (origin < 0 || origin >= numAtoms || target < 0 || target >= numAtoms) {
+            throw new IllegalArgumentException("Bond to atom not in structure");
+        }
+        int i = numBonds;
+        if (bonds.length < (i + 1) * JniInchiPackedStructure.INTS_PER_BOND) {
+            bonds = Arrays.copyOf(bonds, Math.max(DEFAULT_CAPACITY, 2 * i) * JniInchiPackedStructure.INTS_PER_BOND);
+        }
+        int b = i * JniInchiPackedStructure.INTS_PER_BOND;
+        bonds[b] = origin;
+        bonds[b + 1] = target;
+        bonds[b + 2] = type.getIndx();
+        bonds[b + 3] = stereo.getIndx();
+        numBonds++;
+        return i;
+    }
+
+    /**
+     * Adds a 0D stereo parity.  Atoms are given by index;
+     * {@link JniInchiStereo0D#NO_ATOM} for no central atom.
+     *
+     * @param central  Central atom
+     * @param n0       Neighbour atom 0
+     * @param n1       Neighbour atom 1
+     * @param n2       Neighbour atom 2
+     * @param n3       Neighbour atom 3
+     * @param type     Stereo parity type
+     * @param parity   Parity
+     * @return         Index of added parity
+     * @see JniInchiStereo0D
+     */
+    public int addStereo0D(int central, int n0, int n1, int n2, int n3,
+            INCHI_STEREOTYPE type, INCHI_PARITY parity) {
+        int[] stereoAtoms = {central, n0, n1, n2, n3};
+        for (int atom : stereoAtoms) {
+            if (atom != JniInchiStereo0D.NO_ATOM && (atom < 0 || atom >= numAtoms)) {
+                throw new IllegalArgumentException("Stereo parity atom not in structure");
+            }
+        }
+        int i = numStereo0D;
+        if (stereo0D.length < (i + 1) * JniInchiPackedStructure.INTS_PER_STEREO) {
+            stereo0D = Arrays.copyOf(stereo0D, Math.max(4, 2 * i) * JniInchiPackedStructure.INTS_PER_STEREO);
+        }
+        int s = i * JniInchiPackedStructure.INTS_PER_STEREO;
+        System.arraycopy(stereoAtoms, 0, stereo0D, s, stereoAtoms.length);
+        stereo0D[s + 5] = type.getIndx();
+        stereo0D[s + 6] = parity.getIndx();
+        numStereo0D++;
+        return i;
+    }
+
+
+    /**
+     * Returns chemical element symbol of atom.
+     */
+    public String getElementType(int atom) {
+        checkAtom(atom);
+        int e = atom * JniInchiPackedStructure.ATOM_EL_LEN;
+        int len = 0;
+        while (elements[e + len] != 0) {
+            len++;
+        }
+        char[] el = new char[len];
+        for (int i = 0; i < len; i++) {
+            el[i] = (char) elements[e + i];
+        }
+        return new String(el);
+    }
+
+    public double getX(int atom) {
+        return getCoordinate(atom, 0);
+    }
+
+    public double getY(int atom) {
+        return getCoordinate(atom, 1);
+    }
+
+    public double getZ(int atom) {
+        return getCoordinate(atom, 2);
+    }
+
+    public int getCharge(int atom) {
+        return getAtomProperty(atom, 0);
+    }
+
+    public INCHI_RADICAL getRadical(int atom) {
+        return INCHI_RADICAL.getValue(getAtomProperty(atom, 1));
+    }
+
+    public int getImplicitH(int atom) {
+        return getAtomProperty(atom, 2);
+    }
+
+    public int getImplicitProtium(int atom) {
+        return getAtomProperty(atom, 3);
+    }
+
+    public int getImplicitDeuterium(int atom) {
+        return getAtomProperty(atom, 4);
+    }
+
+    public int getImplicitTritium(int atom) {
+        return getAtomProperty(atom, 5);
+    }
+
+    public int getIsotopicMass(int atom) {
+        return getAtomProperty(atom, 6);
+    }
+
+    public int getBondOriginAtom(int bond) {
+        return getBondProperty(bond, 0);
+    }
+
+    public int getBondTargetAtom(int bond) {
+        return getBondProperty(bond, 1);
+    }
+
+    public INCHI_BOND_TYPE getBondType(int bond) {
+        return INCHI_BOND_TYPE.getValue(getBondProperty(bond, 2));
+    }
+
+    public INCHI_BOND_STEREO getBondStereo(int bond) {
+        return INCHI_BOND_STEREO.getValue(getBondProperty(bond, 3));
+    }
+
+    /**
+     * Returns central atom of stereo parity, or
+     * {@link JniInchiStereo0D#NO_ATOM}.
+     */
+    public int getStereo0DCentralAtom(int stereo) {
+        return getStereo0DProperty(stereo, 0);
+    }
+
+    /**
+     * Returns neighbouring atom (0-3) of stereo parity.
+     */
+    public int getStereo0DNeighbor(int stereo, int i) {
+        if (i < 0 || i > 3) {
+            throw new IndexOutOfBoundsException("Neighbor: " + i);
+        }
+        return getStereo0DProperty(stereo, 1 + i);
+    }
+
+    public INCHI_STEREOTYPE getStereo0DType(int stereo) {
+        return INCHI_STEREOTYPE.getValue(getStereo0DProperty(stereo, 5));
+    }
+
+    public INCHI_PARITY getStereo0DParity(int stereo) {
+        return INCHI_PARITY.getValue(getStereo0DProperty(stereo, 6));
+    }
+
+
+    /**
+     * Returns a new atom object holding the properties of an atom.
+     *
+     * @param i  Atom index
+     * @return   Copy of atom; changes to it are not written back
+     */
+    public JniInchiAtom getAtom(int i) {
+        JniInchiAtom atom = new JniInchiAtom(getX(i), getY(i), getZ(i), getElementType(i));
+        atom.setCharge(getCharge(i));
+        atom.setRadical(getRadical(i));
+        atom.setImplicitH(getImplicitH(i));
+        atom.setImplicitProtium(getImplicitProtium(i));
+        atom.setImplicitDeuterium(getImplicitDeuterium(i));
+        atom.setImplicitTritium(getImplicitTritium(i));
+        atom.setIsotopicMass(getIsotopicMass(i));
+        return atom;
+    }
+
+    /**
+     * Returns a new bond object between new copies of its atoms.  Use
+     * {@link #toStructure()} to get bonds sharing atom objects.
+     *
+     * @param i  Bond index
+     * @return   Copy of bond; changes to it are not written back
+     */
+    public JniInchiBond getBond(int i) {
+        return new JniInchiBond(getAtom(getBondOriginAtom(i)), getAtom(getBondTargetAtom(i)),
+                getBondType(i), getBondStereo(i));
+    }
+
+    /**
+     * Returns the structure as atom, bond and stereo parity objects.
+     *
+     * @return  Copy of structure; changes to it are not written back
+     */
+    public JniInchiStructure toStructure() {
+        JniInchiStructure structure = new JniInchiStructure();
+        JniInchiAtom[] atomObjects = new JniInchiAtom[numAtoms];
+        for (int i = 0; i < numAtoms; i++) {
+            atomObjects[i] = structure.addAtom(getAtom(i));
+        }
+        for (int i = 0; i < numBonds; i++) {
+            structure.addBond(new JniInchiBond(atomObjects[getBondOriginAtom(i)], atomObjects[getBondTargetAtom(i)],
+                    getBondType(i), getBondStereo(i)));
+        }
+        for (int i = 0; i < numStereo0D; i++) {
+            JniInchiAtom[] neighbors = new JniInchiAtom[4];
+            for (int j = 0; j < 4; j++) {
+                neighbors[j] = stereoAtom(atomObjects, getStereo0DNeighbor(i, j));
+            }
+            structure.addStereo0D(new JniInchiStereo0D(
+                    stereoAtom(atomObjects, getStereo0DCentralAtom(i)),
+                    neighbors[0], neighbors[1], neighbors[2], neighbors[3],
+                    getStereo0DType(i), getStereo0DParity(i)));
+        }
+        return structure;
+    }
+
+    /**
+     * Shrinks the arrays to the current size of the structure.
+     */
+    public void trimToSize() {
+        atoms = Arrays.copyOf(atoms, numAtoms * JniInchiPackedStructure.INTS_PER_ATOM);
+        elements = Arrays.copyOf(elements, numAtoms * JniInchiPackedStructure.ATOM_EL_LEN);
+        if (coords != null) {
+            coords = Arrays.copyOf(coords, numAtoms * JniInchiPackedStructure.COORDS_PER_ATOM);
+        }
+        bonds = Arrays.copyOf(bonds, numBonds * JniInchiPackedStructure.INTS_PER_BOND);
+        stereo0D = Arrays.copyOf(stereo0D, numStereo0D * JniInchiPackedStructure.INTS_PER_STEREO);
+    }
+
+    /**
+     * Wraps the arrays for the native code, without copying them.
+     *
+     * @param options  Options string, as produced by JniInchiWrapper.checkOptions
+     */
+    JniInchiPackedStructure pack(String options) {
+        return pack(options, null);
+    }
+
+    /**
+     * Wraps the arrays for the native code, without copying them.
+     */
+    JniInchiPackedStructure pack(JniInchiOptions options) {
+        return pack(options.toString(), options.getBytes());
+    }
+
+    private JniInchiPackedStructure pack(String options, byte[] optionBytes) {
+        double[] c = coords;
+        if (c == null) {
+            if (numAtoms > JniInchiStructureBuffer.MAX_ATOMS) {
+                throw new IllegalArgumentException("Too many atoms");
+            }
+            c = ZERO_COORDS;
+        }
+        return new JniInchiPackedStructure(options, optionBytes, numAtoms, numBonds, numStereo0D,
+                c, atoms, elements, bonds, stereo0D);
+    }
+
+
+    private static JniInchiAtom stereoAtom(JniInchiAtom[] atomObjects, int atom) {
+        return atom == JniInchiStereo0D.NO_ATOM ? null : atomObjects[atom];
+    }
+
+    private void checkAtom(int atom) {
+        if (atom < 0 || atom >= numAtoms) {
+            throw new IndexOutOfBoundsException("Atom: " + atom + ", number of atoms: " + numAtoms);
+        }
+    }
+
+    private double getCoordinate(int atom, int i) {
+        checkAtom(atom);
+        return coords == null ? 0 : coords[atom * JniInchiPackedStructure.COORDS_PER_ATOM + i];
+    }
+
+    private int getAtomProperty(int atom, int i) {
+        checkAtom(atom);
+        return atoms[atom * JniInchiPackedStructure.INTS_PER_ATOM + i];
+    }
+
+    private void setAtomProperty(int atom, int i, int value) {
+        checkAtom(atom);
+        atoms[atom * JniInchiPackedStructure.INTS_PER_ATOM + i] = value;
+    }
+
+    private int getBondProperty(int bond, int i) {
+        if (bond < 0 || bond >= numBonds) {
+            throw new IndexOutOfBoundsException("Bond: " + bond + ", number of bonds: " + numBonds);
+        }
+        return bonds[bond * JniInchiPackedStructure.INTS_PER_BOND + i];
+    }
+
+    private int getStereo0DProperty(int stereo, int i) {
+        if (stereo < 0 || stereo >= numStereo0D) {
+            throw new IndexOutOfBoundsException("Stereo parity: " + stereo + ", number of parities: " + numStereo0D);
+        }
+        return stereo0D[stereo * JniInchiPackedStructure.INTS_PER_STEREO + i];
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+/**
+ * <p>Something that runs InChI calculations on behalf of
+ * {@link JniInchiWrapper}, in place of the native library loaded in this
+ * JVM's class loader.  An engine is installed with
+ * {@link JniInchiWrapper#setEngine(JniInchiEngine)}, after which the static
+ * <tt>JniInchiWrapper</tt> methods are routed through it.
+ *
+ * <p>Implementations must be safe for use by multiple threads.
+ *
+ * @author Sam Adams
+ */
+public interface JniInchiEngine {
+
+    /**
+     * See {@link JniInchiWrapper#getInchi(JniInchiInput)}.
+     */
+    JniInchiOutput getInchi(JniInchiInput input) throws JniInchiException;
+
+    /**
+     * See {@link JniInchiWrapper#getStdInchi(JniInchiInput)}.
+     */
+    JniInchiOutput getStdInchi(JniInchiInput input) throws JniInchiException;
+
+    /**
+     * See {@link JniInchiWrapper#getInchiFromInchi(JniInchiInputInchi)}.
+     */
+    JniInchiOutput getInchiFromInchi(JniInchiInputInchi input) throws JniInchiException;
+
+    /**
+     * See {@link JniInchiWrapper#getStructureFromInchi(JniInchiInputInchi)}.
+     */
+    JniInchiOutputStructure getStructureFromInchi(JniInchiInputInchi input) throws JniInchiException;
+
+    /**
+     * See {@link JniInchiWrapper#getInchiKey(String)}.
+     */
+    JniInchiOutputKey getInchiKey(String inchi) throws JniInchiException;
+
+    /**
+     * See {@link JniInchiWrapper#checkInchiKey(String)}.
+     */
+    INCHI_KEY_STATUS checkInchiKey(String key) throws JniInchiException;
+
+    /**
+     * See {@link JniInchiWrapper#checkInchi(String, boolean)}.
+     */
+    INCHI_STATUS checkInchi(String inchi, boolean strict) throws JniInchiException;
+
+    /**
+     * See {@link JniInchiWrapper#getInputFromAuxInfo(String)}.
+     */
+    JniInchiInputData getInputFromAuxInfo(String auxInfo) throws JniInchiException;
+
+}
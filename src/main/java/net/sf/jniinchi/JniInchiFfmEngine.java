@@ -0,0 +1,104 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.io.File;
+
+/**
+ * <p>Calls the InChI library through the Foreign Function &amp; Memory API
+ * (<tt>java.lang.foreign</tt>), in place of the JNI glue in
+ * <tt>JniInchiWrapper.c</tt>.  Structures are laid out as
+ * <tt>inchi_Atom</tt> arrays in off-heap memory, in the encoding of
+ * {@link JniInchiStructureBuffer}, and passed straight to the library; no
+ * JNI upcalls are made.
+ *
+ * <p>The API is final from Java 22, and the working engine is shipped in
+ * the multi-release part of the jar (<tt>META-INF/versions/22</tt>).  This
+ * is the version loaded by earlier JVMs, which is never supported: check
+ * {@link #isSupported()} before constructing an engine.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiFfmEngine implements JniInchiEngine {
+
+    /**
+     * Returns whether the engine can run on this JVM.
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an engine calling the native library loaded by
+     * {@link JniInchiWrapper#loadLibrary()}.
+     *
+     * @throws JniInchiException  The engine is not supported on this JVM
+     */
+    public JniInchiFfmEngine() throws JniInchiException {
+        throw unsupported();
+    }
+
+    /**
+     * Creates an engine calling the InChI functions exported by a library
+     * file.
+     *
+     * @param library  Native library file
+     * @throws JniInchiException  The engine is not supported on this JVM
+     */
+    public JniInchiFfmEngine(File library) throws JniInchiException {
+        throw unsupported();
+    }
+
+    private static JniInchiException unsupported() {
+        return new JniInchiException("The foreign function engine requires Java 22 or later");
+    }
+
+    public JniInchiOutput getInchi(JniInchiInput input) throws JniInchiException {
+        throw unsupported();
+    }
+
+    public JniInchiOutput getStdInchi(JniInchiInput input) throws JniInchiException {
+        throw unsupported();
+    }
+
+    public JniInchiOutput getInchiFromInchi(JniInchiInputInchi input) throws JniInchiException {
+        throw unsupported();
+    }
+
+    public JniInchiOutputStructure getStructureFromInchi(JniInchiInputInchi input) throws JniInchiException {
+        throw unsupported();
+    }
+
+    public JniInchiOutputKey getInchiKey(String inchi) throws JniInchiException {
+        throw unsupported();
+    }
+
+    public INCHI_KEY_STATUS checkInchiKey(String key) throws JniInchiException {
+        throw unsupported();
+    }
+
+    public INCHI_STATUS checkInchi(String inchi, boolean strict) throws JniInchiException {
+        throw unsupported();
+    }
+
+    public JniInchiInputData getInputFromAuxInfo(String auxInfo) throws JniInchiException {
+        throw unsupported();
+    }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+/**
+ * <p>Runs the stages of InChI generation separately, through the InChI
+ * library's generator API (<tt>INCHIGEN_*</tt> in <tt>inchi_api.h</tt>).
+ * A structure is set up, normalized, canonicalized and serialized in turn;
+ * each stage may be timed on its own, and a caller that only needs the
+ * normalized structure can stop after {@link #normalize()}.
+ *
+ * <p>One native generator is created per instance and reused for every
+ * structure set up on it, until {@link #close()} is called.  Each stage
+ * takes the native library lock for its own duration, so calls from other
+ * threads may run between the stages.  Stages always run in this process,
+ * even if an engine is set on {@link JniInchiWrapper}.
+ *
+ * <p>An instance may be shared between threads, but runs one stage at a
+ * time.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiGenerator {
+
+    private static final int CREATED = 0;
+    private static final int SET_UP = 1;
+    private static final int NORMALIZED = 2;
+    private static final int CANONICALIZED = 3;
+    private static final int SERIALIZED = 4;
+
+    /**
+     * Whether the loaded native code has the generator entry points.
+     * Cleared on first use if an older native library is found.
+     */
+    private static volatile boolean supported = true;
+
+    private final JniInchiWrapper wrapper;
+
+    private long handle;
+
+    /**
+     * Last stage to have succeeded for the current structure.
+     */
+    private int stage = CREATED;
+
+    /**
+     * Creates a generator.
+     *
+     * @throws JniInchiException  The native library could not be loaded, or
+     * does not support staged generation
+     */
+    public JniInchiGenerator() throws JniInchiException {
+        wrapper = JniInchiWrapper.getWrapper();
+        if (!supported) {
+            throw new JniInchiException("Staged generation not supported by native library");
+        }
+        boolean locked = JniInchiWrapper.getLock();
+        try {
+            handle = wrapper.INCHIGENCreate();
+        } catch (UnsatisfiedLinkError e) {
+            supported = false;
+            throw new JniInchiException("Staged generation not supported by native library");
+        } finally {
+            JniInchiWrapper.releaseLock(locked);
+        }
+        if (handle == 0) {
+            throw new JniInchiException("Unable to create InChI generator");
+        }
+    }
+
+    /**
+     * <p>Returns whether the native library supports staged generation.
+     * Native libraries built before this was supported report false, and
+     * the constructor throws JniInchiException.
+     *
+     * @throws JniInchiException  The native library could not be loaded
+     */
+    public static boolean isSupported() throws JniInchiException {
+        if (supported) {
+            // Creating a generator clears the flag if the entry points are missing
+            try {
+                new JniInchiGenerator().close();
+            } catch (LoadNativeLibraryException e) {
+                throw e;
+            } catch (JniInchiException e) {
+                ; // reported by the flag
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * Sets up a structure, replacing any structure set up before, for
+     * generation of an InChI with the input's options.
+     *
+     * @param input  Structure and options
+     * @return  Status of the setup stage
+     * @throws JniInchiException
+     */
+    public INCHI_RET setup(JniInchiInput input) throws JniInchiException {
+        return setup(input, false);
+    }
+
+    /**
+     * Sets up a structure, replacing any structure set up before, for
+     * generation of a Standard InChI.
+     *
+     * @param input  Structure and options
+     * @return  Status of the setup stage
+     * @throws JniInchiException
+     */
+    public INCHI_RET setupStd(JniInchiInput input) throws JniInchiException {
+        return setup(input, true);
+    }
+
+    private synchronized INCHI_RET setup(JniInchiInput input, boolean std) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        checkOpen();
+        JniInchiPackedStructure packed = new JniInchiPackedStructure(input);
+        stage = CREATED;
+        boolean locked = JniInchiWrapper.getLock();
+        try {
+            return advance(SET_UP, wrapper.INCHIGENSetup(handle, packed, std));
+        } finally {
+            JniInchiWrapper.releaseLock(locked);
+        }
+    }
+
+    /**
+     * Normalizes the structure set up.
+     *
+     * @return  Status of the normalization stage
+     * @throws JniInchiException
+     * @throws IllegalStateException  No structure has been set up, or it
+     * has already been normalized
+     */
+    public synchronized INCHI_RET normalize() throws JniInchiException {
+        checkStage(SET_UP, "No structure set up");
+        checkNotPassed(NORMALIZED, "Structure already normalized");
+        boolean locked = JniInchiWrapper.getLock();
+        try {
+            return advance(NORMALIZED, wrapper.INCHIGENDoNormalization(handle));
+        } finally {
+            JniInchiWrapper.releaseLock(locked);
+        }
+    }
+
+    /**
+     * Canonicalizes the normalized structure.
+     *
+     * @return  Status of the canonicalization stage
+     * @throws JniInchiException
+     * @throws IllegalStateException  The structure has not been normalized,
+     * or has already been canonicalized
+     */
+    public synchronized INCHI_RET canonicalize() throws JniInchiException {
+        checkStage(NORMALIZED, "Structure not normalized");
+        checkNotPassed(CANONICALIZED, "Structure already canonicalized");
+        boolean locked = JniInchiWrapper.getLock();
+        try {
+            return advance(CANONICALIZED, wrapper.INCHIGENDoCanonicalization(handle));
+        } finally {
+            JniInchiWrapper.releaseLock(locked);
+        }
+    }
+
+    /**
+     * Serializes the canonicalized structure as InChI and AuxInfo.
+     *
+     * @return  Output, as from {@link JniInchiWrapper#getInchi(JniInchiInput)}
+     * except that its status is that of serialization alone; warnings from
+     * earlier stages are returned by those stages
+     * @throws JniInchiException
+     * @throws IllegalStateException  The structure has not been
+     * canonicalized, or has already been serialized
+     */
+    public synchronized JniInchiOutput serialize() throws JniInchiException {
+        checkStage(CANONICALIZED, "Structure not canonicalized");
+        checkNotPassed(SERIALIZED, "Structure already serialized");
+        boolean locked = JniInchiWrapper.getLock();
+        JniInchiOutput output;
+        try {
+            output = wrapper.INCHIGENDoSerialization(handle);
+        } finally {
+            JniInchiWrapper.releaseLock(locked);
+        }
+        INCHI_RET retStatus = output.getReturnStatus();
+        stage = (retStatus == INCHI_RET.OKAY || retStatus == INCHI_RET.WARNING) ? SERIALIZED : CREATED;
+        return output;
+    }
+
+    /**
+     * Returns the number of components of the normalized structure.
+     *
+     * @param reconnected  Whether to count the components of the structure
+     * with metal atoms reconnected (<tt>-RecMet</tt>), rather than of the
+     * disconnected structure
+     * @throws IllegalStateException  The structure has not been normalized
+     */
+    public synchronized int getNumComponents(boolean reconnected) {
+        checkStage(NORMALIZED, "Structure not normalized");
+        return wrapper.INCHIGENGetNumComponents(handle, reconnected);
+    }
+
+    /**
+     * <p>Returns a component of the normalized structure, or null if the
+     * library did not produce that form of it.  Terminal hydrogen atoms
+     * are counted as implicit hydrogen, and bond types introduced by
+     * normalization (such as tautomeric bonds) are reported as
+     * {@link INCHI_BOND_TYPE#ALTERN}.  Bond stereo is not reported.
+     *
+     * <p>Available from normalization until the next structure is set up.
+     *
+     * @param component  Index of the component
+     * @param reconnected  Whether to read the structure with metal atoms
+     * reconnected, rather than the disconnected structure
+     * @param tautomeric  Whether to read the tautomeric form, with mobile
+     * hydrogen, rather than the fixed-hydrogen form
+     * @throws IllegalStateException  The structure has not been normalized
+     */
+    public synchronized JniInchiStructure getNormalizedComponent(int component, boolean reconnected, boolean tautomeric) {
+        checkStage(NORMALIZED, "Structure not normalized");
+        JniInchiStructure structure = new JniInchiStructure();
+        return wrapper.INCHIGENGetNormAtoms(handle, component, reconnected, tautomeric, structure) ? structure : null;
+    }
+
+    /**
+     * Destroys the native generator.  Structures can no longer be set up,
+     * and closing again has no effect.
+     */
+    public synchronized void close() {
+        if (handle != 0) {
+            boolean locked = false;
+            try {
+                locked = JniInchiWrapper.getLock();
+            } catch (JniInchiException e) {
+                ; // free the generator regardless
+            }
+            try {
+                wrapper.INCHIGENDestroy(handle);
+            } finally {
+                JniInchiWrapper.releaseLock(locked);
+            }
+            handle = 0;
+            stage = CREATED;
+        }
+    }
+
+    private void checkOpen() throws JniInchiException {
+        if (handle == 0) {
+            throw new JniInchiException("Generator closed");
+        }
+    }
+
+    private void checkStage(int required, String message) {
+        if (stage < required) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Stops a stage running twice on one structure: the library would reuse
+     * and leak the data left by the first run.
+     */
+    private void checkNotPassed(int next, String message) {
+        if (stage >= next) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Records a stage as passed if it succeeded, otherwise leaves no stage
+     * passed, as the library's generator does not check this itself.
+     */
+    private INCHI_RET advance(int next, int ret) throws JniInchiException {
+        INCHI_RET retStatus = INCHI_RET.getValue(ret);
+        if (retStatus == null) {
+            stage = CREATED;
+            throw new JniInchiException("Unknown return status: " + ret);
+        }
+        stage = (retStatus == INCHI_RET.OKAY || retStatus == INCHI_RET.WARNING) ? next : CREATED;
+        return retStatus;
+    }
+
+}
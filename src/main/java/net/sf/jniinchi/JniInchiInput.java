@@ -19,6 +19,7 @@
 package net.sf.jniinchi;
 
 import java.util.List;
+import java.util.StringTokenizer;
 
 /**
  * Encapsulates structure input for InChI generation.
@@ -31,6 +32,33 @@ public class JniInchiInput extends JniInchiStructure {
      */
     protected String options;
 
+    /**
+     * Options the options string was taken from, if any.
+     */
+    JniInchiOptions profile;
+
+    /**
+     * Output fields requested, or NO_FIELD_MASK.
+     */
+    int outputFields = NO_FIELD_MASK;
+
+    /**
+     * Value of outputFields when no mask has been set: all fields are
+     * returned, decoded eagerly.
+     */
+    static final int NO_FIELD_MASK = -1;
+
+    /**
+     * Options added by setLeanOutput.
+     */
+    private static final INCHI_OPTION[] LEAN_OPTIONS = {INCHI_OPTION.AuxNone, INCHI_OPTION.NoLog};
+
+    /**
+     * Options added by setLeanOutput where the native library does not
+     * recognise NoLog.
+     */
+    private static final INCHI_OPTION[] LEAN_OPTIONS_WITH_LOG = {INCHI_OPTION.AuxNone};
+
     /**
      * Constructor.
      * @throws JniInchiException
@@ -57,6 +85,19 @@ public class JniInchiInput extends JniInchiStructure {
         this.options = JniInchiWrapper.checkOptions(opts);
     }
 
+    /**
+     * Constructor.  The options are used as they stand, with no further
+     * checking.
+     * @param opts    Options
+     */
+    public JniInchiInput(JniInchiOptions opts) {
+        if (opts == null) {
+            throw new IllegalArgumentException("Null options");
+        }
+        this.options = opts.toString();
+        this.profile = opts;
+    }
+
     /**
      * Constructor.
      * @throws JniInchiException
@@ -75,6 +116,15 @@ public class JniInchiInput extends JniInchiStructure {
         setStructure(struct);
     }
 
+    /**
+     * Constructor.
+     * @param opts    Options
+     */
+    public JniInchiInput(JniInchiStructure struct, JniInchiOptions opts) {
+        this(opts);
+        setStructure(struct);
+    }
+
     /**
      * Returns options string.
      * @return
@@ -82,4 +132,85 @@ public class JniInchiInput extends JniInchiStructure {
     public String getOptions() {
         return options;
     }
+
+    /**
+     * Returns the options as ASCII bytes, if they were given as
+     * JniInchiOptions and have not been replaced since, otherwise null.
+     */
+    byte[] getOptionBytes() {
+        JniInchiOptions p = profile;
+        // Identity check: the string is the profile's own unless reassigned
+        return p != null && p.toString() == options ? p.getBytes() : null;
+    }
+
+    /**
+     * <p>Selects the fields of {@link JniInchiOutput} to return, as a
+     * combination of {@link JniInchiOutput#FIELD_INCHI},
+     * {@link JniInchiOutput#FIELD_AUX_INFO},
+     * {@link JniInchiOutput#FIELD_MESSAGE} and
+     * {@link JniInchiOutput#FIELD_LOG}.  Fields not selected are never
+     * copied out of native memory, and their getters return null; the
+     * return status is always set.</p>
+     *
+     * <p>Once a mask is set, even {@link JniInchiOutput#ALL_FIELDS}, the
+     * selected fields are returned as bytes and only decoded into strings
+     * when their getters are called.  Calculations run by an engine, or by
+     * a native library that predates this method, return every field.</p>
+     *
+     * @param fields  Combination of JniInchiOutput.FIELD_* flags
+     */
+    public void setOutputFields(final int fields) {
+        if ((fields & ~JniInchiOutput.ALL_FIELDS) != 0) {
+            throw new IllegalArgumentException("Unknown output fields: " + fields);
+        }
+        this.outputFields = fields;
+    }
+
+    /**
+     * <p>Selects the lean output profile, for throughput runs that only need
+     * the InChI and status.  Adds the {@link INCHI_OPTION#AuxNone} and
+     * {@link INCHI_OPTION#NoLog} options, so the library neither formats the
+     * AuxInfo nor builds the log, and returns only the InChI and message,
+     * as with {@link #setOutputFields(int)}.</p>
+     *
+     * <p>NoLog is left out if the native library predates it, as such
+     * libraries would report it in the log of every result.</p>
+     *
+     * @throws JniInchiException
+     */
+    public void setLeanOutput() throws JniInchiException {
+        INCHI_OPTION[] lean = JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_NO_LOG) ? LEAN_OPTIONS : LEAN_OPTIONS_WITH_LOG;
+        if (getOptionBytes() != null) {
+            profile = profile.with(lean);
+            options = profile.toString();
+            setOutputFields(JniInchiOutput.FIELD_INCHI | JniInchiOutput.FIELD_MESSAGE);
+            return;
+        }
+        StringBuilder opts = new StringBuilder(options);
+        for (INCHI_OPTION option : lean) {
+            if (!hasOption(option)) {
+                opts.append(' ').append(option.name());
+            }
+        }
+        this.options = JniInchiWrapper.checkOptions(opts.toString());
+        setOutputFields(JniInchiOutput.FIELD_INCHI | JniInchiOutput.FIELD_MESSAGE);
+    }
+
+    private boolean hasOption(INCHI_OPTION option) {
+        StringTokenizer tok = new StringTokenizer(options);
+        while (tok.hasMoreTokens()) {
+            if (tok.nextToken().substring(1).equalsIgnoreCase(option.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the output fields selected, {@link JniInchiOutput#ALL_FIELDS}
+     * by default.
+     */
+    public int getOutputFields() {
+        return outputFields == NO_FIELD_MASK ? JniInchiOutput.ALL_FIELDS : outputFields;
+    }
 }
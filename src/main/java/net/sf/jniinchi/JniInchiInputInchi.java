@@ -66,6 +66,20 @@ public class JniInchiInputInchi {
         this.options = JniInchiWrapper.checkOptions(opts);
     }
 
+    /**
+     * Constructor.  The options are used as they stand, with no further
+     * checking.
+     * @param inchi    InChI string
+     * @param opts    Options
+     */
+    public JniInchiInputInchi(final String inchi, final JniInchiOptions opts) {
+        if (opts == null) {
+            throw new IllegalArgumentException("Null options");
+        }
+        this.inchiString = inchi;
+        this.options = opts.toString();
+    }
+
     /**
      * Returns options string.
      * @return
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.Arrays;
+
+/**
+ * <p>Fingerprint of an InChI calculation's input, used as the key of the
+ * output cache set with {@link JniInchiWrapper#setInchiCache(JniInchiCache)}.
+ *
+ * <p>Covers every atom, bond and stereo parity property passed to the
+ * native code, in order, along with the canonicalised options, the output
+ * fields selected and whether a standard InChI was requested.  The hash is
+ * computed once; equal hashes are confirmed by comparing the full contents,
+ * so distinct inputs never share a cached output.  The same structure with atoms in a different
+ * order gives a different key.
+ *
+ * @author Sam Adams
+ */
+public final class JniInchiInputKey {
+
+    private final boolean std;
+    private final String options;
+    private final int outputFields;
+    private final double[] coords;
+    private final int[] atoms;
+    private final byte[] elements;
+    private final int[] bonds;
+    private final int[] stereo0D;
+    private final int hash;
+
+    /**
+     * Creates a key from a packed structure, copying its arrays.
+     */
+    JniInchiInputKey(JniInchiPackedStructure packed, boolean std) {
+        this.std = std;
+        this.options = packed.options;
+        this.outputFields = packed.outputFields;
+        this.coords = Arrays.copyOf(packed.coords, packed.numAtoms * JniInchiPackedStructure.COORDS_PER_ATOM);
+        this.atoms = Arrays.copyOf(packed.atoms, packed.numAtoms * JniInchiPackedStructure.INTS_PER_ATOM);
+        this.elements = Arrays.copyOf(packed.elements, packed.numAtoms * JniInchiPackedStructure.ATOM_EL_LEN);
+        this.bonds = Arrays.copyOf(packed.bonds, packed.numBonds * JniInchiPackedStructure.INTS_PER_BOND);
+        this.stereo0D = Arrays.copyOf(packed.stereo0D, packed.numStereo0D * JniInchiPackedStructure.INTS_PER_STEREO);
+
+        int h = std ? 1 : 0;
+        h = 31 * h + options.hashCode();
+        h = 31 * h + outputFields;
+        h = 31 * h + Arrays.hashCode(coords);
+        h = 31 * h + Arrays.hashCode(atoms);
+        h = 31 * h + Arrays.hashCode(elements);
+        h = 31 * h + Arrays.hashCode(bonds);
+        h = 31 * h + Arrays.hashCode(stereo0D);
+        this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof JniInchiInputKey)) {
+            return false;
+        }
+        JniInchiInputKey other = (JniInchiInputKey) obj;
+        return hash == other.hash
+                && std == other.std
+                && options.equals(other.options)
+                && outputFields == other.outputFields
+                && Arrays.equals(atoms, other.atoms)
+                && Arrays.equals(elements, other.elements)
+                && Arrays.equals(bonds, other.bonds)
+                && Arrays.equals(stereo0D, other.stereo0D)
+                && Arrays.equals(coords, other.coords);
+    }
+
+}
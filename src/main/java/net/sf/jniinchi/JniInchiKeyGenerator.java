@@ -0,0 +1,358 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>Pure Java InChIKey generator, ported from <tt>ikey_dll.c</tt> and
+ * <tt>ikey_base26.c</tt> in the InChI library, using the JDK's SHA-256.
+ * Keys are identical to those returned by the native
+ * <tt>GetINCHIKeyFromINCHI</tt>, including the return status for malformed
+ * InChIs, but no native code is loaded and no lock is taken, so keys may be
+ * generated on any number of threads at once.
+ *
+ * <p>{@link JniInchiWrapper#getInchiKey(String)} uses this class in place of
+ * the native library when {@link JniInchiWrapper#setJavaInchiKey(boolean)}
+ * is set.
+ *
+ * @author Sam Adams
+ */
+public final class JniInchiKeyGenerator {
+
+    private static final String INCHI_STRING_PREFIX = "InChI=";
+
+    private static final int LEN_INCHI_STRING_PREFIX = 6;
+
+    /**
+     * Protonation flags for +1 to +12 and -1 to -12 protons.
+     */
+    private static final String PPLUS = "OPQRSTUVWXYZ";
+
+    private static final String PMINUS = "MLKJIHGFEDCB";
+
+    /**
+     * Base-26 triplets, AAA to ZZZ, omitting those starting with E and the
+     * first 516 starting with T (from ikey_base26.c).
+     */
+    private static final String[] TRIPLETS = new String[16384];
+
+    /**
+     * Base-26 dublets, AA to ZZ.
+     */
+    private static final String[] DUBLETS = new String[676];
+
+    static {
+        int n = 0;
+        for (char a = 'A'; a <= 'Z'; a++) {
+            for (char b = 'A'; b <= 'Z'; b++) {
+                DUBLETS[n++] = new String(new char[] {a, b});
+            }
+        }
+        n = 0;
+        for (char a = 'A'; a <= 'Z' && n < TRIPLETS.length; a++) {
+            if (a == 'E') {
+                continue;
+            }
+            for (int i = (a == 'T' ? 516 : 0); i < 676 && n < TRIPLETS.length; i++) {
+                TRIPLETS[n++] = a + DUBLETS[i];
+            }
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JniInchiKeyGenerator() {
+
+    }
+
+    /**
+     * Generates the InChIKey for an InChI string, as
+     * {@link JniInchiWrapper#getInchiKey(String)}.
+     * @param inchi     source InChI string
+     * @return  InChIKey output
+     * @throws JniInchiException
+     */
+    public static JniInchiOutputKey getInchiKey(final String inchi) throws JniInchiException {
+        return getInchiKey(inchi, false, false);
+    }
+
+    /**
+     * Generates the InChIKey for an InChI string, optionally with the
+     * hash extensions: the remaining 256 - 65 bits of the major block hash,
+     * and 256 - 37 bits of the minor block hash, as lowercase hexadecimal.
+     * @param inchi     source InChI string
+     * @param xtra1     whether to return the major block hash extension
+     * @param xtra2     whether to return the minor block hash extension
+     * @return  InChIKey output
+     * @throws JniInchiException
+     * @see JniInchiOutputKey#getXtra1()
+     * @see JniInchiOutputKey#getXtra2()
+     */
+    public static JniInchiOutputKey getInchiKey(final String inchi, final boolean xtra1, final boolean xtra2) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        final byte[] src = toBytes(inchi);
+        int slen = src.length;
+
+        // Check source is a valid InChI string
+        if (slen < LEN_INCHI_STRING_PREFIX + 3) {
+            return error(INCHI_KEY.INVALID_INCHI_PREFIX);
+        }
+        for (int i = 0; i < LEN_INCHI_STRING_PREFIX; i++) {
+            if (src[i] != INCHI_STRING_PREFIX.charAt(i)) {
+                return error(INCHI_KEY.INVALID_INCHI_PREFIX);
+            }
+        }
+        if (src[LEN_INCHI_STRING_PREFIX] != '1') {
+            return error(INCHI_KEY.INVALID_INCHI_PREFIX);
+        }
+        int posSlash1 = LEN_INCHI_STRING_PREFIX + 1;
+        boolean std = false;
+        if (src[posSlash1] == 'S') {
+            std = true;
+            posSlash1++;
+        }
+        if (src[posSlash1] != '/') {
+            return error(INCHI_KEY.INVALID_INCHI_PREFIX);
+        }
+        final int c1 = posSlash1 + 1 < slen ? src[posSlash1 + 1] : 0;
+        if (!isAlnum(c1) && c1 != '/') {
+            return error(INCHI_KEY.INVALID_INCHI);
+        }
+
+        // Trim at the first character that cannot occur in an InChI
+        slen = 0;
+        while (slen < src.length && isInchiChar(src[slen])) {
+            slen++;
+        }
+
+        // Find the end of the major block, and the protonation layer
+        int j;
+        int jproto = 0;
+        for (j = posSlash1 + 1; j < slen - 1; j++) {
+            if (src[j] == '/') {
+                final byte cn = src[j + 1];
+                if (cn == 'c' || cn == 'h' || cn == 'q') {
+                    continue;
+                }
+                if (cn == 'p') {
+                    jproto = j;
+                    continue;
+                }
+                if ((cn == 'f' || cn == 'r') && std) {
+                    return error(INCHI_KEY.INVALID_STD_INCHI);
+                }
+                break;
+            }
+        }
+        j++;
+        if (j == slen) {
+            j++;
+        } else {
+            j--;
+        }
+        // If there is no minor block, j is past the end of the string
+        final int ncp = Math.min(jproto != 0 ? jproto : j, slen) - posSlash1 - 1;
+
+        char flagproto = 'N';
+        if (jproto != 0) {
+            final int lenproto = j - jproto;
+            if (lenproto < 3) {
+                return error(INCHI_KEY.INVALID_INCHI);
+            }
+            final int nprotons = parseInt(src, jproto + 2, Math.min(j, slen));
+            if (nprotons > 0) {
+                flagproto = nprotons > 12 ? 'A' : PPLUS.charAt(nprotons - 1);
+            } else if (nprotons < 0) {
+                flagproto = nprotons < -12 ? 'A' : PMINUS.charAt(-nprotons - 1);
+            } else {
+                return error(INCHI_KEY.INVALID_STD_INCHI);
+            }
+        }
+
+        // Major block hash
+        final byte[] major = sha256(src, posSlash1 + 1, ncp, 1);
+
+        // Minor block hash; short minor blocks are doubled
+        final int minorStart = j != slen + 1 ? j : slen;
+        final int minorLen = slen - minorStart;
+        final byte[] minor = sha256(src, minorStart, minorLen, minorLen > 0 && minorLen < 255 ? 2 : 1);
+
+        final StringBuilder key = new StringBuilder(27);
+        key.append(triplet1(major)).append(triplet2(major)).append(triplet3(major)).append(triplet4(major));
+        key.append(DUBLETS[(major[7] & 0xff) | (major[8] & 0x01) << 8]);
+        key.append('-');
+        key.append(triplet1(minor)).append(triplet2(minor));
+        key.append(DUBLETS[((minor[3] & 0xf0) | (minor[4] & 0x1f) << 8) >> 4]);
+        key.append(std ? 'S' : 'N');
+        key.append('A');
+        key.append('-');
+        key.append(flagproto);
+
+        return new JniInchiOutputKey(INCHI_KEY.OK, key.toString(),
+                xtra1 ? toHex(major, 8, 0xfe) : null,
+                xtra2 ? toHex(minor, 4, 0xe0) : null);
+    }
+
+    /**
+     * Generates the standard InChIKey for a standard InChI string, as
+     * <tt>GetStdINCHIKeyFromStdINCHI</tt>.  Returns
+     * {@link INCHI_KEY#INVALID_STD_INCHI} if the InChI is not standard.
+     * @param inchi     source standard InChI string
+     * @return  InChIKey output
+     * @throws JniInchiException
+     */
+    public static JniInchiOutputKey getStdInchiKey(final String inchi) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        if (inchi.length() < LEN_INCHI_STRING_PREFIX + 3 || inchi.charAt(LEN_INCHI_STRING_PREFIX + 1) != 'S') {
+            return error(INCHI_KEY.INVALID_STD_INCHI);
+        }
+        return getInchiKey(inchi, false, false);
+    }
+
+    /**
+     * As the native code, failed outputs have an empty key.
+     */
+    private static JniInchiOutputKey error(final INCHI_KEY status) throws JniInchiException {
+        return new JniInchiOutputKey(status, "");
+    }
+
+    /**
+     * Converts to UTF-8 by hand, so as not to depend on the JRE's charsets.
+     * Only the leading ASCII part of an InChI is hashed; other characters
+     * need only have the same length as in the native code.
+     */
+    private static byte[] toBytes(final String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            n += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        final byte[] b = new byte[n];
+        n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xc0 | c >> 6);
+                b[n++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                b[n++] = (byte) (0xe0 | c >> 12);
+                b[n++] = (byte) (0x80 | c >> 6 & 0x3f);
+                b[n++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return b;
+    }
+
+    private static boolean isAlnum(final int c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Characters allowed in an InChI (extract_inchi_substring in util.c).
+     */
+    private static boolean isInchiChar(final int c) {
+        if (isAlnum(c)) {
+            return true;
+        }
+        switch (c) {
+            case '(': case ')': case '*': case '+': case ',': case '-':
+            case '.': case '/': case ';': case '=': case '?': case '@':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * As strtol: an optionally signed decimal integer at the start of the
+     * range, or 0 if there is none.
+     */
+    private static int parseInt(final byte[] s, int i, final int end) {
+        boolean negative = false;
+        if (i < end && (s[i] == '+' || s[i] == '-')) {
+            negative = s[i] == '-';
+            i++;
+        }
+        long n = 0;
+        for (; i < end && s[i] >= '0' && s[i] <= '9'; i++) {
+            if (n <= Integer.MAX_VALUE) {
+                n = n * 10 + (s[i] - '0');
+            }
+        }
+        n = Math.min(n, Integer.MAX_VALUE);
+        return (int) (negative ? -n : n);
+    }
+
+    private static String triplet1(final byte[] a) {
+        return TRIPLETS[(a[0] & 0xff) | (a[1] & 0x3f) << 8];
+    }
+
+    private static String triplet2(final byte[] a) {
+        return TRIPLETS[((a[1] & 0xc0) | (a[2] & 0xff) << 8 | (a[3] & 0x0f) << 16) >> 6];
+    }
+
+    private static String triplet3(final byte[] a) {
+        return TRIPLETS[((a[3] & 0xf0) | (a[4] & 0xff) << 8 | (a[5] & 0x03) << 16) >> 4];
+    }
+
+    private static String triplet4(final byte[] a) {
+        return TRIPLETS[((a[5] & 0xfc) | (a[6] & 0xff) << 8) >> 2];
+    }
+
+    /**
+     * Hexadecimal of the digest from the given byte, with that byte masked.
+     */
+    private static String toHex(final byte[] a, final int start, final int mask) {
+        final char[] c = new char[2 * (a.length - start)];
+        int n = 0;
+        for (int i = start; i < a.length; i++) {
+            final int b = i == start ? a[i] & mask : a[i] & 0xff;
+            c[n++] = HEX[b >> 4];
+            c[n++] = HEX[b & 0x0f];
+        }
+        return new String(c);
+    }
+
+    /**
+     * SHA-256 of <code>len</code> bytes of <code>s</code> from
+     * <code>off</code>, repeated <code>reps</code> times.
+     */
+    static byte[] sha256(final byte[] s, final int off, final int len, final int reps) {
+        final MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+        for (int i = 0; i < reps; i++) {
+            sha.update(s, off, len);
+        }
+        return sha.digest();
+    }
+
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sf.jniinchi.JniInchiWorkerProtocol.Request;
+
+/**
+ * <p>Runs InChI calculations in a pool of independent copies of the native
+ * InChI library, all loaded in this JVM.
+ *
+ * <p>The InChI library keeps its working state in global variables, so
+ * {@link JniInchiWrapper} allows only a single calculation at a time.  The
+ * operating system gives each separately loaded copy of a library its own
+ * globals, but the JVM binds a native library to one class loader.  This
+ * pool therefore copies the library file <i>n</i> times under different
+ * names, and loads each copy through its own class loader holding a
+ * private copy of the <tt>net.sf.jniinchi</tt> classes.  Each call is
+ * handed to a free copy, so up to <i>n</i> calculations run in parallel
+ * without starting worker processes.
+ *
+ * <p>As the copies' classes are distinct from the caller's, requests and
+ * responses are passed in the encoding used by {@link JniInchiWorkerPool},
+ * through memory rather than pipes.  Unlike a worker pool, a crash in the
+ * native code takes down the whole JVM.
+ *
+ * <p>The pool may be used directly, or installed with
+ * {@link JniInchiWrapper#setEngine(JniInchiEngine)}.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiLibraryPool implements JniInchiEngine {
+
+    private static final String PACKAGE = "net.sf.jniinchi.";
+
+    private static final Pattern LIBRARY_FILE = Pattern.compile("<file\\s+library=\"true\"\\s*>\\s*([^<]+?)\\s*</file>");
+
+    private final File directory;
+
+    private final List<Library> libraries;
+
+    private final BlockingQueue<Library> idleLibraries;
+
+    /**
+     * Placed in the idle queue on close, to wake callers waiting for a
+     * library.  Each caller that takes it puts it back for the next.
+     */
+    private static final Library CLOSED = new Library();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a pool of <code>n</code> copies of the native library
+     * packaged in the jni-inchi jar for this platform.
+     *
+     * @param n  Number of library copies
+     * @throws JniInchiException  The library could not be found or loaded
+     */
+    public JniInchiLibraryPool(int n) throws JniInchiException {
+        this(n, null);
+    }
+
+    /**
+     * Creates a pool of <code>n</code> copies of a native library.
+     *
+     * @param n        Number of library copies
+     * @param library  JNI-InChI native library file, or null to use the one
+     *                 packaged in the jni-inchi jar for this platform
+     * @throws JniInchiException  The library could not be found or loaded
+     */
+    public JniInchiLibraryPool(int n, File library) throws JniInchiException {
+        if (n < 1) {
+            throw new IllegalArgumentException("Number of libraries must be positive");
+        }
+        String name = library == null ? getPackagedLibraryName() : library.getName();
+        try {
+            directory = Files.createTempDirectory("jniinchi").toFile();
+        } catch (IOException ex) {
+            throw new JniInchiException(ex);
+        }
+        directory.deleteOnExit();
+
+        libraries = new ArrayList<Library>(n);
+        idleLibraries = new LinkedBlockingQueue<Library>();
+        try {
+            for (int i = 0; i < n; i++) {
+                File copy = new File(directory, i + "-" + name);
+                copy.deleteOnExit();
+                copyLibrary(library, name, copy);
+                Library lib = new Library(copy);
+                libraries.add(lib);
+                idleLibraries.add(lib);
+            }
+        } catch (JniInchiException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of library copies.
+     */
+    public int getNumLibraries() {
+        return libraries.size();
+    }
+
+    /**
+     * Releases the library copies.  Each is unloaded once its class loader
+     * is garbage collected, and the files are deleted when the JVM exits.
+     * Requests in progress complete; later requests, and those waiting
+     * for a library, fail.
+     */
+    public void close() {
+        closed = true;
+        idleLibraries.clear();
+        idleLibraries.add(CLOSED);
+    }
+
+
+    /**
+     * See {@link JniInchiWrapper#getInchi(JniInchiInput)}.
+     */
+    public JniInchiOutput getInchi(final JniInchiInput input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getInchiRequest(input, false));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getStdInchi(JniInchiInput)}.
+     */
+    public JniInchiOutput getStdInchi(final JniInchiInput input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getInchiRequest(input, true));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getInchiFromInchi(JniInchiInputInchi)}.
+     */
+    public JniInchiOutput getInchiFromInchi(final JniInchiInputInchi input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getInchiFromInchiRequest(input));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getStructureFromInchi(JniInchiInputInchi)}.
+     */
+    public JniInchiOutputStructure getStructureFromInchi(final JniInchiInputInchi input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getStructureFromInchiRequest(input));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getInchiKey(String)}.
+     */
+    public JniInchiOutputKey getInchiKey(final String inchi) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        return call(JniInchiWorkerProtocol.getInchiKeyRequest(inchi));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#checkInchiKey(String)}.
+     */
+    public INCHI_KEY_STATUS checkInchiKey(final String key) throws JniInchiException {
+        if (key == null) {
+            throw new IllegalArgumentException("Null InChI key");
+        }
+        return call(JniInchiWorkerProtocol.checkInchiKeyRequest(key));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#checkInchi(String, boolean)}.
+     */
+    public INCHI_STATUS checkInchi(final String inchi, final boolean strict) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        return call(JniInchiWorkerProtocol.checkInchiRequest(inchi, strict));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getInputFromAuxInfo(String)}.
+     */
+    public JniInchiInputData getInputFromAuxInfo(final String auxInfo) throws JniInchiException {
+        if (auxInfo == null) {
+            throw new IllegalArgumentException("Null AuxInfo");
+        }
+        return call(JniInchiWorkerProtocol.getInputFromAuxInfoRequest(auxInfo));
+    }
+
+
+    private <T> T call(Request<T> request) throws JniInchiException {
+        if (closed) {
+            throw new JniInchiException("Library pool closed");
+        }
+        Library library;
+        try {
+            library = idleLibraries.take();
+        } catch (InterruptedException ex) {
+            throw new JniInchiException(ex);
+        }
+        if (library == CLOSED || closed) {
+            idleLibraries.add(CLOSED);
+            throw new JniInchiException("Library pool closed");
+        }
+        try {
+            return library.call(request);
+        } finally {
+            if (!closed) {
+                idleLibraries.add(library);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the jnati platform identifier, e.g. LINUX-AMD64, under which
+     * the library for this platform is packaged.
+     */
+    static String getPlatform() {
+        String os = System.getProperty("os.name", "").toUpperCase();
+        if (os.startsWith("WINDOWS")) {
+            os = "WINDOWS";
+        } else if (os.startsWith("MAC")) {
+            os = "MAC";
+        }
+        String arch = System.getProperty("os.arch", "").toUpperCase();
+        if (arch.matches("I[3-6]86")) {
+            arch = "X86";
+        }
+        return os + "-" + arch;
+    }
+
+    private static String getPackagedLibraryPath() {
+        return "META-INF/" + JniInchiWrapper.ID + "/" + JniInchiWrapper.VERSION + "/" + getPlatform() + "/";
+    }
+
+    /**
+     * Reads the name of the packaged library from the platform's jnati
+     * manifest.
+     */
+    private static String getPackagedLibraryName() throws JniInchiException {
+        String path = getPackagedLibraryPath() + "MANIFEST.xml";
+        InputStream in = JniInchiLibraryPool.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new JniInchiException("No native library packaged for " + getPlatform());
+        }
+        try {
+            Matcher m = LIBRARY_FILE.matcher(new String(readFully(in), "UTF-8"));
+            if (!m.find()) {
+                throw new JniInchiException("No library listed in " + path);
+            }
+            return m.group(1);
+        } catch (IOException ex) {
+            throw new JniInchiException(ex);
+        }
+    }
+
+    private static void copyLibrary(File library, String name, File copy) throws JniInchiException {
+        try {
+            InputStream in;
+            if (library == null) {
+                in = JniInchiLibraryPool.class.getClassLoader().getResourceAsStream(getPackagedLibraryPath() + name);
+                if (in == null) {
+                    throw new JniInchiException("No native library packaged for " + getPlatform());
+                }
+            } else {
+                in = new FileInputStream(library);
+            }
+            byte[] bytes = readFully(in);
+            OutputStream out = new FileOutputStream(copy);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            throw new JniInchiException(ex);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Loads its own copy of the <tt>net.sf.jniinchi</tt> classes, rather
+     * than delegating to its parent, so that the copy of
+     * {@link JniInchiWrapper} has its own native library.
+     */
+    private static class IsolatingClassLoader extends ClassLoader {
+
+        IsolatingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    c = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                byte[] bytes = readFully(in);
+                return defineClass(name, bytes, 0, bytes.length);
+            } catch (IOException ex) {
+                throw new ClassNotFoundException(name, ex);
+            }
+        }
+    }
+
+
+    /**
+     * A copy of the native library, and the entry point of the classes
+     * bound to it.
+     */
+    private static class Library {
+
+        private final Method process;
+
+        private Library() {
+            process = null;
+        }
+
+        Library(File file) throws JniInchiException {
+            ClassLoader loader = new IsolatingClassLoader(JniInchiLibraryPool.class.getClassLoader());
+            try {
+                Method load = Class.forName(JniInchiWrapper.class.getName(), true, loader)
+                        .getDeclaredMethod("loadLibrary", File.class);
+                load.setAccessible(true);
+                load.invoke(null, file);
+                process = Class.forName(JniInchiWorker.class.getName(), true, loader)
+                        .getDeclaredMethod("process", int.class, DataInputStream.class, DataOutputStream.class);
+                process.setAccessible(true);
+            } catch (InvocationTargetException ex) {
+                throw new JniInchiException("Unable to load " + file + ": " + ex.getCause());
+            } catch (ReflectiveOperationException ex) {
+                throw new JniInchiException(ex);
+            }
+        }
+
+        <T> T call(Request<T> request) throws JniInchiException {
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(buffer);
+                request.write(out);
+                out.flush();
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+                buffer.reset();
+                process.invoke(null, request.op, in, out);
+                out.flush();
+                in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+                if (in.readByte() == JniInchiWorkerProtocol.RESPONSE_OK) {
+                    return request.read(in);
+                }
+                throw JniInchiWorkerProtocol.readError(in);
+            } catch (IOException ex) {
+                throw new JniInchiException(ex);
+            } catch (InvocationTargetException ex) {
+                throw new JniInchiException("InChI library failed: " + ex.getCause());
+            } catch (IllegalAccessException ex) {
+                throw new JniInchiException(ex);
+            }
+        }
+    }
+
+}
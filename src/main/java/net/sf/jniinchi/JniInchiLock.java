@@ -0,0 +1,243 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Admission control for the native InChI library, which may only be
+ * used by one thread at a time.  Callers queue in first-in, first-out order
+ * for a fair {@link ReentrantLock}; no monitors are held while waiting, so
+ * waiting virtual threads are not pinned to their carriers.
+ *
+ * <p>A caller is rejected with a {@link JniInchiRejectedException} if the
+ * queue is already at its maximum length, or if it does not reach the front
+ * within the wait timeout.  The timeout may be set globally, or for the
+ * calls made by one thread with {@link #setThreadTimeout(long, TimeUnit)}.
+ *
+ * <p>The lock used by {@link JniInchiWrapper} is returned by
+ * {@link JniInchiWrapper#getNativeLock()}.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiLock {
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private final ThreadLocal<Long> threadTimeout = new ThreadLocal<Long>();
+
+    private volatile long timeoutNanos;
+
+    private volatile int maxQueueLength = -1;
+
+    private final AtomicInteger queueLength = new AtomicInteger();
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong totalWait = new AtomicLong();
+
+    private final AtomicLong maxWait = new AtomicLong();
+
+    /**
+     * Creates a lock with an unlimited queue.
+     *
+     * @param timeout  Time to wait for the lock
+     * @param unit     Unit of timeout
+     */
+    public JniInchiLock(long timeout, TimeUnit unit) {
+        setTimeout(timeout, unit);
+    }
+
+    /**
+     * Sets how long callers wait for the lock before they are rejected.  A
+     * timeout of zero rejects callers at once if the lock is held.
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        timeoutNanos = unit.toNanos(timeout);
+    }
+
+    public long getTimeout(TimeUnit unit) {
+        return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the timeout for calls made by the current thread, overriding the
+     * global timeout until {@link #clearThreadTimeout()} is called.
+     */
+    public void setThreadTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        threadTimeout.set(unit.toNanos(timeout));
+    }
+
+    /**
+     * Returns the current thread to the global timeout.
+     */
+    public void clearThreadTimeout() {
+        threadTimeout.remove();
+    }
+
+    /**
+     * Sets the maximum number of callers that may wait for the lock; further
+     * callers are rejected at once.  A negative value, the default, means
+     * no limit.
+     */
+    public void setMaxQueueLength(int maxQueueLength) {
+        this.maxQueueLength = maxQueueLength;
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    /**
+     * Returns the number of callers waiting for the lock.
+     */
+    public int getQueueLength() {
+        return queueLength.get();
+    }
+
+    /**
+     * Returns the number of times the lock has been acquired.
+     */
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /**
+     * Returns the number of callers rejected because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of callers rejected because their wait timed out.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Returns the total time callers have spent waiting for the lock.
+     */
+    public long getTotalWaitTime(TimeUnit unit) {
+        return unit.convert(totalWait.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time a caller has waited for the lock.
+     */
+    public long getMaxWaitTime(TimeUnit unit) {
+        return unit.convert(maxWait.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Resets the counters.
+     */
+    public void resetCounts() {
+        acquiredCount.set(0);
+        rejectedCount.set(0);
+        timeoutCount.set(0);
+        totalWait.set(0);
+        maxWait.set(0);
+    }
+
+    /**
+     * Whether the current thread holds the lock.
+     */
+    public boolean isHeldByCurrentThread() {
+        return lock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Acquires the lock, waiting for at most the current thread's timeout.
+     *
+     * @throws JniInchiRejectedException  The queue is full, or the wait
+     *                                    timed out
+     * @throws JniInchiException          Interrupted while waiting
+     */
+    public void lock() throws JniInchiException {
+        Long t = threadTimeout.get();
+        lock(t != null ? t : timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Acquires the lock, waiting for at most the given time.
+     *
+     * @throws JniInchiRejectedException  The queue is full, or the wait
+     *                                    timed out
+     * @throws JniInchiException          Interrupted while waiting
+     */
+    public void lock(long timeout, TimeUnit unit) throws JniInchiException {
+        try {
+            // Unlike tryLock(), a timed tryLock does not barge ahead of
+            // queued threads
+            if (lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+                acquiredCount.incrementAndGet();
+                return;
+            }
+            int n = queueLength.incrementAndGet();
+            try {
+                int max = maxQueueLength;
+                if (max >= 0 && n > max) {
+                    rejectedCount.incrementAndGet();
+                    throw new JniInchiRejectedException("Too many callers waiting for native library: " + max);
+                }
+                long start = System.nanoTime();
+                boolean acquired = lock.tryLock(timeout, unit);
+                recordWait(System.nanoTime() - start);
+                if (!acquired) {
+                    timeoutCount.incrementAndGet();
+                    throw new JniInchiRejectedException(new TimeoutException("Unable to get lock"));
+                }
+            } finally {
+                queueLength.decrementAndGet();
+            }
+            acquiredCount.incrementAndGet();
+        } catch (InterruptedException ex) {
+            throw new JniInchiException(ex);
+        }
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    private void recordWait(long nanos) {
+        totalWait.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWait.get()) && !maxWait.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+}
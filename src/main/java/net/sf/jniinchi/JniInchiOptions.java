@@ -0,0 +1,341 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * <p>An immutable, validated set of InChI options, for sharing across many
+ * inputs.  The options are checked, and their canonical string and the
+ * bytes passed to the native code built, once, when the set is created;
+ * inputs constructed with it, such as
+ * {@link JniInchiInput#JniInchiInput(JniInchiOptions)}, skip the per-input
+ * parsing done for options strings.</p>
+ *
+ * <p>Options are held in an EnumSet, so duplicates are dropped and the
+ * canonical string lists them in {@link INCHI_OPTION} order, followed by
+ * the time-out, if set.  For example:</p>
+ * <pre>
+ *  JniInchiOptions opts = JniInchiOptions.of(INCHI_OPTION.FixedH, INCHI_OPTION.RecMet)
+ *          .withTimeout(500, TimeUnit.MILLISECONDS);
+ *  for (...) {
+ *      JniInchiInput input = new JniInchiInput(opts);
+ *      ...
+ *  }
+ * </pre>
+ *
+ * @author Sam Adams
+ */
+public final class JniInchiOptions {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Value of {@link #getTimeoutMillis()} when no time-out is set.
+     */
+    public static final long NO_TIMEOUT = -1;
+
+    /**
+     * Longest time-out, in milliseconds: the library counts them in an
+     * unsigned long, only 32 bits on some platforms, and treats a time-out
+     * too long to count as unlimited.
+     */
+    public static final long MAX_TIMEOUT = 0xFFFFFFFFL;
+
+    /**
+     * No options.
+     */
+    public static final JniInchiOptions NONE = new JniInchiOptions(EnumSet.noneOf(INCHI_OPTION.class), NO_TIMEOUT);
+
+    /**
+     * Time-out option, in seconds, without its switch: W5, W0.25 and so on.
+     */
+    private static final Pattern TIMEOUT = Pattern.compile("[Ww](\\d+(\\.\\d*)?|\\.\\d+)");
+
+    private final Set<INCHI_OPTION> options;
+
+    /**
+     * Time-out in milliseconds, 0 for unlimited, or NO_TIMEOUT.
+     */
+    private final long timeout;
+
+    /**
+     * Canonical options string, as produced by JniInchiWrapper.checkOptions.
+     */
+    private final String string;
+
+    /**
+     * The canonical string as ASCII, read by the native code.
+     */
+    private final byte[] bytes;
+
+    private JniInchiOptions(EnumSet<INCHI_OPTION> options, long timeout) {
+        this.options = Collections.unmodifiableSet(options);
+        this.timeout = timeout;
+        StringBuilder sb = new StringBuilder();
+        for (INCHI_OPTION option : options) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(JniInchiWrapper.flagChar).append(option.name());
+        }
+        if (timeout != NO_TIMEOUT) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(JniInchiWrapper.flagChar).append(formatTimeout(timeout));
+        }
+        this.string = sb.toString();
+        this.bytes = string.getBytes(ASCII);
+    }
+
+    /**
+     * Creates a set of options.
+     * @param options
+     */
+    public static JniInchiOptions of(INCHI_OPTION... options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Null options");
+        }
+        EnumSet<INCHI_OPTION> set = EnumSet.noneOf(INCHI_OPTION.class);
+        for (INCHI_OPTION option : options) {
+            if (option == null) {
+                throw new IllegalArgumentException("Null option");
+            }
+            set.add(option);
+        }
+        return new JniInchiOptions(set, NO_TIMEOUT);
+    }
+
+    /**
+     * Creates a set of options.
+     * @param options
+     */
+    public static JniInchiOptions of(Collection<INCHI_OPTION> options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Null options");
+        }
+        return of(options.toArray(new INCHI_OPTION[options.size()]));
+    }
+
+    /**
+     * Parses an options string, in the form accepted by
+     * {@link JniInchiInput#JniInchiInput(String)}, including a time-out in
+     * seconds such as <tt>-W5</tt> or <tt>-W0.5</tt>.
+     * @param options  Space delimited options, each optionally preceded by a
+     *                 command line switch (/ or -)
+     * @throws JniInchiException  if an option is not recognised
+     */
+    public static JniInchiOptions parse(String options) throws JniInchiException {
+        if (options == null) {
+            throw new IllegalArgumentException("Null options");
+        }
+        EnumSet<INCHI_OPTION> set = EnumSet.noneOf(INCHI_OPTION.class);
+        long timeout = NO_TIMEOUT;
+        StringTokenizer tok = new StringTokenizer(options);
+        while (tok.hasMoreTokens()) {
+            String op = tok.nextToken();
+            if (op.startsWith("-") || op.startsWith("/")) {
+                op = op.substring(1);
+            }
+            INCHI_OPTION option = INCHI_OPTION.valueOfIgnoreCase(op);
+            if (option != null) {
+                set.add(option);
+            } else if ((timeout = parseTimeout(op)) == NO_TIMEOUT) {
+                throw new JniInchiException("Unrecognised InChI option");
+            }
+        }
+        return new JniInchiOptions(set, timeout);
+    }
+
+    /**
+     * Returns a set of these options plus those given.
+     * @param options
+     */
+    public JniInchiOptions with(INCHI_OPTION... options) {
+        JniInchiOptions added = of(options);
+        if (this.options.containsAll(added.options)) {
+            return this;
+        }
+        EnumSet<INCHI_OPTION> set = copyOptions();
+        set.addAll(added.options);
+        return new JniInchiOptions(set, timeout);
+    }
+
+    /**
+     * <p>Returns these options with a time-out per structure, the
+     * <tt>-W</tt> option.  A calculation that runs out of time returns
+     * {@link INCHI_RET#TIMEOUT}.  The library counts time in milliseconds;
+     * shorter non-zero time-outs are rounded up to one millisecond.  A
+     * time-out of 0 means unlimited, the library's default.</p>
+     *
+     * <p>Time-outs that are not whole seconds are rejected unless the
+     * native library reports that it honours them.</p>
+     *
+     * @param timeout  Time-out, 0 or more
+     * @param unit     Unit of the time-out
+     * @throws IllegalArgumentException  if the time-out is negative or
+     *          longer than {@link #MAX_TIMEOUT} milliseconds, or sub-second
+     *          and not supported by the native library
+     */
+    public JniInchiOptions withTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative time-out");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("Null time unit");
+        }
+        long millis = unit.toMillis(timeout);
+        if (millis == 0 && timeout > 0) {
+            millis = 1;
+        }
+        if (millis > MAX_TIMEOUT) {
+            throw new IllegalArgumentException("Time-out too long: " + millis + "ms");
+        }
+        if (!isSupported(millis)) {
+            throw new IllegalArgumentException("Sub-second time-outs not supported by native library");
+        }
+        if (millis == this.timeout) {
+            return this;
+        }
+        return new JniInchiOptions(copyOptions(), millis);
+    }
+
+    /**
+     * Returns these options without a time-out.
+     */
+    public JniInchiOptions withoutTimeout() {
+        return timeout == NO_TIMEOUT ? this : new JniInchiOptions(copyOptions(), NO_TIMEOUT);
+    }
+
+    /**
+     * Returns the time-out per structure in milliseconds, 0 for unlimited,
+     * or {@link #NO_TIMEOUT} if none is set.
+     */
+    public long getTimeoutMillis() {
+        return timeout;
+    }
+
+    /**
+     * Returns whether an option is set.
+     * @param option
+     */
+    public boolean contains(INCHI_OPTION option) {
+        return options.contains(option);
+    }
+
+    /**
+     * Returns the options, as an unmodifiable set.
+     */
+    public Set<INCHI_OPTION> getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns the canonical options string, without a trailing space.
+     */
+    @Override
+    public String toString() {
+        return string;
+    }
+
+    /**
+     * Returns the canonical options string as ASCII.  Not copied, so must
+     * not be modified.
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    private EnumSet<INCHI_OPTION> copyOptions() {
+        EnumSet<INCHI_OPTION> set = EnumSet.noneOf(INCHI_OPTION.class);
+        set.addAll(options);
+        return set;
+    }
+
+    /**
+     * Parses a time-out option, without its switch, in seconds as read by
+     * the library: fractions are allowed, and are truncated to whole
+     * milliseconds.
+     * @return  Time-out in milliseconds, or NO_TIMEOUT if op is not a
+     *          time-out option
+     * @throws JniInchiException  if the time-out is out of range, or
+     *          sub-second and not supported by the native library
+     */
+    static long parseTimeout(String op) throws JniInchiException {
+        if (!TIMEOUT.matcher(op).matches()) {
+            return NO_TIMEOUT;
+        }
+        long millis;
+        try {
+            millis = new BigDecimal(op.substring(1)).movePointRight(3).setScale(0, RoundingMode.DOWN).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new JniInchiException("Time-out out of range: " + op);
+        }
+        if (millis > MAX_TIMEOUT) {
+            throw new JniInchiException("Time-out out of range: " + op);
+        }
+        if (!isSupported(millis)) {
+            throw new JniInchiException("Sub-second time-outs not supported by native library: " + op);
+        }
+        return millis;
+    }
+
+    /**
+     * Returns whether the native library can honour a time-out: libraries
+     * that predate FEATURE_MILLISECOND_TIMEOUT are only given whole seconds.
+     */
+    private static boolean isSupported(long millis) {
+        return millis % 1000 == 0 || JniInchiWrapper.isMillisecondTimeoutSupported();
+    }
+
+    /**
+     * Formats a time-out in milliseconds as an option, without its switch.
+     */
+    static String formatTimeout(long millis) {
+        return "W" + BigDecimal.valueOf(millis, 3).stripTrailingZeros().toPlainString();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * options.hashCode() + (int) (timeout ^ (timeout >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof JniInchiOptions)) {
+            return false;
+        }
+        JniInchiOptions other = (JniInchiOptions) obj;
+        return timeout == other.timeout && options.equals(other.options);
+    }
+
+}
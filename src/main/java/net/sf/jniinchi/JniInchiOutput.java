@@ -18,12 +18,49 @@
  */
 package net.sf.jniinchi;
 
+import java.nio.charset.Charset;
+
 /**
  * Encapsulates output from InChI generation.
  * @author Sam Adams
  */
 public class JniInchiOutput {
 
+    /**
+     * Output field flag for the InChI string.
+     * @see JniInchiInput#setOutputFields(int)
+     */
+    public static final int FIELD_INCHI = 1;
+
+    /**
+     * Output field flag for the AuxInfo string.
+     * @see JniInchiInput#setOutputFields(int)
+     */
+    public static final int FIELD_AUX_INFO = 2;
+
+    /**
+     * Output field flag for the error/warning message.
+     * @see JniInchiInput#setOutputFields(int)
+     */
+    public static final int FIELD_MESSAGE = 4;
+
+    /**
+     * Output field flag for the log.
+     * @see JniInchiInput#setOutputFields(int)
+     */
+    public static final int FIELD_LOG = 8;
+
+    /**
+     * All output fields.
+     */
+    public static final int ALL_FIELDS = FIELD_INCHI | FIELD_AUX_INFO | FIELD_MESSAGE | FIELD_LOG;
+
+    /**
+     * The library's output strings are ASCII, which ISO-8859-1 decodes
+     * with a plain copy.
+     */
+    private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
     /**
      * InChI return status
      */
@@ -50,9 +87,20 @@ public class JniInchiOutput {
      */
     private String sLog;
 
+    /**
+     * Undecoded fields, as copied from native memory; each is decoded when
+     * its getter is first called.
+     */
+    private byte[] bInchi, bAuxInfo, bMessage, bLog;
+
     
+    /**
+     * Constructor.  An error whose message reports that the time limit was
+     * exceeded is returned as {@link INCHI_RET#TIMEOUT}, so that native
+     * libraries predating that status report it too.
+     */
     public JniInchiOutput(int ret, String inchi, String auxInfo, String message, String log) {
-    	this(INCHI_RET.getValue(ret), inchi, auxInfo, message, log);
+    	this(INCHI_RET.getValue(ret, message), inchi, auxInfo, message, log);
     }
     
     public JniInchiOutput(INCHI_RET ret, String inchi, String auxInfo, String message, String log) {
@@ -63,6 +111,23 @@ public class JniInchiOutput {
     	this.sLog = log;
     }
 
+    /**
+     * Constructor used by the native code when output fields have been
+     * selected with {@link JniInchiInput#setOutputFields(int)}.  Fields
+     * not selected are null.
+     */
+    JniInchiOutput(int ret, byte[] inchi, byte[] auxInfo, byte[] message, byte[] log) {
+        this.retStatus = INCHI_RET.getValue(ret);
+        this.bInchi = inchi;
+        this.bAuxInfo = auxInfo;
+        this.bMessage = message;
+        this.bLog = log;
+    }
+
+    private static String decode(byte[] bytes) {
+        return new String(bytes, ASCII);
+    }
+
     /**
      * Gets return status from InChI process.  OKAY and WARNING indicate
      * InChI has been generated, in all other cases InChI generation
@@ -76,6 +141,9 @@ public class JniInchiOutput {
      * Gets generated InChI string.
      */
     public String getInchi() {
+        if (sInchi == null && bInchi != null) {
+            sInchi = decode(bInchi);
+        }
         return sInchi;
     }
 
@@ -83,6 +151,9 @@ public class JniInchiOutput {
      * Gets generated InChI string.
      */
     public String getAuxInfo() {
+        if (sAuxInfo == null && bAuxInfo != null) {
+            sAuxInfo = decode(bAuxInfo);
+        }
         return sAuxInfo;
     }
 
@@ -90,6 +161,9 @@ public class JniInchiOutput {
      * Gets generated (error/warning) messages.
      */
     public String getMessage() {
+        if (sMessage == null && bMessage != null) {
+            sMessage = decode(bMessage);
+        }
         return sMessage;
     }
 
@@ -97,15 +171,20 @@ public class JniInchiOutput {
      * Gets generated log.
      */
     public String getLog() {
+        if (sLog == null && bLog != null) {
+            sLog = decode(bLog);
+        }
         return sLog;
     }
 
     protected void setLog(final String log) {
         this.sLog = log;
+        this.bLog = null;
     }
 
     protected void setMessage(final String message) {
         this.sMessage = message;
+        this.bMessage = null;
     }
 
     protected void setRetStatus(final INCHI_RET retStatus) {
@@ -114,15 +193,17 @@ public class JniInchiOutput {
 
     protected void setInchi(final String inchi) {
         this.sInchi = inchi;
+        this.bInchi = null;
     }
 
     protected void setAuxInfo(final String auxInfo) {
         this.sAuxInfo = auxInfo;
+        this.bAuxInfo = null;
     }
 
     
     @Override
     public String toString() {
-    	return "InChI_Output: " + retStatus + "/" + sInchi + "/" + sAuxInfo + "/" + sMessage + "/" + sLog;
+    	return "InChI_Output: " + retStatus + "/" + getInchi() + "/" + getAuxInfo() + "/" + getMessage() + "/" + getLog();
     }
 }
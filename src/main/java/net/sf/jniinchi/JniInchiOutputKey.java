@@ -24,11 +24,27 @@ public class JniInchiOutputKey {
 
 	private final String key;
 
+	private final String xtra1;
+
+	private final String xtra2;
+
 	public JniInchiOutputKey(final int ret, final String key) throws JniInchiException {
 		this(INCHI_KEY.getValue(ret), key);
 	}
 
+	/**
+	 * Constructor used by the native code when hash extensions were
+	 * requested.
+	 */
+	JniInchiOutputKey(final int ret, final String key, final String xtra1, final String xtra2) throws JniInchiException {
+		this(INCHI_KEY.getValue(ret), key, xtra1, xtra2);
+	}
+
 	public JniInchiOutputKey(final INCHI_KEY retStatus, final String key) throws JniInchiException {
+		this(retStatus, key, null, null);
+	}
+
+	public JniInchiOutputKey(final INCHI_KEY retStatus, final String key, final String xtra1, final String xtra2) throws JniInchiException {
 		if (retStatus == null) {
 			throw new NullPointerException("Null return status");
 		}
@@ -41,6 +57,8 @@ public class JniInchiOutputKey {
 		}
 		this.retStatus = retStatus;
 		this.key = key;
+		this.xtra1 = xtra1;
+		this.xtra2 = xtra2;
 
 	}
 
@@ -52,4 +70,20 @@ public class JniInchiOutputKey {
 		return retStatus;
 	}
 
+	/**
+	 * Returns the major block hash extension, in hexadecimal, or null if it
+	 * was not requested.
+	 */
+	public String getXtra1() {
+		return xtra1;
+	}
+
+	/**
+	 * Returns the minor block hash extension, in hexadecimal, or null if it
+	 * was not requested.
+	 */
+	public String getXtra2() {
+		return xtra2;
+	}
+
 }
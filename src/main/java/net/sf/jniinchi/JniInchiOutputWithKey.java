@@ -0,0 +1,68 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+/**
+ * Output from Standard InChI generation, together with the InChIKey of the
+ * InChI generated.
+ *
+ * @author Sam Adams
+ * @see JniInchiWrapper#getStdInchiWithKey(JniInchiInput)
+ */
+public class JniInchiOutputWithKey extends JniInchiOutput {
+
+    /**
+     * InChIKey output, or null if no InChI was generated
+     */
+    private final JniInchiOutputKey keyOutput;
+
+    public JniInchiOutputWithKey(JniInchiOutput output, JniInchiOutputKey keyOutput) {
+        super(output.getReturnStatus(), output.getInchi(), output.getAuxInfo(), output.getMessage(), output.getLog());
+        this.keyOutput = keyOutput;
+    }
+
+    /**
+     * Called from native code.
+     *
+     * @param keyRet  InChIKey return status, or -1 if no key was calculated
+     */
+    JniInchiOutputWithKey(int ret, String inchi, String auxInfo, String message, String log, int keyRet, String key) throws JniInchiException {
+        super(ret, inchi, auxInfo, message, log);
+        this.keyOutput = keyRet < 0 ? null : new JniInchiOutputKey(keyRet, key);
+    }
+
+    /**
+     * Gets the InChIKey output, or null if no InChI was generated.
+     */
+    public JniInchiOutputKey getKeyOutput() {
+        return keyOutput;
+    }
+
+    /**
+     * Gets the InChIKey, or null if no InChI or key was generated.
+     */
+    public String getKey() {
+        return keyOutput == null ? null : keyOutput.getKey();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "/" + getKey();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+/**
+ * <p>A structure flattened into primitive arrays, for transfer to the native
+ * code.
+ *
+ * <p>Reading a structure out of the JniInchiAtom/Bond/Stereo0D objects
+ * requires around a dozen JNI upcalls per atom.  Packing it in Java first
+ * means the native code only has to fetch a handful of arrays, however large
+ * the structure.  Layout, mirroring <tt>inchi_Atom</tt> and
+ * <tt>inchi_Stereo0D</tt> in <tt>inchi_api.h</tt>:
+ *
+ * <pre>
+ *  coords    x, y, z                                           per atom
+ *  atoms     charge, radical, implicit H, 1H, 2H, 3H, isotopic mass
+ *                                                              per atom
+ *  elements  element symbol, zero padded to ATOM_EL_LEN bytes  per atom
+ *  bonds     origin atom, target atom, type, stereo            per bond
+ *  stereo0D  central atom, neighbor 0-3, type, parity          per stereo
+ * </pre>
+ *
+ * <p>Atoms are referred to by index; a missing central atom is
+ * {@link JniInchiStereo0D#NO_ATOM}.  Arrays may be longer than needed, only
+ * the first numAtoms/numBonds/numStereo0D entries are read.
+ *
+ * @author Sam Adams
+ */
+final class JniInchiPackedStructure {
+
+    /**
+     * Length of element symbol field, including terminating zero.  Value
+     * from inchi_api.h.
+     */
+    static final int ATOM_EL_LEN = 6;
+
+    static final int COORDS_PER_ATOM = 3;
+    static final int INTS_PER_ATOM = 7;
+    static final int INTS_PER_BOND = 4;
+    static final int INTS_PER_STEREO = 7;
+
+    // Fields are read directly by the native code
+
+    final String options;
+
+    /**
+     * Options as ASCII, if available from a JniInchiOptions, or null
+     */
+    final byte[] optionBytes;
+
+    /**
+     * Output fields, see JniInchiInput.setOutputFields, or
+     * JniInchiInput.NO_FIELD_MASK
+     */
+    final int outputFields;
+
+    final int numAtoms;
+    final int numBonds;
+    final int numStereo0D;
+
+    final double[] coords;
+    final int[] atoms;
+    final byte[] elements;
+    final int[] bonds;
+    final int[] stereo0D;
+
+    JniInchiPackedStructure(String options, byte[] optionBytes, int numAtoms, int numBonds, int numStereo0D,
+            double[] coords, int[] atoms, byte[] elements, int[] bonds, int[] stereo0D) {
+        this.options = options;
+        this.optionBytes = optionBytes;
+        this.outputFields = JniInchiInput.NO_FIELD_MASK;
+        this.numAtoms = numAtoms;
+        this.numBonds = numBonds;
+        this.numStereo0D = numStereo0D;
+        this.coords = coords;
+        this.atoms = atoms;
+        this.elements = elements;
+        this.bonds = bonds;
+        this.stereo0D = stereo0D;
+    }
+
+    /**
+     * Packs an input structure.
+     * @param input
+     */
+    JniInchiPackedStructure(JniInchiInput input) {
+        this(input, input.getOptions(), input.getOptionBytes(), input.outputFields);
+    }
+
+    /**
+     * Packs a structure.
+     * @param struct
+     * @param options  Options string, as produced by JniInchiWrapper.checkOptions
+     */
+    JniInchiPackedStructure(JniInchiStructure struct, String options) {
+        this(struct, options, null, JniInchiInput.NO_FIELD_MASK);
+    }
+
+    private JniInchiPackedStructure(JniInchiStructure struct, String options, byte[] optionBytes, int outputFields) {
+        this.options = options;
+        this.optionBytes = optionBytes;
+        this.outputFields = outputFields;
+        this.numAtoms = struct.getNumAtoms();
+        this.numBonds = struct.getNumBonds();
+        this.numStereo0D = struct.getNumStereo0D();
+
+        coords = new double[numAtoms * COORDS_PER_ATOM];
+        atoms = new int[numAtoms * INTS_PER_ATOM];
+        elements = new byte[numAtoms * ATOM_EL_LEN];
+        for (int i = 0; i < numAtoms; i++) {
+            JniInchiAtom atom = struct.getAtom(i);
+            int c = i * COORDS_PER_ATOM;
+            coords[c] = atom.getX();
+            coords[c + 1] = atom.getY();
+            coords[c + 2] = atom.getZ();
+            int a = i * INTS_PER_ATOM;
+            atoms[a] = atom.getCharge();
+            atoms[a + 1] = atom.getInchiRadical();
+            atoms[a + 2] = atom.getImplicitH();
+            atoms[a + 3] = atom.getImplicitProtium();
+            atoms[a + 4] = atom.getImplicitDeuterium();
+            atoms[a + 5] = atom.getImplicitTritium();
+            atoms[a + 6] = atom.getIsotopicMass();
+            packElement(atom.getElementType(), elements, i * ATOM_EL_LEN);
+        }
+
+        bonds = new int[numBonds * INTS_PER_BOND];
+        for (int i = 0; i < numBonds; i++) {
+            JniInchiBond bond = struct.getBond(i);
+            int b = i * INTS_PER_BOND;
+            bonds[b] = bondAtomIndex(struct, bond.getOriginAtom());
+            bonds[b + 1] = bondAtomIndex(struct, bond.getTargetAtom());
+            bonds[b + 2] = bond.getInchiBondType();
+            bonds[b + 3] = bond.getInchiBondStereo();
+        }
+
+        stereo0D = new int[numStereo0D * INTS_PER_STEREO];
+        for (int i = 0; i < numStereo0D; i++) {
+            JniInchiStereo0D stereo = struct.getStereo0D(i);
+            int s = i * INTS_PER_STEREO;
+            stereo0D[s] = stereoAtomIndex(struct, stereo.getCentralAtom());
+            for (int j = 0; j < 4; j++) {
+                stereo0D[s + 1 + j] = stereoAtomIndex(struct, stereo.getNeighbor(j));
+            }
+            stereo0D[s + 5] = stereo.getInchiStereoType();
+            stereo0D[s + 6] = stereo.getInchiParity();
+        }
+    }
+
+    /**
+     * Writes an element symbol as zero-terminated ASCII.
+     */
+    static void packElement(String el, byte[] dest, int offset) {
+        int len = el.length();
+        if (len >= ATOM_EL_LEN) {
+            throw new IllegalArgumentException("Element name too long; maximum: " + (ATOM_EL_LEN - 1));
+        }
+        for (int i = 0; i < len; i++) {
+            dest[offset + i] = (byte) el.charAt(i);
+        }
+        for (int i = len; i < ATOM_EL_LEN; i++) {
+            dest[offset + i] = 0;
+        }
+    }
+
+    private static int bondAtomIndex(JniInchiStructure struct, JniInchiAtom atom) {
+        int i = struct.getAtomIndex(atom);
+        if (i < 0) {
+            throw new IllegalArgumentException("Bond to atom not in structure");
+        }
+        return i;
+    }
+
+    private static int stereoAtomIndex(JniInchiStructure struct, JniInchiAtom atom) {
+        // Missing atoms map to NO_ATOM (-1), as getAtomIndex always has
+        return atom == null ? JniInchiStereo0D.NO_ATOM : struct.getAtomIndex(atom);
+    }
+
+}
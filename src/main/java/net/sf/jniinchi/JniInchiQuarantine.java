@@ -0,0 +1,347 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Requests that have crashed or hung a worker of a
+ * {@link JniInchiWorkerPool}.  Once a request is quarantined the pool
+ * rejects it, with a {@link JniInchiRejectedException}, rather than let it
+ * take down another worker.
+ *
+ * <p>A quarantine may be kept in memory only, or backed by a log file.
+ * Each entry is appended to the log as soon as it is added, in the encoding
+ * the pool sends to its workers, and the entries of an existing log are read
+ * back when the quarantine is opened, so poison inputs stay quarantined
+ * across restarts.  The logged requests can be replayed with
+ * {@link Entry#replay()}, for example in a separate process under a
+ * debugger:</p>
+ * <pre>
+ *  JniInchiQuarantine quarantine = new JniInchiQuarantine(new File("inchi-quarantine.log"));
+ *  for (JniInchiQuarantine.Entry entry : quarantine.getEntries()) {
+ *      System.err.println(entry);
+ *      entry.replay();
+ *  }
+ * </pre>
+ *
+ * @author Sam Adams
+ */
+public class JniInchiQuarantine {
+
+    private final File file;
+
+    private final Map<ByteBuffer, Entry> entries = new HashMap<ByteBuffer, Entry>();
+
+    private final List<Entry> entryList = new ArrayList<Entry>();
+
+    private DataOutputStream log;
+
+    /**
+     * Creates a quarantine held in memory.
+     */
+    public JniInchiQuarantine() {
+        this.file = null;
+    }
+
+    /**
+     * Opens a quarantine backed by a log file, reading the entries already
+     * logged, if the file exists.
+     *
+     * @param file  Log file
+     * @throws JniInchiException  if the log cannot be read or opened
+     */
+    public JniInchiQuarantine(File file) throws JniInchiException {
+        if (file == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        this.file = file;
+        try {
+            long end = file.exists() ? read(file) : 0;
+            FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                // Drop any record cut short, so new entries follow the last complete one
+                if (out.getChannel().size() > end) {
+                    out.getChannel().truncate(end);
+                }
+            } catch (IOException ex) {
+                out.close();
+                throw ex;
+            }
+            log = new DataOutputStream(new BufferedOutputStream(out));
+        } catch (IOException ex) {
+            throw new JniInchiException("Unable to open quarantine log " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Reads the complete entries of a log; a record cut short, by a crash
+     * while it was written, is ignored.
+     * @return  Length of the complete records
+     * @throws IOException  if the log cannot be read, or is corrupt
+     */
+    private long read(File file) throws IOException {
+        long length = file.length();
+        long end = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                long pos = end + 12;
+                if (pos > length) {
+                    break;
+                }
+                long time = in.readLong();
+                int n = in.readInt();
+                if (n < -1) {
+                    throw new IOException("Corrupt record at offset " + end);
+                }
+                String reason = null;
+                if (n >= 0) {
+                    if (pos + n > length) {
+                        break;
+                    }
+                    byte[] bytes = new byte[n];
+                    in.readFully(bytes);
+                    reason = new String(bytes, "UTF-8");
+                    pos += n;
+                }
+                if (pos + 4 > length) {
+                    break;
+                }
+                n = in.readInt();
+                pos += 4;
+                if (n < 0) {
+                    throw new IOException("Corrupt record at offset " + end);
+                }
+                if (pos + n > length) {
+                    break;
+                }
+                byte[] request = new byte[n];
+                in.readFully(request);
+                put(new Entry(time, reason, request));
+                end = pos + n;
+            }
+        } finally {
+            in.close();
+        }
+        return end;
+    }
+
+    /**
+     * Returns the log file, or null if held in memory.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of quarantined requests.
+     */
+    public synchronized int size() {
+        return entryList.size();
+    }
+
+    /**
+     * Returns the quarantined requests, in the order they were added.
+     */
+    public synchronized List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<Entry>(entryList));
+    }
+
+    /**
+     * Returns the entry for an encoded request, or null if it is not
+     * quarantined.
+     */
+    synchronized Entry get(byte[] request) {
+        return entries.get(ByteBuffer.wrap(request));
+    }
+
+    /**
+     * Quarantines an encoded request, writing it to the log.
+     */
+    synchronized void add(byte[] request, String reason) {
+        Entry entry = new Entry(System.currentTimeMillis(), reason, request);
+        if (!put(entry) || log == null) {
+            return;
+        }
+        try {
+            log.writeLong(entry.time);
+            JniInchiWorkerProtocol.writeString(log, reason);
+            log.writeInt(request.length);
+            log.write(request);
+            log.flush();
+        } catch (IOException ex) {
+            System.err.println("Unable to write quarantine log " + file + ": " + ex.getMessage());
+        }
+    }
+
+    private boolean put(Entry entry) {
+        if (entries.containsKey(ByteBuffer.wrap(entry.request))) {
+            return false;
+        }
+        entries.put(ByteBuffer.wrap(entry.request), entry);
+        entryList.add(entry);
+        return true;
+    }
+
+    /**
+     * Closes the log file.  Entries added later are kept in memory only.
+     */
+    public synchronized void close() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            log = null;
+        }
+    }
+
+
+    /**
+     * A quarantined request.
+     */
+    public static final class Entry {
+
+        private final long time;
+
+        private final String reason;
+
+        /**
+         * Encoded request, opcode followed by arguments.
+         */
+        private final byte[] request;
+
+        Entry(long time, String reason, byte[] request) {
+            this.time = time;
+            this.reason = reason;
+            this.request = request;
+        }
+
+        /**
+         * Returns when the request was quarantined, in milliseconds since
+         * the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns why the request was quarantined: how the worker failed.
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Returns the name of the {@link JniInchiWrapper} method requested,
+         * such as <tt>getStdInchi</tt>.
+         */
+        public String getMethod() {
+            return JniInchiWorkerProtocol.getName(ByteBuffer.wrap(request).getInt());
+        }
+
+        /**
+         * Returns the argument of the request: a {@link JniInchiInput} for
+         * <tt>getInchi</tt> and <tt>getStdInchi</tt>, a
+         * {@link JniInchiInputInchi} for <tt>getInchiFromInchi</tt> and
+         * <tt>getStructureFromInchi</tt>, otherwise the InChI, InChIKey or
+         * AuxInfo string.
+         */
+        public Object getInput() throws JniInchiException {
+            try {
+                DataInputStream in = open();
+                switch (in.readInt()) {
+                    case JniInchiWorkerProtocol.GET_INCHI:
+                    case JniInchiWorkerProtocol.GET_STD_INCHI:
+                        return JniInchiWorkerProtocol.readInput(in);
+                    case JniInchiWorkerProtocol.GET_INCHI_FROM_INCHI:
+                    case JniInchiWorkerProtocol.GET_STRUCTURE_FROM_INCHI:
+                        return JniInchiWorkerProtocol.readInputInchi(in);
+                    default:
+                        return JniInchiWorkerProtocol.readString(in);
+                }
+            } catch (IOException ex) {
+                throw new JniInchiException("Corrupt quarantine entry: " + ex.getMessage());
+            }
+        }
+
+        /**
+         * Runs the request again through the static {@link JniInchiWrapper}
+         * methods, in this JVM unless an engine is set.  The request may
+         * crash the JVM.
+         *
+         * @return  Result of the request
+         */
+        public Object replay() throws JniInchiException {
+            try {
+                DataInputStream in = open();
+                switch (in.readInt()) {
+                    case JniInchiWorkerProtocol.GET_INCHI:
+                        return JniInchiWrapper.getInchi(JniInchiWorkerProtocol.readInput(in));
+                    case JniInchiWorkerProtocol.GET_STD_INCHI:
+                        return JniInchiWrapper.getStdInchi(JniInchiWorkerProtocol.readInput(in));
+                    case JniInchiWorkerProtocol.GET_INCHI_FROM_INCHI:
+                        return JniInchiWrapper.getInchiFromInchi(JniInchiWorkerProtocol.readInputInchi(in));
+                    case JniInchiWorkerProtocol.GET_STRUCTURE_FROM_INCHI:
+                        return JniInchiWrapper.getStructureFromInchi(JniInchiWorkerProtocol.readInputInchi(in));
+                    case JniInchiWorkerProtocol.GET_INCHI_KEY:
+                        return JniInchiWrapper.getInchiKey(JniInchiWorkerProtocol.readString(in));
+                    case JniInchiWorkerProtocol.CHECK_INCHI_KEY:
+                        return JniInchiWrapper.checkInchiKey(JniInchiWorkerProtocol.readString(in));
+                    case JniInchiWorkerProtocol.CHECK_INCHI: {
+                        String inchi = JniInchiWorkerProtocol.readString(in);
+                        return JniInchiWrapper.checkInchi(inchi, in.readBoolean());
+                    }
+                    case JniInchiWorkerProtocol.GET_INPUT_FROM_AUX_INFO:
+                        return JniInchiWrapper.getInputFromAuxInfo(JniInchiWorkerProtocol.readString(in));
+                    default:
+                        throw new JniInchiException("Unknown request: " + getMethod());
+                }
+            } catch (IOException ex) {
+                throw new JniInchiException("Corrupt quarantine entry: " + ex.getMessage());
+            }
+        }
+
+        private DataInputStream open() {
+            return new DataInputStream(new ByteArrayInputStream(request));
+        }
+
+        @Override
+        public String toString() {
+            return getMethod() + ": " + reason;
+        }
+    }
+
+}
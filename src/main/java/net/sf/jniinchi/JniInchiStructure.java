@@ -19,7 +19,9 @@
 package net.sf.jniinchi;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -42,6 +44,12 @@ public class JniInchiStructure {
      */
     private List stereoList = new ArrayList();
 
+    /**
+     * Index of each atom in atomList, keyed on identity, so that
+     * marshalling bonds and stereo parities is linear in structure size.
+     */
+    private Map<JniInchiAtom, Integer> atomIndex = new IdentityHashMap<JniInchiAtom, Integer>();
+
 
     /**
      * Returns number of atoms in structure.
@@ -73,6 +81,9 @@ public class JniInchiStructure {
      */
     @SuppressWarnings("unchecked")
 	public JniInchiAtom addAtom(JniInchiAtom atom) {
+        if (!atomIndex.containsKey(atom)) {
+            atomIndex.put(atom, Integer.valueOf(atomList.size()));
+        }
         atomList.add(atom);
         return atom;
     }
@@ -154,10 +165,12 @@ public class JniInchiStructure {
         this.atomList = structure.atomList;
         this.bondList = structure.bondList;
         this.stereoList = structure.stereoList;
+        this.atomIndex = structure.atomIndex;
     }
     
     int getAtomIndex(JniInchiAtom atom) {
-    	return atomList.indexOf(atom);
+        Integer index = atomIndex.get(atom);
+        return index == null ? -1 : index.intValue();
     }
     
     int getStereo0DIndex(JniInchiStereo0D stereo) {
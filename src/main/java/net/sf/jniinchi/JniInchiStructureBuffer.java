@@ -0,0 +1,364 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * <p>Binary encoding of a structure, laid out exactly as the
+ * <tt>inchi_Atom</tt> and <tt>inchi_Stereo0D</tt> arrays of
+ * <tt>inchi_api.h</tt>, so that a direct buffer can be handed to the InChI
+ * library in place by {@link JniInchiWrapper#getInchi(ByteBuffer, String)}.
+ * Structures held in this form, for instance in a memory-mapped file, can be
+ * processed without creating any per-atom Java objects.
+ *
+ * <p>All values are in native byte order ({@link ByteOrder#nativeOrder()}),
+ * whatever the order set on the buffer.  Layout:
+ *
+ * <pre>
+ *  offset  size
+ *       0     4  int     number of atoms, at most 1024
+ *       4     4  int     number of 0D stereo parities
+ *       8  120n  inchi_Atom[number of atoms]
+ *          12m   inchi_Stereo0D[number of parities]
+ *
+ *  inchi_Atom
+ *       0     8  double  x
+ *       8     8  double  y
+ *      16     8  double  z
+ *      24    40  short   neighbor[20]       atom indices
+ *      64    20  byte    bond_type[20]      INCHI_BOND_TYPE
+ *      84    20  byte    bond_stereo[20]    INCHI_BOND_STEREO
+ *     104     6  char    elname[6]          zero terminated
+ *     110     2  short   num_bonds          entries used in the lists above
+ *     112     4  byte    num_iso_H[4]       implicit H, 1H, 2H, 3H
+ *     116     2  short   isotopic_mass
+ *     118     1  byte    radical            INCHI_RADICAL
+ *     119     1  byte    charge
+ *
+ *  inchi_Stereo0D
+ *       0     8  short   neighbor[4]        atom indices
+ *       8     2  short   central_atom       or -1
+ *      10     1  byte    type               INCHI_STEREOTYPE
+ *      11     1  byte    parity             INCHI_PARITY
+ * </pre>
+ *
+ * <p>Each bond need only be listed in the adjacency list of one of its
+ * atoms; the encoder lists it on its origin atom.  Atom records start 8
+ * bytes into the structure, and are read in place only if that leaves them
+ * 8-byte aligned, otherwise they are copied first.
+ *
+ * @author Sam Adams
+ */
+public final class JniInchiStructureBuffer {
+
+    /**
+     * Maximum number of atoms in a structure.  Value from inchi_api.h.
+     */
+    public static final int MAX_ATOMS = 1024;
+
+    /**
+     * Maximum number of bonds from an atom.  Value from inchi_api.h.
+     */
+    public static final int MAXVAL = 20;
+
+    public static final int HEADER_SIZE = 8;
+    public static final int ATOM_SIZE = 120;
+    public static final int STEREO0D_SIZE = 12;
+
+    public static final int HEADER_NUM_ATOMS = 0;
+    public static final int HEADER_NUM_STEREO0D = 4;
+
+    public static final int ATOM_X = 0;
+    public static final int ATOM_Y = 8;
+    public static final int ATOM_Z = 16;
+    public static final int ATOM_NEIGHBOR = 24;
+    public static final int ATOM_BOND_TYPE = 64;
+    public static final int ATOM_BOND_STEREO = 84;
+    public static final int ATOM_ELNAME = 104;
+    public static final int ATOM_NUM_BONDS = 110;
+    public static final int ATOM_NUM_ISO_H = 112;
+    public static final int ATOM_ISOTOPIC_MASS = 116;
+    public static final int ATOM_RADICAL = 118;
+    public static final int ATOM_CHARGE = 119;
+
+    public static final int STEREO0D_NEIGHBOR = 0;
+    public static final int STEREO0D_CENTRAL_ATOM = 8;
+    public static final int STEREO0D_TYPE = 10;
+    public static final int STEREO0D_PARITY = 11;
+
+    private JniInchiStructureBuffer() {
+    }
+
+    /**
+     * Returns the number of bytes needed to encode a structure.
+     * @param numAtoms
+     * @param numStereo0D
+     * @return
+     */
+    public static int getEncodedSize(int numAtoms, int numStereo0D) {
+        return HEADER_SIZE + numAtoms * ATOM_SIZE + numStereo0D * STEREO0D_SIZE;
+    }
+
+    /**
+     * Returns the number of bytes needed to encode a structure.
+     * @param structure
+     * @return
+     */
+    public static int getEncodedSize(JniInchiStructure structure) {
+        return getEncodedSize(structure.getNumAtoms(), structure.getNumStereo0D());
+    }
+
+    /**
+     * Returns the size of the structure encoded at the buffer's position,
+     * checking its header.
+     *
+     * @param buffer
+     * @return
+     * @throws IllegalArgumentException - if the header is invalid, or the
+     *         structure extends past the buffer's limit.
+     */
+    public static int getEncodedSize(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("Structure buffer too short");
+        }
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int numAtoms = b.getInt(buffer.position() + HEADER_NUM_ATOMS);
+        int numStereo0D = b.getInt(buffer.position() + HEADER_NUM_STEREO0D);
+        if (numAtoms < 0 || numStereo0D < 0) {
+            throw new IllegalArgumentException("Negative atom or stereo parity count");
+        }
+        if (numAtoms > MAX_ATOMS) {
+            throw new IllegalArgumentException("Too many atoms");
+        }
+        if ((long) HEADER_SIZE + (long) numAtoms * ATOM_SIZE + (long) numStereo0D * STEREO0D_SIZE > buffer.remaining()) {
+            throw new IllegalArgumentException("Structure buffer too short");
+        }
+        return getEncodedSize(numAtoms, numStereo0D);
+    }
+
+    /**
+     * Encodes a structure into a new direct buffer, in native byte order.
+     * @param structure
+     * @return  Buffer positioned at the start of the structure
+     */
+    public static ByteBuffer encode(JniInchiStructure structure) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(getEncodedSize(structure)).order(ByteOrder.nativeOrder());
+        encode(structure, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encodes a structure at the buffer's position, and advances the position
+     * past it.
+     *
+     * @param structure
+     * @param buffer
+     * @throws BufferOverflowException - if the structure does not fit in the
+     *         buffer's remaining space.
+     * @throws IllegalArgumentException - if the structure cannot be
+     *         represented, for instance an atom has too many bonds.
+     */
+    public static void encode(JniInchiStructure structure, ByteBuffer buffer) {
+        JniInchiPackedStructure packed = new JniInchiPackedStructure(structure, "");
+        int size = getEncodedSize(packed.numAtoms, packed.numStereo0D);
+        if (buffer.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int start = buffer.position();
+        b.putInt(start + HEADER_NUM_ATOMS, packed.numAtoms);
+        b.putInt(start + HEADER_NUM_STEREO0D, packed.numStereo0D);
+
+        int[] numBonds = new int[packed.numAtoms];
+        for (int i = 0; i < packed.numBonds; i++) {
+            int origin = packed.bonds[i * JniInchiPackedStructure.INTS_PER_BOND];
+            if (++numBonds[origin] > MAXVAL) {
+                throw new IllegalArgumentException("Too many bonds from one atom; maximum: " + MAXVAL);
+            }
+        }
+
+        for (int i = 0; i < packed.numAtoms; i++) {
+            int p = start + HEADER_SIZE + i * ATOM_SIZE;
+            for (int j = 0; j < ATOM_SIZE; j += 8) {
+                b.putLong(p + j, 0L);
+            }
+            int c = i * JniInchiPackedStructure.COORDS_PER_ATOM;
+            b.putDouble(p + ATOM_X, packed.coords[c]);
+            b.putDouble(p + ATOM_Y, packed.coords[c + 1]);
+            b.putDouble(p + ATOM_Z, packed.coords[c + 2]);
+            for (int j = 0; j < JniInchiPackedStructure.ATOM_EL_LEN; j++) {
+                b.put(p + ATOM_ELNAME + j, packed.elements[i * JniInchiPackedStructure.ATOM_EL_LEN + j]);
+            }
+            b.putShort(p + ATOM_NUM_BONDS, (short) numBonds[i]);
+            int a = i * JniInchiPackedStructure.INTS_PER_ATOM;
+            b.put(p + ATOM_CHARGE, (byte) packed.atoms[a]);
+            b.put(p + ATOM_RADICAL, (byte) packed.atoms[a + 1]);
+            for (int j = 0; j < 4; j++) {
+                b.put(p + ATOM_NUM_ISO_H + j, (byte) packed.atoms[a + 2 + j]);
+            }
+            b.putShort(p + ATOM_ISOTOPIC_MASS, (short) packed.atoms[a + 6]);
+        }
+
+        // Adjacency lists are refilled in bond order
+        Arrays.fill(numBonds, 0);
+        for (int i = 0; i < packed.numBonds; i++) {
+            int k = i * JniInchiPackedStructure.INTS_PER_BOND;
+            int origin = packed.bonds[k];
+            int n = numBonds[origin]++;
+            int p = start + HEADER_SIZE + origin * ATOM_SIZE;
+            b.putShort(p + ATOM_NEIGHBOR + 2 * n, (short) packed.bonds[k + 1]);
+            b.put(p + ATOM_BOND_TYPE + n, (byte) packed.bonds[k + 2]);
+            b.put(p + ATOM_BOND_STEREO + n, (byte) packed.bonds[k + 3]);
+        }
+
+        int stereoStart = start + HEADER_SIZE + packed.numAtoms * ATOM_SIZE;
+        for (int i = 0; i < packed.numStereo0D; i++) {
+            int p = stereoStart + i * STEREO0D_SIZE;
+            int s = i * JniInchiPackedStructure.INTS_PER_STEREO;
+            for (int j = 0; j < 4; j++) {
+                b.putShort(p + STEREO0D_NEIGHBOR + 2 * j, (short) packed.stereo0D[s + 1 + j]);
+            }
+            b.putShort(p + STEREO0D_CENTRAL_ATOM, (short) packed.stereo0D[s]);
+            b.put(p + STEREO0D_TYPE, (byte) packed.stereo0D[s + 5]);
+            b.put(p + STEREO0D_PARITY, (byte) packed.stereo0D[s + 6]);
+        }
+
+        buffer.position(start + size);
+    }
+
+    /**
+     * Decodes the structure at the buffer's position, which is left
+     * unchanged.
+     *
+     * @param buffer
+     * @param options  Options for the returned input
+     * @return
+     * @throws JniInchiException - if the options are invalid.
+     * @throws IllegalArgumentException - if the encoded structure is invalid.
+     */
+    public static JniInchiInput decode(ByteBuffer buffer, String options) throws JniInchiException {
+        getEncodedSize(buffer);
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int start = buffer.position();
+        int numAtoms = b.getInt(start + HEADER_NUM_ATOMS);
+        int numStereo0D = b.getInt(start + HEADER_NUM_STEREO0D);
+
+        JniInchiInput input = new JniInchiInput(options);
+        JniInchiAtom[] atoms = new JniInchiAtom[numAtoms];
+        for (int i = 0; i < numAtoms; i++) {
+            int p = start + HEADER_SIZE + i * ATOM_SIZE;
+            JniInchiAtom atom = new JniInchiAtom(b.getDouble(p + ATOM_X), b.getDouble(p + ATOM_Y),
+                    b.getDouble(p + ATOM_Z), readElement(b, p + ATOM_ELNAME));
+            atom.setCharge(b.get(p + ATOM_CHARGE));
+            atom.setRadical(INCHI_RADICAL.getValue(b.get(p + ATOM_RADICAL)));
+            atom.setImplicitH(b.get(p + ATOM_NUM_ISO_H));
+            atom.setImplicitProtium(b.get(p + ATOM_NUM_ISO_H + 1));
+            atom.setImplicitDeuterium(b.get(p + ATOM_NUM_ISO_H + 2));
+            atom.setImplicitTritium(b.get(p + ATOM_NUM_ISO_H + 3));
+            atom.setIsotopicMass(b.getShort(p + ATOM_ISOTOPIC_MASS));
+            atoms[i] = input.addAtom(atom);
+        }
+
+        for (int i = 0; i < numAtoms; i++) {
+            int p = start + HEADER_SIZE + i * ATOM_SIZE;
+            int numBonds = getNumBonds(b, p);
+            for (int j = 0; j < numBonds; j++) {
+                int k = b.getShort(p + ATOM_NEIGHBOR + 2 * j);
+                if (k < 0 || k >= numAtoms || k == i) {
+                    throw new IllegalArgumentException("Bond to atom not in structure");
+                }
+                // A bond listed by both its atoms is added once, from the lower index
+                if (k < i && isNeighbor(b, start + HEADER_SIZE + k * ATOM_SIZE, i)) {
+                    continue;
+                }
+                INCHI_BOND_TYPE type = INCHI_BOND_TYPE.getValue(b.get(p + ATOM_BOND_TYPE + j));
+                INCHI_BOND_STEREO stereo = INCHI_BOND_STEREO.getValue(b.get(p + ATOM_BOND_STEREO + j));
+                if (type == null || stereo == null) {
+                    throw new IllegalArgumentException("Unrecognised bond type or stereo");
+                }
+                input.addBond(new JniInchiBond(atoms[i], atoms[k], type, stereo));
+            }
+        }
+
+        int stereoStart = start + HEADER_SIZE + numAtoms * ATOM_SIZE;
+        for (int i = 0; i < numStereo0D; i++) {
+            int p = stereoStart + i * STEREO0D_SIZE;
+            JniInchiAtom[] neighbors = new JniInchiAtom[4];
+            for (int j = 0; j < 4; j++) {
+                neighbors[j] = stereoAtom(atoms, b.getShort(p + STEREO0D_NEIGHBOR + 2 * j));
+            }
+            int parity = b.get(p + STEREO0D_PARITY);
+            JniInchiStereo0D stereo = new JniInchiStereo0D(stereoAtom(atoms, b.getShort(p + STEREO0D_CENTRAL_ATOM)),
+                    neighbors[0], neighbors[1], neighbors[2], neighbors[3],
+                    INCHI_STEREOTYPE.getValue(b.get(p + STEREO0D_TYPE)), INCHI_PARITY.getValue(parity & 0x07));
+            if ((parity & 0x38) != 0) {
+                stereo.setDisconnectedParity(INCHI_PARITY.getValue((parity >> 3) & 0x07));
+            }
+            input.addStereo0D(stereo);
+        }
+
+        return input;
+    }
+
+    private static int getNumBonds(ByteBuffer b, int atom) {
+        int numBonds = b.getShort(atom + ATOM_NUM_BONDS);
+        if (numBonds < 0 || numBonds > MAXVAL) {
+            throw new IllegalArgumentException("Too many bonds from one atom; maximum: " + MAXVAL);
+        }
+        return numBonds;
+    }
+
+    private static boolean isNeighbor(ByteBuffer b, int atom, int neighbor) {
+        int numBonds = getNumBonds(b, atom);
+        for (int j = 0; j < numBonds; j++) {
+            if (b.getShort(atom + ATOM_NEIGHBOR + 2 * j) == neighbor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String readElement(ByteBuffer b, int offset) {
+        StringBuilder el = new StringBuilder(JniInchiPackedStructure.ATOM_EL_LEN);
+        for (int i = 0; i < JniInchiPackedStructure.ATOM_EL_LEN; i++) {
+            byte c = b.get(offset + i);
+            if (c == 0) {
+                return el.toString();
+            }
+            el.append((char) c);
+        }
+        throw new IllegalArgumentException("Element name not zero terminated");
+    }
+
+    private static JniInchiAtom stereoAtom(JniInchiAtom[] atoms, int i) {
+        if (i == JniInchiStereo0D.NO_ATOM) {
+            return null;
+        }
+        if (i < 0 || i >= atoms.length) {
+            throw new IllegalArgumentException("Stereo parity atom not in structure");
+        }
+        return atoms[i];
+    }
+
+}
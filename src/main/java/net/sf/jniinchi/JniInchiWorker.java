@@ -0,0 +1,200 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * <p>Entry point of the worker processes started by {@link JniInchiWorkerPool}.
+ *
+ * <p>Reads length-prefixed requests from standard input, runs them through the static
+ * {@link JniInchiWrapper} API of this process and writes the responses to
+ * standard output, until standard input is closed.  Anything the native code
+ * or the JVM prints to <tt>System.out</tt> is redirected to standard error so
+ * that it cannot corrupt the response stream.
+ *
+ * <p>If started with a heartbeat interval, in milliseconds, as its argument,
+ * the worker sends a heartbeat at that interval while it is busy, so the
+ * pool can tell a long calculation from a process that has stopped
+ * responding.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiWorker {
+
+    /**
+     * Whether a request is being processed, and heartbeats are due.
+     */
+    private static volatile boolean busy = false;
+
+    private JniInchiWorker() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)));
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+
+        try {
+            JniInchiWrapper.loadLibrary();
+        } catch (LoadNativeLibraryException ex) {
+            System.exit(1);
+        }
+
+        if (args.length > 0) {
+            startHeartbeat(out, Long.parseLong(args[0]));
+        }
+
+        // Responses are written whole, so heartbeats are not interleaved
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream response = new DataOutputStream(buffer);
+        while (true) {
+            DataInputStream request;
+            try {
+                request = JniInchiWorkerProtocol.readRequest(in);
+            } catch (EOFException ex) {
+                break;
+            }
+            busy = true;
+            try {
+                process(request.readInt(), request, response);
+            } catch (IOException ex) {
+                // The request could not be decoded; the next one is unaffected
+                buffer.reset();
+                JniInchiWorkerProtocol.writeError(response, ex);
+            }
+            response.flush();
+            synchronized (out) {
+                busy = false;
+                buffer.writeTo(out);
+                out.flush();
+            }
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Starts a thread sending heartbeats while a request is processed.  None
+     * are sent while idle, when the pool is not reading them.
+     */
+    private static void startHeartbeat(final DataOutputStream out, final long interval) {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(interval);
+                        synchronized (out) {
+                            if (busy) {
+                                out.writeByte(JniInchiWorkerProtocol.RESPONSE_HEARTBEAT);
+                                out.flush();
+                            }
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    // stop
+                } catch (IOException ex) {
+                    // pool has gone
+                }
+            }
+        }, "jniinchi-heartbeat");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Reads the arguments for request <code>op</code>, executes it and writes
+     * the response.
+     */
+    static void process(int op, DataInputStream in, DataOutputStream out) throws IOException {
+        try {
+            switch (op) {
+                case JniInchiWorkerProtocol.GET_INCHI: {
+                    JniInchiOutput output = JniInchiWrapper.getInchi(JniInchiWorkerProtocol.readInput(in));
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    JniInchiWorkerProtocol.writeOutput(out, output);
+                    break;
+                }
+                case JniInchiWorkerProtocol.GET_STD_INCHI: {
+                    JniInchiOutput output = JniInchiWrapper.getStdInchi(JniInchiWorkerProtocol.readInput(in));
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    JniInchiWorkerProtocol.writeOutput(out, output);
+                    break;
+                }
+                case JniInchiWorkerProtocol.GET_INCHI_FROM_INCHI: {
+                    JniInchiOutput output = JniInchiWrapper.getInchiFromInchi(JniInchiWorkerProtocol.readInputInchi(in));
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    JniInchiWorkerProtocol.writeOutput(out, output);
+                    break;
+                }
+                case JniInchiWorkerProtocol.GET_STRUCTURE_FROM_INCHI: {
+                    JniInchiOutputStructure output = JniInchiWrapper.getStructureFromInchi(JniInchiWorkerProtocol.readInputInchi(in));
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    JniInchiWorkerProtocol.writeOutputStructure(out, output);
+                    break;
+                }
+                case JniInchiWorkerProtocol.GET_INCHI_KEY: {
+                    JniInchiOutputKey output = JniInchiWrapper.getInchiKey(JniInchiWorkerProtocol.readString(in));
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    JniInchiWorkerProtocol.writeOutputKey(out, output);
+                    break;
+                }
+                case JniInchiWorkerProtocol.CHECK_INCHI_KEY: {
+                    INCHI_KEY_STATUS status = JniInchiWrapper.checkInchiKey(JniInchiWorkerProtocol.readString(in));
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    out.writeInt(status.getIndx());
+                    break;
+                }
+                case JniInchiWorkerProtocol.CHECK_INCHI: {
+                    String inchi = JniInchiWorkerProtocol.readString(in);
+                    INCHI_STATUS status = JniInchiWrapper.checkInchi(inchi, in.readBoolean());
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    out.writeInt(status.getIndx());
+                    break;
+                }
+                case JniInchiWorkerProtocol.GET_INPUT_FROM_AUX_INFO: {
+                    JniInchiInputData data = JniInchiWrapper.getInputFromAuxInfo(JniInchiWorkerProtocol.readString(in));
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    JniInchiWorkerProtocol.writeInputData(out, data);
+                    break;
+                }
+                case JniInchiWorkerProtocol.PING: {
+                    out.writeByte(JniInchiWorkerProtocol.RESPONSE_OK);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown request: " + op);
+            }
+        } catch (JniInchiException ex) {
+            JniInchiWorkerProtocol.writeError(out, ex);
+        } catch (RuntimeException ex) {
+            JniInchiWorkerProtocol.writeError(out, ex);
+        }
+    }
+
+}
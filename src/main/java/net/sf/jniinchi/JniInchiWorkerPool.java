@@ -0,0 +1,555 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jniinchi.JniInchiWorkerProtocol.Request;
+
+/**
+ * <p>Runs InChI calculations in a pool of worker JVMs, each of which has its
+ * own copy of the native InChI library.
+ *
+ * <p>The InChI library is not thread safe, so within one JVM
+ * {@link JniInchiWrapper} allows only a single calculation at a time. A
+ * worker pool sidesteps this by farming requests out to <i>n</i> child
+ * processes (see {@link JniInchiWorker}), so up to <i>n</i> calculations
+ * can run in parallel. Requests and responses are sent over the workers'
+ * standard input/output streams.
+ *
+ * <p>A worker that crashes, or fails to respond within the configured
+ * timeout, is killed and replaced; the request it was processing fails with a
+ * {@link JniInchiException}, other requests are unaffected.  Busy workers
+ * also send heartbeats, and one that misses {@value #MISSED_HEARTBEATS} in a
+ * row, having stopped or frozen, is treated as hung without waiting for the
+ * timeout.
+ *
+ * <p>The request a worker failed on is added to the pool's
+ * {@link JniInchiQuarantine}, and is rejected with a
+ * {@link JniInchiRejectedException} if made again, so a hostile input
+ * cannot take down worker after worker.  The batch methods carry on past
+ * such inputs.
+ *
+ * <p>The pool may be used directly, or installed with
+ * {@link JniInchiWrapper#setWorkerPool(JniInchiWorkerPool)} so that the
+ * static <tt>JniInchiWrapper</tt> methods are routed through it.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiWorkerPool implements JniInchiEngine {
+
+    /**
+     * Default time to wait for a worker to respond (in seconds).
+     */
+    public static final int DEFAULT_TIMEOUT = 60;
+
+    /**
+     * Default interval between heartbeats of a busy worker (in milliseconds).
+     */
+    public static final int DEFAULT_HEARTBEAT = 1000;
+
+    /**
+     * Number of heartbeats a worker may miss before it is considered hung.
+     */
+    public static final int MISSED_HEARTBEATS = 5;
+
+    private static final byte[] PING;
+
+    static {
+        try {
+            PING = JniInchiWorkerProtocol.encode(JniInchiWorkerProtocol.pingRequest());
+        } catch (IOException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private static final ScheduledThreadPoolExecutor watchdog;
+
+    static {
+        watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jniinchi-worker-watchdog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    private final List<String> command;
+
+    private final long timeoutMillis;
+
+    private final long heartbeatMillis;
+
+    private volatile JniInchiQuarantine quarantine = new JniInchiQuarantine();
+
+    private final List<Worker> workers;
+
+    private final BlockingQueue<Worker> idleWorkers;
+
+    private final AtomicInteger restartCount = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a pool of <code>n</code> workers, using the default timeout.
+     *
+     * @param n  Number of worker processes
+     * @throws JniInchiException  A worker failed to start
+     */
+    public JniInchiWorkerPool(int n) throws JniInchiException {
+        this(n, DEFAULT_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a pool of <code>n</code> workers.
+     *
+     * @param n        Number of worker processes
+     * @param timeout  Time to wait for a worker to respond before it is
+     *                 considered hung and restarted
+     * @param unit     Unit of timeout
+     * @throws JniInchiException  A worker failed to start
+     */
+    public JniInchiWorkerPool(int n, long timeout, TimeUnit unit) throws JniInchiException {
+        this(n, timeout, unit, Collections.<String>emptyList());
+    }
+
+    /**
+     * Creates a pool of <code>n</code> workers.
+     *
+     * @param n        Number of worker processes
+     * @param timeout  Time to wait for a worker to respond before it is
+     *                 considered hung and restarted
+     * @param unit     Unit of timeout
+     * @param jvmArgs  Additional arguments for the worker JVMs, e.g. -Xmx
+     * @throws JniInchiException  A worker failed to start
+     */
+    public JniInchiWorkerPool(int n, long timeout, TimeUnit unit, List<String> jvmArgs) throws JniInchiException {
+        this(n, unit.toMillis(timeout), DEFAULT_HEARTBEAT, jvmArgs);
+    }
+
+    /**
+     * Creates a pool of <code>n</code> workers.
+     *
+     * @param n          Number of worker processes
+     * @param timeout    Time to wait for a worker to respond before it is
+     *                   considered hung and restarted
+     * @param heartbeat  Interval between heartbeats of a busy worker, or 0
+     *                   for none
+     * @param unit       Unit of timeout and heartbeat
+     * @param jvmArgs    Additional arguments for the worker JVMs, e.g. -Xmx
+     * @throws JniInchiException  A worker failed to start
+     */
+    public JniInchiWorkerPool(int n, long timeout, long heartbeat, TimeUnit unit, List<String> jvmArgs) throws JniInchiException {
+        this(n, unit.toMillis(timeout), unit.toMillis(heartbeat), jvmArgs);
+    }
+
+    private JniInchiWorkerPool(int n, long timeoutMillis, long heartbeatMillis, List<String> jvmArgs) throws JniInchiException {
+        if (n < 1) {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        if (heartbeatMillis < 0) {
+            throw new IllegalArgumentException("Negative heartbeat interval");
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.heartbeatMillis = heartbeatMillis;
+
+        command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(jvmArgs);
+        command.add(JniInchiWorker.class.getName());
+        if (heartbeatMillis > 0) {
+            command.add(Long.toString(heartbeatMillis));
+        }
+
+        workers = new ArrayList<Worker>(n);
+        idleWorkers = new LinkedBlockingQueue<Worker>();
+        try {
+            for (int i = 0; i < n; i++) {
+                Worker worker = new Worker();
+                workers.add(worker);
+                worker.start();
+                idleWorkers.add(worker);
+            }
+        } catch (JniInchiException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of worker processes.
+     */
+    public int getNumWorkers() {
+        return workers.size();
+    }
+
+    /**
+     * Returns the number of times a worker has been restarted after
+     * crashing or timing out.
+     */
+    public int getRestartCount() {
+        return restartCount.get();
+    }
+
+    /**
+     * Returns the quarantine of requests that have crashed or hung a worker.
+     */
+    public JniInchiQuarantine getQuarantine() {
+        return quarantine;
+    }
+
+    /**
+     * Sets the quarantine of requests that have crashed or hung a worker,
+     * for example one backed by a log file.  By default a pool has its own,
+     * held in memory.
+     */
+    public void setQuarantine(JniInchiQuarantine quarantine) {
+        if (quarantine == null) {
+            throw new IllegalArgumentException("Null quarantine");
+        }
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Stops all workers.  Requests in progress will fail.
+     */
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+
+    /**
+     * See {@link JniInchiWrapper#getInchi(JniInchiInput)}.
+     */
+    public JniInchiOutput getInchi(final JniInchiInput input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getInchiRequest(input, false));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getStdInchi(JniInchiInput)}.
+     */
+    public JniInchiOutput getStdInchi(final JniInchiInput input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getInchiRequest(input, true));
+    }
+
+    /**
+     * <p>Generates InChIs for a list of structures, as
+     * {@link #getInchi(JniInchiInput)} for each in turn, carrying on past
+     * structures that fail.  An input that crashes or hangs a worker, or
+     * has been quarantined, gives an output with the status
+     * {@link INCHI_RET#FATAL} and the failure as its message.</p>
+     *
+     * @param inputs
+     * @return  Outputs, in the same order as the inputs
+     */
+    public JniInchiOutput[] getInchiBatch(List<JniInchiInput> inputs) {
+        return getInchiBatch(inputs, false);
+    }
+
+    /**
+     * Calculates Standard InChIs for a list of structures, carrying on past
+     * structures that fail.
+     * @see #getInchiBatch(List)
+     */
+    public JniInchiOutput[] getStdInchiBatch(List<JniInchiInput> inputs) {
+        return getInchiBatch(inputs, true);
+    }
+
+    private JniInchiOutput[] getInchiBatch(List<JniInchiInput> inputs, boolean std) {
+        if (inputs == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        JniInchiOutput[] outputs = new JniInchiOutput[inputs.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            JniInchiInput input = inputs.get(i);
+            try {
+                outputs[i] = std ? getStdInchi(input) : getInchi(input);
+            } catch (JniInchiException ex) {
+                outputs[i] = new JniInchiOutput(INCHI_RET.FATAL, null, null, ex.getMessage(), "");
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getInchiFromInchi(JniInchiInputInchi)}.
+     */
+    public JniInchiOutput getInchiFromInchi(final JniInchiInputInchi input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getInchiFromInchiRequest(input));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getStructureFromInchi(JniInchiInputInchi)}.
+     */
+    public JniInchiOutputStructure getStructureFromInchi(final JniInchiInputInchi input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return call(JniInchiWorkerProtocol.getStructureFromInchiRequest(input));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getInchiKey(String)}.
+     */
+    public JniInchiOutputKey getInchiKey(final String inchi) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        return call(JniInchiWorkerProtocol.getInchiKeyRequest(inchi));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#checkInchiKey(String)}.
+     */
+    public INCHI_KEY_STATUS checkInchiKey(final String key) throws JniInchiException {
+        if (key == null) {
+            throw new IllegalArgumentException("Null InChI key");
+        }
+        return call(JniInchiWorkerProtocol.checkInchiKeyRequest(key));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#checkInchi(String, boolean)}.
+     */
+    public INCHI_STATUS checkInchi(final String inchi, final boolean strict) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        return call(JniInchiWorkerProtocol.checkInchiRequest(inchi, strict));
+    }
+
+    /**
+     * See {@link JniInchiWrapper#getInputFromAuxInfo(String)}.
+     */
+    public JniInchiInputData getInputFromAuxInfo(final String auxInfo) throws JniInchiException {
+        if (auxInfo == null) {
+            throw new IllegalArgumentException("Null AuxInfo");
+        }
+        return call(JniInchiWorkerProtocol.getInputFromAuxInfoRequest(auxInfo));
+    }
+
+
+    private <T> T call(Request<T> request) throws JniInchiException {
+        if (closed) {
+            throw new JniInchiException("Worker pool closed");
+        }
+        byte[] encoded;
+        try {
+            encoded = JniInchiWorkerProtocol.encode(request);
+        } catch (IOException ex) {
+            throw new JniInchiException(ex);
+        }
+        JniInchiQuarantine.Entry poison = quarantine.get(encoded);
+        if (poison != null) {
+            throw new JniInchiRejectedException("Request quarantined: " + poison.getReason());
+        }
+        Worker worker;
+        try {
+            worker = idleWorkers.take();
+        } catch (InterruptedException ex) {
+            throw new JniInchiException(ex);
+        }
+        try {
+            return worker.call(request, encoded);
+        } finally {
+            if (worker.isBroken() && !closed) {
+                restartCount.incrementAndGet();
+                worker.stop();
+                try {
+                    worker.start();
+                } catch (JniInchiException ex) {
+                    // Will be retried when the worker is next used
+                    System.err.println("Unable to restart InChI worker: " + ex.getMessage());
+                }
+            }
+            idleWorkers.add(worker);
+        }
+    }
+
+    /**
+     * Kills worker processes, without marking them as broken.
+     * For testing recovery from crashes.
+     */
+    void killWorkers() {
+        for (Worker worker : workers) {
+            Process process = worker.process;
+            if (process != null) {
+                process.destroy();
+                try {
+                    process.waitFor();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A worker process, and the streams used to communicate with it.
+     */
+    private class Worker {
+
+        private Process process;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        private volatile boolean broken;
+        private volatile boolean timedOut;
+        private volatile boolean hung;
+        private volatile long lastHeard;
+
+        void start() throws JniInchiException {
+            try {
+                ProcessBuilder builder = new ProcessBuilder(command);
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                process = builder.start();
+                in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+                broken = false;
+            } catch (IOException ex) {
+                process = null;
+                throw new JniInchiException(ex);
+            }
+            // Wait for the worker to load the native library
+            try {
+                send(JniInchiWorkerProtocol.pingRequest(), PING, false);
+            } catch (JniInchiException ex) {
+                stop();
+                throw new JniInchiException("InChI worker failed to start");
+            }
+        }
+
+        void stop() {
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+
+        boolean isBroken() {
+            return broken;
+        }
+
+        <T> T call(Request<T> request, byte[] encoded) throws JniInchiException {
+            if (process != null && !process.isAlive()) {
+                // Died while idle
+                restartCount.incrementAndGet();
+                stop();
+            }
+            if (process == null) {
+                start();
+            }
+            return send(request, encoded, true);
+        }
+
+        /**
+         * @param started  Whether the worker has started: it then sends
+         *                 heartbeats, and if it fails the request is to blame
+         */
+        private <T> T send(Request<T> request, byte[] encoded, boolean started) throws JniInchiException {
+            timedOut = false;
+            hung = false;
+            lastHeard = System.nanoTime();
+            final Process p = process;
+            ScheduledFuture<?> timer = watchdog.schedule(new Runnable() {
+                public void run() {
+                    timedOut = true;
+                    p.destroyForcibly();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            ScheduledFuture<?> monitor = null;
+            if (started && heartbeatMillis > 0) {
+                monitor = watchdog.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        if (System.nanoTime() - lastHeard > TimeUnit.MILLISECONDS.toNanos(MISSED_HEARTBEATS * heartbeatMillis)) {
+                            hung = true;
+                            p.destroyForcibly();
+                        }
+                    }
+                }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+            }
+            try {
+                JniInchiWorkerProtocol.writeRequest(out, encoded);
+                out.flush();
+                int status;
+                while ((status = in.readByte()) == JniInchiWorkerProtocol.RESPONSE_HEARTBEAT) {
+                    lastHeard = System.nanoTime();
+                }
+                if (status == JniInchiWorkerProtocol.RESPONSE_OK) {
+                    return request.read(in);
+                }
+                throw JniInchiWorkerProtocol.readError(in);
+            } catch (IOException ex) {
+                broken = true;
+                String reason;
+                if (timedOut) {
+                    reason = "InChI worker timed out after " + timeoutMillis + "ms";
+                } else if (hung) {
+                    reason = "InChI worker stopped responding: no heartbeat for "
+                            + MISSED_HEARTBEATS * heartbeatMillis + "ms";
+                } else {
+                    reason = "InChI worker failed: " + ex;
+                }
+                if (started && !closed) {
+                    quarantine.add(encoded, reason);
+                }
+                throw new JniInchiException(reason);
+            } finally {
+                timer.cancel(false);
+                if (monitor != null) {
+                    monitor.cancel(false);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Binary encoding of requests and responses exchanged between a
+ * {@link JniInchiWorkerPool} and its {@link JniInchiWorker} processes.
+ *
+ * <p>A request is an opcode followed by its arguments, sent to a worker
+ * prefixed with its length so that a request the worker fails to decode
+ * cannot leave the rest of it to be read as the next request; a response
+ * is a status byte followed by either the result or the class name and
+ * message of the exception thrown by the worker.  While a worker is busy it may send
+ * heartbeat bytes ahead of the response.  Strings are written as a length
+ * prefixed UTF-8 byte array (-1 for null), so that AuxInfo and log strings
+ * are not limited to the 64k of {@link DataOutputStream#writeUTF(String)}.
+ *
+ * <p>The same encoding carries requests into the isolated library copies of
+ * a {@link JniInchiLibraryPool}, whose classes cannot be shared with the
+ * caller's.
+ *
+ * @author Sam Adams
+ */
+final class JniInchiWorkerProtocol {
+
+    static final int GET_INCHI = 1;
+    static final int GET_STD_INCHI = 2;
+    static final int GET_INCHI_FROM_INCHI = 3;
+    static final int GET_STRUCTURE_FROM_INCHI = 4;
+    static final int GET_INCHI_KEY = 5;
+    static final int CHECK_INCHI_KEY = 6;
+    static final int CHECK_INCHI = 7;
+    static final int GET_INPUT_FROM_AUX_INFO = 8;
+    static final int PING = 9;
+
+    static final int RESPONSE_OK = 0;
+    static final int RESPONSE_ERROR = 1;
+    static final int RESPONSE_HEARTBEAT = 2;
+
+    /**
+     * Written in place of an enum index when the native code returned a
+     * value without a Java counterpart.
+     */
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+
+    private JniInchiWorkerProtocol() {
+    }
+
+
+    /**
+     * A request: writes the arguments and reads the result.
+     */
+    static abstract class Request<T> {
+
+        final int op;
+
+        Request(int op) {
+            this.op = op;
+        }
+
+        abstract void write(DataOutputStream out) throws IOException;
+
+        abstract T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Request for {@link JniInchiWrapper#getInchi(JniInchiInput)} or, if
+     * <code>std</code>, {@link JniInchiWrapper#getStdInchi(JniInchiInput)}.
+     */
+    static Request<JniInchiOutput> getInchiRequest(final JniInchiInput input, boolean std) {
+        return new Request<JniInchiOutput>(std ? GET_STD_INCHI : GET_INCHI) {
+            void write(DataOutputStream out) throws IOException {
+                writeInput(out, input);
+            }
+            JniInchiOutput read(DataInputStream in) throws IOException {
+                return readOutput(in);
+            }
+        };
+    }
+
+    static Request<JniInchiOutput> getInchiFromInchiRequest(final JniInchiInputInchi input) {
+        return new Request<JniInchiOutput>(GET_INCHI_FROM_INCHI) {
+            void write(DataOutputStream out) throws IOException {
+                writeInputInchi(out, input);
+            }
+            JniInchiOutput read(DataInputStream in) throws IOException {
+                return readOutput(in);
+            }
+        };
+    }
+
+    static Request<JniInchiOutputStructure> getStructureFromInchiRequest(final JniInchiInputInchi input) {
+        return new Request<JniInchiOutputStructure>(GET_STRUCTURE_FROM_INCHI) {
+            void write(DataOutputStream out) throws IOException {
+                writeInputInchi(out, input);
+            }
+            JniInchiOutputStructure read(DataInputStream in) throws IOException {
+                return readOutputStructure(in);
+            }
+        };
+    }
+
+    static Request<JniInchiOutputKey> getInchiKeyRequest(final String inchi) {
+        return new Request<JniInchiOutputKey>(GET_INCHI_KEY) {
+            void write(DataOutputStream out) throws IOException {
+                writeString(out, inchi);
+            }
+            JniInchiOutputKey read(DataInputStream in) throws IOException {
+                return readOutputKey(in);
+            }
+        };
+    }
+
+    static Request<INCHI_KEY_STATUS> checkInchiKeyRequest(final String key) {
+        return new Request<INCHI_KEY_STATUS>(CHECK_INCHI_KEY) {
+            void write(DataOutputStream out) throws IOException {
+                writeString(out, key);
+            }
+            INCHI_KEY_STATUS read(DataInputStream in) throws IOException {
+                return INCHI_KEY_STATUS.getValue(in.readInt());
+            }
+        };
+    }
+
+    static Request<INCHI_STATUS> checkInchiRequest(final String inchi, final boolean strict) {
+        return new Request<INCHI_STATUS>(CHECK_INCHI) {
+            void write(DataOutputStream out) throws IOException {
+                writeString(out, inchi);
+                out.writeBoolean(strict);
+            }
+            INCHI_STATUS read(DataInputStream in) throws IOException {
+                return INCHI_STATUS.getValue(in.readInt());
+            }
+        };
+    }
+
+    static Request<JniInchiInputData> getInputFromAuxInfoRequest(final String auxInfo) {
+        return new Request<JniInchiInputData>(GET_INPUT_FROM_AUX_INFO) {
+            void write(DataOutputStream out) throws IOException {
+                writeString(out, auxInfo);
+            }
+            JniInchiInputData read(DataInputStream in) throws IOException {
+                return readInputData(in);
+            }
+        };
+    }
+
+    static Request<Object> pingRequest() {
+        return new Request<Object>(PING) {
+            void write(DataOutputStream out) {
+            }
+            Object read(DataInputStream in) {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Encodes a request, its opcode followed by its arguments.
+     */
+    static byte[] encode(Request<?> request) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(request.op);
+        request.write(out);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Sends an encoded request, prefixed with its length.
+     */
+    static void writeRequest(DataOutputStream out, byte[] encoded) throws IOException {
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    /**
+     * Receives a request sent with {@link #writeRequest(DataOutputStream, byte[])},
+     * returning a stream over the encoded request alone.
+     */
+    static DataInputStream readRequest(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 4) {
+            throw new IOException("Bad request length: " + length);
+        }
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        return new DataInputStream(new ByteArrayInputStream(encoded));
+    }
+
+    /**
+     * Returns the name of the {@link JniInchiWrapper} method a request
+     * opcode stands for.
+     */
+    static String getName(int op) {
+        switch (op) {
+            case GET_INCHI:
+                return "getInchi";
+            case GET_STD_INCHI:
+                return "getStdInchi";
+            case GET_INCHI_FROM_INCHI:
+                return "getInchiFromInchi";
+            case GET_STRUCTURE_FROM_INCHI:
+                return "getStructureFromInchi";
+            case GET_INCHI_KEY:
+                return "getInchiKey";
+            case CHECK_INCHI_KEY:
+                return "checkInchiKey";
+            case CHECK_INCHI:
+                return "checkInchi";
+            case GET_INPUT_FROM_AUX_INFO:
+                return "getInputFromAuxInfo";
+            case PING:
+                return "ping";
+            default:
+                return "unknown(" + op + ")";
+        }
+    }
+
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+
+    static void writeStructure(DataOutputStream out, JniInchiStructure struct) throws IOException {
+        int natoms = struct.getNumAtoms();
+        out.writeInt(natoms);
+        for (int i = 0; i < natoms; i++) {
+            JniInchiAtom atom = struct.getAtom(i);
+            out.writeDouble(atom.getX());
+            out.writeDouble(atom.getY());
+            out.writeDouble(atom.getZ());
+            writeString(out, atom.getElementType());
+            out.writeInt(atom.getImplicitH());
+            out.writeInt(atom.getImplicitProtium());
+            out.writeInt(atom.getImplicitDeuterium());
+            out.writeInt(atom.getImplicitTritium());
+            out.writeInt(atom.getIsotopicMass());
+            out.writeInt(atom.getInchiRadical());
+            out.writeInt(atom.getCharge());
+        }
+
+        int nbonds = struct.getNumBonds();
+        out.writeInt(nbonds);
+        for (int i = 0; i < nbonds; i++) {
+            JniInchiBond bond = struct.getBond(i);
+            out.writeInt(bondAtomIndex(struct, bond.getOriginAtom()));
+            out.writeInt(bondAtomIndex(struct, bond.getTargetAtom()));
+            out.writeInt(bond.getInchiBondType());
+            out.writeInt(bond.getInchiBondStereo());
+        }
+
+        int nstereo = struct.getNumStereo0D();
+        out.writeInt(nstereo);
+        for (int i = 0; i < nstereo; i++) {
+            JniInchiStereo0D stereo = struct.getStereo0D(i);
+            out.writeInt(atomIndex(struct, stereo.getCentralAtom()));
+            for (int j = 0; j < 4; j++) {
+                out.writeInt(atomIndex(struct, stereo.getNeighbor(j)));
+            }
+            out.writeInt(stereo.getInchiStereoType());
+            out.writeInt(stereo.getInchiParity());
+            out.writeInt(stereo.getDisconnectedParity().getIndx());
+        }
+    }
+
+    private static int bondAtomIndex(JniInchiStructure struct, JniInchiAtom atom) {
+        int i = struct.getAtomIndex(atom);
+        if (i < 0) {
+            throw new IllegalArgumentException("Bond to atom not in structure");
+        }
+        return i;
+    }
+
+    private static int atomIndex(JniInchiStructure struct, JniInchiAtom atom) {
+        return atom == null ? JniInchiStereo0D.NO_ATOM : struct.getAtomIndex(atom);
+    }
+
+    static void readStructure(DataInputStream in, JniInchiStructure struct) throws IOException {
+        int natoms = in.readInt();
+        for (int i = 0; i < natoms; i++) {
+            double x = in.readDouble();
+            double y = in.readDouble();
+            double z = in.readDouble();
+            JniInchiAtom atom = new JniInchiAtom(x, y, z, readString(in));
+            atom.setImplicitH(in.readInt());
+            atom.setImplicitProtium(in.readInt());
+            atom.setImplicitDeuterium(in.readInt());
+            atom.setImplicitTritium(in.readInt());
+            atom.setIsotopicMass(in.readInt());
+            atom.setInchiRadical(in.readInt());
+            atom.setCharge(in.readInt());
+            struct.addAtom(atom);
+        }
+
+        int nbonds = in.readInt();
+        for (int i = 0; i < nbonds; i++) {
+            JniInchiAtom atO = struct.getAtom(in.readInt());
+            JniInchiAtom atT = struct.getAtom(in.readInt());
+            struct.addBond(new JniInchiBond(atO, atT, in.readInt(), in.readInt()));
+        }
+
+        int nstereo = in.readInt();
+        for (int i = 0; i < nstereo; i++) {
+            JniInchiAtom atC = readAtomRef(in, struct);
+            JniInchiAtom at0 = readAtomRef(in, struct);
+            JniInchiAtom at1 = readAtomRef(in, struct);
+            JniInchiAtom at2 = readAtomRef(in, struct);
+            JniInchiAtom at3 = readAtomRef(in, struct);
+            JniInchiStereo0D stereo = new JniInchiStereo0D(atC, at0, at1, at2, at3, in.readInt(), in.readInt());
+            stereo.setDisconnectedParity(INCHI_PARITY.getValue(in.readInt()));
+            struct.addStereo0D(stereo);
+        }
+    }
+
+    private static JniInchiAtom readAtomRef(DataInputStream in, JniInchiStructure struct) throws IOException {
+        int i = in.readInt();
+        return i == JniInchiStereo0D.NO_ATOM ? null : struct.getAtom(i);
+    }
+
+
+    static void writeInput(DataOutputStream out, JniInchiInput input) throws IOException {
+        writeString(out, input.getOptions());
+        writeStructure(out, input);
+    }
+
+    static JniInchiInput readInput(DataInputStream in) throws IOException {
+        JniInchiInput input = new JniInchiInput();
+        input.options = readString(in);
+        readStructure(in, input);
+        return input;
+    }
+
+    static void writeInputInchi(DataOutputStream out, JniInchiInputInchi input) throws IOException {
+        writeString(out, input.getInchi());
+        writeString(out, input.getOptions());
+    }
+
+    static JniInchiInputInchi readInputInchi(DataInputStream in) throws IOException {
+        JniInchiInputInchi input = new JniInchiInputInchi(readString(in));
+        input.options = readString(in);
+        return input;
+    }
+
+
+    static void writeOutput(DataOutputStream out, JniInchiOutput output) throws IOException {
+        out.writeInt(indx(output.getReturnStatus()));
+        writeString(out, output.getInchi());
+        writeString(out, output.getAuxInfo());
+        writeString(out, output.getMessage());
+        writeString(out, output.getLog());
+    }
+
+    static JniInchiOutput readOutput(DataInputStream in) throws IOException {
+        INCHI_RET ret = INCHI_RET.getValue(in.readInt());
+        return new JniInchiOutput(ret, readString(in), readString(in), readString(in), readString(in));
+    }
+
+    static void writeOutputStructure(DataOutputStream out, JniInchiOutputStructure output) throws IOException {
+        out.writeInt(indx(output.getReturnStatus()));
+        writeString(out, output.getMessage());
+        writeString(out, output.getLog());
+        long[][] flags = output.getWarningFlags();
+        out.writeLong(flags[0][0]);
+        out.writeLong(flags[0][1]);
+        out.writeLong(flags[1][0]);
+        out.writeLong(flags[1][1]);
+        writeStructure(out, output);
+    }
+
+    static JniInchiOutputStructure readOutputStructure(DataInputStream in) throws IOException {
+        int ret = in.readInt();
+        String message = readString(in);
+        String log = readString(in);
+        JniInchiOutputStructure output = new JniInchiOutputStructure(ret, message, log,
+                in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        readStructure(in, output);
+        return output;
+    }
+
+    static void writeOutputKey(DataOutputStream out, JniInchiOutputKey output) throws IOException {
+        out.writeInt(output.getReturnStatus().getIndx());
+        writeString(out, output.getKey());
+    }
+
+    static JniInchiOutputKey readOutputKey(DataInputStream in) throws IOException {
+        int ret = in.readInt();
+        String key = readString(in);
+        try {
+            return new JniInchiOutputKey(ret, key);
+        } catch (JniInchiException ex) {
+            throw new IOException(ex.getMessage());
+        }
+    }
+
+    static void writeInputData(DataOutputStream out, JniInchiInputData data) throws IOException {
+        out.writeInt(indx(data.getReturnValue()));
+        writeInput(out, data.getInput());
+        writeString(out, data.getErrorMessage());
+    }
+
+    static JniInchiInputData readInputData(DataInputStream in) throws IOException {
+        int ret = in.readInt();
+        JniInchiInput input = readInput(in);
+        return new JniInchiInputData(ret, input, 0, readString(in));
+    }
+
+
+    static void writeError(DataOutputStream out, Throwable ex) throws IOException {
+        out.writeByte(RESPONSE_ERROR);
+        writeString(out, ex.getClass().getName());
+        writeString(out, ex.getMessage());
+    }
+
+    /**
+     * Re-creates an exception thrown by a worker.  IllegalArgumentExceptions
+     * (raised by the native code for invalid structures) are preserved, all
+     * other failures are reported as JniInchiExceptions.
+     */
+    static JniInchiException readError(DataInputStream in) throws IOException {
+        String type = readString(in);
+        String message = readString(in);
+        if (IllegalArgumentException.class.getName().equals(type)) {
+            throw new IllegalArgumentException(message);
+        }
+        return new JniInchiException(type + ": " + message);
+    }
+
+    private static int indx(INCHI_RET ret) {
+        return ret == null ? NO_VALUE : ret.getIndx();
+    }
+
+}
@@ -21,12 +21,16 @@ package net.sf.jniinchi;
 import net.sf.jnati.NativeCodeException;
 import net.sf.jnati.deploy.NativeLibraryLoader;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>JNI Wrapper for International Chemical Identifier (InChI) C++ library.
@@ -47,11 +51,11 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public class JniInchiWrapper {
 
-    private static final String ID = "jniinchi";
-    private static final String VERSION = "1.03_1";
+    static final String ID = "jniinchi";
+    static final String VERSION = "1.03_1";
 
     /**
-     * Maximum time to wait for a lock (in seconds).
+     * Default maximum time to wait for a lock (in seconds).
      */
     private static final int MAX_LOCK_TIMEOUT = 15;
 
@@ -70,9 +74,91 @@ public class JniInchiWrapper {
      */
     private static boolean libraryLoaded = false;
 
-    private static JniInchiWrapper inchiWrapper;
+    private static volatile JniInchiWrapper inchiWrapper;
 
-    private static final Lock lock = new ReentrantLock(true); 
+    /**
+     * Admission control for the native library.
+     */
+    private static final JniInchiLock lock = new JniInchiLock(MAX_LOCK_TIMEOUT, TimeUnit.SECONDS);
+
+    /**
+     * Engine that requests are delegated to, if set.
+     */
+    private static volatile JniInchiEngine engine;
+
+    /**
+     * Cache consulted by getInchiKey, if set.
+     */
+    private static volatile JniInchiCache<String, JniInchiOutputKey> inchiKeyCache;
+
+    /**
+     * Whether getInchiKey uses {@link JniInchiKeyGenerator} in place of the
+     * native library.
+     */
+    private static volatile boolean javaInchiKey = false;
+
+    /**
+     * Cache consulted by getInchi and getStdInchi, if set.
+     */
+    private static volatile JniInchiCache<JniInchiInputKey, JniInchiOutput> inchiCache;
+
+    /**
+     * Executor used by the *Async methods, created on first use if not set.
+     */
+    private static volatile JniInchiAsyncExecutor asyncExecutor;
+
+    /**
+     * Whether the loaded native code accepts packed structures.  Cleared on
+     * first use if an older native library is found.
+     */
+    private static volatile boolean packedSupported = true;
+
+    /**
+     * Whether the loaded native code reads structures from direct buffers.
+     * Cleared on first use if an older native library is found.
+     */
+    private static volatile boolean bufferSupported = true;
+
+    /**
+     * Whether the loaded native code can generate an InChI and its key in
+     * one call.  Cleared on first use if an older native library is found.
+     */
+    private static volatile boolean withKeySupported = true;
+
+    /**
+     * Whether the loaded native code can return the InChIKey hash
+     * extensions.  Cleared on first use if an older native library is found.
+     */
+    private static volatile boolean xtraSupported = true;
+
+    /**
+     * Whether the loaded native code can cancel calculations in progress.
+     * Cleared on first use if an older native library is found.
+     */
+    private static volatile boolean cancelSupported = true;
+
+    /**
+     * Native feature flag: the library honours the output field mask set
+     * with {@link JniInchiInput#setOutputFields(int)}.
+     */
+    static final int FEATURE_OUTPUT_FIELDS = 1;
+
+    /**
+     * Native feature flag: the library recognises the
+     * {@link INCHI_OPTION#NoLog} option.
+     */
+    static final int FEATURE_NO_LOG = 2;
+
+    /**
+     * Native feature flag: the library honours time-outs given in fractions
+     * of a second, see {@link JniInchiOptions#withTimeout(long, TimeUnit)}.
+     */
+    static final int FEATURE_MILLISECOND_TIMEOUT = 4;
+
+    /**
+     * Whether calls into the native library run without the lock.
+     */
+    private static volatile boolean concurrent = false;
 
     /**
      * Loads native library.
@@ -100,6 +186,26 @@ public class JniInchiWrapper {
         }
     }
 
+    /**
+     * Loads the native library from a file, in place of the copy located by
+     * jnati.  Used by {@link JniInchiLibraryPool} to give each isolated copy
+     * of this class its own library: the library is bound to the class
+     * loader of the class calling {@link System#load(String)}.
+     */
+    static synchronized void loadLibrary(File file) throws LoadNativeLibraryException {
+        if (!libraryLoaded) {
+            try {
+                System.load(file.getAbsolutePath());
+                checkNativeCodeVersion();
+                libraryLoaded = true;
+            } catch (UnsatisfiedLinkError e) {
+                throw new LoadNativeLibraryException(e);
+            } catch (NativeCodeException ex) {
+                throw new LoadNativeLibraryException(ex);
+            }
+        }
+    }
+
     /**
      * Checks the expected native code version has been loaded.
      * @throws NativeCodeException
@@ -123,13 +229,20 @@ public class JniInchiWrapper {
     }
 
 
-    private static synchronized JniInchiWrapper getWrapper() throws LoadNativeLibraryException {
-        if (inchiWrapper == null) {
-            loadLibrary();
-            init();
-            inchiWrapper = new JniInchiWrapper();
+    static JniInchiWrapper getWrapper() throws LoadNativeLibraryException {
+        JniInchiWrapper wrapper = inchiWrapper;
+        if (wrapper == null) {
+            synchronized (JniInchiWrapper.class) {
+                wrapper = inchiWrapper;
+                if (wrapper == null) {
+                    loadLibrary();
+                    init();
+                    wrapper = new JniInchiWrapper();
+                    inchiWrapper = wrapper;
+                }
+            }
         }
-        return inchiWrapper;
+        return wrapper;
     }
 
     /**
@@ -140,6 +253,234 @@ public class JniInchiWrapper {
     }
 
 
+    /**
+     * <p>Routes calculations through a pool of worker processes, allowing
+     * several to run at once.  Pass <code>null</code> to return to running
+     * calculations in this JVM.
+     *
+     * @param pool  Worker pool, or null
+     */
+    public static void setWorkerPool(JniInchiWorkerPool pool) {
+        engine = pool;
+    }
+
+    /**
+     * Returns the worker pool calculations are routed through, or null if
+     * they are run in this JVM.
+     */
+    public static JniInchiWorkerPool getWorkerPool() {
+        JniInchiEngine e = engine;
+        return e instanceof JniInchiWorkerPool ? (JniInchiWorkerPool) e : null;
+    }
+
+    /**
+     * <p>Routes calculations through an engine, such as a
+     * {@link JniInchiWorkerPool} or a {@link JniInchiLibraryPool}.  Pass
+     * <code>null</code> to return to calling the native library directly.
+     *
+     * @param e  Engine, or null
+     */
+    public static void setEngine(JniInchiEngine e) {
+        engine = e;
+    }
+
+    /**
+     * Returns the engine calculations are routed through, or null if the
+     * native library is called directly.
+     */
+    public static JniInchiEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * <p>Returns the admission control for the native library.  It may be
+     * used to set how long calls wait for the library and how many may
+     * queue for it, and to monitor waiting and rejected calls.  By default
+     * calls wait for up to 15 seconds, and the queue is unlimited.
+     *
+     * <p>Generating and checking InChIKeys, and non-strict InChI checks, do
+     * not use the library's global state, so do not take the lock and may
+     * run while an InChI is being generated.  If the native library is
+     * reentrant, {@link #setConcurrent(boolean)} stops all calls taking the
+     * lock.
+     */
+    public static JniInchiLock getNativeLock() {
+        return lock;
+    }
+
+    /**
+     * <p>Returns whether the native library keeps its working state per
+     * thread, so that calls may run concurrently.  Native libraries built
+     * before this was supported report false.
+     *
+     * @throws LoadNativeLibraryException
+     */
+    public static boolean isReentrant() throws LoadNativeLibraryException {
+        getWrapper();
+        try {
+            return IsReentrant();
+        } catch (UnsatisfiedLinkError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the native library supports a feature, one of the
+     * FEATURE_* flags.  These are features that a library built before them
+     * would silently ignore, rather than lacking an entry point for; such
+     * libraries report none.
+     */
+    static boolean hasFeature(int feature) throws LoadNativeLibraryException {
+        getWrapper();
+        try {
+            return (GetFeatures() & feature) != 0;
+        } catch (UnsatisfiedLinkError e) {
+            return false;
+        }
+    }
+
+    /**
+     * <p>Returns whether the native library can stop calculations in
+     * progress, as needed by {@link JniInchiCancellation} and the methods
+     * taking a deadline.  Native libraries built before this was supported
+     * report false, and those methods throw JniInchiException.
+     *
+     * @throws LoadNativeLibraryException
+     */
+    public static boolean isCancellationSupported() throws LoadNativeLibraryException {
+        getWrapper();
+        return setCancelFlag(null);
+    }
+
+    /**
+     * Returns whether the native library honours sub-second time-outs;
+     * false if it cannot be loaded.
+     */
+    static boolean isMillisecondTimeoutSupported() {
+        try {
+            return hasFeature(FEATURE_MILLISECOND_TIMEOUT);
+        } catch (LoadNativeLibraryException e) {
+            return false;
+        }
+    }
+
+    /**
+     * <p>Sets whether calls into the native library run concurrently, on
+     * the calling threads, rather than one at a time under the lock
+     * returned by {@link #getNativeLock()}.  The lock's timeout and queue
+     * limit do not apply to concurrent calls.
+     *
+     * @param concurrent  true to run calls concurrently
+     * @throws JniInchiException  if the native library is not reentrant
+     */
+    public static void setConcurrent(boolean concurrent) throws JniInchiException {
+        if (concurrent && !isReentrant()) {
+            throw new JniInchiException("Native library is not reentrant");
+        }
+        JniInchiWrapper.concurrent = concurrent;
+    }
+
+    /**
+     * Returns whether calls into the native library run concurrently.
+     */
+    public static boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * <p>Sets a cache of InChIKeys by InChI, consulted by
+     * {@link #getInchiKey(String)} before the native code is called.  Only
+     * successful results are cached.  Pass <code>null</code> to stop
+     * caching.
+     *
+     * @param cache  Cache, or null
+     */
+    public static void setInchiKeyCache(JniInchiCache<String, JniInchiOutputKey> cache) {
+        inchiKeyCache = cache;
+    }
+
+    /**
+     * Returns the InChIKey cache, or null if none is set.
+     */
+    public static JniInchiCache<String, JniInchiOutputKey> getInchiKeyCache() {
+        return inchiKeyCache;
+    }
+
+    /**
+     * <p>Sets whether {@link #getInchiKey(String)} generates keys in Java,
+     * with {@link JniInchiKeyGenerator}, rather than calling the native
+     * library.  The keys are the same, but are generated without taking the
+     * native library lock or routing through a worker pool, and without
+     * loading the native library at all.
+     *
+     * @param java  true to generate keys in Java
+     */
+    public static void setJavaInchiKey(boolean java) {
+        javaInchiKey = java;
+    }
+
+    /**
+     * Returns whether InChIKeys are generated in Java.
+     */
+    public static boolean isJavaInchiKey() {
+        return javaInchiKey;
+    }
+
+    /**
+     * <p>Sets a cache of InChI outputs, consulted by the getInchi and
+     * getStdInchi methods for {@link JniInchiInput}s and
+     * {@link JniInchiCompactStructure}s, and their batch forms, before the
+     * native code is called.  Inputs match only if all their atoms, bonds
+     * and stereo parities, in order, and their options are the same; see
+     * {@link JniInchiInputKey}.  Only successful and warning outputs are
+     * cached, and cached outputs are shared between callers.  Pass
+     * <code>null</code> to stop caching.
+     *
+     * @param cache  Cache, or null
+     */
+    public static void setInchiCache(JniInchiCache<JniInchiInputKey, JniInchiOutput> cache) {
+        inchiCache = cache;
+    }
+
+    /**
+     * Returns the InChI output cache, or null if none is set.
+     */
+    public static JniInchiCache<JniInchiInputKey, JniInchiOutput> getInchiCache() {
+        return inchiCache;
+    }
+
+    /**
+     * <p>Sets the executor used by the asynchronous methods, such as
+     * {@link #getInchiAsync(JniInchiInput)}.  Pass <code>null</code> to
+     * return to a default executor, with a queue of
+     * {@link JniInchiAsyncExecutor#DEFAULT_QUEUE_CAPACITY} requests that fails
+     * requests once it is full.  The previous executor is not shut down.
+     *
+     * @param executor  Executor, or null
+     */
+    public static void setAsyncExecutor(JniInchiAsyncExecutor executor) {
+        asyncExecutor = executor;
+    }
+
+    /**
+     * Returns the executor used by the asynchronous methods, creating the
+     * default one if none is set.
+     */
+    public static JniInchiAsyncExecutor getAsyncExecutor() {
+        JniInchiAsyncExecutor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (JniInchiAsyncExecutor.class) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    executor = new JniInchiAsyncExecutor();
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+
     /**
      * Checks and canonicalises options.
      *
@@ -168,7 +509,8 @@ public class JniInchiWrapper {
      *
      * @param ops          Space delimited string of options to pass to InChI library.
      *                     Each option may optionally be preceded by a command line
-     *                     switch (/ or -).
+     *                     switch (/ or -).  A time-out is given in seconds, such as
+     *                     W5 or W0.25.
      */
     protected static String checkOptions(final String ops) throws JniInchiException {
         if (ops == null) {
@@ -185,14 +527,17 @@ public class JniInchiWrapper {
             }
 
             INCHI_OPTION option = INCHI_OPTION.valueOfIgnoreCase(op);
+            long timeout;
             if (option != null) {
                 sbOptions.append(flagChar + option.name());
-                if (tok.hasMoreTokens()) {
-                     sbOptions.append(" ");
-                }
+            } else if ((timeout = JniInchiOptions.parseTimeout(op)) != JniInchiOptions.NO_TIMEOUT) {
+                sbOptions.append(flagChar + JniInchiOptions.formatTimeout(timeout));
             } else {
                 throw new JniInchiException("Unrecognised InChI option");
             }
+            if (tok.hasMoreTokens()) {
+                 sbOptions.append(" ");
+            }
         }
 
         return sbOptions.toString();
@@ -218,8 +563,11 @@ public class JniInchiWrapper {
      * <p><b>Other options:</b></p>
      * <pre>
      *  /AuxNone    Omit auxiliary information (default: Include)
-     *  /Wnumber    Set time-out per structure in seconds; W0 means unlimited
-     *              In InChI library the default value is unlimited
+     *  /NoLog      Do not build the log (default: Build)
+     *  /Wnumber    Set time-out per structure in seconds, e.g. /W5 or /W0.25;
+     *              W0 means unlimited.  In InChI library the default value is
+     *              unlimited.  A structure that runs out of time returns
+     *              INCHI_RET.TIMEOUT
      *  /OutputSDF  Output SDfile instead of InChI
      *  /WarnOnEmptyStructure
      *              Warn and produce empty InChI for empty structure
@@ -235,13 +583,7 @@ public class JniInchiWrapper {
         if (input == null) {
             throw new IllegalArgumentException("Null input");
         }
-        JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
-        try {
-            return wrapper.GetINCHI(input);
-        } finally {
-            lock.unlock();
-        }
+        return getInchi(input, false);
     }
 
 
@@ -258,13 +600,558 @@ public class JniInchiWrapper {
         if (input == null) {
             throw new IllegalArgumentException("Null input");
         }
+        return getInchi(input, true);
+    }
+
+
+    /**
+     * <p>Generates the InChI for a chemical structure, as
+     * {@link #getInchi(JniInchiInput)}, stopping if the cancellation is
+     * cancelled first.  A stopped calculation returns
+     * {@link INCHI_RET#TIMEOUT}.</p>
+     *
+     * <p>Where an engine is set, the cancellation is only checked before the
+     * request is passed to it.</p>
+     *
+     * @param input
+     * @param cancellation
+     * @return
+     * @throws JniInchiException  including where the native library cannot
+     *          stop calculations, see {@link #isCancellationSupported()}
+     */
+    public static JniInchiOutput getInchi(JniInchiInput input, JniInchiCancellation cancellation) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        if (cancellation == null) {
+            throw new IllegalArgumentException("Null cancellation");
+        }
+        return getInchi(input, false, cancellation);
+    }
+
+
+    /**
+     * Calculates the Standard InChI string for a chemical structure, as
+     * {@link #getStdInchi(JniInchiInput)}, stopping if the cancellation is
+     * cancelled first.
+     * @see #getInchi(JniInchiInput, JniInchiCancellation)
+     */
+    public static JniInchiOutput getStdInchi(JniInchiInput input, JniInchiCancellation cancellation) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        if (cancellation == null) {
+            throw new IllegalArgumentException("Null cancellation");
+        }
+        return getInchi(input, true, cancellation);
+    }
+
+
+    /**
+     * <p>Generates the InChI for a chemical structure, as
+     * {@link #getInchi(JniInchiInput)}, within a deadline.  Once the time
+     * has passed the calculation is stopped, or if it is still waiting for
+     * the native library is not started, and returns
+     * {@link INCHI_RET#TIMEOUT}.</p>
+     *
+     * <p>Unlike the <tt>-W</tt> option, which the library measures from the
+     * start of each structure's canonicalisation, the deadline is measured
+     * from this call.</p>
+     *
+     * @see #getInchi(JniInchiInput, JniInchiCancellation)
+     */
+    public static JniInchiOutput getInchi(JniInchiInput input, long timeout, TimeUnit unit) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return getInchi(input, false, timeout, unit);
+    }
+
+
+    /**
+     * Calculates the Standard InChI string for a chemical structure, as
+     * {@link #getStdInchi(JniInchiInput)}, within a deadline.
+     * @see #getInchi(JniInchiInput, long, TimeUnit)
+     */
+    public static JniInchiOutput getStdInchi(JniInchiInput input, long timeout, TimeUnit unit) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return getInchi(input, true, timeout, unit);
+    }
+
+
+    private static JniInchiOutput getInchi(JniInchiInput input, boolean std, long timeout, TimeUnit unit) throws JniInchiException {
+        JniInchiCancellation cancellation = new JniInchiCancellation();
+        ScheduledFuture<?> deadline = cancellation.schedule(timeout, unit);
+        try {
+            return getInchi(input, std, cancellation);
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+
+    /**
+     * <p>Calculates the Standard InChI string for a chemical structure, and
+     * its InChIKey.</p>
+     *
+     * <p>Equivalent to calling {@link #getStdInchi(JniInchiInput)} and then
+     * {@link #getInchiKey(String)} on the InChI, but where no engine or cache
+     * is set both are calculated in a single native call, under one
+     * acquisition of the lock.</p>
+     *
+     * @param input
+     * @return  Output, with a null key output if no InChI was generated
+     * @throws JniInchiException
+     */
+    public static JniInchiOutputWithKey getStdInchiWithKey(JniInchiInput input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        if (engine != null || inchiCache != null || inchiKeyCache != null || javaInchiKey) {
+            JniInchiOutput output = getStdInchi(input);
+            return new JniInchiOutputWithKey(output, hasInchi(output) ? getInchiKey(output.getInchi()) : null);
+        }
         JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
+        JniInchiPackedStructure packed = packedSupported ? new JniInchiPackedStructure(input) : null;
+        boolean locked = getLock();
         try {
-            return wrapper.GetStdINCHI(input);
+            if (packed != null && withKeySupported) {
+                try {
+                    return wrapper.GetStdINCHIWithKeyPacked(packed);
+                } catch (UnsatisfiedLinkError e) {
+                    withKeySupported = false;
+                }
+            }
+            JniInchiOutput output = null;
+            if (packed != null && packedSupported) {
+                try {
+                    output = wrapper.GetINCHIPacked(packed, true);
+                } catch (UnsatisfiedLinkError e) {
+                    packedSupported = false;
+                }
+            }
+            if (output == null) {
+                output = wrapper.GetStdINCHI(input);
+            }
+            return new JniInchiOutputWithKey(output, hasInchi(output) ? wrapper.GetStdINCHIKeyFromStdINCHI(output.getInchi()) : null);
         } finally {
-            lock.unlock();
+            releaseLock(locked);
+        }
+    }
+
+    private static boolean hasInchi(JniInchiOutput output) {
+        return (output.getReturnStatus() == INCHI_RET.OKAY || output.getReturnStatus() == INCHI_RET.WARNING)
+                && output.getInchi() != null;
+    }
+
+
+    /**
+     * <p>Generates InChIs for a list of chemical structures.</p>
+     *
+     * <p>Equivalent to calling {@link #getInchi(JniInchiInput)} for each
+     * input in turn, but the lock is acquired once and the whole list is
+     * passed to the native code in a single call, which avoids the per-call
+     * overhead when processing many small structures.</p>
+     *
+     * @param inputs
+     * @return  Outputs, in the same order as the inputs
+     * @throws JniInchiException
+     */
+    public static JniInchiOutput[] getInchiBatch(List<JniInchiInput> inputs) throws JniInchiException {
+        return getInchiBatch(inputs, false);
+    }
+
+
+    /**
+     * <p>Calculates Standard InChIs for a list of chemical structures.</p>
+     *
+     * <p>Equivalent to calling {@link #getStdInchi(JniInchiInput)} for each
+     * input in turn, but the lock is acquired once and the whole list is
+     * passed to the native code in a single call.</p>
+     *
+     * @param inputs
+     * @return  Outputs, in the same order as the inputs
+     * @throws JniInchiException
+     */
+    public static JniInchiOutput[] getStdInchiBatch(List<JniInchiInput> inputs) throws JniInchiException {
+        return getInchiBatch(inputs, true);
+    }
+
+
+    private static JniInchiOutput[] getInchiBatch(List<JniInchiInput> inputs, boolean std) throws JniInchiException {
+        if (inputs == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        JniInchiInput[] array = inputs.toArray(new JniInchiInput[inputs.size()]);
+        for (JniInchiInput input : array) {
+            if (input == null) {
+                throw new IllegalArgumentException("Null input");
+            }
+        }
+        JniInchiCache<JniInchiInputKey, JniInchiOutput> cache = inchiCache;
+        if (cache == null) {
+            return calculateInchiBatch(array, null, std);
+        }
+
+        // Look up each input, calculating each distinct miss once
+        JniInchiOutput[] outputs = new JniInchiOutput[array.length];
+        JniInchiInputKey[] keys = new JniInchiInputKey[array.length];
+        Map<JniInchiInputKey, Integer> misses = new LinkedHashMap<JniInchiInputKey, Integer>();
+        List<JniInchiPackedStructure> missPacked = new ArrayList<JniInchiPackedStructure>();
+        for (int i = 0; i < array.length; i++) {
+            JniInchiPackedStructure packed = new JniInchiPackedStructure(array[i]);
+            keys[i] = new JniInchiInputKey(packed, std);
+            if (misses.containsKey(keys[i])) {
+                continue;
+            }
+            outputs[i] = cache.get(keys[i]);
+            if (outputs[i] == null) {
+                misses.put(keys[i], i);
+                missPacked.add(packed);
+            }
+        }
+        if (!misses.isEmpty()) {
+            JniInchiInput[] missInputs = new JniInchiInput[misses.size()];
+            int j = 0;
+            for (int i : misses.values()) {
+                missInputs[j++] = array[i];
+            }
+            JniInchiOutput[] missOutputs = calculateInchiBatch(missInputs,
+                    missPacked.toArray(new JniInchiPackedStructure[missInputs.length]), std);
+            j = 0;
+            for (JniInchiInputKey key : misses.keySet()) {
+                cacheOutput(cache, key, missOutputs[j++]);
+            }
+            j = 0;
+            for (int i : misses.values()) {
+                outputs[i] = missOutputs[j++];
+            }
+            for (int i = 0; i < array.length; i++) {
+                if (outputs[i] == null) {
+                    outputs[i] = outputs[misses.get(keys[i])];
+                }
+            }
+        }
+        return outputs;
+    }
+
+
+    /**
+     * Runs a batch of calculations, in worker processes if a pool is set,
+     * otherwise in a single native call.
+     *
+     * @param packed  Inputs already packed, or null
+     */
+    private static JniInchiOutput[] calculateInchiBatch(JniInchiInput[] array, JniInchiPackedStructure[] packed, boolean std) throws JniInchiException {
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            JniInchiOutput[] outputs = new JniInchiOutput[array.length];
+            for (int i = 0; i < array.length; i++) {
+                outputs[i] = std ? pool.getStdInchi(array[i]) : pool.getInchi(array[i]);
+            }
+            return outputs;
+        }
+        JniInchiWrapper wrapper = getWrapper();
+        if (packed == null) {
+            packed = new JniInchiPackedStructure[array.length];
+            for (int i = 0; i < array.length; i++) {
+                packed[i] = new JniInchiPackedStructure(array[i]);
+            }
+        }
+        boolean locked = getLock();
+        try {
+            if (packedSupported) {
+                try {
+                    return wrapper.GetINCHIBatch(packed, std);
+                } catch (UnsatisfiedLinkError e) {
+                    packedSupported = false;
+                }
+            }
+            JniInchiOutput[] outputs = new JniInchiOutput[array.length];
+            for (int i = 0; i < array.length; i++) {
+                outputs[i] = std ? wrapper.GetStdINCHI(array[i]) : wrapper.GetINCHI(array[i]);
+            }
+            return outputs;
+        } finally {
+            releaseLock(locked);
+        }
+    }
+
+
+    /**
+     * Generates an InChI, returning a cached output if the same input has
+     * been seen before.
+     */
+    private static JniInchiOutput getInchi(JniInchiInput input, boolean std) throws JniInchiException {
+        return getInchi(input, std, null);
+    }
+
+
+    /**
+     * @param cancellation  Cancellation of the calculation, or null
+     */
+    private static JniInchiOutput getInchi(JniInchiInput input, boolean std, JniInchiCancellation cancellation) throws JniInchiException {
+        JniInchiCache<JniInchiInputKey, JniInchiOutput> cache = inchiCache;
+        if (cache == null) {
+            return calculateInchi(input, null, std, cancellation);
+        }
+        JniInchiPackedStructure packed = new JniInchiPackedStructure(input);
+        JniInchiInputKey key = new JniInchiInputKey(packed, std);
+        JniInchiOutput output = cache.get(key);
+        if (output == null) {
+            output = calculateInchi(input, packed, std, cancellation);
+            cacheOutput(cache, key, output);
+        }
+        return output;
+    }
+
+
+    /**
+     * Generates an InChI, in a worker process if a pool is set, otherwise
+     * passing the structure to the native code in packed form where
+     * supported.  The structure is packed before the lock is taken.
+     *
+     * @param packed  Input already packed, or null
+     * @param cancellation  Cancellation of the calculation, or null
+     */
+    private static JniInchiOutput calculateInchi(JniInchiInput input, JniInchiPackedStructure packed, boolean std,
+            JniInchiCancellation cancellation) throws JniInchiException {
+        if (cancellation != null && cancellation.isCancelled()) {
+            return getCancelledOutput();
+        }
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            return std ? pool.getStdInchi(input) : pool.getInchi(input);
+        }
+        JniInchiWrapper wrapper = getWrapper();
+        if (packed == null && packedSupported) {
+            packed = new JniInchiPackedStructure(input);
+        }
+        boolean locked = getLock();
+        boolean cancellable = false;
+        try {
+            if (cancellation != null) {
+                if (cancellation.isCancelled()) {
+                    return getCancelledOutput();
+                }
+                if (!setCancelFlag(cancellation.flag)) {
+                    throw new JniInchiException("Cancellation not supported by native library");
+                }
+                cancellable = true;
+            }
+            if (packed != null && packedSupported) {
+                try {
+                    return wrapper.GetINCHIPacked(packed, std);
+                } catch (UnsatisfiedLinkError e) {
+                    packedSupported = false;
+                }
+            }
+            return std ? wrapper.GetStdINCHI(input) : wrapper.GetINCHI(input);
+        } finally {
+            if (cancellable) {
+                setCancelFlag(null);
+            }
+            releaseLock(locked);
+        }
+    }
+
+
+    /**
+     * Points the native calculations made on this thread at a cancellation
+     * flag, or at none if null.
+     * @return  whether the native code supports cancellation
+     */
+    private static boolean setCancelFlag(ByteBuffer flag) {
+        if (cancelSupported) {
+            try {
+                SetCancelFlag(flag);
+                return true;
+            } catch (UnsatisfiedLinkError e) {
+                cancelSupported = false;
+            }
+        }
+        return false;
+    }
+
+
+    private static JniInchiOutput getCancelledOutput() {
+        return new JniInchiOutput(INCHI_RET.TIMEOUT, null, null, INCHI_RET.TIMEOUT_MESSAGE, "");
+    }
+
+
+    /**
+     * Caches an output, unless it may not be repeatable: errors include
+     * time-outs, so only successful outputs are kept.
+     */
+    private static void cacheOutput(JniInchiCache<JniInchiInputKey, JniInchiOutput> cache, JniInchiInputKey key, JniInchiOutput output) {
+        if (output.getReturnStatus() == INCHI_RET.OKAY || output.getReturnStatus() == INCHI_RET.WARNING) {
+            cache.put(key, output);
+        }
+    }
+
+
+    /**
+     * <p>Generates the InChI for a structure encoded in the binary layout
+     * described in {@link JniInchiStructureBuffer}.</p>
+     *
+     * <p>The structure is read from the buffer's position, which is left
+     * unchanged.  A direct buffer is read in place by the native code,
+     * without creating any per-atom Java objects; other buffers are decoded
+     * into a {@link JniInchiInput} first.</p>
+     *
+     * @param structure  Encoded structure, in native byte order
+     * @param options    Options, as for {@link #getInchi(JniInchiInput)}
+     * @return
+     * @throws JniInchiException
+     */
+    public static JniInchiOutput getInchi(ByteBuffer structure, String options) throws JniInchiException {
+        return getInchi(structure, options, false);
+    }
+
+
+    /**
+     * <p>Calculates the Standard InChI string for a structure encoded in the
+     * binary layout described in {@link JniInchiStructureBuffer}.</p>
+     *
+     * @param structure  Encoded structure, in native byte order
+     * @param options    Options, as for {@link #getStdInchi(JniInchiInput)}
+     * @return
+     * @throws JniInchiException
+     * @see #getInchi(ByteBuffer, String)
+     */
+    public static JniInchiOutput getStdInchi(ByteBuffer structure, String options) throws JniInchiException {
+        return getInchi(structure, options, true);
+    }
+
+
+    private static JniInchiOutput getInchi(ByteBuffer structure, String options, boolean std) throws JniInchiException {
+        if (structure == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        String opts = checkOptions(options);
+        int length = JniInchiStructureBuffer.getEncodedSize(structure);
+        if (structure.isDirect() && engine == null && bufferSupported) {
+            JniInchiWrapper wrapper = getWrapper();
+            boolean locked = getLock();
+            try {
+                return wrapper.GetINCHIBuffer(structure, structure.position(), length, opts, std);
+            } catch (UnsatisfiedLinkError e) {
+                bufferSupported = false;
+            } finally {
+                releaseLock(locked);
+            }
+        }
+        JniInchiInput input = JniInchiStructureBuffer.decode(structure, options);
+        return std ? getStdInchi(input) : getInchi(input);
+    }
+
+
+    /**
+     * <p>Generates the InChI for a compact structure.</p>
+     *
+     * <p>The structure's arrays are passed to the native code as they stand,
+     * without creating any atom or bond objects.</p>
+     *
+     * @param structure
+     * @param options    Options, as for {@link #getInchi(JniInchiInput)}
+     * @return
+     * @throws JniInchiException
+     */
+    public static JniInchiOutput getInchi(JniInchiCompactStructure structure, String options) throws JniInchiException {
+        return getInchi(structure, options, false);
+    }
+
+
+    /**
+     * <p>Calculates the Standard InChI string for a compact structure.</p>
+     *
+     * @param structure
+     * @param options    Options, as for {@link #getStdInchi(JniInchiInput)}
+     * @return
+     * @throws JniInchiException
+     * @see #getInchi(JniInchiCompactStructure, String)
+     */
+    public static JniInchiOutput getStdInchi(JniInchiCompactStructure structure, String options) throws JniInchiException {
+        return getInchi(structure, options, true);
+    }
+
+
+    /**
+     * <p>Generates the InChI for a compact structure, with options validated
+     * in advance.</p>
+     *
+     * @param structure
+     * @param options    Options, as for {@link #getInchi(JniInchiInput)}
+     * @return
+     * @throws JniInchiException
+     * @see #getInchi(JniInchiCompactStructure, String)
+     */
+    public static JniInchiOutput getInchi(JniInchiCompactStructure structure, JniInchiOptions options) throws JniInchiException {
+        return getInchi(structure, options, false);
+    }
+
+
+    /**
+     * <p>Calculates the Standard InChI string for a compact structure, with
+     * options validated in advance.</p>
+     *
+     * @param structure
+     * @param options    Options, as for {@link #getStdInchi(JniInchiInput)}
+     * @return
+     * @throws JniInchiException
+     * @see #getInchi(JniInchiCompactStructure, String)
+     */
+    public static JniInchiOutput getStdInchi(JniInchiCompactStructure structure, JniInchiOptions options) throws JniInchiException {
+        return getInchi(structure, options, true);
+    }
+
+
+    private static JniInchiOutput getInchi(JniInchiCompactStructure structure, String options, boolean std) throws JniInchiException {
+        if (structure == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        return getInchi(structure, JniInchiOptions.parse(options), std);
+    }
+
+
+    private static JniInchiOutput getInchi(JniInchiCompactStructure structure, JniInchiOptions options, boolean std) throws JniInchiException {
+        if (structure == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("Null options");
         }
+        JniInchiPackedStructure packed = structure.pack(options);
+        JniInchiCache<JniInchiInputKey, JniInchiOutput> cache = inchiCache;
+        JniInchiInputKey key = null;
+        if (cache != null) {
+            key = new JniInchiInputKey(packed, std);
+            JniInchiOutput output = cache.get(key);
+            if (output != null) {
+                return output;
+            }
+        }
+        JniInchiOutput output = null;
+        if (engine == null && packedSupported) {
+            JniInchiWrapper wrapper = getWrapper();
+            boolean locked = getLock();
+            try {
+                output = wrapper.GetINCHIPacked(packed, std);
+            } catch (UnsatisfiedLinkError e) {
+                packedSupported = false;
+            } finally {
+                releaseLock(locked);
+            }
+        }
+        if (output == null) {
+            output = calculateInchi(new JniInchiInput(structure.toStructure(), options), null, std, null);
+        }
+        if (key != null) {
+            cacheOutput(cache, key, output);
+        }
+        return output;
     }
 
 
@@ -281,12 +1168,16 @@ public class JniInchiWrapper {
         if (input == null) {
             throw new IllegalArgumentException("Null input");
         }
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            return pool.getInchiFromInchi(input);
+        }
         JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
+        boolean locked = getLock();
         try {
             return wrapper.GetINCHIfromINCHI(input.getInchi(), input.getOptions());
         } finally {
-            lock.unlock();
+            releaseLock(locked);
         }
     }
 
@@ -300,33 +1191,99 @@ public class JniInchiWrapper {
         if (input == null) {
             throw new IllegalArgumentException("Null input");
         }
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            return pool.getStructureFromInchi(input);
+        }
         JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
+        boolean locked = getLock();
         try {
             return wrapper.GetStructFromINCHI(input.getInchi(), input.getOptions());
         } finally {
-            lock.unlock();
+            releaseLock(locked);
         }
     }
 
 
     /**
-     * Calculates the InChIKey for an InChI string.
+     * Calculates the InChIKey for an InChI string.  If an InChIKey cache is
+     * set, it is checked first, without taking the native library lock.
      * @param inchi     source InChI string
      * @return  InChIKey output
      * @throws  JniInchiException
+     * @see #setInchiKeyCache(JniInchiCache)
+     * @see #setJavaInchiKey(boolean)
      */
     public static JniInchiOutputKey getInchiKey(final String inchi) throws JniInchiException {
         if (inchi == null) {
             throw new IllegalArgumentException("Null InChI");
         }
+        JniInchiCache<String, JniInchiOutputKey> cache = inchiKeyCache;
+        if (cache != null) {
+            JniInchiOutputKey key = cache.get(inchi);
+            if (key == null) {
+                key = calculateInchiKey(inchi);
+                if (key.getReturnStatus() == INCHI_KEY.OK) {
+                    cache.put(inchi, key);
+                }
+            }
+            return key;
+        }
+        return calculateInchiKey(inchi);
+    }
+
+    private static JniInchiOutputKey calculateInchiKey(final String inchi) throws JniInchiException {
+        if (javaInchiKey) {
+            return JniInchiKeyGenerator.getInchiKey(inchi);
+        }
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            return pool.getInchiKey(inchi);
+        }
+        // Thread safe, no lock needed
+        return getWrapper().GetINCHIKeyFromINCHI(inchi);
+    }
+
+    /**
+     * <p>Calculates the InChIKey for an InChI string, optionally with the
+     * hash extensions: the remaining bits of the SHA-256 hashes of the major
+     * and minor InChI blocks, returned by {@link JniInchiOutputKey#getXtra1()}
+     * and {@link JniInchiOutputKey#getXtra2()}.  Each extension costs an
+     * extra pass over the hashed block, so request them only when a
+     * collision-resistant identifier is needed;
+     * {@link #getInchiKey(String)} calculates neither.</p>
+     *
+     * <p>The InChIKey cache is not consulted when an extension is requested.
+     * If an engine is set, or the native library predates this method, the
+     * key is generated by {@link JniInchiKeyGenerator}, which gives the same
+     * results.</p>
+     *
+     * @param inchi     source InChI string
+     * @param xtra1     whether to return the major block hash extension
+     * @param xtra2     whether to return the minor block hash extension
+     * @return  InChIKey output
+     * @throws  JniInchiException
+     */
+    public static JniInchiOutputKey getInchiKey(final String inchi, final boolean xtra1, final boolean xtra2) throws JniInchiException {
+        if (!xtra1 && !xtra2) {
+            return getInchiKey(inchi);
+        }
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        if (javaInchiKey || engine != null) {
+            return JniInchiKeyGenerator.getInchiKey(inchi, xtra1, xtra2);
+        }
         JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
-        try {
-            return wrapper.GetINCHIKeyFromINCHI(inchi);
-        } finally {
-            lock.unlock();
+        if (xtraSupported) {
+            try {
+                // Thread safe, no lock needed
+                return wrapper.GetINCHIKeyFromINCHIXtra(inchi, xtra1, xtra2);
+            } catch (UnsatisfiedLinkError e) {
+                xtraSupported = false;
+            }
         }
+        return JniInchiKeyGenerator.getInchiKey(inchi, xtra1, xtra2);
     }
 
 
@@ -340,18 +1297,17 @@ public class JniInchiWrapper {
         if (key == null) {
             throw new IllegalArgumentException("Null InChI key");
         }
-        JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
-        try {
-            int ret = wrapper.CheckINCHIKey(key);
-            INCHI_KEY_STATUS retStatus = INCHI_KEY_STATUS.getValue(ret);
-            if (retStatus == null) {
-                throw new JniInchiException("Unknown return status: " + ret);
-            }
-            return retStatus;
-        } finally {
-            lock.unlock();
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            return pool.checkInchiKey(key);
         }
+        // Thread safe, no lock needed
+        int ret = getWrapper().CheckINCHIKey(key);
+        INCHI_KEY_STATUS retStatus = INCHI_KEY_STATUS.getValue(ret);
+        if (retStatus == null) {
+            throw new JniInchiException("Unknown return status: " + ret);
+        }
+        return retStatus;
     }
 
 
@@ -368,43 +1324,134 @@ public class JniInchiWrapper {
         if (inchi == null) {
             throw new IllegalArgumentException("Null InChI");
         }
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            return pool.checkInchi(inchi, strict);
+        }
         JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
-        try {
-            int ret = wrapper.CheckINCHI(inchi, strict);
-            INCHI_STATUS retStatus = INCHI_STATUS.getValue(ret);
-            if (retStatus == null) {
-                throw new JniInchiException("Unknown return status: " + ret);
+        int ret;
+        if (strict) {
+            // Converts the InChI, so needs the lock
+            boolean locked = getLock();
+            try {
+                ret = wrapper.CheckINCHI(inchi, true);
+            } finally {
+                releaseLock(locked);
             }
-            return retStatus;
-        } finally {
-            lock.unlock();
+        } else {
+            // Layout check is thread safe, no lock needed
+            ret = wrapper.CheckINCHI(inchi, false);
         }
+        INCHI_STATUS retStatus = INCHI_STATUS.getValue(ret);
+        if (retStatus == null) {
+            throw new JniInchiException("Unknown return status: " + ret);
+        }
+        return retStatus;
     }
 
     public static JniInchiInputData getInputFromAuxInfo(String auxInfo) throws JniInchiException {
         if (auxInfo == null) {
             throw new IllegalArgumentException("Null AuxInfo");
         }
+        JniInchiEngine pool = engine;
+        if (pool != null) {
+            return pool.getInputFromAuxInfo(auxInfo);
+        }
         JniInchiWrapper wrapper = getWrapper();
-        wrapper.getLock();
+        boolean locked = getLock();
         try {
             return wrapper.GetINCHIInputFromAuxInfo(auxInfo, false, false);
         } finally {
-            lock.unlock();
+            releaseLock(locked);
         }
     }
 
 
-    private static synchronized void getLock() throws JniInchiException {
-        try {
-            if (!lock.tryLock(MAX_LOCK_TIMEOUT, TimeUnit.SECONDS)) {
-                throw new TimeoutException("Unable to get lock");
-            }
-        } catch (TimeoutException ex) {
-            throw new JniInchiException(ex);
-        } catch (InterruptedException ex) {
-            throw new JniInchiException(ex);
+    /**
+     * <p>Generates the InChI for a chemical structure asynchronously, on the
+     * executor returned by {@link #getAsyncExecutor()}.  The calling thread
+     * does not wait for the native library lock; failures, including a
+     * full queue, complete the future exceptionally.
+     *
+     * @param input
+     * @return  Future of the InChI output
+     */
+    public static CompletableFuture<JniInchiOutput> getInchiAsync(JniInchiInput input) {
+        return getAsyncExecutor().getInchi(input);
+    }
+
+    /**
+     * Generates the standard InChI for a chemical structure asynchronously.
+     * @see #getInchiAsync(JniInchiInput)
+     */
+    public static CompletableFuture<JniInchiOutput> getStdInchiAsync(JniInchiInput input) {
+        return getAsyncExecutor().getStdInchi(input);
+    }
+
+    /**
+     * Converts an InChI into an InChI for validation purposes asynchronously.
+     * @see #getInchiAsync(JniInchiInput)
+     */
+    public static CompletableFuture<JniInchiOutput> getInchiFromInchiAsync(JniInchiInputInchi input) {
+        return getAsyncExecutor().getInchiFromInchi(input);
+    }
+
+    /**
+     * Generates a chemical structure from an InChI asynchronously.
+     * @see #getInchiAsync(JniInchiInput)
+     */
+    public static CompletableFuture<JniInchiOutputStructure> getStructureFromInchiAsync(JniInchiInputInchi input) {
+        return getAsyncExecutor().getStructureFromInchi(input);
+    }
+
+    /**
+     * Calculates the InChIKey for an InChI string asynchronously.
+     * @see #getInchiAsync(JniInchiInput)
+     */
+    public static CompletableFuture<JniInchiOutputKey> getInchiKeyAsync(String inchi) {
+        return getAsyncExecutor().getInchiKey(inchi);
+    }
+
+    /**
+     * Checks whether a string represents valid InChIKey asynchronously.
+     * @see #getInchiAsync(JniInchiInput)
+     */
+    public static CompletableFuture<INCHI_KEY_STATUS> checkInchiKeyAsync(String key) {
+        return getAsyncExecutor().checkInchiKey(key);
+    }
+
+    /**
+     * Checks whether a string represents valid InChI asynchronously.
+     * @see #getInchiAsync(JniInchiInput)
+     */
+    public static CompletableFuture<INCHI_STATUS> checkInchiAsync(String inchi, boolean strict) {
+        return getAsyncExecutor().checkInchi(inchi, strict);
+    }
+
+    /**
+     * Reads a structure from an AuxInfo string asynchronously.
+     * @see #getInchiAsync(JniInchiInput)
+     */
+    public static CompletableFuture<JniInchiInputData> getInputFromAuxInfoAsync(String auxInfo) {
+        return getAsyncExecutor().getInputFromAuxInfo(auxInfo);
+    }
+
+
+    /**
+     * Takes the native library lock, unless calls run concurrently.
+     * @return  whether the lock was taken, to pass to {@link #releaseLock(boolean)}
+     */
+    static boolean getLock() throws JniInchiException {
+        if (concurrent) {
+            return false;
+        }
+        lock.lock();
+        return true;
+    }
+
+    static void releaseLock(boolean locked) {
+        if (locked) {
+            lock.unlock();
         }
     }
 
@@ -414,17 +1461,33 @@ public class JniInchiWrapper {
 
     private native static void init();
 
+    private native static boolean IsReentrant();
+
+    private native static int GetFeatures();
+
+    private native static void SetCancelFlag(ByteBuffer flag);
+
 
     private native JniInchiOutput GetINCHI(JniInchiInput input);
 
     private native JniInchiOutput GetStdINCHI(JniInchiInput input);
 
+    private native JniInchiOutput GetINCHIPacked(JniInchiPackedStructure input, boolean std);
+
+    private native JniInchiOutputWithKey GetStdINCHIWithKeyPacked(JniInchiPackedStructure input);
+
+    private native JniInchiOutput[] GetINCHIBatch(JniInchiPackedStructure[] inputs, boolean std);
+
+    private native JniInchiOutput GetINCHIBuffer(ByteBuffer structure, int offset, int length, String options, boolean std);
+
     private native JniInchiOutput GetINCHIfromINCHI(String inchi, String options);
 
     private native JniInchiOutputStructure GetStructFromINCHI(String inchi, String options);
 
     private native JniInchiOutputKey GetINCHIKeyFromINCHI(String inchi);
 
+    private native JniInchiOutputKey GetINCHIKeyFromINCHIXtra(String inchi, boolean xtra1, boolean xtra2);
+
     private native JniInchiOutputKey GetStdINCHIKeyFromStdINCHI(String inchi);
 
     private native int CheckINCHIKey(String key);
@@ -433,4 +1496,23 @@ public class JniInchiWrapper {
 
     private native JniInchiInputData GetINCHIInputFromAuxInfo(String auxInfo, boolean bDoNotAddH, boolean bDiffUnkUndfStereo);
 
+
+    // Staged generation, used by JniInchiGenerator
+
+    native long INCHIGENCreate();
+
+    native int INCHIGENSetup(long generator, JniInchiPackedStructure input, boolean std);
+
+    native int INCHIGENDoNormalization(long generator);
+
+    native int INCHIGENDoCanonicalization(long generator);
+
+    native JniInchiOutput INCHIGENDoSerialization(long generator);
+
+    native int INCHIGENGetNumComponents(long generator, boolean reconnected);
+
+    native boolean INCHIGENGetNormAtoms(long generator, int component, boolean reconnected, boolean tautomeric, JniInchiStructure output);
+
+    native void INCHIGENDestroy(long generator);
+
 }
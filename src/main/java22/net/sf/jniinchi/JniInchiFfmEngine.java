@@ -0,0 +1,463 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT_UNALIGNED;
+import static net.sf.jniinchi.JniInchiStructureBuffer.*;
+
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * <p>Calls the InChI library through the Foreign Function &amp; Memory API
+ * (<tt>java.lang.foreign</tt>), in place of the JNI glue in
+ * <tt>JniInchiWrapper.c</tt>.  Structures are laid out as
+ * <tt>inchi_Atom</tt> arrays in off-heap memory, in the encoding of
+ * {@link JniInchiStructureBuffer}, and passed straight to the library; no
+ * JNI upcalls are made.
+ *
+ * <p>The engine calls the same library as {@link JniInchiWrapper}, so takes
+ * the wrapper's library lock wherever the wrapper would.  The JVM warns about restricted methods unless started
+ * with <tt>--enable-native-access</tt>.
+ *
+ * @author Sam Adams
+ */
+public class JniInchiFfmEngine implements JniInchiEngine {
+
+    private static final Linker LINKER = Linker.nativeLinker();
+
+    // Sizes of a pointer and a C long, which vary between platforms
+    private static final long P = ADDRESS.byteSize();
+    private static final long L = LINKER.canonicalLayouts().get("long").byteSize();
+
+    // inchi_Input
+    private static final long INPUT_ATOM = 0;
+    private static final long INPUT_STEREO0D = P;
+    private static final long INPUT_OPTIONS = 2 * P;
+    private static final long INPUT_NUM_ATOMS = 3 * P;
+    private static final long INPUT_NUM_STEREO0D = 3 * P + 2;
+    private static final long INPUT_SIZE = align(3 * P + 4, P);
+
+    // inchi_Output
+    private static final long OUTPUT_INCHI = 0;
+    private static final long OUTPUT_AUX_INFO = P;
+    private static final long OUTPUT_MESSAGE = 2 * P;
+    private static final long OUTPUT_LOG = 3 * P;
+    private static final long OUTPUT_SIZE = 4 * P;
+
+    // inchi_InputINCHI
+    private static final long INPUT_INCHI_INCHI = 0;
+    private static final long INPUT_INCHI_OPTIONS = P;
+    private static final long INPUT_INCHI_SIZE = 2 * P;
+
+    // inchi_OutputStruct
+    private static final long STRUCT_ATOM = 0;
+    private static final long STRUCT_STEREO0D = P;
+    private static final long STRUCT_NUM_ATOMS = 2 * P;
+    private static final long STRUCT_NUM_STEREO0D = 2 * P + 2;
+    private static final long STRUCT_MESSAGE = align(2 * P + 4, P);
+    private static final long STRUCT_LOG = STRUCT_MESSAGE + P;
+    private static final long STRUCT_WARNING_FLAGS = align(STRUCT_LOG + P, L);
+    private static final long STRUCT_SIZE = align(STRUCT_WARNING_FLAGS + 4 * L, Math.max(P, L));
+
+    // InchiInpData
+    private static final int STR_ERR_LEN = 256;
+    private static final long DATA_INPUT = 0;
+    private static final long DATA_CHIRAL = P;
+    private static final long DATA_ERR_MSG = P + 4;
+    private static final long DATA_SIZE = align(P + 4 + STR_ERR_LEN, P);
+
+    // Buffer sizes for GetINCHIKeyFromINCHI, from inchi_api.h
+    private static final int KEY_SIZE = 28;
+    private static final int XTRA_SIZE = 65;
+
+    private final MethodHandle getInchi;
+    private final MethodHandle getStdInchi;
+    private final MethodHandle freeInchi;
+    private final MethodHandle freeStdInchi;
+    private final MethodHandle getInchiFromInchi;
+    private final MethodHandle getStructFromInchi;
+    private final MethodHandle freeStructFromInchi;
+    private final MethodHandle getInchiKeyFromInchi;
+    private final MethodHandle checkInchiKey;
+    private final MethodHandle checkInchi;
+    private final MethodHandle getInputFromAuxInfo;
+    private final MethodHandle freeInchiInput;
+
+    /**
+     * Returns whether the engine can run on this JVM.
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an engine calling the native library loaded by
+     * {@link JniInchiWrapper#loadLibrary()}.
+     *
+     * @throws JniInchiException  The library could not be loaded
+     */
+    public JniInchiFfmEngine() throws JniInchiException {
+        this(loaderLookup());
+    }
+
+    /**
+     * Creates an engine calling the InChI functions exported by a library
+     * file.  The file may be the InChI library itself, or a copy of the
+     * JNI-InChI native library.
+     *
+     * @param library  Native library file
+     * @throws JniInchiException  The library could not be loaded
+     */
+    public JniInchiFfmEngine(File library) throws JniInchiException {
+        this(libraryLookup(library));
+    }
+
+    private JniInchiFfmEngine(SymbolLookup lookup) throws JniInchiException {
+        FunctionDescriptor intOfTwoPointers = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
+        FunctionDescriptor voidOfPointer = FunctionDescriptor.ofVoid(ADDRESS);
+        getInchi = downcall(lookup, "GetINCHI", intOfTwoPointers);
+        getStdInchi = downcall(lookup, "GetStdINCHI", intOfTwoPointers);
+        freeInchi = downcall(lookup, "FreeINCHI", voidOfPointer);
+        freeStdInchi = downcall(lookup, "FreeStdINCHI", voidOfPointer);
+        getInchiFromInchi = downcall(lookup, "GetINCHIfromINCHI", intOfTwoPointers);
+        getStructFromInchi = downcall(lookup, "GetStructFromINCHI", intOfTwoPointers);
+        freeStructFromInchi = downcall(lookup, "FreeStructFromINCHI", voidOfPointer);
+        getInchiKeyFromInchi = downcall(lookup, "GetINCHIKeyFromINCHI",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+        checkInchiKey = downcall(lookup, "CheckINCHIKey", FunctionDescriptor.of(JAVA_INT, ADDRESS));
+        checkInchi = downcall(lookup, "CheckINCHI", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT));
+        getInputFromAuxInfo = downcall(lookup, "Get_inchi_Input_FromAuxInfo",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT, ADDRESS));
+        freeInchiInput = downcall(lookup, "Free_inchi_Input", voidOfPointer);
+    }
+
+    private static SymbolLookup loaderLookup() throws JniInchiException {
+        JniInchiWrapper.loadLibrary();
+        return SymbolLookup.loaderLookup();
+    }
+
+    private static SymbolLookup libraryLookup(File library) throws JniInchiException {
+        try {
+            return SymbolLookup.libraryLookup(library.toPath(), Arena.global());
+        } catch (IllegalArgumentException ex) {
+            throw new LoadNativeLibraryException(ex);
+        }
+    }
+
+    private static MethodHandle downcall(SymbolLookup lookup, String name, FunctionDescriptor descriptor) throws JniInchiException {
+        MemorySegment symbol = lookup.find(name).orElse(null);
+        if (symbol == null) {
+            throw new JniInchiException("InChI library function not found: " + name);
+        }
+        return LINKER.downcallHandle(symbol, descriptor);
+    }
+
+    private static long align(long offset, long alignment) {
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+
+    public JniInchiOutput getInchi(JniInchiInput input) throws JniInchiException {
+        return getInchi(input, false);
+    }
+
+    public JniInchiOutput getStdInchi(JniInchiInput input) throws JniInchiException {
+        return getInchi(input, true);
+    }
+
+    private JniInchiOutput getInchi(JniInchiInput input, boolean std) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        if (input.getNumAtoms() > MAX_ATOMS) {
+            throw new IllegalArgumentException("Too many atoms");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            // Laid out as inchi_Atom and inchi_Stereo0D arrays, after a header
+            MemorySegment structure = arena.allocate(getEncodedSize(input), 8);
+            encode(input, structure.asByteBuffer());
+            int numAtoms = input.getNumAtoms();
+            int numStereo0D = input.getNumStereo0D();
+
+            MemorySegment in = arena.allocate(INPUT_SIZE, P);
+            in.set(ADDRESS, INPUT_ATOM, numAtoms > 0 ? structure.asSlice(HEADER_SIZE) : MemorySegment.NULL);
+            in.set(ADDRESS, INPUT_STEREO0D, numStereo0D > 0
+                    ? structure.asSlice(HEADER_SIZE + (long) numAtoms * ATOM_SIZE) : MemorySegment.NULL);
+            in.set(ADDRESS, INPUT_OPTIONS, arena.allocateFrom(input.getOptions()));
+            in.set(JAVA_SHORT, INPUT_NUM_ATOMS, (short) numAtoms);
+            in.set(JAVA_SHORT, INPUT_NUM_STEREO0D, (short) numStereo0D);
+
+            MemorySegment out = arena.allocate(OUTPUT_SIZE, P);
+            boolean locked = JniInchiWrapper.getLock();
+            try {
+                int ret = (int) (std ? getStdInchi : getInchi).invokeExact(in, out);
+                try {
+                    return getOutput(ret, out);
+                } finally {
+                    (std ? freeStdInchi : freeInchi).invokeExact(out);
+                }
+            } finally {
+                JniInchiWrapper.releaseLock(locked);
+            }
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public JniInchiOutput getInchiFromInchi(JniInchiInputInchi input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = getInputInchi(arena, input);
+            MemorySegment out = arena.allocate(OUTPUT_SIZE, P);
+            boolean locked = JniInchiWrapper.getLock();
+            try {
+                int ret = (int) getInchiFromInchi.invokeExact(in, out);
+                try {
+                    return getOutput(ret, out);
+                } finally {
+                    freeInchi.invokeExact(out);
+                }
+            } finally {
+                JniInchiWrapper.releaseLock(locked);
+            }
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public JniInchiOutputStructure getStructureFromInchi(JniInchiInputInchi input) throws JniInchiException {
+        if (input == null) {
+            throw new IllegalArgumentException("Null input");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = getInputInchi(arena, input);
+            MemorySegment out = arena.allocate(STRUCT_SIZE, P);
+            boolean locked = JniInchiWrapper.getLock();
+            try {
+                int ret = (int) getStructFromInchi.invokeExact(in, out);
+                try {
+                    JniInchiOutputStructure output = new JniInchiOutputStructure(ret,
+                            getString(out, STRUCT_MESSAGE), getString(out, STRUCT_LOG),
+                            getUnsignedLong(out, STRUCT_WARNING_FLAGS), getUnsignedLong(out, STRUCT_WARNING_FLAGS + L),
+                            getUnsignedLong(out, STRUCT_WARNING_FLAGS + 2 * L), getUnsignedLong(out, STRUCT_WARNING_FLAGS + 3 * L));
+                    readStructure(out.get(ADDRESS, STRUCT_ATOM), out.get(JAVA_SHORT, STRUCT_NUM_ATOMS),
+                            out.get(ADDRESS, STRUCT_STEREO0D), out.get(JAVA_SHORT, STRUCT_NUM_STEREO0D), output);
+                    return output;
+                } finally {
+                    freeStructFromInchi.invokeExact(out);
+                }
+            } finally {
+                JniInchiWrapper.releaseLock(locked);
+            }
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Hashes the InChI without touching the library's global state, so
+     * without the lock.
+     */
+    public JniInchiOutputKey getInchiKey(String inchi) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment key = arena.allocate(KEY_SIZE);
+            MemorySegment xtra1 = arena.allocate(XTRA_SIZE);
+            MemorySegment xtra2 = arena.allocate(XTRA_SIZE);
+            int ret = (int) getInchiKeyFromInchi.invokeExact(arena.allocateFrom(inchi), 0, 0, key, xtra1, xtra2);
+            return new JniInchiOutputKey(ret, key.getString(0));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public INCHI_KEY_STATUS checkInchiKey(String key) throws JniInchiException {
+        if (key == null) {
+            throw new IllegalArgumentException("Null InChI key");
+        }
+        int ret;
+        try (Arena arena = Arena.ofConfined()) {
+            ret = (int) checkInchiKey.invokeExact(arena.allocateFrom(key));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        INCHI_KEY_STATUS retStatus = INCHI_KEY_STATUS.getValue(ret);
+        if (retStatus == null) {
+            throw new JniInchiException("Unknown return status: " + ret);
+        }
+        return retStatus;
+    }
+
+    /**
+     * Only the strict check, which converts the InChI, takes the lock.
+     */
+    public INCHI_STATUS checkInchi(String inchi, boolean strict) throws JniInchiException {
+        if (inchi == null) {
+            throw new IllegalArgumentException("Null InChI");
+        }
+        int ret;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment szInchi = arena.allocateFrom(inchi);
+            boolean locked = strict && JniInchiWrapper.getLock();
+            try {
+                ret = (int) checkInchi.invokeExact(szInchi, strict ? 1 : 0);
+            } finally {
+                JniInchiWrapper.releaseLock(locked);
+            }
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        INCHI_STATUS retStatus = INCHI_STATUS.getValue(ret);
+        if (retStatus == null) {
+            throw new JniInchiException("Unknown return status: " + ret);
+        }
+        return retStatus;
+    }
+
+    public JniInchiInputData getInputFromAuxInfo(String auxInfo) throws JniInchiException {
+        if (auxInfo == null) {
+            throw new IllegalArgumentException("Null AuxInfo");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment szAuxInfo = arena.allocateFrom(auxInfo);
+            MemorySegment inp = arena.allocate(INPUT_SIZE, P);
+            MemorySegment data = arena.allocate(DATA_SIZE, P);
+            data.set(ADDRESS, DATA_INPUT, inp);
+            boolean locked = JniInchiWrapper.getLock();
+            try {
+                int ret = (int) getInputFromAuxInfo.invokeExact(szAuxInfo, 0, 0, data);
+                try {
+                    JniInchiInput input = new JniInchiInput();
+                    readStructure(inp.get(ADDRESS, INPUT_ATOM), inp.get(JAVA_SHORT, INPUT_NUM_ATOMS),
+                            inp.get(ADDRESS, INPUT_STEREO0D), inp.get(JAVA_SHORT, INPUT_NUM_STEREO0D), input);
+                    return new JniInchiInputData(ret, input, data.get(JAVA_INT, DATA_CHIRAL), data.getString(DATA_ERR_MSG));
+                } finally {
+                    freeInchiInput.invokeExact(inp);
+                }
+            } finally {
+                JniInchiWrapper.releaseLock(locked);
+            }
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+
+    private static MemorySegment getInputInchi(Arena arena, JniInchiInputInchi input) {
+        MemorySegment in = arena.allocate(INPUT_INCHI_SIZE, P);
+        in.set(ADDRESS, INPUT_INCHI_INCHI, arena.allocateFrom(input.getInchi()));
+        in.set(ADDRESS, INPUT_INCHI_OPTIONS, arena.allocateFrom(input.getOptions()));
+        return in;
+    }
+
+    private static JniInchiOutput getOutput(int ret, MemorySegment out) {
+        String message = getString(out, OUTPUT_MESSAGE);
+        return new JniInchiOutput(INCHI_RET.getValue(ret, message), getString(out, OUTPUT_INCHI),
+                getString(out, OUTPUT_AUX_INFO), message, getString(out, OUTPUT_LOG));
+    }
+
+    /**
+     * Reads the string a struct field points to, or null.
+     */
+    private static String getString(MemorySegment struct, long offset) {
+        MemorySegment p = struct.get(ADDRESS, offset);
+        return MemorySegment.NULL.equals(p) ? null : p.reinterpret(Long.MAX_VALUE).getString(0);
+    }
+
+    private static long getUnsignedLong(MemorySegment struct, long offset) {
+        return L == 8 ? struct.get(JAVA_LONG, offset) : struct.get(JAVA_INT, offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Adds the atoms, bonds and stereo parities of the library's arrays to
+     * a structure, as the JNI glue does.  Bonds are listed on both of their
+     * atoms, so each is added from the higher numbered atom only.
+     */
+    private static void readStructure(MemorySegment atomArray, int numAtoms, MemorySegment stereoArray, int numStereo0D,
+            JniInchiStructure output) {
+        MemorySegment atoms = atomArray.reinterpret((long) numAtoms * ATOM_SIZE);
+        for (int i = 0; i < numAtoms; i++) {
+            long p = (long) i * ATOM_SIZE;
+            JniInchiAtom atom = new JniInchiAtom(atoms.get(JAVA_DOUBLE_UNALIGNED, p + ATOM_X),
+                    atoms.get(JAVA_DOUBLE_UNALIGNED, p + ATOM_Y), atoms.get(JAVA_DOUBLE_UNALIGNED, p + ATOM_Z),
+                    atoms.getString(p + ATOM_ELNAME));
+            atom.setCharge(atoms.get(JAVA_BYTE, p + ATOM_CHARGE));
+            atom.setInchiRadical(atoms.get(JAVA_BYTE, p + ATOM_RADICAL));
+            atom.setImplicitH(atoms.get(JAVA_BYTE, p + ATOM_NUM_ISO_H));
+            atom.setImplicitProtium(atoms.get(JAVA_BYTE, p + ATOM_NUM_ISO_H + 1));
+            atom.setImplicitDeuterium(atoms.get(JAVA_BYTE, p + ATOM_NUM_ISO_H + 2));
+            atom.setImplicitTritium(atoms.get(JAVA_BYTE, p + ATOM_NUM_ISO_H + 3));
+            atom.setIsotopicMass(atoms.get(JAVA_SHORT_UNALIGNED, p + ATOM_ISOTOPIC_MASS));
+            output.addAtom(atom);
+        }
+        for (int i = 0; i < numAtoms; i++) {
+            long p = (long) i * ATOM_SIZE;
+            int numBonds = atoms.get(JAVA_SHORT_UNALIGNED, p + ATOM_NUM_BONDS);
+            for (int j = 0; j < numBonds; j++) {
+                int neighbor = atoms.get(JAVA_SHORT_UNALIGNED, p + ATOM_NEIGHBOR + 2 * j);
+                if (neighbor < i) {
+                    output.addBond(new JniInchiBond(output.getAtom(i), output.getAtom(neighbor),
+                            atoms.get(JAVA_BYTE, p + ATOM_BOND_TYPE + j), atoms.get(JAVA_BYTE, p + ATOM_BOND_STEREO + j)));
+                }
+            }
+        }
+        MemorySegment stereos = stereoArray.reinterpret((long) numStereo0D * STEREO0D_SIZE);
+        for (int i = 0; i < numStereo0D; i++) {
+            long p = (long) i * STEREO0D_SIZE;
+            int central = stereos.get(JAVA_SHORT_UNALIGNED, p + STEREO0D_CENTRAL_ATOM);
+            JniInchiAtom[] neighbors = new JniInchiAtom[4];
+            for (int j = 0; j < 4; j++) {
+                neighbors[j] = output.getAtom(stereos.get(JAVA_SHORT_UNALIGNED, p + STEREO0D_NEIGHBOR + 2 * j));
+            }
+            output.addStereo0D(new JniInchiStereo0D(central == JniInchiStereo0D.NO_ATOM ? null : output.getAtom(central),
+                    neighbors[0], neighbors[1], neighbors[2], neighbors[3],
+                    stereos.get(JAVA_BYTE, p + STEREO0D_TYPE), stereos.get(JAVA_BYTE, p + STEREO0D_PARITY)));
+        }
+    }
+
+    private static JniInchiException rethrow(Throwable t) {
+        if (t instanceof JniInchiException) {
+            return (JniInchiException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new JniInchiException(t);
+    }
+
+}
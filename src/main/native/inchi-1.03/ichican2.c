@@ -58,7 +58,7 @@
 typedef unsigned long  U_INT_32;
 typedef unsigned char  U_INT_08;
 typedef U_INT_32       CtHash;
-CtHash hash_mark_bit;
+INCHI_TLS CtHash hash_mark_bit;
 #endif
 
 /* -- moved to ichi_bns.h --
@@ -66,13 +66,13 @@ typedef U_SHORT  bitWord;
 #define BIT_WORD_MASK  ((bitWord)~0)
 */
 
-static bitWord *bBit = NULL;
-static int    num_bit = 0;     
+static INCHI_TLS bitWord *bBit = NULL;
+static INCHI_TLS int    num_bit = 0;     
 /*bitWord      mark_bit; */    /* highest bit in AT_NUMB */
 /*bitWord      mask_bit; */    /* ~mark_bit */
 
-AT_NUMB       rank_mark_bit;
-AT_NUMB       rank_mask_bit;
+INCHI_TLS AT_NUMB       rank_mark_bit;
+INCHI_TLS AT_NUMB       rank_mask_bit;
 
 
 typedef AT_NUMB    Node;
@@ -393,8 +393,8 @@ int CanonGraph12( int n, int n_tg, int n_max, int bDigraph, Graph *G, Partition
 
 #ifdef INCHI_CANON_USE_HASH        
 /****************************************************************/
-static call_fill_crc32_data = 1;
-static U_INT_32 crc32_data[256];
+static INCHI_TLS call_fill_crc32_data = 1;
+static INCHI_TLS U_INT_32 crc32_data[256];
 
 void fill_crc32_data()
 {
@@ -1230,7 +1230,7 @@ void CtPartFill( Graph *G, CANON_DATA *pCD, Partition *p,
 #ifdef INCHI_CANON_USE_HASH
     CtHash  hash = 0;
 #endif
-        static int count; /* for debug only */
+        static INCHI_TLS int count; /* for debug only */
         count ++;
 
 
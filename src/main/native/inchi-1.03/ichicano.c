@@ -41,14 +41,19 @@
  *   Globals for sorting
  */
 
-const NEIGH_LIST      *pNeighList_RankForSort; 
-const ATOM_INVARIANT2 *pAtomInvariant2ForSort;
-const AT_NUMB         *pNeighborsForSort;
-const AT_RANK         *pn_RankForSort;
+INCHI_TLS const NEIGH_LIST      *pNeighList_RankForSort; 
+INCHI_TLS const ATOM_INVARIANT2 *pAtomInvariant2ForSort;
+INCHI_TLS const AT_NUMB         *pNeighborsForSort;
+INCHI_TLS const AT_RANK         *pn_RankForSort;
 
-AT_RANK nMaxAtNeighRankForSort;
+INCHI_TLS AT_RANK nMaxAtNeighRankForSort;
 
-int nNumCompNeighborsRanksCountEql;
+INCHI_TLS int nNumCompNeighborsRanksCountEql;
+
+/*
+ *   Cancellation flag of the calculation in progress, see ichitime.h
+ */
+INCHI_TLS volatile int *pInchiCancelFlag = NULL;
 
 
 #define tsort insertions_sort
@@ -93,10 +98,10 @@ static clock_t InchiClock(void)
 #define INCHI_CLOCK_T(X) (clock_t)( (double)(X) / 1000.0 * (double)CLOCKS_PER_SEC )
 const clock_t FullMaxClock = (clock_t)(-1);
 const clock_t HalfMaxClock = (clock_t)(-1) / 2;
-clock_t MaxPositiveClock = 0;
-clock_t MinNegativeClock = 0;
-clock_t HalfMaxPositiveClock = 0;
-clock_t HalfMinNegativeClock = 0;
+INCHI_TLS clock_t MaxPositiveClock = 0;
+INCHI_TLS clock_t MinNegativeClock = 0;
+INCHI_TLS clock_t HalfMaxPositiveClock = 0;
+INCHI_TLS clock_t HalfMinNegativeClock = 0;
 
 static void FillMaxMinClock(void); /* keep compiler happy */
 
@@ -206,6 +211,8 @@ void InchiTimeAddMsec( inchiTime *TickEnd, unsigned long nNumMsec )
 /******************* check whether time has expired *********************/
 int bInchiTimeIsOver( inchiTime *TickStart )
 {
+    if ( pInchiCancelFlag && *pInchiCancelFlag )
+        return 1;
     if ( FullMaxClock > 0 ) {
         clock_t clockCurrTime;
         if ( !TickStart )
@@ -310,6 +317,8 @@ void InchiTimeAddMsec( inchiTime *TickEnd, unsigned long nNumMsec )
 int bInchiTimeIsOver( inchiTime *TickEnd )
 {
     struct _timeb timeb;
+    if ( pInchiCancelFlag && *pInchiCancelFlag )
+        return 1;
     if ( !TickEnd )
         return 0;
     _ftime( &timeb );
@@ -129,6 +129,7 @@ typedef struct tagInputParms {
     int             bDisplayCompositeResults;
     int             bDoNotAddH;
     int             bNoStructLabels;
+    int             bNoLog;             /* JNI-InChI: do not build the log */
     int             bChiralFlag;
     int             bAllowEmptyStructure;
     /*^^^ */
@@ -393,7 +393,7 @@ int  DifferentiateRanks3( int num_atoms, NEIGH_LIST *NeighList,
                           AT_RANK *nAtomNumber, long *lNumIter )
 {
 /*    
-    static long count = 0;
+    static INCHI_TLS long count = 0;
     count ++;
     if ( count == 103 ) {
         int stop=1;
@@ -425,7 +425,7 @@ int  DifferentiateRanks4( int num_atoms, NEIGH_LIST *NeighList,
                           AT_RANK *nAtomNumber, AT_RANK nMaxAtRank, long *lNumIter )
 {
 /*    
-    static long count = 0;
+    static INCHI_TLS long count = 0;
     count ++;
     if ( count == 103 ) {
         int stop=1;
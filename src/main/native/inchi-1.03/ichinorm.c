@@ -792,17 +792,17 @@ int FixAromaticOxygenAndSulfur( inp_ATOM *atom )
  ********************************************************************/
 #if( RING2CHAIN == 1 || UNDERIVATIZE == 1 )
 
-static U_CHAR el_number_O;
-static U_CHAR el_number_C;
-static U_CHAR el_number_N;
-static U_CHAR el_number_P;
-static U_CHAR el_number_S;
-static U_CHAR el_number_Si;
-static U_CHAR el_number_F;
-static U_CHAR el_number_Cl;
-static U_CHAR el_number_Br;
-static U_CHAR el_number_I;
-static U_CHAR el_number_B;
+static INCHI_TLS U_CHAR el_number_O;
+static INCHI_TLS U_CHAR el_number_C;
+static INCHI_TLS U_CHAR el_number_N;
+static INCHI_TLS U_CHAR el_number_P;
+static INCHI_TLS U_CHAR el_number_S;
+static INCHI_TLS U_CHAR el_number_Si;
+static INCHI_TLS U_CHAR el_number_F;
+static INCHI_TLS U_CHAR el_number_Cl;
+static INCHI_TLS U_CHAR el_number_Br;
+static INCHI_TLS U_CHAR el_number_I;
+static INCHI_TLS U_CHAR el_number_B;
 
 typedef struct tagAtPair {
     AT_NUMB at[2];  /* at[0] < at[1] */
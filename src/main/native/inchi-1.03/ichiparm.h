@@ -913,6 +913,11 @@ int ReadCommandLineParms(int argc, const char *argv[], INPUT_PARMS *ip,
             {
                  bNoStructLabels = 1;
             } 
+            else if ( !stricmp( pArg, "NOLOG" ) ) 
+            {
+                 /* JNI-InChI: do not build the log (library only) */
+                 ip->bNoLog = 1;
+            } 
             else if ( !stricmp( pArg, "SAVEOPT" ) ) 
             {
                  bINChIOutputOptions |= INCHI_OUT_SAVEOPT;
@@ -2523,21 +2528,21 @@ static int bMatchOnePrefix( int len, char *str, int lenPrefix[],
 int DetectInputINChIFileType( FILE **inp_file, INPUT_PARMS *ip, const char *fmode )
 {
     char szLine[256], ret = 0;
-    static char szPlnVersion[NUM_VERSIONS][LEN_VERSIONS]; /* = "INChI:1.1Beta/";*/
-    static int  lenPlnVersion[NUM_VERSIONS];
-    static char szPlnAuxVer[NUM_VERSIONS][LEN_VERSIONS]; /* = "AuxInfo:1.1Beta/";*/
-    static int  lenPlnAuxVer[NUM_VERSIONS];
-    static char szXmlVersion[NUM_VERSIONS][LEN_VERSIONS]; /* = "<INChI version=\"1.1Beta\">";*/
-    static int  lenXmlVersion[NUM_VERSIONS];
-    static char szXmlStruct[LEN_VERSIONS]  = "<structure";
-    static int  lenXmlStruct;
-    static char szXmlIdentVer[NUM_VERSIONS][LEN_VERSIONS]; /*= "<identifier version=\"1.1Beta\"";*/
-    static int  lenXmlIdentVer[NUM_VERSIONS];
-    static char szXmlMsgError[LEN_VERSIONS];
-    static int  lenXmlMsgError = 0;
-    static char szXmlMsgFatal[LEN_VERSIONS]= "<message type=\"fatal (aborted)\"";
-    static int  lenXmlMsgFatal;
-    static int  bInitilized = 0;
+    static INCHI_TLS char szPlnVersion[NUM_VERSIONS][LEN_VERSIONS]; /* = "INChI:1.1Beta/";*/
+    static INCHI_TLS int  lenPlnVersion[NUM_VERSIONS];
+    static INCHI_TLS char szPlnAuxVer[NUM_VERSIONS][LEN_VERSIONS]; /* = "AuxInfo:1.1Beta/";*/
+    static INCHI_TLS int  lenPlnAuxVer[NUM_VERSIONS];
+    static INCHI_TLS char szXmlVersion[NUM_VERSIONS][LEN_VERSIONS]; /* = "<INChI version=\"1.1Beta\">";*/
+    static INCHI_TLS int  lenXmlVersion[NUM_VERSIONS];
+    static INCHI_TLS char szXmlStruct[LEN_VERSIONS]  = "<structure";
+    static INCHI_TLS int  lenXmlStruct;
+    static INCHI_TLS char szXmlIdentVer[NUM_VERSIONS][LEN_VERSIONS]; /*= "<identifier version=\"1.1Beta\"";*/
+    static INCHI_TLS int  lenXmlIdentVer[NUM_VERSIONS];
+    static INCHI_TLS char szXmlMsgError[LEN_VERSIONS];
+    static INCHI_TLS int  lenXmlMsgError = 0;
+    static INCHI_TLS char szXmlMsgFatal[LEN_VERSIONS]= "<message type=\"fatal (aborted)\"";
+    static INCHI_TLS int  lenXmlMsgFatal;
+    static INCHI_TLS int  bInitilized = 0;
     int  bINChI_plain = 0, bINChI_xml = 0, len, i;
     if ( ip->nInputType == INPUT_INCHI_XML || ip->nInputType == INPUT_INCHI_PLAIN || ip->nInputType == INPUT_INCHI ) {
         return 1;
@@ -358,7 +358,7 @@ typedef enum tagCopySegmentType
 const char *getInchiStateReadErr(int stat)
 {
     int i, bRecMet = 0;
-    static char szMsg[128];
+    static INCHI_TLS char szMsg[128];
     if ( stat >= IST_HAPPENED_IN_RECMET ) 
     {
         bRecMet = 1;
@@ -1790,7 +1790,7 @@ int CountStereoTypes( INChI *pInChI, int *num_known_SB, int *num_known_SC,
                                      int *num_unk_und_SB, int *num_unk_und_SC,
                                      int *num_SC_PIII, int *num_SC_AsIII)
 {
-    static U_CHAR el_number_P=0, el_number_As=0;
+    static INCHI_TLS U_CHAR el_number_P=0, el_number_As=0;
     INChI_Stereo *Stereo;
     int           i, ret;
     AT_NUMB       nAtNumber;
@@ -378,7 +378,7 @@ exit_function:
     return ret;
 }
 #ifndef INCHI_ANSI_ONLY
-static PER_DRAW_PARMS pdp;
+static INCHI_TLS PER_DRAW_PARMS pdp;
 /******************************************************************************************************/
 int DisplayAllRestoredComponents( inp_ATOM *at, int num_at, const char *szCurHdr )
 {
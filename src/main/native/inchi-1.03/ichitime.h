@@ -80,6 +80,10 @@ extern "C" {
 #endif
 
 
+/* set per thread to a flag that any thread may raise to stop the calculation */
+/* in progress; checked wherever the time limit is checked (JNI-InChI)        */
+extern INCHI_TLS volatile int *pInchiCancelFlag;
+
 void InchiTimeGet( inchiTime *TickEnd );
 long InchiTimeMsecDiff( inchiTime *TickEnd, inchiTime *TickStart );
 void InchiTimeAddMsec( inchiTime *TickEnd, unsigned long nNumMsec );
@@ -77,7 +77,7 @@ static int GetINCHI1(inchi_Input *inp, inchi_Output *out, int bStdFormat);
 
 /*************************************************************************/
 
-int bInterrupted = 0;
+INCHI_TLS int bInterrupted = 0;
 
 /********************************************************************
  *
@@ -137,7 +137,7 @@ EXPIMP_TEMPLATE INCHI_API void INCHI_DECL FreeStructFromINCHI( inchi_OutputStruc
  *
  ********************************************************************/
 
-int bLibInchiSemaphore = 0;
+INCHI_TLS int bLibInchiSemaphore = 0;
 
 
 EXPIMP_TEMPLATE INCHI_API int INCHI_DECL GetStdINCHI( inchi_Input *inp, inchi_Output *out )
@@ -306,6 +306,12 @@ repeat:
     /* INChI DLL specific */
     ip->bNoStructLabels = 1;
 
+    if ( ip->bNoLog ) {
+        /* JNI-InChI: drop anything logged so far, and log nothing more */
+        inchi_ios_close(log_file);
+        log_file->type = INCHI_IOSTREAM_NONE;
+    }
+
     if ( 0 > nRet1 ) {
         nRet = _IS_FATAL;
         goto exit_function;
@@ -373,7 +379,9 @@ repeat:
     /* */
 
 
-    PrintInputParms( log_file, ip );
+    if ( !ip->bNoLog ) {
+        PrintInputParms( log_file, ip );
+    }
     if ( !(pStr = (char*)inchi_malloc(nStrLen))) {
         inchi_ios_eprint( log_file, "Cannot allocate output buffer. Terminating\n");
         goto exit_function;
@@ -1271,7 +1279,7 @@ int SetAtomAndBondProperties( inp_ATOM *at, inchi_Atom *ati, int a1,
 {
     int valence, chem_valence, num_alt_bonds, j, n1;
     int nRadical, nCharge;
-    static int el_number_H = 0;
+    static INCHI_TLS int el_number_H = 0;
     
     if ( !el_number_H ) {
         el_number_H = get_periodic_table_number( "H" );
@@ -1757,7 +1765,7 @@ int INCHI_DECL GetINCHIfromINCHI( inchi_InputINCHI *inpInChI, inchi_Output *out
     STRUCT_DATA struct_data;
     STRUCT_DATA *sd = &struct_data;    
     
-    static char szMainOption[] = " ?InChI2InChI";
+    static INCHI_TLS char szMainOption[] = " ?InChI2InChI";
 
     int i;
     char      szSdfDataValue[MAX_SDF_VALUE+1];
@@ -2063,7 +2071,7 @@ EXPIMP_TEMPLATE INCHI_API int INCHI_DECL GetStructFromINCHI( inchi_InputINCHI *i
     INCHI_IOSTREAM *output_file = inchi_file, *log_file = inchi_file+1, *input_file = inchi_file+2;
     
 
-    static char szMainOption[] = " ?InChI2Struct";
+    static INCHI_TLS char szMainOption[] = " ?InChI2Struct";
 
 
     int i;
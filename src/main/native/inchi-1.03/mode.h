@@ -105,6 +105,29 @@ INCHI_LIB           wInChI
    #pragma warning( disable : 4706 4127 4514 4100 4786 4996 )
 #endif
 
+/*
+    JNI-InChI: the library's mutable global and static variables are
+    declared INCHI_TLS, giving each thread its own copy, so that calls on
+    different threads do not interfere. INCHI_TLS_SUPPORTED is 0 if the
+    compiler has no thread-local storage, in which case calls must still
+    be serialised.
+*/
+#ifndef INCHI_TLS
+#if defined(_MSC_VER)
+#define INCHI_TLS __declspec(thread)
+#define INCHI_TLS_SUPPORTED 1
+#elif defined(__GNUC__) || defined(__clang__) || defined(__SUNPRO_C) || defined(__INTEL_COMPILER)
+#define INCHI_TLS __thread
+#define INCHI_TLS_SUPPORTED 1
+#elif defined(__STDC_VERSION__) && (__STDC_VERSION__ >= 201112L) && !defined(__STDC_NO_THREADS__)
+#define INCHI_TLS _Thread_local
+#define INCHI_TLS_SUPPORTED 1
+#else
+#define INCHI_TLS
+#define INCHI_TLS_SUPPORTED 0
+#endif
+#endif
+
 
 #define BUILD_INFO ", Software version 1.03"
 
@@ -23,6 +23,8 @@
 #include "net_sf_jniinchi_JniInchiWrapper.h"
 #include <inchi_api.h>
 #include <ichisize.h>
+#include <mode.h>
+#include <ichitime.h>
 
 #define NATIVE_LIB_VERSION "1.03_1"
 
@@ -37,14 +39,16 @@ Uncomment to enable debug mode
 jclass IllegalArgumentException;
 
 jclass jniInchiInput, jniInchiOutput, jniInchiOutputKey, jniInchiOutputStructure, jniInchiInputData;
+jclass jniInchiOutputWithKey;
 jclass jniInchiStructure, jniInchiAtom, jniInchiBond, jniInchiStereo0D;
+jclass jniInchiPackedStructure;
 
 /* === METHOD REFs === */
 
 /* constructors */
-jmethodID initJniInchiOutput, initJniInchiOutputKey, initJniInchiInput, initJniInchiInputData;
+jmethodID initJniInchiOutput, initJniInchiOutputBytes, initJniInchiOutputKey, initJniInchiOutputKeyXtra, initJniInchiInput, initJniInchiInputData;
 jmethodID initJniInchiAtom, initJniInchiBond, initJniInchiStereo0D;
-jmethodID initJniInchiOutputStructure;
+jmethodID initJniInchiOutputStructure, initJniInchiOutputWithKey;
 
 /* structure methods */
 jmethodID getNumAtoms, getNumBonds, getNumStereo0D, getOptions, getAtom, getAtomIndex, getBond, getStereo0D;
@@ -60,6 +64,42 @@ jmethodID getOriginAtom, getTargetAtom, getBondType, getBondStereo;
 /* stereo0D methods */
 jmethodID getCentralAtom, getNeighbor, getStereoType, getParity;
 
+/* === FIELD REFs === */
+
+/* packed structure fields */
+jfieldID packedOptions, packedOptionBytes, packedOutputFields, packedNumAtoms, packedNumBonds, packedNumStereo0D;
+jfieldID packedCoords, packedAtoms, packedElements, packedBonds, packedStereo0D;
+
+/* packed structure layout, see JniInchiPackedStructure.java */
+#define PACKED_COORDS_PER_ATOM 3
+#define PACKED_INTS_PER_ATOM 7
+#define PACKED_INTS_PER_BOND 4
+#define PACKED_INTS_PER_STEREO 7
+
+/* output field flags, see JniInchiOutput.java */
+#define OUTPUT_FIELD_INCHI 1
+#define OUTPUT_FIELD_AUX_INFO 2
+#define OUTPUT_FIELD_MESSAGE 4
+#define OUTPUT_FIELD_LOG 8
+
+/* native feature flags, see JniInchiWrapper.java */
+#define FEATURE_OUTPUT_FIELDS 1
+#define FEATURE_NO_LOG 2
+#define FEATURE_MILLISECOND_TIMEOUT 4
+
+/* return code for a structure that ran out of time, see INCHI_RET.java */
+#define JNIINCHI_RET_TIMEOUT 6
+#define TIMEOUT_MESSAGE "Time limit exceeded"
+
+/* structure buffer layout, see JniInchiStructureBuffer.java */
+#define BUFFER_HEADER_SIZE 8
+#define BUFFER_ATOM_SIZE 120
+#define BUFFER_STEREO0D_SIZE 12
+
+/* compilation fails here if the structs do not match the documented layout */
+typedef char buffer_atom_size_check[sizeof(inchi_Atom) == BUFFER_ATOM_SIZE ? 1 : -1];
+typedef char buffer_stereo0d_size_check[sizeof(inchi_Stereo0D) == BUFFER_STEREO0D_SIZE ? 1 : -1];
+
 
 
 
@@ -73,6 +113,43 @@ JNIEXPORT jstring JNICALL Java_net_sf_jniinchi_JniInchiWrapper_LibInchiGetVersio
 }
 
 
+/**
+ * Reports whether the InChI library was built with its global state in
+ * thread-local storage, so that calls on different threads may run at once.
+ */
+JNIEXPORT jboolean JNICALL Java_net_sf_jniinchi_JniInchiWrapper_IsReentrant
+    (JNIEnv *env, jclass class) {
+
+    return INCHI_TLS_SUPPORTED ? JNI_TRUE : JNI_FALSE;
+
+}
+
+
+/**
+ * Reports the features of this build that cannot be detected from the
+ * presence of its entry points.
+ */
+JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetFeatures
+    (JNIEnv *env, jclass class) {
+
+    return FEATURE_OUTPUT_FIELDS | FEATURE_NO_LOG | FEATURE_MILLISECOND_TIMEOUT;
+
+}
+
+
+/*
+ Points the calculations made on this thread at a cancellation flag, the first
+ int of a direct buffer, which another thread sets to stop the calculation in
+ progress. A null buffer removes the flag.
+*/
+JNIEXPORT void JNICALL Java_net_sf_jniinchi_JniInchiWrapper_SetCancelFlag
+    (JNIEnv *env, jclass class, jobject flag) {
+
+    pInchiCancelFlag = flag == 0 ? 0 : (volatile int *) (*env)->GetDirectBufferAddress(env, flag);
+
+}
+
+
 /* === JNI INITIALIZERS === */
 
 
@@ -111,11 +188,13 @@ int initClassRefs(JNIEnv *env) {
     if (!initClass(env, &jniInchiOutputStructure, "net/sf/jniinchi/JniInchiOutputStructure")) return 0;
     if (!initClass(env, &jniInchiOutputKey, "net/sf/jniinchi/JniInchiOutputKey")) return 0;
     if (!initClass(env, &jniInchiInputData, "net/sf/jniinchi/JniInchiInputData")) return 0;
+    if (!initClass(env, &jniInchiOutputWithKey, "net/sf/jniinchi/JniInchiOutputWithKey")) return 0;
 
     if (!initClass(env, &jniInchiStructure, "net/sf/jniinchi/JniInchiStructure")) return 0;
     if (!initClass(env, &jniInchiAtom, "net/sf/jniinchi/JniInchiAtom")) return 0;
     if (!initClass(env, &jniInchiBond, "net/sf/jniinchi/JniInchiBond")) return 0;
     if (!initClass(env, &jniInchiStereo0D, "net/sf/jniinchi/JniInchiStereo0D")) return 0;
+    if (!initClass(env, &jniInchiPackedStructure, "net/sf/jniinchi/JniInchiPackedStructure")) return 0;
 
     return 1;
 
@@ -172,8 +251,11 @@ int initMethodRefs(JNIEnv *env) {
     if (0== (getParity = (*env)->GetMethodID(env, jniInchiStereo0D, "getInchiParity", "()I"))) return 0;
 
     if (0== (initJniInchiOutput = (*env)->GetMethodID(env, jniInchiOutput, "<init>", "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V"))) return 0;
+    if (0== (initJniInchiOutputBytes = (*env)->GetMethodID(env, jniInchiOutput, "<init>", "(I[B[B[B[B)V"))) return 0;
     if (0== (initJniInchiOutputStructure = (*env)->GetMethodID(env, jniInchiOutputStructure, "<init>", "(ILjava/lang/String;Ljava/lang/String;JJJJ)V"))) return 0;
     if (0== (initJniInchiOutputKey = (*env)->GetMethodID(env, jniInchiOutputKey, "<init>", "(ILjava/lang/String;)V"))) return 0;
+    if (0== (initJniInchiOutputKeyXtra = (*env)->GetMethodID(env, jniInchiOutputKey, "<init>", "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;)V"))) return 0;
+    if (0== (initJniInchiOutputWithKey = (*env)->GetMethodID(env, jniInchiOutputWithKey, "<init>", "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;ILjava/lang/String;)V"))) return 0;
 
     if (0== (initJniInchiInput = (*env)->GetMethodID(env, jniInchiInput, "<init>", "()V"))) return 0;
     if (0== (initJniInchiInputData = (*env)->GetMethodID(env, jniInchiInputData, "<init>", "(ILnet/sf/jniinchi/JniInchiInput;ILjava/lang/String;)V"))) return 0;
@@ -182,6 +264,24 @@ int initMethodRefs(JNIEnv *env) {
 }
 
 
+int initFieldRefs(JNIEnv *env) {
+
+    if (0== (packedOptions = (*env)->GetFieldID(env, jniInchiPackedStructure, "options", "Ljava/lang/String;"))) return 0;
+    if (0== (packedOptionBytes = (*env)->GetFieldID(env, jniInchiPackedStructure, "optionBytes", "[B"))) return 0;
+    if (0== (packedOutputFields = (*env)->GetFieldID(env, jniInchiPackedStructure, "outputFields", "I"))) return 0;
+    if (0== (packedNumAtoms = (*env)->GetFieldID(env, jniInchiPackedStructure, "numAtoms", "I"))) return 0;
+    if (0== (packedNumBonds = (*env)->GetFieldID(env, jniInchiPackedStructure, "numBonds", "I"))) return 0;
+    if (0== (packedNumStereo0D = (*env)->GetFieldID(env, jniInchiPackedStructure, "numStereo0D", "I"))) return 0;
+    if (0== (packedCoords = (*env)->GetFieldID(env, jniInchiPackedStructure, "coords", "[D"))) return 0;
+    if (0== (packedAtoms = (*env)->GetFieldID(env, jniInchiPackedStructure, "atoms", "[I"))) return 0;
+    if (0== (packedElements = (*env)->GetFieldID(env, jniInchiPackedStructure, "elements", "[B"))) return 0;
+    if (0== (packedBonds = (*env)->GetFieldID(env, jniInchiPackedStructure, "bonds", "[I"))) return 0;
+    if (0== (packedStereo0D = (*env)->GetFieldID(env, jniInchiPackedStructure, "stereo0D", "[I"))) return 0;
+
+    return 1;
+}
+
+
 
 JNIEXPORT void JNICALL Java_net_sf_jniinchi_JniInchiWrapper_init
     (JNIEnv *env, jclass class) {
@@ -193,7 +293,10 @@ JNIEXPORT void JNICALL Java_net_sf_jniinchi_JniInchiWrapper_init
     if (0 == initClassRefs(env)) {
         return;
     }
-    initMethodRefs(env);
+    if (0 == initMethodRefs(env)) {
+        return;
+    }
+    initFieldRefs(env);
 
     #ifdef DEBUG
     fprintf(stderr, "__init__\n");
@@ -208,10 +311,25 @@ JNIEXPORT void JNICALL Java_net_sf_jniinchi_JniInchiWrapper_init
 
 
 
+/*
+ The library reports a structure that ran out of time (option -W) as
+ inchi_Ret_ERROR; tells it apart from other errors by its message.
+*/
+int getInchiRet(int ret, inchi_Output *inchi_output) {
+
+    if (ret == inchi_Ret_ERROR && inchi_output->szMessage != 0
+            && strstr(inchi_output->szMessage, TIMEOUT_MESSAGE) != 0) {
+        return JNIINCHI_RET_TIMEOUT;
+    }
+    return ret;
+
+}
+
+
 jobject getInchiOutput(JNIEnv *env, int ret, inchi_Output *inchi_output) {
 
     jobject output = (*env)->NewObject(env, jniInchiOutput, initJniInchiOutput,
-            ret,
+            getInchiRet(ret, inchi_output),
             (*env)->NewStringUTF(env, inchi_output->szInChI),
             (*env)->NewStringUTF(env, inchi_output->szAuxInfo),
             (*env)->NewStringUTF(env, inchi_output->szMessage),
@@ -222,6 +340,49 @@ jobject getInchiOutput(JNIEnv *env, int ret, inchi_Output *inchi_output) {
 }
 
 
+/*
+ Copies an output string into a new byte array, without the modified UTF-8
+ conversion done by NewStringUTF. Returns null if the field is not selected,
+ or the string is null.
+*/
+jbyteArray getOutputBytes(JNIEnv *env, const char *s, jint fields, jint field) {
+
+    jbyteArray bytes;
+    jsize len;
+
+    if (0 == (fields & field) || s == 0) {
+        return 0;
+    }
+    len = (jsize) strlen(s);
+    bytes = (*env)->NewByteArray(env, len);
+    if (bytes != 0) {
+        (*env)->SetByteArrayRegion(env, bytes, 0, len, (const jbyte *) s);
+    }
+    return bytes;
+
+}
+
+
+/*
+ Creates a JniInchiOutput holding only the selected fields, as bytes, or one
+ holding every field, as strings, if fields is negative.
+*/
+jobject getInchiOutputFields(JNIEnv *env, int ret, inchi_Output *inchi_output, jint fields) {
+
+    if (fields < 0) {
+        return getInchiOutput(env, ret, inchi_output);
+    }
+
+    return (*env)->NewObject(env, jniInchiOutput, initJniInchiOutputBytes,
+            getInchiRet(ret, inchi_output),
+            getOutputBytes(env, inchi_output->szInChI, fields, OUTPUT_FIELD_INCHI),
+            getOutputBytes(env, inchi_output->szAuxInfo, fields, OUTPUT_FIELD_AUX_INFO),
+            getOutputBytes(env, inchi_output->szMessage, fields, OUTPUT_FIELD_MESSAGE),
+            getOutputBytes(env, inchi_output->szLog, fields, OUTPUT_FIELD_LOG));
+
+}
+
+
 int initInchiInput(JNIEnv *env, inchi_Input *inchi_input, jobject input) {
 
     int i;
@@ -350,6 +511,193 @@ int initInchiInput(JNIEnv *env, inchi_Input *inchi_input, jobject input) {
 }
 
 
+/*
+ Copies the options string of a structure into a newly allocated buffer
+*/
+char *getOptionsString(JNIEnv *env, jstring joptions) {
+
+    const char *options;
+    char *opts;
+
+    options = (*env)->GetStringUTFChars(env, joptions, 0);
+    opts = malloc(sizeof(char) * (strlen(options)+1));
+    strcpy(opts, options);
+    (*env)->ReleaseStringUTFChars(env, joptions, options);
+
+    return opts;
+}
+
+
+/*
+ Copies the options of a packed structure into a newly allocated buffer,
+ from the ASCII bytes of a JniInchiOptions if present, otherwise from the
+ options string
+*/
+char *getPackedOptions(JNIEnv *env, jobject packed) {
+
+    jbyteArray joptions;
+    jsize len;
+    char *opts;
+
+    joptions = (jbyteArray) (*env)->GetObjectField(env, packed, packedOptionBytes);
+    if (joptions == 0) {
+        return getOptionsString(env, (jstring) (*env)->GetObjectField(env, packed, packedOptions));
+    }
+    len = (*env)->GetArrayLength(env, joptions);
+    opts = malloc(sizeof(char) * (len+1));
+    (*env)->GetByteArrayRegion(env, joptions, 0, len, (jbyte *) opts);
+    opts[len] = 0;
+    (*env)->DeleteLocalRef(env, joptions);
+
+    return opts;
+}
+
+
+/*
+ Initialises inchi_input from a JniInchiPackedStructure. The structure's arrays
+ are read with Get/ReleasePrimitiveArrayCritical, so no JNI calls may be made
+ while they are held.
+*/
+int initInchiInputPacked(JNIEnv *env, inchi_Input *inchi_input, jobject packed) {
+
+    int i, err = 0;
+    inchi_Atom *atoms;
+    inchi_Stereo0D *stereos;
+    jarray jcoords, jatoms, jelements, jbonds, jstereos;
+    jdouble *coords;
+    jint *props, *bonds, *stereo;
+    jbyte *elements;
+
+    jint natoms = (*env)->GetIntField(env, packed, packedNumAtoms);
+    jint nbonds = (*env)->GetIntField(env, packed, packedNumBonds);
+    jint nstereo = (*env)->GetIntField(env, packed, packedNumStereo0D);
+
+    if (natoms > MAX_ATOMS) {
+        (*env)->ThrowNew(env, IllegalArgumentException, "Too many atoms");
+        return 0;
+    }
+
+    jcoords = (jarray) (*env)->GetObjectField(env, packed, packedCoords);
+    jatoms = (jarray) (*env)->GetObjectField(env, packed, packedAtoms);
+    jelements = (jarray) (*env)->GetObjectField(env, packed, packedElements);
+    jbonds = (jarray) (*env)->GetObjectField(env, packed, packedBonds);
+    jstereos = (jarray) (*env)->GetObjectField(env, packed, packedStereo0D);
+
+    atoms = malloc(sizeof(inchi_Atom) * natoms);
+    memset(atoms,0,sizeof(inchi_Atom) * natoms);
+
+    coords = (jdouble *) (*env)->GetPrimitiveArrayCritical(env, jcoords, 0);
+    for (i = 0; i < natoms; i++) {
+        atoms[i].x = coords[i*PACKED_COORDS_PER_ATOM];
+        atoms[i].y = coords[i*PACKED_COORDS_PER_ATOM+1];
+        atoms[i].z = coords[i*PACKED_COORDS_PER_ATOM+2];
+    }
+    (*env)->ReleasePrimitiveArrayCritical(env, jcoords, coords, JNI_ABORT);
+
+    props = (jint *) (*env)->GetPrimitiveArrayCritical(env, jatoms, 0);
+    for (i = 0; i < natoms; i++) {
+        jint *p = props + i*PACKED_INTS_PER_ATOM;
+        atoms[i].charge = p[0];
+        atoms[i].radical = p[1];
+        atoms[i].num_iso_H[0] = p[2];
+        atoms[i].num_iso_H[1] = p[3];
+        atoms[i].num_iso_H[2] = p[4];
+        atoms[i].num_iso_H[3] = p[5];
+        atoms[i].isotopic_mass = p[6];
+    }
+    (*env)->ReleasePrimitiveArrayCritical(env, jatoms, props, JNI_ABORT);
+
+    elements = (jbyte *) (*env)->GetPrimitiveArrayCritical(env, jelements, 0);
+    for (i = 0; i < natoms; i++) {
+        memcpy(atoms[i].elname, elements + i*ATOM_EL_LEN, ATOM_EL_LEN);
+        atoms[i].elname[ATOM_EL_LEN-1] = 0;
+    }
+    (*env)->ReleasePrimitiveArrayCritical(env, jelements, elements, JNI_ABORT);
+
+    bonds = (jint *) (*env)->GetPrimitiveArrayCritical(env, jbonds, 0);
+    for (i = 0; i < nbonds; i++) {
+        jint *b = bonds + i*PACKED_INTS_PER_BOND;
+        inchi_Atom *iatom;
+        int numbonds;
+        if (b[0] < 0 || b[0] >= natoms || b[1] < 0 || b[1] >= natoms) {
+            err = 1;
+            break;
+        }
+        iatom = &atoms[b[0]];
+        numbonds = iatom->num_bonds;
+        if (numbonds >= MAXVAL) {
+            err = 2;
+            break;
+        }
+        iatom->neighbor[numbonds] = b[1];
+        iatom->bond_type[numbonds] = b[2];
+        iatom->bond_stereo[numbonds] = b[3];
+        iatom->num_bonds++;
+    }
+    (*env)->ReleasePrimitiveArrayCritical(env, jbonds, bonds, JNI_ABORT);
+
+    if (err) {
+        free(atoms);
+        (*env)->ThrowNew(env, IllegalArgumentException,
+                err == 1 ? "Bond to atom not in structure" : "Too many bonds from one atom; maximum: 20");
+        return 0;
+    }
+
+    stereos = malloc(sizeof(inchi_Stereo0D) * nstereo);
+    memset(stereos,0,sizeof(inchi_Stereo0D) * nstereo);
+
+    stereo = (jint *) (*env)->GetPrimitiveArrayCritical(env, jstereos, 0);
+    for (i = 0; i < nstereo; i++) {
+        jint *s = stereo + i*PACKED_INTS_PER_STEREO;
+        stereos[i].central_atom = s[0];
+        stereos[i].neighbor[0] = s[1];
+        stereos[i].neighbor[1] = s[2];
+        stereos[i].neighbor[2] = s[3];
+        stereos[i].neighbor[3] = s[4];
+        stereos[i].type = s[5];
+        stereos[i].parity = s[6];
+    }
+    (*env)->ReleasePrimitiveArrayCritical(env, jstereos, stereo, JNI_ABORT);
+
+    (*inchi_input).szOptions = getPackedOptions(env, packed);
+
+    (*inchi_input).num_atoms = natoms;
+    (*inchi_input).num_stereo0D = nstereo;
+
+    (*inchi_input).atom = atoms;
+    (*inchi_input).stereo0D = stereos;
+
+    return 1;
+
+}
+
+
+/*
+ Runs GetINCHI or GetStdINCHI, and frees the input
+*/
+jobject getInchiAndFreeInput(JNIEnv *env, inchi_Input *inchi_input, jboolean std, jint fields) {
+
+    inchi_Output inchi_output;
+    int ret;
+    jobject output;
+
+    if (std) {
+        ret = GetStdINCHI(inchi_input, &inchi_output);
+        output = getInchiOutputFields(env, ret, &inchi_output, fields);
+        FreeStdINCHI(&inchi_output);
+        free(inchi_input->szOptions);
+        Free_std_inchi_Input(inchi_input);
+    } else {
+        ret = GetINCHI(inchi_input, &inchi_output);
+        output = getInchiOutputFields(env, ret, &inchi_output, fields);
+        FreeINCHI(&inchi_output);
+        free(inchi_input->szOptions);
+        Free_inchi_Input(inchi_input);
+    }
+
+    return output;
+}
+
 
 
 /****************************************************************************
@@ -425,6 +773,239 @@ JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetStdINCHI
 
 
 
+/**
+ * Generates InChI from a packed structure.
+ */
+JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIPacked
+    (JNIEnv *env, jobject obj, jobject input, jboolean std) {
+
+    inchi_Input inchi_input;
+    jobject output;
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIPacked()\n");
+    #endif
+
+    if (0 == initInchiInputPacked(env, &inchi_input, input)) {
+        /* Exception was thrown */
+        return 0;
+    }
+
+    output = getInchiAndFreeInput(env, &inchi_input, std, (*env)->GetIntField(env, input, packedOutputFields));
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIPacked__\n");
+    #endif
+
+    return output;
+}
+
+
+/**
+ * Generates InChIs for an array of packed structures, in a single native call.
+ */
+JNIEXPORT jobjectArray JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIBatch
+    (JNIEnv *env, jobject obj, jobjectArray inputs, jboolean std) {
+
+    jsize i, n;
+    jobjectArray outputs;
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIBatch()\n");
+    #endif
+
+    n = (*env)->GetArrayLength(env, inputs);
+    outputs = (*env)->NewObjectArray(env, n, jniInchiOutput, NULL);
+    if (outputs == NULL) {
+        return 0;
+    }
+
+    for (i = 0; i < n; i++) {
+
+        inchi_Input inchi_input;
+        jobject input, output;
+
+        /* Local references created for each structure are released by PopLocalFrame */
+        if ((*env)->PushLocalFrame(env, 16) < 0) {
+            return 0;
+        }
+
+        input = (*env)->GetObjectArrayElement(env, inputs, i);
+        if (0 == initInchiInputPacked(env, &inchi_input, input)) {
+            /* Exception was thrown */
+            (*env)->PopLocalFrame(env, NULL);
+            return 0;
+        }
+
+        output = getInchiAndFreeInput(env, &inchi_input, std, (*env)->GetIntField(env, input, packedOutputFields));
+
+        output = (*env)->PopLocalFrame(env, output);
+        (*env)->SetObjectArrayElement(env, outputs, i, output);
+        (*env)->DeleteLocalRef(env, output);
+    }
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIBatch__\n");
+    #endif
+
+    return outputs;
+}
+
+
+/**
+ * Generates InChI from a structure encoded in a direct buffer, see
+ * JniInchiStructureBuffer.java. The atom and stereo records are passed to the
+ * library in place; they are copied only if they are not suitably aligned.
+ */
+JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIBuffer
+    (JNIEnv *env, jobject obj, jobject buffer, jint offset, jint length, jstring options, jboolean std) {
+
+    inchi_Input inchi_input;
+    inchi_Output inchi_output;
+    char *base, *records, *copy = 0;
+    jlong capacity;
+    jint natoms, nstereo, i;
+    size_t size;
+    int ret;
+    jobject output;
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIBuffer()\n");
+    #endif
+
+    base = (char *) (*env)->GetDirectBufferAddress(env, buffer);
+    capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (base == 0 || capacity < 0) {
+        (*env)->ThrowNew(env, IllegalArgumentException, "Not a direct buffer");
+        return 0;
+    }
+    if (offset < 0 || length < BUFFER_HEADER_SIZE || (jlong) offset + length > capacity) {
+        (*env)->ThrowNew(env, IllegalArgumentException, "Structure buffer too short");
+        return 0;
+    }
+
+    memcpy(&natoms, base + offset, sizeof(jint));
+    memcpy(&nstereo, base + offset + sizeof(jint), sizeof(jint));
+    if (natoms < 0 || nstereo < 0) {
+        (*env)->ThrowNew(env, IllegalArgumentException, "Negative atom or stereo parity count");
+        return 0;
+    }
+    if (natoms > MAX_ATOMS) {
+        (*env)->ThrowNew(env, IllegalArgumentException, "Too many atoms");
+        return 0;
+    }
+    if ((jlong) BUFFER_HEADER_SIZE + (jlong) natoms * BUFFER_ATOM_SIZE
+            + (jlong) nstereo * BUFFER_STEREO0D_SIZE > length) {
+        (*env)->ThrowNew(env, IllegalArgumentException, "Structure buffer too short");
+        return 0;
+    }
+
+    records = base + offset + BUFFER_HEADER_SIZE;
+    size = (size_t) natoms * BUFFER_ATOM_SIZE + (size_t) nstereo * BUFFER_STEREO0D_SIZE;
+
+    /* The library trusts num_bonds and elname, so check them before use */
+    for (i = 0; i < natoms; i++) {
+        inchi_Atom *atom = (inchi_Atom *) (records + i * BUFFER_ATOM_SIZE);
+        AT_NUM numbonds;
+        memcpy(&numbonds, &atom->num_bonds, sizeof(AT_NUM));
+        if (numbonds < 0 || numbonds > MAXVAL) {
+            (*env)->ThrowNew(env, IllegalArgumentException, "Too many bonds from one atom; maximum: 20");
+            return 0;
+        }
+        if (0 == memchr(atom->elname, 0, ATOM_EL_LEN)) {
+            (*env)->ThrowNew(env, IllegalArgumentException, "Element name not zero terminated");
+            return 0;
+        }
+    }
+
+    if (((size_t) records) % sizeof(double) != 0) {
+        copy = malloc(size + 1);
+        if (copy == 0) {
+            (*env)->ThrowNew(env, IllegalArgumentException, "Unable to copy structure buffer");
+            return 0;
+        }
+        memcpy(copy, records, size);
+        records = copy;
+    }
+
+    inchi_input.szOptions = getOptionsString(env, options);
+    inchi_input.num_atoms = natoms;
+    inchi_input.num_stereo0D = nstereo;
+    inchi_input.atom = natoms > 0 ? (inchi_Atom *) records : 0;
+    inchi_input.stereo0D = nstereo > 0 ? (inchi_Stereo0D *) (records + natoms * BUFFER_ATOM_SIZE) : 0;
+
+    /* The records belong to the buffer, so are not freed with Free_inchi_Input */
+    if (std) {
+        ret = GetStdINCHI(&inchi_input, &inchi_output);
+        output = getInchiOutput(env, ret, &inchi_output);
+        FreeStdINCHI(&inchi_output);
+    } else {
+        ret = GetINCHI(&inchi_input, &inchi_output);
+        output = getInchiOutput(env, ret, &inchi_output);
+        FreeINCHI(&inchi_output);
+    }
+
+    free(inchi_input.szOptions);
+    free(copy);
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIBuffer__\n");
+    #endif
+
+    return output;
+}
+
+
+/**
+ * Generates Standard InChI from a packed structure, and the InChIKey of the
+ * InChI straight from the library's output, so the InChI is not converted to
+ * a Java string and back in between.
+ */
+JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetStdINCHIWithKeyPacked
+    (JNIEnv *env, jobject obj, jobject input) {
+
+    inchi_Input inchi_input;
+    inchi_Output inchi_output;
+    char szINCHIKey[28];
+    int ret, keyRet = -1;
+    jobject output;
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetStdINCHIWithKeyPacked()\n");
+    #endif
+
+    if (0 == initInchiInputPacked(env, &inchi_input, input)) {
+        /* Exception was thrown */
+        return 0;
+    }
+
+    memset(szINCHIKey, 0, sizeof(szINCHIKey));
+    ret = GetStdINCHI(&inchi_input, &inchi_output);
+    if ((ret == inchi_Ret_OKAY || ret == inchi_Ret_WARNING) && inchi_output.szInChI) {
+        keyRet = GetStdINCHIKeyFromStdINCHI(inchi_output.szInChI, szINCHIKey);
+    }
+
+    output = (*env)->NewObject(env, jniInchiOutputWithKey, initJniInchiOutputWithKey,
+            getInchiRet(ret, &inchi_output),
+            (*env)->NewStringUTF(env, inchi_output.szInChI),
+            (*env)->NewStringUTF(env, inchi_output.szAuxInfo),
+            (*env)->NewStringUTF(env, inchi_output.szMessage),
+            (*env)->NewStringUTF(env, inchi_output.szLog),
+            keyRet,
+            keyRet < 0 ? 0 : (*env)->NewStringUTF(env, szINCHIKey));
+
+    FreeStdINCHI(&inchi_output);
+    free(inchi_input.szOptions);
+    Free_std_inchi_Input(&inchi_input);
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetStdINCHIWithKeyPacked__\n");
+    #endif
+
+    return output;
+}
+
+
 /****************************************************************************
  *                                                                          *
  *   STRUCTURE to INCHI KEY                                                 *
@@ -433,13 +1014,15 @@ JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetStdINCHI
 
 /**
  * Generates InChI KEY from InChI.
+ * Thread safe: hashes the string without touching the library's global
+ * state, so is called without the lock.
  */
 JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIKeyFromINCHI
     (JNIEnv *env, jobject obj, jstring inchi) {
 
     const char *inchiString = (*env)->GetStringUTFChars(env, inchi, 0);
     char *szINCHIKey, *szXtra1, *szXtra2;
-    const int xtra1 = 1, xtra2 = 1;
+    const int xtra1 = 0, xtra2 = 0;
     int ret;
     jstring key;
     jobject robj;
@@ -464,6 +1047,7 @@ JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIKeyFromIN
 
     /* xtra1 =1 calculate hash extension (up to 256 bits; 1st block) */
     /* xtra2 =1 calculate hash extension (up to 256 bits; 2nd block) */
+    /* Neither is returned here; GetINCHIKeyFromINCHIXtra computes them */
 
     ret = GetINCHIKeyFromINCHI(inchiString, xtra1, xtra2, szINCHIKey, szXtra1, szXtra2);
     (*env)->ReleaseStringUTFChars(env, inchi, inchiString);
@@ -485,8 +1069,52 @@ JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIKeyFromIN
 }
 
 
+/**
+ * Generates InChI KEY from InChI, with the requested hash extensions.
+ * Thread safe, as GetINCHIKeyFromINCHI.
+ */
+JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIKeyFromINCHIXtra
+    (JNIEnv *env, jobject obj, jstring inchi, jboolean xtra1, jboolean xtra2) {
+
+    const char *inchiString;
+    /* The key buffer should be at least 28 bytes long, and each hash
+       extension buffer 64 characters + trailing NULL */
+    char szINCHIKey[28], szXtra1[65], szXtra2[65];
+    int ret;
+    jstring key, jXtra1 = 0, jXtra2 = 0;
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIKeyFromINCHIXtra()\n");
+    #endif
+
+    memset(szINCHIKey, 0, sizeof(szINCHIKey));
+    memset(szXtra1, 0, sizeof(szXtra1));
+    memset(szXtra2, 0, sizeof(szXtra2));
+
+    inchiString = (*env)->GetStringUTFChars(env, inchi, 0);
+    ret = GetINCHIKeyFromINCHI(inchiString, xtra1 ? 1 : 0, xtra2 ? 1 : 0, szINCHIKey, szXtra1, szXtra2);
+    (*env)->ReleaseStringUTFChars(env, inchi, inchiString);
+
+    key = (*env)->NewStringUTF(env, szINCHIKey);
+    if (xtra1 && szXtra1[0]) {
+        jXtra1 = (*env)->NewStringUTF(env, szXtra1);
+    }
+    if (xtra2 && szXtra2[0]) {
+        jXtra2 = (*env)->NewStringUTF(env, szXtra2);
+    }
+
+    #ifdef DEBUG
+    fprintf(stderr, "__GetINCHIKeyFromINCHIXtra__\n");
+    #endif
+
+    return (*env)->NewObject(env, jniInchiOutputKey, initJniInchiOutputKeyXtra, ret, key, jXtra1, jXtra2);
+
+}
+
+
 /**
  * Generates StdInChI KEY from StdInChI.
+ * Thread safe, as GetINCHIKeyFromINCHI.
  */
 JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetStdINCHIKeyFromStdINCHI
     (JNIEnv *env, jobject obj, jstring inchi) {
@@ -730,6 +1358,7 @@ JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetStructFromINCH
 
 /**
  * Checks InChIKey
+ * Thread safe: only checks the characters of the key.
  */
 JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_CheckINCHIKey
     (JNIEnv *env, jobject obj, jstring key) {
@@ -756,6 +1385,12 @@ JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_CheckINCHIKey
 }
 
 
+/**
+ * Checks InChI
+ * Thread safe unless strict: the non-strict check only looks at the
+ * layout of the string, but the strict check converts the InChI with
+ * GetINCHIfromINCHI, which uses the library's global state.
+ */
 JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_CheckINCHI
   (JNIEnv *env, jobject obj, jstring inchi, jboolean bStrict) {
 
@@ -829,3 +1464,218 @@ JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_GetINCHIInputFrom
     return inchiInputData;
 
 }
+
+
+
+/****************************************************************************
+ *                                                                          *
+ *   STAGED GENERATION                                                      *
+ *                                                                          *
+ ****************************************************************************/
+
+/*
+ State of an InChI generator, passed to Java as a handle. The input and
+ output belong to the structure last set up, and are freed when the next
+ structure is set up or the generator is destroyed.
+*/
+typedef struct {
+    INCHIGEN_HANDLE gen;
+    INCHIGEN_DATA data;
+    inchi_Input input;
+    inchi_Output output;
+    int std;
+    int used;
+} JNIINCHI_GENERATOR;
+
+
+/*
+ Frees the structure last set up on a generator
+*/
+void resetGenerator(JNIINCHI_GENERATOR *generator) {
+
+    if (!generator->used) {
+        return;
+    }
+    if (generator->std) {
+        STDINCHIGEN_Reset(generator->gen, &generator->data, &generator->output);
+    } else {
+        INCHIGEN_Reset(generator->gen, &generator->data, &generator->output);
+    }
+    free(generator->input.szOptions);
+    Free_inchi_Input(&generator->input);
+    memset(&generator->data, 0, sizeof(INCHIGEN_DATA));
+    memset(&generator->input, 0, sizeof(inchi_Input));
+    memset(&generator->output, 0, sizeof(inchi_Output));
+    generator->used = 0;
+}
+
+
+JNIEXPORT jlong JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENCreate
+    (JNIEnv *env, jobject obj) {
+
+    JNIINCHI_GENERATOR *generator = calloc(1, sizeof(JNIINCHI_GENERATOR));
+    if (generator == 0) {
+        return 0;
+    }
+    generator->gen = INCHIGEN_Create();
+    if (generator->gen == 0) {
+        free(generator);
+        return 0;
+    }
+    return (jlong) (size_t) generator;
+}
+
+
+JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENSetup
+    (JNIEnv *env, jobject obj, jlong handle, jobject input, jboolean std) {
+
+    JNIINCHI_GENERATOR *generator = (JNIINCHI_GENERATOR *) (size_t) handle;
+
+    #ifdef DEBUG
+    fprintf(stderr, "__INCHIGENSetup()\n");
+    #endif
+
+    resetGenerator(generator);
+    if (0 == initInchiInputPacked(env, &generator->input, input)) {
+        /* Exception was thrown */
+        return 0;
+    }
+    generator->std = std;
+    generator->used = 1;
+
+    if (std) {
+        return STDINCHIGEN_Setup(generator->gen, &generator->data, &generator->input);
+    }
+    return INCHIGEN_Setup(generator->gen, &generator->data, &generator->input);
+}
+
+
+JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENDoNormalization
+    (JNIEnv *env, jobject obj, jlong handle) {
+
+    JNIINCHI_GENERATOR *generator = (JNIINCHI_GENERATOR *) (size_t) handle;
+
+    if (generator->std) {
+        return STDINCHIGEN_DoNormalization(generator->gen, &generator->data);
+    }
+    return INCHIGEN_DoNormalization(generator->gen, &generator->data);
+}
+
+
+JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENDoCanonicalization
+    (JNIEnv *env, jobject obj, jlong handle) {
+
+    JNIINCHI_GENERATOR *generator = (JNIINCHI_GENERATOR *) (size_t) handle;
+
+    if (generator->std) {
+        return STDINCHIGEN_DoCanonicalization(generator->gen, &generator->data);
+    }
+    return INCHIGEN_DoCanonicalization(generator->gen, &generator->data);
+}
+
+
+JNIEXPORT jobject JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENDoSerialization
+    (JNIEnv *env, jobject obj, jlong handle) {
+
+    JNIINCHI_GENERATOR *generator = (JNIINCHI_GENERATOR *) (size_t) handle;
+    int ret;
+
+    if (generator->std) {
+        ret = STDINCHIGEN_DoSerialization(generator->gen, &generator->data, &generator->output);
+    } else {
+        ret = INCHIGEN_DoSerialization(generator->gen, &generator->data, &generator->output);
+    }
+    return getInchiOutput(env, ret, &generator->output);
+}
+
+
+JNIEXPORT jint JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENGetNumComponents
+    (JNIEnv *env, jobject obj, jlong handle, jboolean reconnected) {
+
+    JNIINCHI_GENERATOR *generator = (JNIINCHI_GENERATOR *) (size_t) handle;
+
+    return generator->data.num_components[reconnected ? 1 : 0];
+}
+
+
+/*
+ Adds the atoms and bonds of a normalized component to a structure. Removed
+ terminal hydrogen atoms are left out, as they are counted in the implicit
+ hydrogen of their neighbors. Bond types only found after normalization,
+ such as tautomeric bonds, are reported as alternating.
+*/
+JNIEXPORT jboolean JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENGetNormAtoms
+    (JNIEnv *env, jobject obj, jlong handle, jint component, jboolean reconnected, jboolean tautomeric, jobject output) {
+
+    JNIINCHI_GENERATOR *generator = (JNIINCHI_GENERATOR *) (size_t) handle;
+    int k = reconnected ? 1 : 0;
+    NORM_ATOMS *norm;
+    int i, j, numatoms;
+
+    if (component < 0 || component >= generator->data.num_components[k]) {
+        (*env)->ThrowNew(env, IllegalArgumentException, "No such component");
+        return JNI_FALSE;
+    }
+    norm = tautomeric ? generator->data.NormAtomsTaut[k] : generator->data.NormAtomsNontaut[k];
+    if (norm == 0 || norm[component].at == 0) {
+        return JNI_FALSE;
+    }
+    norm = &norm[component];
+    numatoms = norm->num_at;
+
+    for (i = 0; i < numatoms; i++) {
+
+        NORM_ATOM *natom = &norm->at[i];
+        int numIsoH = natom->num_iso_H[0] + natom->num_iso_H[1] + natom->num_iso_H[2];
+
+        jobject atom = (*env)->NewObject(env, jniInchiAtom, initJniInchiAtom,
+                        natom->x,
+                        natom->y,
+                        natom->z,
+                        (*env)->NewStringUTF(env, natom->elname));
+
+        (*env)->CallVoidMethod(env, atom, setCharge, natom->charge);
+        (*env)->CallVoidMethod(env, atom, setRadical, natom->radical);
+        (*env)->CallVoidMethod(env, atom, setImplicitH, natom->num_H - numIsoH);
+        (*env)->CallVoidMethod(env, atom, setImplicitProtium, natom->num_iso_H[0]);
+        (*env)->CallVoidMethod(env, atom, setImplicitDeuterium, natom->num_iso_H[1]);
+        (*env)->CallVoidMethod(env, atom, setImplicitTritium, natom->num_iso_H[2]);
+        if (natom->iso_atw_diff != 0) {
+            /* positive differences are stored plus one, to tell them from zero */
+            (*env)->CallVoidMethod(env, atom, setIsotopicMass, ISOTOPIC_SHIFT_FLAG
+                    + (natom->iso_atw_diff > 0 ? natom->iso_atw_diff - 1 : natom->iso_atw_diff));
+        }
+
+        (*env)->CallVoidMethod(env, output, addAtom, atom);
+    }
+
+    for (i = 0; i < numatoms; i++) {
+
+        NORM_ATOM *natom = &norm->at[i];
+        jobject atO = (*env)->CallObjectMethod(env, output, getAtom, i);
+
+        for (j = 0; j < natom->valence; j++) {
+
+            int neighbor = natom->neighbor[j];
+            if (neighbor < i) {
+                int bondType = natom->bond_type[j] > INCHI_BOND_TYPE_ALTERN ? INCHI_BOND_TYPE_ALTERN : natom->bond_type[j];
+                jobject atT = (*env)->CallObjectMethod(env, output, getAtom, neighbor);
+                jobject bond = (*env)->NewObject(env, jniInchiBond, initJniInchiBond, atO, atT, bondType, INCHI_BOND_STEREO_NONE);
+                (*env)->CallVoidMethod(env, output, addBond, bond);
+            }
+        }
+    }
+
+    return JNI_TRUE;
+}
+
+
+JNIEXPORT void JNICALL Java_net_sf_jniinchi_JniInchiWrapper_INCHIGENDestroy
+    (JNIEnv *env, jobject obj, jlong handle) {
+
+    JNIINCHI_GENERATOR *generator = (JNIINCHI_GENERATOR *) (size_t) handle;
+
+    resetGenerator(generator);
+    INCHIGEN_Destroy(generator->gen);
+    free(generator);
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import net.sf.jniinchi.JniInchiAsyncExecutor.RejectionPolicy;
+
+public class TestJniInchiAsyncExecutor {
+
+    private static final String ETHANE = "InChI=1S/C2H6/c1-2/h1-2H3";
+
+    /**
+     * InChIKey cache that blocks lookups of "block" until released, holding
+     * up the executor's thread.
+     */
+    private static class BlockingCache extends JniInchiCache<String, JniInchiOutputKey> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingCache() {
+            super(10);
+        }
+
+        @Override
+        public JniInchiOutputKey get(String key) {
+            if ("block".equals(key)) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return super.get(key);
+        }
+    }
+
+    private JniInchiAsyncExecutor executor;
+
+    @After
+    public void tearDown() {
+        JniInchiWrapper.setInchiKeyCache(null);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private BlockingCache block(JniInchiAsyncExecutor executor) throws InterruptedException {
+        BlockingCache cache = new BlockingCache();
+        JniInchiWrapper.setInchiKeyCache(cache);
+        executor.getInchiKey("block");
+        assertTrue(cache.started.await(10, TimeUnit.SECONDS));
+        return cache;
+    }
+
+    @Test
+    public void testEntryPoints() throws Exception {
+        executor = new JniInchiAsyncExecutor();
+        JniInchiInput input = TestJniInchiWrapper.getEthane("");
+        assertEquals(ETHANE, executor.getStdInchi(input).get().getInchi());
+        assertEquals(JniInchiWrapper.getInchi(input).getInchi(), executor.getInchi(input).get().getInchi());
+        assertEquals(ETHANE, executor.getInchiFromInchi(new JniInchiInputInchi(ETHANE)).get().getInchi());
+        assertEquals(2, executor.getStructureFromInchi(new JniInchiInputInchi(ETHANE)).get().getNumAtoms());
+        JniInchiOutputKey key = executor.getInchiKey(ETHANE).get();
+        assertEquals("OTMSDBZUPAUEDD-UHFFFAOYSA-N", key.getKey());
+        assertEquals(INCHI_KEY_STATUS.VALID_STANDARD, executor.checkInchiKey(key.getKey()).get());
+        assertEquals(INCHI_STATUS.VALID_STANDARD, executor.checkInchi(ETHANE, false).get());
+        String auxInfo = JniInchiWrapper.getStdInchi(input).getAuxInfo();
+        assertEquals(2, executor.getInputFromAuxInfo(auxInfo).get().getInput().getNumAtoms());
+        assertEquals(8, executor.getStartedCount());
+        assertEquals(0, executor.getRejectedCount());
+    }
+
+    @Test
+    public void testWrapperAsync() throws Exception {
+        JniInchiInput input = TestJniInchiWrapper.getEthane("");
+        assertEquals(ETHANE, JniInchiWrapper.getStdInchiAsync(input).get().getInchi());
+        assertEquals("OTMSDBZUPAUEDD-UHFFFAOYSA-N", JniInchiWrapper.getInchiKeyAsync(ETHANE).get().getKey());
+        assertSame(JniInchiWrapper.getAsyncExecutor(), JniInchiWrapper.getAsyncExecutor());
+
+        executor = new JniInchiAsyncExecutor(4, RejectionPolicy.BLOCK);
+        JniInchiWrapper.setAsyncExecutor(executor);
+        try {
+            assertSame(executor, JniInchiWrapper.getAsyncExecutor());
+            assertEquals(INCHI_STATUS.VALID_STANDARD, JniInchiWrapper.checkInchiAsync(ETHANE, false).get());
+            assertEquals(1, executor.getStartedCount());
+        } finally {
+            JniInchiWrapper.setAsyncExecutor(null);
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        executor = new JniInchiAsyncExecutor();
+        CompletableFuture<JniInchiOutput> f1 = executor.getStdInchi(TestJniInchiWrapper.getBranchedChain(1000));
+        while (executor.getStartedCount() == 0) {
+            Thread.sleep(1);
+        }
+        assertTrue(f1.cancel(true));
+        assertTrue(f1.isCancelled());
+
+        // The executor's thread is not left cancelled
+        JniInchiInput input = TestJniInchiWrapper.getEthane("");
+        assertEquals(ETHANE, executor.getStdInchi(input).get().getInchi());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        executor = new JniInchiAsyncExecutor();
+        try {
+            executor.getInchiKey(null).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        executor = new JniInchiAsyncExecutor(2, RejectionPolicy.FAIL_FAST);
+        BlockingCache cache = block(executor);
+        CompletableFuture<JniInchiOutputKey> f1 = executor.getInchiKey(ETHANE);
+        CompletableFuture<JniInchiOutputKey> f2 = executor.getInchiKey(ETHANE);
+        CompletableFuture<JniInchiOutputKey> f3 = executor.getInchiKey(ETHANE);
+        assertEquals(2, executor.getQueueSize());
+        assertTrue(f3.isCompletedExceptionally());
+        try {
+            f3.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(1, executor.getRejectedCount());
+        cache.release.countDown();
+        assertEquals(INCHI_KEY.OK, f1.get().getReturnStatus());
+        assertEquals(INCHI_KEY.OK, f2.get().getReturnStatus());
+        assertTrue(executor.getMaxQueueDelay(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        executor = new JniInchiAsyncExecutor(1, RejectionPolicy.CALLER_RUNS);
+        BlockingCache cache = block(executor);
+        CompletableFuture<JniInchiOutputKey> f1 = executor.getInchiKey(ETHANE);
+        CompletableFuture<JniInchiOutputKey> f2 = executor.getInchiKey(ETHANE);
+        // Run by this thread, while the executor is still held up
+        assertTrue(f2.isDone());
+        assertFalse(f1.isDone());
+        assertEquals(INCHI_KEY.OK, f2.get().getReturnStatus());
+        cache.release.countDown();
+        assertEquals(INCHI_KEY.OK, f1.get().getReturnStatus());
+        assertEquals(0, executor.getRejectedCount());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        executor = new JniInchiAsyncExecutor(1, RejectionPolicy.BLOCK);
+        BlockingCache cache = block(executor);
+        executor.getInchiKey(ETHANE);
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final CompletableFuture<CompletableFuture<JniInchiOutputKey>> f = new CompletableFuture<CompletableFuture<JniInchiOutputKey>>();
+        Thread t = new Thread() {
+            public void run() {
+                f.complete(executor.getInchiKey(ETHANE));
+                submitted.countDown();
+            }
+        };
+        t.start();
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        cache.release.countDown();
+        assertTrue(submitted.await(10, TimeUnit.SECONDS));
+        assertEquals(INCHI_KEY.OK, f.get().get().getReturnStatus());
+        assertEquals(0, executor.getRejectedCount());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        executor = new JniInchiAsyncExecutor();
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        CompletableFuture<JniInchiOutputKey> f = executor.getInchiKey(ETHANE);
+        assertTrue(f.isCompletedExceptionally());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new JniInchiAsyncExecutor(0, RejectionPolicy.FAIL_FAST);
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestJniInchiCache {
+
+    @Test
+    public void testGetPut() {
+        JniInchiCache<String, String> cache = new JniInchiCache<String, String>(10);
+        assertNull(cache.get("a"));
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictLru() {
+        JniInchiCache<String, String> cache = new JniInchiCache<String, String>(2, JniInchiCache.Eviction.LRU);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.put("c", "C");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+    }
+
+    @Test
+    public void testEvictFifo() {
+        JniInchiCache<String, String> cache = new JniInchiCache<String, String>(2, JniInchiCache.Eviction.FIFO);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.put("c", "C");
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("a"));
+        assertEquals("B", cache.get("b"));
+        assertEquals("C", cache.get("c"));
+    }
+
+    /**
+     * Test a segmented cache holds no more than its capacity.
+     */
+    @Test
+    public void testCapacity() {
+        JniInchiCache<Integer, Integer> cache = new JniInchiCache<Integer, Integer>(1000);
+        for (int i = 0; i < 5000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 1000);
+        assertEquals(5000 - cache.size(), cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.resetCounts();
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final JniInchiCache<Integer, Integer> cache = new JniInchiCache<Integer, Integer>(500);
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        int k = i % 1000;
+                        Integer v = cache.get(k);
+                        if (v == null) {
+                            cache.put(k, k);
+                        } else if (v.intValue() != k) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        assertEquals(8 * 20000, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.size() <= 500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new JniInchiCache<String, String>(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullKey() {
+        new JniInchiCache<String, String>(1).get(null);
+    }
+
+}
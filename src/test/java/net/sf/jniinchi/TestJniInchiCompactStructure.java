@@ -0,0 +1,157 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestJniInchiCompactStructure {
+
+    private static JniInchiCompactStructure getTestStructure() {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure();
+        int c = structure.addAtom("C");
+        int cl = structure.addAtom(4, 5, 6, "Cl");
+        structure.setCharge(cl, -1);
+        structure.setRadical(cl, INCHI_RADICAL.DOUBLET);
+        structure.setImplicitH(cl, 0);
+        structure.setImplicitProtium(cl, 1);
+        structure.setImplicitDeuterium(cl, 2);
+        structure.setImplicitTritium(cl, 3);
+        structure.setIsotopicMass(cl, 37);
+        structure.addBond(cl, c, INCHI_BOND_TYPE.SINGLE, INCHI_BOND_STEREO.SINGLE_1UP);
+        structure.addStereo0D(JniInchiStereo0D.NO_ATOM, c, cl, cl, c, INCHI_STEREOTYPE.DOUBLEBOND, INCHI_PARITY.EVEN);
+        return structure;
+    }
+
+    @Test
+    public void testAddAndGet() {
+        JniInchiCompactStructure structure = getTestStructure();
+        assertEquals(2, structure.getNumAtoms());
+        assertEquals(1, structure.getNumBonds());
+        assertEquals(1, structure.getNumStereo0D());
+
+        assertEquals("C", structure.getElementType(0));
+        assertEquals(0.0, structure.getX(0), 0);
+        assertEquals(-1, structure.getImplicitH(0));
+        assertEquals(INCHI_RADICAL.NONE, structure.getRadical(0));
+
+        assertEquals("Cl", structure.getElementType(1));
+        assertEquals(4.0, structure.getX(1), 0);
+        assertEquals(5.0, structure.getY(1), 0);
+        assertEquals(6.0, structure.getZ(1), 0);
+        assertEquals(-1, structure.getCharge(1));
+        assertEquals(INCHI_RADICAL.DOUBLET, structure.getRadical(1));
+        assertEquals(0, structure.getImplicitH(1));
+        assertEquals(1, structure.getImplicitProtium(1));
+        assertEquals(2, structure.getImplicitDeuterium(1));
+        assertEquals(3, structure.getImplicitTritium(1));
+        assertEquals(37, structure.getIsotopicMass(1));
+
+        assertEquals(1, structure.getBondOriginAtom(0));
+        assertEquals(0, structure.getBondTargetAtom(0));
+        assertEquals(INCHI_BOND_TYPE.SINGLE, structure.getBondType(0));
+        assertEquals(INCHI_BOND_STEREO.SINGLE_1UP, structure.getBondStereo(0));
+
+        assertEquals(JniInchiStereo0D.NO_ATOM, structure.getStereo0DCentralAtom(0));
+        assertEquals(0, structure.getStereo0DNeighbor(0, 0));
+        assertEquals(1, structure.getStereo0DNeighbor(0, 1));
+        assertEquals(INCHI_STEREOTYPE.DOUBLEBOND, structure.getStereo0DType(0));
+        assertEquals(INCHI_PARITY.EVEN, structure.getStereo0DParity(0));
+    }
+
+    /**
+     * Test arrays grow, and coordinates are kept once the first is set.
+     */
+    @Test
+    public void testGrow() {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure(1, 0);
+        for (int i = 0; i < 100; i++) {
+            structure.addAtom(i == 50 ? 1 : 0, 0, 0, "C");
+            if (i > 0) {
+                structure.addBond(i - 1, i, INCHI_BOND_TYPE.SINGLE);
+            }
+        }
+        structure.setCoordinates(99, 1, 2, 3);
+        assertEquals(100, structure.getNumAtoms());
+        assertEquals(99, structure.getNumBonds());
+        assertEquals(0.0, structure.getX(49), 0);
+        assertEquals(1.0, structure.getX(50), 0);
+        assertEquals(3.0, structure.getZ(99), 0);
+        assertEquals(98, structure.getBondOriginAtom(98));
+
+        structure.trimToSize();
+        assertEquals(3.0, structure.getZ(99), 0);
+        structure.addAtom("O");
+        assertEquals("O", structure.getElementType(100));
+        assertEquals(-1, structure.getImplicitH(100));
+    }
+
+    @Test
+    public void testToStructure() {
+        JniInchiStructure structure = getTestStructure().toStructure();
+        assertEquals(2, structure.getNumAtoms());
+        JniInchiAtom cl = structure.getAtom(1);
+        assertEquals("Cl", cl.getElementType());
+        assertEquals(37, cl.getIsotopicMass());
+        assertEquals(INCHI_RADICAL.DOUBLET, cl.getRadical());
+        assertSame(cl, structure.getBond(0).getOriginAtom());
+        assertSame(structure.getAtom(0), structure.getBond(0).getTargetAtom());
+        assertNull(structure.getStereo0D(0).getCentralAtom());
+        assertSame(cl, structure.getStereo0D(0).getNeighbor(1));
+    }
+
+    @Test
+    public void testFromStructure() {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure(getTestStructure().toStructure());
+        assertEquals(2, structure.getNumAtoms());
+        assertEquals(1, structure.getNumBonds());
+        assertEquals(1, structure.getNumStereo0D());
+        assertEquals("Cl", structure.getElementType(1));
+        assertEquals(6.0, structure.getZ(1), 0);
+        assertEquals(-1, structure.getCharge(1));
+        assertEquals(INCHI_BOND_STEREO.SINGLE_1UP, structure.getBondStereo(0));
+        assertEquals(INCHI_PARITY.EVEN, structure.getStereo0DParity(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBondToUnknownAtom() {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure();
+        structure.addAtom("C");
+        structure.addBond(0, 1, INCHI_BOND_TYPE.SINGLE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStereoUnknownAtom() {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure();
+        structure.addAtom("C");
+        structure.addStereo0D(0, 0, 1, 2, 3, INCHI_STEREOTYPE.TETRAHEDRAL, INCHI_PARITY.ODD);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testElementNameTooLong() {
+        new JniInchiCompactStructure().addAtom("Abcdef");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetUnknownAtom() {
+        getTestStructure().getCharge(2);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks the calls made without the native library lock run while it is
+ * held, and give the same results when run concurrently.
+ */
+public class TestJniInchiConcurrency {
+
+    private static final String[] INCHIS = {
+        "InChI=1S/C2H6/c1-2/h1-2H3",
+        "InChI=1S/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3",
+        "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1",
+        "InChI=1S/Na.H2O/h;1H2/q+1;/p-1",
+        "InChI=1/C2H2Cl2/c3-1-2-4/h1-2H/b2-1+",
+        "InChI=1/ClH/h1H/i/hD",
+        "InChI=1/C24H33N3O5/c1-23(2,3)26-21(29)20(17-11-8-7-9-12-17)27(16-18-13-10-14-31-18)19(28)15-25-22(30)32-24(4,5)6/h7-14,20H,15-16H2,1-6H3,(H,25,30)(H,26,29)",
+        "InChI=1S/",
+        "InChI=2/C8H10N4O2",
+        "InChI=1/C8H10N4O2/x1-9-4-9",
+    };
+
+    @Test
+    public void testUnlockedWhileLockHeld() throws Exception {
+        JniInchiWrapper.checkInchi(INCHIS[0], false);
+        final JniInchiLock lock = JniInchiWrapper.getNativeLock();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread() {
+            public void run() {
+                try {
+                    lock.lock();
+                    try {
+                        locked.countDown();
+                        release.await();
+                    } finally {
+                        lock.unlock();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        holder.start();
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+        lock.setThreadTimeout(0, TimeUnit.SECONDS);
+        try {
+            JniInchiOutputKey key = JniInchiWrapper.getInchiKey(INCHIS[1]);
+            assertEquals("RYYVLZVUVIJVGH-UHFFFAOYSA-N", key.getKey());
+            assertEquals(INCHI_KEY_STATUS.VALID_STANDARD, JniInchiWrapper.checkInchiKey(key.getKey()));
+            assertEquals(INCHI_STATUS.VALID_STANDARD, JniInchiWrapper.checkInchi(INCHIS[1], false));
+            try {
+                JniInchiWrapper.checkInchi(INCHIS[1], true);
+                fail("Strict check should need the lock");
+            } catch (JniInchiRejectedException e) {
+                // expected
+            }
+        } finally {
+            lock.clearThreadTimeout();
+            release.countDown();
+            holder.join();
+        }
+    }
+
+    @Test
+    public void testStress() throws Exception {
+        final List<String> inchis = new ArrayList<String>();
+        final List<String> keys = new ArrayList<String>();
+        final List<INCHI_STATUS> checks = new ArrayList<INCHI_STATUS>();
+        final List<INCHI_KEY_STATUS> keyChecks = new ArrayList<INCHI_KEY_STATUS>();
+        for (String inchi : INCHIS) {
+            inchis.add(inchi);
+            String key = JniInchiWrapper.getInchiKey(inchi).getKey();
+            keys.add(key);
+            checks.add(JniInchiWrapper.checkInchi(inchi, false));
+            keyChecks.add(JniInchiWrapper.checkInchiKey(key));
+        }
+        final JniInchiInput input = TestJniInchiWrapper.getBranchedChain(300);
+        final String chain = JniInchiWrapper.getStdInchi(input).getInchi();
+
+        int nThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            // InChI generation holding the lock, alongside the unlocked calls
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    for (int i = 0; i < 20; i++) {
+                        assertEquals(chain, JniInchiWrapper.getStdInchi(input).getInchi());
+                    }
+                    return null;
+                }
+            }));
+            for (int t = 1; t < nThreads; t++) {
+                final int offset = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int i = 0; i < 2000; i++) {
+                            int j = (i + offset) % inchis.size();
+                            assertEquals(keys.get(j), JniInchiWrapper.getInchiKey(inchis.get(j)).getKey());
+                            assertEquals(checks.get(j), JniInchiWrapper.checkInchi(inchis.get(j), false));
+                            assertEquals(keyChecks.get(j), JniInchiWrapper.checkInchiKey(keys.get(j)));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
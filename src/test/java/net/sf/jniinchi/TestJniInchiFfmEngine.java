@@ -0,0 +1,176 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the foreign function engine with the JNI glue.  The tests pass
+ * trivially on JVMs without the engine.
+ */
+public class TestJniInchiFfmEngine {
+
+    private static final String ALANINE = "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1";
+
+    private static JniInchiFfmEngine engine;
+
+    @BeforeClass
+    public static void createEngine() throws JniInchiException {
+        if (JniInchiFfmEngine.isSupported()) {
+            engine = new JniInchiFfmEngine();
+        }
+    }
+
+    private static JniInchiInput[] getInputs() throws JniInchiException {
+        return new JniInchiInput[] {
+                new JniInchiInput(Main.getTestMolecule()),
+                new JniInchiInput(Main.getTestMolecule(), "-FixedH -RecMet"),
+                TestJniInchiWrapper.getBranchedChain(10),
+                TestJniInchiWrapper.getBranchedChain(300),
+                new JniInchiInput()
+        };
+    }
+
+    private static void assertOutputEquals(JniInchiOutput expected, JniInchiOutput actual) {
+        assertEquals(expected.getReturnStatus(), actual.getReturnStatus());
+        assertEquals(expected.getInchi(), actual.getInchi());
+        assertEquals(expected.getAuxInfo(), actual.getAuxInfo());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getLog(), actual.getLog());
+    }
+
+    private static void assertStructureEquals(JniInchiStructure expected, JniInchiStructure actual) {
+        assertEquals(expected.getNumAtoms(), actual.getNumAtoms());
+        assertEquals(expected.getNumBonds(), actual.getNumBonds());
+        assertEquals(expected.getNumStereo0D(), actual.getNumStereo0D());
+        for (int i = 0; i < expected.getNumAtoms(); i++) {
+            assertEquals(expected.getAtom(i).getDebugString(), actual.getAtom(i).getDebugString());
+        }
+        for (int i = 0; i < expected.getNumBonds(); i++) {
+            assertEquals(expected.getBond(i).getDebugString(), actual.getBond(i).getDebugString());
+        }
+        for (int i = 0; i < expected.getNumStereo0D(); i++) {
+            assertEquals(expected.getStereo0D(i).getDebugString(), actual.getStereo0D(i).getDebugString());
+        }
+    }
+
+    @Test
+    public void testGetInchi() throws JniInchiException {
+        if (engine == null) {
+            return;
+        }
+        for (JniInchiInput input : getInputs()) {
+            assertOutputEquals(JniInchiWrapper.getInchi(input), engine.getInchi(input));
+            assertOutputEquals(JniInchiWrapper.getStdInchi(input), engine.getStdInchi(input));
+        }
+    }
+
+    @Test
+    public void testGetInchiFromInchi() throws JniInchiException {
+        if (engine == null) {
+            return;
+        }
+        JniInchiInputInchi input = new JniInchiInputInchi(ALANINE);
+        assertOutputEquals(JniInchiWrapper.getInchiFromInchi(input), engine.getInchiFromInchi(input));
+    }
+
+    @Test
+    public void testGetStructureFromInchi() throws JniInchiException {
+        if (engine == null) {
+            return;
+        }
+        for (JniInchiInput input : getInputs()) {
+            String inchi = JniInchiWrapper.getInchi(input).getInchi();
+            if (inchi == null) {
+                continue;
+            }
+            JniInchiOutputStructure expected = JniInchiWrapper.getStructureFromInchi(new JniInchiInputInchi(inchi));
+            JniInchiOutputStructure actual = engine.getStructureFromInchi(new JniInchiInputInchi(inchi));
+            assertEquals(expected.getReturnStatus(), actual.getReturnStatus());
+            assertEquals(expected.getMessage(), actual.getMessage());
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 2; j++) {
+                    assertEquals(expected.getWarningFlags()[i][j], actual.getWarningFlags()[i][j]);
+                }
+            }
+            assertStructureEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testGetInchiKey() throws JniInchiException {
+        if (engine == null) {
+            return;
+        }
+        JniInchiOutputKey output = engine.getInchiKey(ALANINE);
+        assertEquals(INCHI_KEY.OK, output.getReturnStatus());
+        assertEquals(JniInchiWrapper.getInchiKey(ALANINE).getKey(), output.getKey());
+        assertEquals(INCHI_KEY_STATUS.VALID_STANDARD, engine.checkInchiKey(output.getKey()));
+        assertEquals(INCHI_KEY_STATUS.INVALID_LENGTH, engine.checkInchiKey("ABC"));
+        assertEquals(INCHI_STATUS.VALID_STANDARD, engine.checkInchi(ALANINE, false));
+        assertEquals(JniInchiWrapper.checkInchi(ALANINE, true), engine.checkInchi(ALANINE, true));
+    }
+
+    @Test
+    public void testGetInputFromAuxInfo() throws JniInchiException {
+        if (engine == null) {
+            return;
+        }
+        String auxInfo = JniInchiWrapper.getInchi(new JniInchiInput(Main.getTestMolecule())).getAuxInfo();
+        JniInchiInputData expected = JniInchiWrapper.getInputFromAuxInfo(auxInfo);
+        JniInchiInputData actual = engine.getInputFromAuxInfo(auxInfo);
+        assertEquals(expected.getReturnValue(), actual.getReturnValue());
+        assertEquals(expected.getErrorMessage(), actual.getErrorMessage());
+        assertStructureEquals(expected.getInput(), actual.getInput());
+    }
+
+    @Test
+    public void testTooManyAtoms() throws JniInchiException {
+        if (engine == null) {
+            return;
+        }
+        JniInchiInput input = new JniInchiInput();
+        for (int i = 0; i < 2000; i++) {
+            input.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        }
+        try {
+            engine.getInchi(input);
+            fail("too many atoms");
+        } catch (IllegalArgumentException e) {
+            ; // pass
+        }
+    }
+
+    @Test
+    public void testUnsupported() {
+        if (JniInchiFfmEngine.isSupported()) {
+            return;
+        }
+        try {
+            new JniInchiFfmEngine();
+            fail("engine not supported");
+        } catch (JniInchiException e) {
+            ; // pass
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TestJniInchiGenerator {
+
+    private JniInchiGenerator generator;
+
+    @Before
+    public void createGenerator() throws JniInchiException {
+        assumeTrue(JniInchiGenerator.isSupported());
+        generator = new JniInchiGenerator();
+    }
+
+    @After
+    public void closeGenerator() {
+        if (generator != null) {
+            generator.close();
+        }
+    }
+
+    private static void assertSucceeded(INCHI_RET ret) {
+        assertTrue(ret.toString(), ret == INCHI_RET.OKAY || ret == INCHI_RET.WARNING);
+    }
+
+    private JniInchiOutput generate(JniInchiInput input, boolean std) throws JniInchiException {
+        assertSucceeded(std ? generator.setupStd(input) : generator.setup(input));
+        assertSucceeded(generator.normalize());
+        assertSucceeded(generator.canonicalize());
+        return generator.serialize();
+    }
+
+    /**
+     * Compares the serialized output only; each stage reports its own
+     * status, so warnings from normalization are not repeated.
+     */
+    private static void assertOutputEquals(JniInchiOutput expected, JniInchiOutput actual) {
+        assertEquals(expected.getInchi(), actual.getInchi());
+        assertEquals(expected.getAuxInfo(), actual.getAuxInfo());
+    }
+
+    @Test
+    public void testStagesMatchGetInchi() throws JniInchiException {
+        JniInchiInput[] inputs = {
+                new JniInchiInput(Main.getTestMolecule()),
+                TestJniInchiWrapper.getLAlanine3D(""),
+                TestJniInchiWrapper.getE12dichloroethene0D(""),
+                TestJniInchiWrapper.getSodiumHydroxide("-FixedH -RecMet"),
+                TestJniInchiWrapper.getBranchedChain(100)
+        };
+        // one generator, reused for every structure
+        for (int i = 0; i < 3; i++) {
+            for (JniInchiInput input : inputs) {
+                assertOutputEquals(JniInchiWrapper.getInchi(input), generate(input, false));
+                assertOutputEquals(JniInchiWrapper.getStdInchi(input), generate(input, true));
+            }
+        }
+    }
+
+    @Test
+    public void testStopAfterNormalization() throws JniInchiException {
+        JniInchiInput input = TestJniInchiWrapper.getEthane("");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(INCHI_RET.OKAY, generator.setup(input));
+            assertEquals(INCHI_RET.OKAY, generator.normalize());
+            assertEquals(1, generator.getNumComponents(false));
+            JniInchiStructure normalized = generator.getNormalizedComponent(0, false, true);
+            assertEquals(2, normalized.getNumAtoms());
+            assertEquals(1, normalized.getNumBonds());
+            assertEquals("C", normalized.getAtom(0).getElementType());
+            assertEquals(3, normalized.getAtom(0).getImplicitH());
+            assertEquals(INCHI_BOND_TYPE.SINGLE, normalized.getBond(0).getBondType());
+        }
+        assertOutputEquals(JniInchiWrapper.getInchi(input), generate(input, false));
+    }
+
+    @Test
+    public void testNormalizedComponents() throws JniInchiException {
+        generator.setup(TestJniInchiWrapper.getSodiumHydroxide("-FixedH"));
+        generator.normalize();
+        assertEquals(2, generator.getNumComponents(false));
+        // the mobile-H form adds a proton to the hydroxide, the fixed-H form does not
+        JniInchiAtom mobileO = generator.getNormalizedComponent(1, false, true).getAtom(0);
+        JniInchiAtom fixedO = generator.getNormalizedComponent(1, false, false).getAtom(0);
+        assertEquals("O", mobileO.getElementType());
+        assertEquals(0, mobileO.getCharge());
+        assertEquals(2, mobileO.getImplicitH());
+        assertEquals(-1, fixedO.getCharge());
+        assertEquals(1, fixedO.getImplicitH());
+        assertEquals(1, generator.getNormalizedComponent(0, false, true).getAtom(0).getCharge());
+
+        generator.setup(TestJniInchiWrapper.getSodiumHydroxide(""));
+        generator.normalize();
+        assertNull(generator.getNormalizedComponent(1, false, false));
+        try {
+            generator.getNormalizedComponent(2, false, false);
+            fail("no such component");
+        } catch (IllegalArgumentException e) {
+            ; // pass
+        }
+    }
+
+    @Test
+    public void testStageOrder() throws JniInchiException {
+        try {
+            generator.normalize();
+            fail("not set up");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+        generator.setup(TestJniInchiWrapper.getEthane(""));
+        try {
+            generator.canonicalize();
+            fail("not normalized");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+        generator.normalize();
+        try {
+            generator.serialize();
+            fail("not canonicalized");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+    }
+
+    @Test
+    public void testRepeatedStage() throws JniInchiException {
+        generator.setup(TestJniInchiWrapper.getEthane(""));
+        assertSucceeded(generator.normalize());
+        try {
+            generator.normalize();
+            fail("already normalized");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+        assertSucceeded(generator.canonicalize());
+        try {
+            generator.canonicalize();
+            fail("already canonicalized");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+        try {
+            generator.normalize();
+            fail("already normalized");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+        assertSucceeded(generator.serialize().getReturnStatus());
+        try {
+            generator.serialize();
+            fail("already serialized");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+
+        // Setting up again starts over
+        generator.setup(TestJniInchiWrapper.getEthane(""));
+        assertSucceeded(generator.normalize());
+    }
+
+    @Test
+    public void testFailedSetup() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput();
+        INCHI_RET ret = generator.setup(input);
+        assertFalse(ret == INCHI_RET.OKAY || ret == INCHI_RET.WARNING);
+        try {
+            generator.normalize();
+            fail("setup failed");
+        } catch (IllegalStateException e) {
+            ; // pass
+        }
+        assertOutputEquals(JniInchiWrapper.getInchi(new JniInchiInput(Main.getTestMolecule())),
+                generate(new JniInchiInput(Main.getTestMolecule()), false));
+    }
+
+    @Test
+    public void testClosed() throws JniInchiException {
+        generator.close();
+        try {
+            generator.setup(TestJniInchiWrapper.getEthane(""));
+            fail("generator closed");
+        } catch (JniInchiException e) {
+            ; // pass
+        }
+        generator.close();
+    }
+
+}
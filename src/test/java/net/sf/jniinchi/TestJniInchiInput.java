@@ -34,4 +34,30 @@ public class TestJniInchiInput extends TestCase {
         input.options = "-compress";
         Assert.assertEquals("-compress", input.getOptions());
     }
+
+    @Test
+    public void testOutputFields() {
+        JniInchiInput input = new JniInchiInput();
+        Assert.assertEquals(JniInchiOutput.ALL_FIELDS, input.getOutputFields());
+        input.setOutputFields(JniInchiOutput.FIELD_INCHI | JniInchiOutput.FIELD_MESSAGE);
+        Assert.assertEquals(JniInchiOutput.FIELD_INCHI | JniInchiOutput.FIELD_MESSAGE, input.getOutputFields());
+        input.setOutputFields(0);
+        Assert.assertEquals(0, input.getOutputFields());
+        try {
+            input.setOutputFields(16);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSetLeanOutput() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput("-FixedH -auxnone");
+        input.setLeanOutput();
+        String flag = JniInchiWrapper.flagChar;
+        String noLog = JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_NO_LOG) ? " " + flag + "NoLog" : "";
+        Assert.assertEquals(flag + "FixedH " + flag + "AuxNone" + noLog, input.getOptions());
+        Assert.assertEquals(JniInchiOutput.FIELD_INCHI | JniInchiOutput.FIELD_MESSAGE, input.getOutputFields());
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestJniInchiInputKey {
+
+    private static JniInchiInput getChloromethane(String options, int charge) throws JniInchiException {
+        JniInchiInput input = new JniInchiInput(options);
+        JniInchiAtom c = input.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        JniInchiAtom cl = input.addAtom(new JniInchiAtom(0, 0, 0, "Cl"));
+        c.setCharge(charge);
+        input.addBond(new JniInchiBond(c, cl, INCHI_BOND_TYPE.SINGLE));
+        return input;
+    }
+
+    private static JniInchiInputKey key(JniInchiInput input, boolean std) {
+        return new JniInchiInputKey(new JniInchiPackedStructure(input), std);
+    }
+
+    @Test
+    public void testEqual() throws JniInchiException {
+        JniInchiInputKey k1 = key(getChloromethane("", 0), false);
+        JniInchiInputKey k2 = key(getChloromethane("", 0), false);
+        assertEquals(k1, k2);
+        assertEquals(k1.hashCode(), k2.hashCode());
+    }
+
+    @Test
+    public void testNotEqual() throws JniInchiException {
+        JniInchiInputKey k = key(getChloromethane("", 0), false);
+        assertFalse(k.equals(key(getChloromethane("", 0), true)));
+        assertFalse(k.equals(key(getChloromethane("-FixedH", 0), false)));
+        assertFalse(k.equals(key(getChloromethane("", 1), false)));
+
+        JniInchiInput input = getChloromethane("", 0);
+        input.getAtom(1).setIsotopicMass(37);
+        assertFalse(k.equals(key(input, false)));
+
+        input = getChloromethane("", 0);
+        input.getAtom(0).setImplicitH(3);
+        assertFalse(k.equals(key(input, false)));
+
+        input = getChloromethane("", 0);
+        input.setOutputFields(JniInchiOutput.ALL_FIELDS);
+        assertFalse(k.equals(key(input, false)));
+    }
+
+    /**
+     * Test unused capacity in a compact structure's arrays is not part of
+     * the key.
+     */
+    @Test
+    public void testCompactStructure() throws JniInchiException {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure(100, 100);
+        int c = structure.addAtom("C");
+        int cl = structure.addAtom("Cl");
+        structure.addBond(c, cl, INCHI_BOND_TYPE.SINGLE);
+        JniInchiInputKey k = new JniInchiInputKey(structure.pack(JniInchiWrapper.checkOptions("")), false);
+        assertEquals(key(getChloromethane("", 0), false), k);
+    }
+
+}
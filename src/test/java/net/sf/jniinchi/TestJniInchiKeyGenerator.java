@@ -0,0 +1,276 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestJniInchiKeyGenerator {
+
+    /**
+     * InChIs used elsewhere in the tests, valid and invalid, and some with
+     * the layers the key treats specially.
+     */
+    private static final String[] CORPUS = {
+        "InChI=1/-",
+        "InChI=1/C24H33N3O5/c1-23(2,3)26-21(29)20(17-11-8-7-9-12-17)27(16-18-13-10-14-31-18)19(28)15-25-22(30)32-24(4,5)6/h7-14,20H,15-16H2,1-6H3,(H,25,30)(H,26,29) ",
+        "InChI=1/C24H33N3O5/c1-23(2,3)26-21(29)20(17-11-8-7-9-12-17)27(16-18-13-10-14-31-18)19(28)15-25-22(30)32-24(4,5)6/h7-14,20H,15-16H2,1-6H3,(H,25,30)(H,26,29)",
+        "InChI=1/C2H2/c1-2/h1-2H",
+        "InChI=1/C2H2Cl2/c3-1-2-4/h1-2H",
+        "InChI=1/C2H2Cl2/c3-1-2-4/h1-2H/b2-1+",
+        "InChI=1/C2H2Cl2/c3-1-2-4/h1-2H/b2-1-",
+        "InChI=1/C2H4/c1-2/h1-2H2",
+        "InChI=1/C2H6/c1-2/h1-2H3",
+        "InChI=1/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)",
+        "InChI=1/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/",
+        "InChI=1/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1",
+        "InChI=1/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m1/s1",
+        "InChI=1/C3H7NO2/cABBCC/hB1D2A3,1EF/tB1/m0/s1",
+        "InChI=1/C6H6/c1-2-4-6-5-3-1/h1-6H",
+        "InChI=1/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3",
+        "InChI=1/C8H10N4O2/x1-9-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3",
+        "InChI=1/CH3/h1H3",
+        "InChI=1/Cl",
+        "InChI=1/Cl/i1+2",
+        "InChI=1/ClH/h1H",
+        "InChI=1/ClH/h1H/i/hD",
+        "InChI=1/ClH/h1H/i/hH",
+        "InChI=1/ClH/h1H/i/hT",
+        "InChI=1S/",
+        "InChI=1S/C11H20/c1-3-10(2)11-8-6-4-5-7-9-11/h4-5,10-11H,3,6-9H2,1-2H3",
+        "InChI=1S/C2H2/c1-2/h1-2H",
+        "InChI=1S/C2H2Cl2/c3-1-2-4/h1-2H",
+        "InChI=1S/C2H2Cl2/c3-1-2-4/h1-2H/b2-1+",
+        "InChI=1S/C2H2Cl2/c3-1-2-4/h1-2H/b2-1-",
+        "InChI=1S/C2H4/c1-2/h1-2H2",
+        "InChI=1S/C2H6/c1-2/h1-2H3",
+        "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)",
+        "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1",
+        "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m1/s1",
+        "InChI=1S/C4H6/c1-3-4-2/h3-4H,1-2H2",
+        "InChI=1S/C6H6/c1-2-4-6-5-3-1/h1-6H",
+        "InChI=1S/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3",
+        "InChI=1S/CH3/h1H3",
+        "InChI=1S/Cl",
+        "InChI=1S/Cl/i1+2",
+        "InChI=1S/Cl/q-1",
+        "InChI=1S/ClH/h1H",
+        "InChI=1S/ClH/h1H/i/hD",
+        "InChI=1S/ClH/h1H/i/hH",
+        "InChI=1S/ClH/h1H/i/hT",
+        "InChI=1S/Na.H2O/h;1H2/q+1;/p-1",
+        "InChI=2/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3",
+        "InChI=1/C4H5N3O/c5-3-1-2-6-4(8)7-3/h1-2H,(H3,5,6,7,8)/f/h6H,5H2",
+        "InChI=1/C2H4O2/c1-2(3)4/h1H3,(H,3,4)/p-1/fC2H3O2/q-1",
+        "InChI=1/CH4N2O/c2-1(3)4/h(H4,2,3,4)/f/h2-3H2",
+        "InChI=1/Fe.2CH3/h;2*1H3/q+2;2*-1/rC2H6Fe/c1-3-2/h1-2H3",
+        "InChI=1S/C2H4O2/c1-2(3)4/h1H3,(H,3,4)/p-1",
+        "InChI=1S/C2H7N/c1-2-3/h2-3H2,1H3/p+1",
+        "InChI=1S/C6H14N4O2/c7-4(5(11)12)2-1-3-10-6(8)9/h4H,1-3,7H2,(H,11,12)(H4,8,9,10)/p+13",
+        "InChI=1S/C6H4O4/c7-5-1-2-6(8)4-3-5/h1-4,7-8H/p-13",
+        "InChI=1S/H2O/h1H2/p+12",
+        "InChI=1S/H2O/h1H2/p-12",
+        "InChI=1S/H2O/h1H2/p+0",
+        "InChI=1S/H2O/h1H2/p",
+        "InChI=1S/H2O/h1H2/p/i1+1",
+        "InChI=1S/C4H5N3O/c5-3-1-2-6-4(8)7-3/h1-2H,(H3,5,6,7,8)/f/h6H,5H2",
+        "InChI=1S/Fe.2CH3/h;2*1H3/q+2;2*-1/rC2H6Fe/c1-3-2/h1-2H3",
+        "InChI=1/",
+        "InChI=1S",
+        "InChI=1S/a",
+        "InChI=1/c",
+        "InChI=1//",
+        "InChI=1/C",
+        "InChI=1/CH4/h1H4/",
+        "InChI=1/CH4\n",
+        "InChI=1S/CH4/h1H4 extra text",
+        "InChI=1A/CH4/h1H4",
+        "InChI=/CH4/h1H4",
+        "Inchi=1/CH4/h1H4",
+        "InChI=1S/C2H4/c1-2/h1-2H2/i1D",
+        "",
+        "I",
+        "InChI=1/\u00e9\u00e9",
+        "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1\u00e9",
+    };
+
+    /**
+     * Compares the Java and native keys for an InChI.
+     */
+    private static void assertSameKey(final String inchi) throws JniInchiException {
+        JniInchiOutputKey expected = JniInchiWrapper.getInchiKey(inchi);
+        JniInchiOutputKey actual = JniInchiKeyGenerator.getInchiKey(inchi);
+        assertEquals(inchi, expected.getReturnStatus(), actual.getReturnStatus());
+        assertEquals(inchi, expected.getKey(), actual.getKey());
+    }
+
+    @Test
+    public void testCorpus() throws JniInchiException {
+        for (String inchi : CORPUS) {
+            assertSameKey(inchi);
+        }
+    }
+
+    /**
+     * Generated InChIs, built from random layers, and truncations and
+     * mutations of the corpus, to cover the block and layer parsing.
+     */
+    @Test
+    public void testRandom() throws JniInchiException {
+        final String alphabet = "ABCHNOcfhpqrbtmsi0123456789+-/(),;*.=?@ ";
+        final String layers = "cfhpqrbtmsi";
+        Random random = new Random(42);
+        List<String> inchis = new ArrayList<String>();
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder sb = new StringBuilder(random.nextBoolean() ? "InChI=1S/" : "InChI=1/");
+            sb.append("C").append(random.nextInt(20));
+            int nlayers = random.nextInt(6);
+            for (int i = 0; i < nlayers; i++) {
+                sb.append('/').append(layers.charAt(random.nextInt(layers.length())));
+                if (sb.charAt(sb.length() - 1) == 'p' && random.nextInt(4) != 0) {
+                    sb.append(random.nextBoolean() ? '+' : '-').append(random.nextInt(16));
+                }
+                int len = random.nextInt(random.nextInt(10) == 0 ? 300 : 10);
+                for (int j = 0; j < len; j++) {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            inchis.add(sb.toString());
+        }
+        for (String inchi : CORPUS) {
+            for (int i = 0; i <= inchi.length(); i++) {
+                inchis.add(inchi.substring(0, i));
+            }
+            if (inchi.length() > 0) {
+                for (int n = 0; n < 20; n++) {
+                    char[] c = inchi.toCharArray();
+                    c[random.nextInt(c.length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+                    inchis.add(new String(c));
+                }
+            }
+        }
+        for (String inchi : inchis) {
+            assertSameKey(inchi);
+        }
+    }
+
+    @Test
+    public void testCaffeine() throws JniInchiException {
+        JniInchiOutputKey key = JniInchiKeyGenerator.getInchiKey("InChI=1S/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3");
+        assertEquals(INCHI_KEY.OK, key.getReturnStatus());
+        assertEquals("RYYVLZVUVIJVGH-UHFFFAOYSA-N", key.getKey());
+        assertNull(key.getXtra1());
+        assertNull(key.getXtra2());
+    }
+
+    @Test
+    public void testProtons() throws JniInchiException {
+        assertEquals("N", JniInchiKeyGenerator.getInchiKey("InChI=1S/H2O/h1H2").getKey().substring(26));
+        assertEquals("Z", JniInchiKeyGenerator.getInchiKey("InChI=1S/H2O/h1H2/p+12").getKey().substring(26));
+        assertEquals("B", JniInchiKeyGenerator.getInchiKey("InChI=1S/H2O/h1H2/p-12").getKey().substring(26));
+        assertEquals("A", JniInchiKeyGenerator.getInchiKey("InChI=1S/H2O/h1H2/p+13").getKey().substring(26));
+        assertEquals(INCHI_KEY.INVALID_STD_INCHI, JniInchiKeyGenerator.getInchiKey("InChI=1S/H2O/h1H2/p+0").getReturnStatus());
+        assertEquals(INCHI_KEY.INVALID_STD_INCHI, JniInchiKeyGenerator.getInchiKey("InChI=1S/H2O/h1H2/p").getReturnStatus());
+        assertEquals(INCHI_KEY.INVALID_INCHI, JniInchiKeyGenerator.getInchiKey("InChI=1S/H2O/h1H2/p/i1+1").getReturnStatus());
+    }
+
+    @Test
+    public void testErrors() throws JniInchiException {
+        assertEquals(INCHI_KEY.INVALID_INCHI_PREFIX, JniInchiKeyGenerator.getInchiKey("").getReturnStatus());
+        assertEquals(INCHI_KEY.INVALID_INCHI_PREFIX, JniInchiKeyGenerator.getInchiKey("InChI=2/CH4/h1H4").getReturnStatus());
+        assertEquals(INCHI_KEY.INVALID_INCHI, JniInchiKeyGenerator.getInchiKey("InChI=1/-").getReturnStatus());
+        assertEquals(INCHI_KEY.INVALID_STD_INCHI, JniInchiKeyGenerator.getInchiKey("InChI=1S/Fe.2CH3/h;2*1H3/q+2;2*-1/rC2H6Fe/c1-3-2/h1-2H3").getReturnStatus());
+        assertEquals("", JniInchiKeyGenerator.getInchiKey("").getKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNull() throws JniInchiException {
+        JniInchiKeyGenerator.getInchiKey(null);
+    }
+
+    @Test
+    public void testStdInchiKey() throws JniInchiException {
+        assertEquals("RYYVLZVUVIJVGH-UHFFFAOYSA-N",
+                JniInchiKeyGenerator.getStdInchiKey("InChI=1S/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3").getKey());
+        assertEquals(INCHI_KEY.INVALID_STD_INCHI,
+                JniInchiKeyGenerator.getStdInchiKey("InChI=1/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3").getReturnStatus());
+        assertEquals(INCHI_KEY.INVALID_STD_INCHI, JniInchiKeyGenerator.getStdInchiKey("InChI=1S").getReturnStatus());
+    }
+
+    @Test
+    public void testXtra() throws Exception {
+        String inchi = "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1";
+        JniInchiOutputKey key = JniInchiKeyGenerator.getInchiKey(inchi, true, true);
+        assertEquals(JniInchiKeyGenerator.getInchiKey(inchi).getKey(), key.getKey());
+
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        byte[] major = sha.digest("C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)".getBytes("US-ASCII"));
+        byte[] minor = sha.digest("/t2-/m0/s1/t2-/m0/s1".getBytes("US-ASCII"));
+        major[8] &= 0xfe;
+        minor[4] &= 0xe0;
+        assertEquals(toHex(major, 8), key.getXtra1());
+        assertEquals(toHex(minor, 4), key.getXtra2());
+
+        key = JniInchiKeyGenerator.getInchiKey(inchi, false, true);
+        assertNull(key.getXtra1());
+        assertNotNull(key.getXtra2());
+    }
+
+    private static String toHex(byte[] a, int start) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < a.length; i++) {
+            sb.append(String.format("%02x", a[i] & 0xff));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSha256() throws Exception {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        Random random = new Random(1);
+        for (int len = 0; len < 300; len++) {
+            byte[] b = new byte[len];
+            random.nextBytes(b);
+            assertArrayEquals(sha.digest(b), JniInchiKeyGenerator.sha256(b, 0, len, 1));
+            sha.update(b);
+            assertArrayEquals(sha.digest(b), JniInchiKeyGenerator.sha256(b, 0, len, 2));
+        }
+    }
+
+    @Test
+    public void testWrapperJavaInchiKey() throws JniInchiException {
+        String inchi = "InChI=1S/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3";
+        assertFalse(JniInchiWrapper.isJavaInchiKey());
+        JniInchiWrapper.setJavaInchiKey(true);
+        try {
+            assertTrue(JniInchiWrapper.isJavaInchiKey());
+            assertEquals("RYYVLZVUVIJVGH-UHFFFAOYSA-N", JniInchiWrapper.getInchiKey(inchi).getKey());
+            assertEquals(INCHI_KEY.INVALID_INCHI_PREFIX, JniInchiWrapper.getInchiKey("InChI=2/CH4").getReturnStatus());
+        } finally {
+            JniInchiWrapper.setJavaInchiKey(false);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class TestJniInchiLibraryPool {
+
+    private static final String ALANINE = "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1";
+
+    private static JniInchiLibraryPool pool;
+
+    @BeforeClass
+    public static void startPool() throws JniInchiException {
+        pool = new JniInchiLibraryPool(3);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.close();
+    }
+
+    @Test
+    public void testNumLibraries() {
+        assertEquals(3, pool.getNumLibraries());
+    }
+
+    @Test
+    public void testGetInchi() throws JniInchiException {
+        JniInchiOutput output = pool.getInchi(new JniInchiInput(Main.getTestMolecule()));
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals(ALANINE, output.getInchi());
+        assertEquals(JniInchiWrapper.getInchi(new JniInchiInput(Main.getTestMolecule())).getAuxInfo(), output.getAuxInfo());
+        assertEquals(ALANINE, pool.getStdInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+    }
+
+    @Test
+    public void testGetStructureFromInchi() throws JniInchiException {
+        JniInchiOutputStructure output = pool.getStructureFromInchi(new JniInchiInputInchi(ALANINE));
+        JniInchiOutputStructure expected = JniInchiWrapper.getStructureFromInchi(new JniInchiInputInchi(ALANINE));
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals(expected.getNumAtoms(), output.getNumAtoms());
+        assertEquals(expected.getNumBonds(), output.getNumBonds());
+        assertEquals(expected.getStereo0D(0).getDebugString(), output.getStereo0D(0).getDebugString());
+        assertEquals(ALANINE, pool.getInchiFromInchi(new JniInchiInputInchi(ALANINE)).getInchi());
+    }
+
+    @Test
+    public void testGetInchiKey() throws JniInchiException {
+        JniInchiOutputKey output = pool.getInchiKey(ALANINE);
+        assertEquals(INCHI_KEY.OK, output.getReturnStatus());
+        assertEquals(JniInchiWrapper.getInchiKey(ALANINE).getKey(), output.getKey());
+        assertEquals(INCHI_KEY_STATUS.VALID_STANDARD, pool.checkInchiKey(output.getKey()));
+        assertEquals(INCHI_STATUS.VALID_STANDARD, pool.checkInchi(ALANINE, false));
+    }
+
+    @Test
+    public void testTooManyAtoms() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput();
+        for (int i = 0; i < 2000; i++) {
+            input.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        }
+        try {
+            pool.getInchi(input);
+            fail("too many atoms");
+        } catch (IllegalArgumentException e) {
+            ; // pass
+        }
+        assertEquals(ALANINE, pool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        final JniInchiInput chain = TestJniInchiWrapper.getBranchedChain(200);
+        final String expected = JniInchiWrapper.getStdInchi(chain).getInchi();
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 60; i++) {
+                final boolean even = i % 2 == 0;
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return even ? pool.getStdInchi(chain).getInchi()
+                                : pool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi();
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i % 2 == 0 ? expected : ALANINE, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStaticApiDelegation() throws JniInchiException {
+        JniInchiWrapper.setEngine(pool);
+        try {
+            assertSame(pool, JniInchiWrapper.getEngine());
+            assertNull(JniInchiWrapper.getWorkerPool());
+            assertEquals(ALANINE, JniInchiWrapper.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+        } finally {
+            JniInchiWrapper.setEngine(null);
+        }
+    }
+
+    @Test
+    public void testClosed() throws JniInchiException {
+        JniInchiLibraryPool closed = new JniInchiLibraryPool(1);
+        closed.close();
+        try {
+            closed.getInchiKey(ALANINE);
+            fail("pool closed");
+        } catch (JniInchiException e) {
+            ; // pass
+        }
+    }
+
+    @Test
+    public void testCloseWakesWaiting() throws Exception {
+        final JniInchiLibraryPool closing = new JniInchiLibraryPool(1);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        while (true) {
+                            closing.getInchiKey(ALANINE);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        Thread.sleep(200);
+        closing.close();
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse("caller still waiting", thread.isAlive());
+        }
+        assertEquals(8, errors.size());
+        for (Throwable t : errors) {
+            assertEquals("Library pool closed", t.getMessage());
+        }
+    }
+
+}
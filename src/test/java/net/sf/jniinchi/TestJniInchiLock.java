@@ -0,0 +1,218 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestJniInchiLock {
+
+    /**
+     * Holds a lock on another thread until released.
+     */
+    private static class Holder extends Thread {
+
+        final JniInchiLock lock;
+
+        final CountDownLatch locked = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Holder(JniInchiLock lock) {
+            this.lock = lock;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                lock.lock();
+                try {
+                    locked.countDown();
+                    release.await();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Holder hold() throws InterruptedException {
+            start();
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            return this;
+        }
+    }
+
+    /**
+     * Waits for a lock on another thread, recording any failure.
+     */
+    private static class Waiter extends Thread {
+
+        final JniInchiLock lock;
+
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+        Waiter(JniInchiLock lock) {
+            this.lock = lock;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                lock.lock();
+                lock.unlock();
+            } catch (Exception e) {
+                error.set(e);
+            }
+        }
+    }
+
+    private static void awaitQueueLength(JniInchiLock lock, int n) throws InterruptedException {
+        for (int i = 0; i < 1000 && lock.getQueueLength() != n; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(n, lock.getQueueLength());
+    }
+
+    @Test
+    public void testLock() throws Exception {
+        JniInchiLock lock = new JniInchiLock(1, TimeUnit.SECONDS);
+        lock.lock();
+        assertTrue(lock.isHeldByCurrentThread());
+        // reentrant
+        lock.lock();
+        lock.unlock();
+        lock.unlock();
+        assertFalse(lock.isHeldByCurrentThread());
+        assertEquals(2, lock.getAcquiredCount());
+        assertEquals(0, lock.getQueueLength());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        JniInchiLock lock = new JniInchiLock(50, TimeUnit.MILLISECONDS);
+        Holder holder = new Holder(lock).hold();
+        try {
+            lock.lock();
+            fail();
+        } catch (JniInchiRejectedException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, lock.getTimeoutCount());
+        assertEquals(0, lock.getRejectedCount());
+        assertTrue(lock.getMaxWaitTime(TimeUnit.MILLISECONDS) >= 40);
+        assertEquals(0, lock.getQueueLength());
+        holder.release.countDown();
+        holder.join();
+        lock.lock();
+        lock.unlock();
+    }
+
+    @Test
+    public void testThreadTimeout() throws Exception {
+        JniInchiLock lock = new JniInchiLock(1, TimeUnit.MINUTES);
+        Holder holder = new Holder(lock).hold();
+        lock.setThreadTimeout(0, TimeUnit.MILLISECONDS);
+        try {
+            long t0 = System.nanoTime();
+            try {
+                lock.lock();
+                fail();
+            } catch (JniInchiRejectedException e) {
+                // expected
+            }
+            assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(10));
+        } finally {
+            lock.clearThreadTimeout();
+        }
+        try {
+            lock.lock(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (JniInchiRejectedException e) {
+            // expected
+        }
+        assertEquals(2, lock.getTimeoutCount());
+        holder.release.countDown();
+        holder.join();
+    }
+
+    @Test
+    public void testMaxQueueLength() throws Exception {
+        JniInchiLock lock = new JniInchiLock(1, TimeUnit.MINUTES);
+        lock.setMaxQueueLength(1);
+        Holder holder = new Holder(lock).hold();
+        Waiter waiter = new Waiter(lock);
+        waiter.start();
+        awaitQueueLength(lock, 1);
+        try {
+            lock.lock();
+            fail();
+        } catch (JniInchiRejectedException e) {
+            assertNull(e.getCause());
+        }
+        assertEquals(1, lock.getRejectedCount());
+        assertEquals(1, lock.getQueueLength());
+        holder.release.countDown();
+        holder.join();
+        waiter.join();
+        assertNull(waiter.error.get());
+        assertEquals(2, lock.getAcquiredCount());
+
+        lock.resetCounts();
+        assertEquals(0, lock.getAcquiredCount());
+        assertEquals(0, lock.getRejectedCount());
+    }
+
+    @Test
+    public void testWrapperFailFast() throws Exception {
+        JniInchiLock lock = JniInchiWrapper.getNativeLock();
+        assertSame(lock, JniInchiWrapper.getNativeLock());
+        assertEquals(15, lock.getTimeout(TimeUnit.SECONDS));
+        JniInchiWrapper.checkInchi("InChI=1S/CH4/h1H4", true);
+        Holder holder = new Holder(lock).hold();
+        lock.setMaxQueueLength(0);
+        try {
+            final AtomicReference<Exception> error = new AtomicReference<Exception>();
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        JniInchiWrapper.checkInchi("InChI=1S/CH4/h1H4", true);
+                    } catch (Exception e) {
+                        error.set(e);
+                    }
+                }
+            };
+            t.start();
+            t.join(10000);
+            assertTrue(error.get() instanceof JniInchiRejectedException);
+        } finally {
+            lock.setMaxQueueLength(-1);
+            holder.release.countDown();
+            holder.join();
+        }
+    }
+
+}
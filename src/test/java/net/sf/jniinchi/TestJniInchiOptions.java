@@ -0,0 +1,192 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestJniInchiOptions {
+
+    private static final String FLAG = JniInchiWrapper.flagChar;
+
+    @Test
+    public void testOf() {
+        JniInchiOptions opts = JniInchiOptions.of(INCHI_OPTION.RecMet, INCHI_OPTION.FixedH, INCHI_OPTION.RecMet);
+        assertEquals(FLAG + "RecMet " + FLAG + "FixedH", opts.toString());
+        assertTrue(opts.contains(INCHI_OPTION.FixedH));
+        assertFalse(opts.contains(INCHI_OPTION.SNon));
+        assertEquals(2, opts.getOptions().size());
+        assertEquals(opts, JniInchiOptions.of(Arrays.asList(INCHI_OPTION.FixedH, INCHI_OPTION.RecMet)));
+        assertEquals(opts.hashCode(), JniInchiOptions.of(Arrays.asList(INCHI_OPTION.FixedH, INCHI_OPTION.RecMet)).hashCode());
+    }
+
+    @Test
+    public void testNone() {
+        assertEquals("", JniInchiOptions.NONE.toString());
+        assertEquals(0, JniInchiOptions.NONE.getBytes().length);
+        assertEquals(JniInchiOptions.NONE, JniInchiOptions.of());
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        JniInchiOptions opts = JniInchiOptions.parse(" -fixedh  /RECMET SNon ");
+        assertEquals(JniInchiOptions.of(INCHI_OPTION.SNon, INCHI_OPTION.RecMet, INCHI_OPTION.FixedH), opts);
+        assertArrayEquals(opts.toString().getBytes("US-ASCII"), opts.getBytes());
+    }
+
+    @Test(expected = JniInchiException.class)
+    public void testParseUnknown() throws JniInchiException {
+        JniInchiOptions.parse("-FixedH -Foo");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullOption() {
+        JniInchiOptions.of(INCHI_OPTION.FixedH, null);
+    }
+
+    @Test
+    public void testWith() {
+        JniInchiOptions opts = JniInchiOptions.of(INCHI_OPTION.FixedH);
+        assertSame(opts, opts.with(INCHI_OPTION.FixedH));
+        JniInchiOptions more = opts.with(INCHI_OPTION.AuxNone);
+        assertEquals(JniInchiOptions.of(INCHI_OPTION.FixedH, INCHI_OPTION.AuxNone), more);
+        assertFalse(opts.contains(INCHI_OPTION.AuxNone));
+    }
+
+    @Test
+    public void testTimeout() {
+        JniInchiOptions opts = JniInchiOptions.of(INCHI_OPTION.FixedH);
+        assertEquals(JniInchiOptions.NO_TIMEOUT, opts.getTimeoutMillis());
+        JniInchiOptions timed = opts.withTimeout(5, TimeUnit.SECONDS);
+        assertEquals(5000, timed.getTimeoutMillis());
+        assertEquals(FLAG + "FixedH " + FLAG + "W5", timed.toString());
+        assertFalse(opts.equals(timed));
+        assertSame(timed, timed.withTimeout(5000, TimeUnit.MILLISECONDS));
+        assertEquals(FLAG + "W0", JniInchiOptions.NONE.withTimeout(0, TimeUnit.SECONDS).toString());
+
+        // Survives adding options, and can be removed
+        assertEquals(5000, timed.with(INCHI_OPTION.AuxNone).getTimeoutMillis());
+        assertEquals(opts, timed.withoutTimeout());
+    }
+
+    @Test
+    public void testSubSecondTimeout() throws Exception {
+        assumeTrue(JniInchiWrapper.isMillisecondTimeoutSupported());
+        assertEquals(FLAG + "W0.25", JniInchiOptions.NONE.withTimeout(250, TimeUnit.MILLISECONDS).toString());
+        assertEquals(FLAG + "W0.001", JniInchiOptions.NONE.withTimeout(1, TimeUnit.MICROSECONDS).toString());
+        JniInchiOptions opts = JniInchiOptions.parse("-FixedH -w.5");
+        assertEquals(500, opts.getTimeoutMillis());
+        assertEquals(JniInchiOptions.of(INCHI_OPTION.FixedH).withTimeout(500, TimeUnit.MILLISECONDS), opts);
+        assertEquals(1, JniInchiOptions.parse("W0.0019").getTimeoutMillis());
+    }
+
+    @Test
+    public void testSubSecondTimeoutUnsupported() throws Exception {
+        assumeTrue(!JniInchiWrapper.isMillisecondTimeoutSupported());
+        try {
+            JniInchiOptions.NONE.withTimeout(250, TimeUnit.MILLISECONDS);
+            fail("Sub-second time-out accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            JniInchiOptions.parse("-W0.5");
+            fail("Sub-second time-out accepted");
+        } catch (JniInchiException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseTimeout() throws Exception {
+        JniInchiOptions opts = JniInchiOptions.parse("-FixedH -w2");
+        assertEquals(2000, opts.getTimeoutMillis());
+        assertEquals(JniInchiOptions.of(INCHI_OPTION.FixedH).withTimeout(2, TimeUnit.SECONDS), opts);
+        assertEquals(60000, JniInchiOptions.parse("/W60").getTimeoutMillis());
+        assertEquals(3000, JniInchiOptions.parse("W3.000").getTimeoutMillis());
+        assertTrue(JniInchiOptions.parse("-Wnumber").contains(INCHI_OPTION.Wnumber));
+        assertEquals(JniInchiOptions.NO_TIMEOUT, JniInchiOptions.parse("-Wnumber").getTimeoutMillis());
+    }
+
+    @Test(expected = JniInchiException.class)
+    public void testParseBadTimeout() throws JniInchiException {
+        JniInchiOptions.parse("-W5s");
+    }
+
+    @Test
+    public void testTimeoutRange() throws JniInchiException {
+        assertEquals(4294967000L, JniInchiOptions.parse("-W4294967").getTimeoutMillis());
+        assertEquals(4294967000L, JniInchiOptions.NONE.withTimeout(4294967, TimeUnit.SECONDS).getTimeoutMillis());
+        for (String op : new String[] {"-W4294968", "-W99999999999999999", "-W99999999999999999999999"}) {
+            try {
+                JniInchiOptions.parse(op);
+                fail("Accepted " + op);
+            } catch (JniInchiException e) {
+                // expected
+            }
+        }
+        try {
+            JniInchiOptions.NONE.withTimeout(Long.MAX_VALUE, TimeUnit.DAYS);
+            fail("Accepted a time-out beyond the library's range");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTimeout() {
+        JniInchiOptions.NONE.withTimeout(-1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        JniInchiOptions.of(INCHI_OPTION.FixedH).getOptions().add(INCHI_OPTION.SNon);
+    }
+
+    @Test
+    public void testInput() throws JniInchiException {
+        JniInchiOptions opts = JniInchiOptions.of(INCHI_OPTION.FixedH);
+        JniInchiInput input = new JniInchiInput(opts);
+        assertEquals(opts.toString(), input.getOptions());
+        assertSame(opts.getBytes(), input.getOptionBytes());
+
+        input.options = JniInchiWrapper.checkOptions("-SNon");
+        assertNull(input.getOptionBytes());
+
+        assertNull(new JniInchiInput("-FixedH").getOptionBytes());
+    }
+
+    @Test
+    public void testLeanOutput() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput(JniInchiOptions.of(INCHI_OPTION.FixedH));
+        input.setLeanOutput();
+        JniInchiOptions expected = JniInchiOptions.of(INCHI_OPTION.FixedH, INCHI_OPTION.AuxNone);
+        if (JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_NO_LOG)) {
+            expected = expected.with(INCHI_OPTION.NoLog);
+        }
+        assertEquals(expected.toString(), input.getOptions());
+        assertNotNull(input.getOptionBytes());
+    }
+
+}
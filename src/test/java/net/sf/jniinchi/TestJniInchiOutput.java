@@ -67,4 +67,26 @@ public class TestJniInchiOutput {
         JniInchiOutput output = new JniInchiOutput(null, null, null, null, "Test log");
         Assert.assertEquals("Test log", output.getLog());
     }
+
+    @Test
+    public void testTimeoutStatus() {
+        JniInchiOutput output = new JniInchiOutput(2, null, null, "Time limit exceeded", "");
+        Assert.assertEquals(INCHI_RET.TIMEOUT, output.getReturnStatus());
+        output = new JniInchiOutput(2, null, null, "Other error", "");
+        Assert.assertEquals(INCHI_RET.ERROR, output.getReturnStatus());
+    }
+
+    @Test
+    public void testBytes() {
+        JniInchiOutput output = new JniInchiOutput(0, "InChI=1S/CH4/h1H4".getBytes(), null, new byte[0], null);
+        Assert.assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        Assert.assertEquals("InChI=1S/CH4/h1H4", output.getInchi());
+        Assert.assertSame(output.getInchi(), output.getInchi());
+        Assert.assertNull(output.getAuxInfo());
+        Assert.assertEquals("", output.getMessage());
+        Assert.assertNull(output.getLog());
+
+        output.setInchi("InChI=1S/H2O/h1H2");
+        Assert.assertEquals("InChI=1S/H2O/h1H2", output.getInchi());
+    }
 }
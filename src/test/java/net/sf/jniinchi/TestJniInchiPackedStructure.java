@@ -0,0 +1,90 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestJniInchiPackedStructure {
+
+    /**
+     * Test structure is packed in the layout expected by the native code.
+     */
+    @Test
+    public void testPack() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput("-FixedH");
+        JniInchiAtom a0 = input.addAtom(new JniInchiAtom(1, 2, 3, "C"));
+        JniInchiAtom a1 = input.addAtom(new JniInchiAtom(4, 5, 6, "Cl"));
+        a1.setCharge(-1);
+        a1.setRadical(INCHI_RADICAL.DOUBLET);
+        a1.setImplicitH(0);
+        a1.setImplicitProtium(1);
+        a1.setImplicitDeuterium(2);
+        a1.setImplicitTritium(3);
+        a1.setIsotopicMass(37);
+        input.addBond(new JniInchiBond(a1, a0, INCHI_BOND_TYPE.SINGLE, INCHI_BOND_STEREO.SINGLE_1UP));
+        input.addStereo0D(JniInchiStereo0D.createNewDoublebondStereo0D(a0, a1, a1, a0, INCHI_PARITY.EVEN));
+
+        JniInchiPackedStructure packed = new JniInchiPackedStructure(input);
+        assertEquals(input.getOptions(), packed.options);
+        assertEquals(2, packed.numAtoms);
+        assertEquals(1, packed.numBonds);
+        assertEquals(1, packed.numStereo0D);
+        assertArrayEquals(new double[] {1, 2, 3, 4, 5, 6}, packed.coords, 0);
+        assertArrayEquals(new int[] {0, 0, -1, 0, 0, 0, 0,
+                -1, INCHI_RADICAL.DOUBLET.getIndx(), 0, 1, 2, 3, 37}, packed.atoms);
+        assertArrayEquals(new byte[] {'C', 0, 0, 0, 0, 0, 'C', 'l', 0, 0, 0, 0}, packed.elements);
+        assertArrayEquals(new int[] {1, 0, INCHI_BOND_TYPE.SINGLE.getIndx(), INCHI_BOND_STEREO.SINGLE_1UP.getIndx()},
+                packed.bonds);
+        assertArrayEquals(new int[] {JniInchiStereo0D.NO_ATOM, 0, 1, 1, 0,
+                INCHI_STEREOTYPE.DOUBLEBOND.getIndx(), INCHI_PARITY.EVEN.getIndx()}, packed.stereo0D);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testElementNameTooLong() {
+        JniInchiInput input = new JniInchiInput();
+        input.addAtom(new JniInchiAtom("Carbon"));
+        new JniInchiPackedStructure(input);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBondToUnknownAtom() {
+        JniInchiInput input = new JniInchiInput();
+        JniInchiAtom a0 = input.addAtom(new JniInchiAtom("C"));
+        input.addBond(new JniInchiBond(a0, new JniInchiAtom("C"), INCHI_BOND_TYPE.SINGLE));
+        new JniInchiPackedStructure(input);
+    }
+
+    @Test
+    public void testTooManyBonds() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput();
+        JniInchiAtom centre = input.addAtom(new JniInchiAtom("C"));
+        for (int i = 0; i < 21; i++) {
+            input.addBond(new JniInchiBond(centre, input.addAtom(new JniInchiAtom("H")), INCHI_BOND_TYPE.SINGLE));
+        }
+        try {
+            JniInchiWrapper.getInchi(input);
+            fail("too many bonds");
+        } catch (IllegalArgumentException e) {
+            ; // pass
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestJniInchiQuarantine {
+
+    private static final String ALANINE = "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1";
+
+    static byte[] encode(JniInchiInput input, boolean std) throws IOException {
+        return JniInchiWorkerProtocol.encode(JniInchiWorkerProtocol.getInchiRequest(input, std));
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        JniInchiQuarantine quarantine = new JniInchiQuarantine();
+        byte[] request = encode(new JniInchiInput(Main.getTestMolecule()), false);
+        assertNull(quarantine.get(request));
+        quarantine.add(request, "crashed");
+        quarantine.add(encode(new JniInchiInput(Main.getTestMolecule()), false), "again");
+        assertEquals(1, quarantine.size());
+        assertEquals("crashed", quarantine.get(request.clone()).getReason());
+        assertNull(quarantine.get(encode(new JniInchiInput(Main.getTestMolecule()), true)));
+        assertNull(quarantine.getFile());
+    }
+
+    @Test
+    public void testLog() throws Exception {
+        File file = File.createTempFile("jniinchi-quarantine", ".log");
+        try {
+            JniInchiQuarantine quarantine = new JniInchiQuarantine(file);
+            quarantine.add(encode(new JniInchiInput(Main.getTestMolecule()), true), "crashed");
+            quarantine.add(JniInchiWorkerProtocol.encode(JniInchiWorkerProtocol.getInchiKeyRequest(ALANINE)), "hung");
+            quarantine.close();
+
+            // A record cut short is ignored
+            FileOutputStream out = new FileOutputStream(file, true);
+            out.write(new byte[] {0, 0, 0});
+            out.close();
+
+            quarantine = new JniInchiQuarantine(file);
+            assertEquals(2, quarantine.size());
+            JniInchiQuarantine.Entry entry = quarantine.getEntries().get(0);
+            assertEquals("getStdInchi", entry.getMethod());
+            assertEquals("crashed", entry.getReason());
+            assertEquals(Main.getTestMolecule().getNumAtoms(), ((JniInchiInput) entry.getInput()).getNumAtoms());
+            assertEquals(ALANINE, ((JniInchiOutput) entry.replay()).getInchi());
+            assertNotNull(quarantine.get(encode(new JniInchiInput(Main.getTestMolecule()), true)));
+
+            entry = quarantine.getEntries().get(1);
+            assertEquals("getInchiKey", entry.getMethod());
+            assertEquals(ALANINE, entry.getInput());
+            assertEquals(JniInchiWrapper.getInchiKey(ALANINE).getKey(), ((JniInchiOutputKey) entry.replay()).getKey());
+
+            // Entries added after a record cut short are read back
+            quarantine.add(encode(new JniInchiInput(Main.getTestMolecule()), false), "crashed again");
+            quarantine.close();
+            quarantine = new JniInchiQuarantine(file);
+            assertEquals(3, quarantine.size());
+            assertEquals("crashed again", quarantine.getEntries().get(2).getReason());
+            quarantine.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCorruptLog() throws Exception {
+        File file = File.createTempFile("jniinchi-quarantine", ".log");
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+            out.writeLong(0);
+            JniInchiWorkerProtocol.writeString(out, "crashed");
+            out.writeInt(-5);
+            out.close();
+            try {
+                new JniInchiQuarantine(file);
+                fail("Corrupt log read");
+            } catch (JniInchiException e) {
+                // expected
+            }
+
+            // A length beyond the end of the file is a record cut short
+            out = new DataOutputStream(new FileOutputStream(file));
+            out.writeLong(0);
+            JniInchiWorkerProtocol.writeString(out, "crashed");
+            out.writeInt(Integer.MAX_VALUE);
+            out.close();
+            JniInchiQuarantine quarantine = new JniInchiQuarantine(file);
+            assertEquals(0, quarantine.size());
+            assertEquals(0, file.length());
+            quarantine.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that calls run concurrently, without the native library lock,
+ * give the same results as the same calls run one at a time.
+ */
+public class TestJniInchiReentrant {
+
+    private static final String[] ELEMENTS = {"C", "C", "C", "C", "N", "O", "S", "P", "Cl", "Br"};
+
+    private static final String[] OPTIONS = {"", "-FixedH -RecMet"};
+
+    @After
+    public void restore() throws Exception {
+        JniInchiWrapper.setConcurrent(false);
+    }
+
+    /**
+     * Builds a random molecule: a tree of heavy atoms, closed into rings
+     * by a few extra bonds, with some double bonds and charges.
+     */
+    private static JniInchiInput getRandomMolecule(Random random, String options) throws JniInchiException {
+        JniInchiInput input = new JniInchiInput(options);
+        int n = 2 + random.nextInt(40);
+        JniInchiAtom[] atoms = new JniInchiAtom[n];
+        for (int i = 0; i < n; i++) {
+            atoms[i] = input.addAtom(new JniInchiAtom(0, 0, 0, ELEMENTS[random.nextInt(ELEMENTS.length)]));
+            if (random.nextInt(15) == 0) {
+                atoms[i].setCharge(random.nextBoolean() ? 1 : -1);
+            }
+            atoms[i].setImplicitH(-1);
+        }
+        for (int i = 1; i < n; i++) {
+            JniInchiAtom parent = atoms[Math.max(0, i - 1 - random.nextInt(3))];
+            INCHI_BOND_TYPE type = random.nextInt(6) == 0 ? INCHI_BOND_TYPE.DOUBLE : INCHI_BOND_TYPE.SINGLE;
+            input.addBond(new JniInchiBond(parent, atoms[i], type));
+        }
+        int rings = random.nextInt(3);
+        for (int r = 0; r < rings && n > 6; r++) {
+            int a = random.nextInt(n - 5);
+            input.addBond(new JniInchiBond(atoms[a], atoms[a + 5], INCHI_BOND_TYPE.SINGLE));
+        }
+        return input;
+    }
+
+    private static List<JniInchiInput> getCorpus() throws JniInchiException {
+        List<JniInchiInput> corpus = new ArrayList<JniInchiInput>();
+        for (String options : OPTIONS) {
+            corpus.add(TestJniInchiWrapper.getEthane(options));
+            corpus.add(TestJniInchiWrapper.getSodiumHydroxide(options));
+            corpus.add(TestJniInchiWrapper.getE12dichloroethene0D(options));
+            corpus.add(TestJniInchiWrapper.getLAlanine3D(options));
+            Random random = new Random(options.length());
+            for (int i = 0; i < 200; i++) {
+                corpus.add(getRandomMolecule(random, options));
+            }
+        }
+        corpus.add(TestJniInchiWrapper.getBranchedChain(50));
+        corpus.add(TestJniInchiWrapper.getBranchedChain(300));
+        return corpus;
+    }
+
+    private static String describe(JniInchiOutput output) {
+        return output.getReturnStatus() + " " + output.getInchi() + " " + output.getAuxInfo() + " " + output.getMessage();
+    }
+
+    private static String describe(JniInchiOutputStructure output) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(output.getReturnStatus()).append(' ').append(output.getMessage());
+        for (int i = 0; i < output.getNumAtoms(); i++) {
+            JniInchiAtom atom = output.getAtom(i);
+            sb.append(' ').append(atom.getElementType()).append(atom.getCharge()).append('H').append(atom.getImplicitH());
+        }
+        for (int i = 0; i < output.getNumBonds(); i++) {
+            JniInchiBond bond = output.getBond(i);
+            sb.append(' ').append(output.getAtomIndex(bond.getOriginAtom()))
+                .append('-').append(output.getAtomIndex(bond.getTargetAtom()))
+                .append(bond.getBondType());
+        }
+        sb.append(' ').append(output.getNumStereo0D());
+        return sb.toString();
+    }
+
+    /**
+     * Runs every calculation for one corpus entry, returning a description
+     * of all the outputs.
+     */
+    private static String calculate(JniInchiInput input) throws JniInchiException {
+        StringBuilder sb = new StringBuilder();
+        JniInchiOutput output = JniInchiWrapper.getInchi(input);
+        sb.append(describe(output)).append('\n');
+        sb.append(describe(JniInchiWrapper.getStdInchi(input))).append('\n');
+        String inchi = output.getInchi();
+        if (inchi != null && inchi.length() > 0) {
+            JniInchiInputInchi in = new JniInchiInputInchi(inchi);
+            sb.append(describe(JniInchiWrapper.getInchiFromInchi(in))).append('\n');
+            sb.append(describe(JniInchiWrapper.getStructureFromInchi(in))).append('\n');
+            sb.append(JniInchiWrapper.checkInchi(inchi, true)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testConcurrentMatchesSerial() throws Exception {
+        if (!JniInchiWrapper.isReentrant()) {
+            return;
+        }
+        final List<JniInchiInput> corpus = getCorpus();
+        final List<String> expected = new ArrayList<String>();
+        for (JniInchiInput input : corpus) {
+            expected.add(calculate(input));
+        }
+
+        JniInchiWrapper.setConcurrent(true);
+        assertTrue(JniInchiWrapper.isConcurrent());
+
+        int nThreads = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < nThreads; t++) {
+                final int offset = t * 37;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int i = 0; i < 2 * corpus.size(); i++) {
+                            int j = (i + offset) % corpus.size();
+                            assertEquals("Corpus entry " + j, expected.get(j), calculate(corpus.get(j)));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get(10, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSetConcurrent() throws Exception {
+        if (JniInchiWrapper.isReentrant()) {
+            JniInchiWrapper.setConcurrent(true);
+            assertTrue(JniInchiWrapper.isConcurrent());
+        } else {
+            try {
+                JniInchiWrapper.setConcurrent(true);
+                fail("Native library is not reentrant");
+            } catch (JniInchiException e) {
+                // expected
+            }
+            assertFalse(JniInchiWrapper.isConcurrent());
+        }
+        JniInchiWrapper.setConcurrent(false);
+        assertFalse(JniInchiWrapper.isConcurrent());
+    }
+
+    @Test
+    public void testConcurrentSkipsLock() throws Exception {
+        if (!JniInchiWrapper.isReentrant()) {
+            return;
+        }
+        JniInchiInput input = TestJniInchiWrapper.getEthane("");
+        String expected = JniInchiWrapper.getInchi(input).getInchi();
+        JniInchiLock lock = JniInchiWrapper.getNativeLock();
+        JniInchiWrapper.setConcurrent(true);
+        lock.resetCounts();
+        assertEquals(expected, JniInchiWrapper.getInchi(input).getInchi());
+        assertEquals(0, lock.getAcquiredCount());
+        JniInchiWrapper.setConcurrent(false);
+        assertEquals(expected, JniInchiWrapper.getInchi(input).getInchi());
+        assertEquals(1, lock.getAcquiredCount());
+    }
+
+}
@@ -122,4 +122,35 @@ public class TestJniInchiStructure {
         Assert.assertEquals(stereo, structure.getStereo0D(0));
     }
 
+    /*
+     * Test method for 'net.sf.jniinchi.JniInchiStructure.getAtomIndex(JniInchiAtom)'
+     */
+    @Test
+    public void testGetAtomIndex() {
+        JniInchiStructure structure = new JniInchiStructure();
+        JniInchiAtom a0 = structure.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        JniInchiAtom a1 = structure.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        JniInchiAtom a2 = structure.addAtom(new JniInchiAtom(0, 0, 0, "O"));
+        Assert.assertEquals(0, structure.getAtomIndex(a0));
+        Assert.assertEquals(1, structure.getAtomIndex(a1));
+        Assert.assertEquals(2, structure.getAtomIndex(a2));
+        Assert.assertEquals(-1, structure.getAtomIndex(new JniInchiAtom(0, 0, 0, "C")));
+        Assert.assertEquals(-1, structure.getAtomIndex(null));
+    }
+
+    /*
+     * Test method for 'net.sf.jniinchi.JniInchiStructure.getAtomIndex(JniInchiAtom)'
+     * on a structure sharing another's atoms.
+     */
+    @Test
+    public void testGetAtomIndexSetStructure() {
+        JniInchiStructure source = new JniInchiStructure();
+        JniInchiAtom a0 = source.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        JniInchiStructure structure = new JniInchiStructure();
+        structure.setStructure(source);
+        JniInchiAtom a1 = source.addAtom(new JniInchiAtom(0, 0, 0, "N"));
+        Assert.assertEquals(0, structure.getAtomIndex(a0));
+        Assert.assertEquals(1, structure.getAtomIndex(a1));
+    }
+
 }
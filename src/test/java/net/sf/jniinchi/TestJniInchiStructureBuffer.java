@@ -0,0 +1,209 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import static org.junit.Assert.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class TestJniInchiStructureBuffer {
+
+    private static JniInchiInput getTestInput() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput("");
+        JniInchiAtom a0 = input.addAtom(new JniInchiAtom(1, 2, 3, "C"));
+        JniInchiAtom a1 = input.addAtom(new JniInchiAtom(4, 5, 6, "Cl"));
+        a1.setCharge(-1);
+        a1.setRadical(INCHI_RADICAL.DOUBLET);
+        a1.setImplicitH(0);
+        a1.setImplicitProtium(1);
+        a1.setImplicitDeuterium(2);
+        a1.setImplicitTritium(3);
+        a1.setIsotopicMass(37);
+        input.addBond(new JniInchiBond(a1, a0, INCHI_BOND_TYPE.SINGLE, INCHI_BOND_STEREO.SINGLE_1UP));
+        input.addStereo0D(JniInchiStereo0D.createNewDoublebondStereo0D(a0, a1, a1, a0, INCHI_PARITY.EVEN));
+        return input;
+    }
+
+    /**
+     * Test structure is encoded in the layout of inchi_Atom/inchi_Stereo0D.
+     */
+    @Test
+    public void testEncode() throws JniInchiException {
+        ByteBuffer buffer = JniInchiStructureBuffer.encode(getTestInput());
+        assertTrue(buffer.isDirect());
+        assertEquals(0, buffer.position());
+        assertEquals(8 + 2 * 120 + 12, buffer.limit());
+
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.nativeOrder());
+        assertEquals(2, b.getInt(0));
+        assertEquals(1, b.getInt(4));
+
+        int a0 = 8;
+        assertEquals(1.0, b.getDouble(a0), 0);
+        assertEquals(2.0, b.getDouble(a0 + 8), 0);
+        assertEquals(3.0, b.getDouble(a0 + 16), 0);
+        assertEquals(0, b.getShort(a0 + 110));
+        assertEquals('C', b.get(a0 + 104));
+        assertEquals(0, b.get(a0 + 105));
+        assertEquals(-1, b.get(a0 + 112));
+
+        int a1 = 8 + 120;
+        assertEquals(4.0, b.getDouble(a1), 0);
+        assertEquals(1, b.getShort(a1 + 110));
+        assertEquals(0, b.getShort(a1 + 24));
+        assertEquals(INCHI_BOND_TYPE.SINGLE.getIndx(), b.get(a1 + 64));
+        assertEquals(INCHI_BOND_STEREO.SINGLE_1UP.getIndx(), b.get(a1 + 84));
+        assertEquals('C', b.get(a1 + 104));
+        assertEquals('l', b.get(a1 + 105));
+        assertEquals(0, b.get(a1 + 106));
+        assertEquals(0, b.get(a1 + 112));
+        assertEquals(1, b.get(a1 + 113));
+        assertEquals(2, b.get(a1 + 114));
+        assertEquals(3, b.get(a1 + 115));
+        assertEquals(37, b.getShort(a1 + 116));
+        assertEquals(INCHI_RADICAL.DOUBLET.getIndx(), b.get(a1 + 118));
+        assertEquals(-1, b.get(a1 + 119));
+
+        int s0 = 8 + 2 * 120;
+        assertEquals(0, b.getShort(s0));
+        assertEquals(1, b.getShort(s0 + 2));
+        assertEquals(1, b.getShort(s0 + 4));
+        assertEquals(0, b.getShort(s0 + 6));
+        assertEquals(JniInchiStereo0D.NO_ATOM, b.getShort(s0 + 8));
+        assertEquals(INCHI_STEREOTYPE.DOUBLEBOND.getIndx(), b.get(s0 + 10));
+        assertEquals(INCHI_PARITY.EVEN.getIndx(), b.get(s0 + 11));
+    }
+
+    /**
+     * Test encoding starts at, and advances, the buffer's position.
+     */
+    @Test
+    public void testEncodeAtPosition() throws JniInchiException {
+        JniInchiInput input = getTestInput();
+        int size = JniInchiStructureBuffer.getEncodedSize(input);
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 2 * size);
+        buffer.position(16);
+        JniInchiStructureBuffer.encode(input, buffer);
+        JniInchiStructureBuffer.encode(input, buffer);
+        assertEquals(16 + 2 * size, buffer.position());
+
+        buffer.position(16 + size);
+        assertEquals(size, JniInchiStructureBuffer.getEncodedSize(buffer));
+        assertEquals(2, JniInchiStructureBuffer.decode(buffer, "").getNumAtoms());
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void testEncodeOverflow() throws JniInchiException {
+        JniInchiInput input = getTestInput();
+        JniInchiStructureBuffer.encode(input, ByteBuffer.allocate(JniInchiStructureBuffer.getEncodedSize(input) - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeTooManyBonds() {
+        JniInchiStructure structure = new JniInchiStructure();
+        JniInchiAtom atom = structure.addAtom(new JniInchiAtom("C"));
+        for (int i = 0; i < 21; i++) {
+            structure.addBond(new JniInchiBond(atom, structure.addAtom(new JniInchiAtom("H")), INCHI_BOND_TYPE.SINGLE));
+        }
+        JniInchiStructureBuffer.encode(structure);
+    }
+
+    /**
+     * Test decoding restores the encoded structure.
+     */
+    @Test
+    public void testDecode() throws JniInchiException {
+        JniInchiInput input = JniInchiStructureBuffer.decode(JniInchiStructureBuffer.encode(getTestInput()), "-FixedH");
+        assertEquals(new JniInchiInput("-FixedH").getOptions(), input.getOptions());
+        assertEquals(2, input.getNumAtoms());
+        assertEquals(1, input.getNumBonds());
+        assertEquals(1, input.getNumStereo0D());
+
+        JniInchiAtom a0 = input.getAtom(0);
+        JniInchiAtom a1 = input.getAtom(1);
+        assertEquals("C", a0.getElementType());
+        assertEquals(-1, a0.getImplicitH());
+        assertEquals("Cl", a1.getElementType());
+        assertEquals(4.0, a1.getX(), 0);
+        assertEquals(5.0, a1.getY(), 0);
+        assertEquals(6.0, a1.getZ(), 0);
+        assertEquals(-1, a1.getCharge());
+        assertEquals(INCHI_RADICAL.DOUBLET, a1.getRadical());
+        assertEquals(0, a1.getImplicitH());
+        assertEquals(1, a1.getImplicitProtium());
+        assertEquals(2, a1.getImplicitDeuterium());
+        assertEquals(3, a1.getImplicitTritium());
+        assertEquals(37, a1.getIsotopicMass());
+
+        JniInchiBond bond = input.getBond(0);
+        assertSame(a1, bond.getOriginAtom());
+        assertSame(a0, bond.getTargetAtom());
+        assertEquals(INCHI_BOND_TYPE.SINGLE, bond.getBondType());
+        assertEquals(INCHI_BOND_STEREO.SINGLE_1UP, bond.getBondStereo());
+
+        JniInchiStereo0D stereo = input.getStereo0D(0);
+        assertNull(stereo.getCentralAtom());
+        assertSame(a0, stereo.getNeighbor(0));
+        assertSame(a1, stereo.getNeighbor(1));
+        assertEquals(INCHI_STEREOTYPE.DOUBLEBOND, stereo.getStereoType());
+        assertEquals(INCHI_PARITY.EVEN, stereo.getParity());
+    }
+
+    /**
+     * Test a bond listed by both its atoms is decoded once.
+     */
+    @Test
+    public void testDecodeBondListedTwice() throws JniInchiException {
+        ByteBuffer buffer = JniInchiStructureBuffer.encode(getTestInput());
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int a0 = JniInchiStructureBuffer.HEADER_SIZE;
+        b.putShort(a0 + JniInchiStructureBuffer.ATOM_NEIGHBOR, (short) 1);
+        b.put(a0 + JniInchiStructureBuffer.ATOM_BOND_TYPE, (byte) INCHI_BOND_TYPE.SINGLE.getIndx());
+        b.putShort(a0 + JniInchiStructureBuffer.ATOM_NUM_BONDS, (short) 1);
+        assertEquals(1, JniInchiStructureBuffer.decode(buffer, "").getNumBonds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeBondToUnknownAtom() throws JniInchiException {
+        ByteBuffer buffer = JniInchiStructureBuffer.encode(getTestInput());
+        buffer.duplicate().order(ByteOrder.nativeOrder()).putShort(
+                JniInchiStructureBuffer.HEADER_SIZE + JniInchiStructureBuffer.ATOM_SIZE
+                + JniInchiStructureBuffer.ATOM_NEIGHBOR, (short) 2);
+        JniInchiStructureBuffer.decode(buffer, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCount() {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+        buffer.putInt(0, -1);
+        JniInchiStructureBuffer.getEncodedSize(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyAtoms() {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+        buffer.putInt(0, JniInchiStructureBuffer.MAX_ATOMS + 1);
+        JniInchiStructureBuffer.getEncodedSize(buffer);
+    }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2006-2011 Sam Adams <sea36 at users.sourceforge.net>
+ *
+ * This file is part of JNI-InChI.
+ *
+ * JNI-InChI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNI-InChI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JNI-InChI.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sf.jniinchi;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestJniInchiWorkerPool {
+
+    private static final String ALANINE = "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1";
+
+    private static JniInchiWorkerPool pool;
+
+    @BeforeClass
+    public static void startPool() throws JniInchiException {
+        pool = new JniInchiWorkerPool(2, 30, TimeUnit.SECONDS);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.close();
+    }
+
+    @Test
+    public void testGetInchi() throws JniInchiException {
+        JniInchiOutput output = pool.getInchi(new JniInchiInput(Main.getTestMolecule()));
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals(ALANINE, output.getInchi());
+        assertEquals(JniInchiWrapper.getInchi(new JniInchiInput(Main.getTestMolecule())).getAuxInfo(), output.getAuxInfo());
+    }
+
+    @Test
+    public void testGetStructureFromInchi() throws JniInchiException {
+        JniInchiOutputStructure output = pool.getStructureFromInchi(new JniInchiInputInchi(ALANINE));
+        JniInchiOutputStructure expected = JniInchiWrapper.getStructureFromInchi(new JniInchiInputInchi(ALANINE));
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals(expected.getNumAtoms(), output.getNumAtoms());
+        assertEquals(expected.getNumBonds(), output.getNumBonds());
+        assertEquals(expected.getNumStereo0D(), output.getNumStereo0D());
+        assertEquals(expected.getStereo0D(0).getDebugString(), output.getStereo0D(0).getDebugString());
+        JniInchiOutput roundTrip = JniInchiWrapper.getInchi(new JniInchiInput(output));
+        assertEquals(ALANINE, roundTrip.getInchi());
+    }
+
+    @Test
+    public void testGetInchiKey() throws JniInchiException {
+        JniInchiOutputKey output = pool.getInchiKey(ALANINE);
+        assertEquals(INCHI_KEY.OK, output.getReturnStatus());
+        assertEquals(JniInchiWrapper.getInchiKey(ALANINE).getKey(), output.getKey());
+        assertEquals(INCHI_KEY_STATUS.VALID_STANDARD, pool.checkInchiKey(output.getKey()));
+        assertEquals(INCHI_STATUS.VALID_STANDARD, pool.checkInchi(ALANINE, false));
+    }
+
+    @Test
+    public void testTooManyAtoms() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput();
+        for (int i = 0; i < 2000; i++) {
+            input.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        }
+        try {
+            pool.getInchi(input);
+            fail("too many atoms");
+        } catch (IllegalArgumentException e) {
+            ; // pass
+        }
+        // Worker should still be usable
+        assertEquals(ALANINE, pool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+    }
+
+    @Test
+    public void testBondToMissingAtom() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput();
+        JniInchiAtom a1 = input.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+        input.addBond(new JniInchiBond(a1, new JniInchiAtom(0, 0, 0, "O"), INCHI_BOND_TYPE.SINGLE));
+        int restarts = pool.getRestartCount();
+        try {
+            pool.getInchi(input);
+            fail("Bond to atom not in structure");
+        } catch (IllegalArgumentException e) {
+            ; // pass
+        }
+        assertEquals(ALANINE, pool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+        assertEquals(restarts, pool.getRestartCount());
+    }
+
+    @Test
+    public void testUndecodableRequest() throws Exception {
+        // A bond to atom -1, as sent before bonds were checked
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(JniInchiWorkerProtocol.GET_INCHI);
+        JniInchiWorkerProtocol.writeString(out, "");
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt(-1);
+        out.writeInt(-1);
+        out.writeInt(1);
+        out.writeInt(0);
+        out.writeInt(0);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        out = new DataOutputStream(stream);
+        JniInchiWorkerProtocol.writeRequest(out, body.toByteArray());
+        JniInchiWorkerProtocol.writeRequest(out, JniInchiWorkerProtocol.encode(JniInchiWorkerProtocol.pingRequest()));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        DataInputStream request = JniInchiWorkerProtocol.readRequest(in);
+        JniInchiWorker.process(request.readInt(), request, new DataOutputStream(response));
+        assertEquals(JniInchiWorkerProtocol.RESPONSE_ERROR, response.toByteArray()[0]);
+
+        // The next request is read from its own start
+        request = JniInchiWorkerProtocol.readRequest(in);
+        assertEquals(JniInchiWorkerProtocol.PING, request.readInt());
+    }
+
+    @Test
+    public void testRestartAfterCrash() throws JniInchiException {
+        int restarts = pool.getRestartCount();
+        pool.killWorkers();
+        assertEquals(ALANINE, pool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+        assertEquals(ALANINE, pool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+        assertTrue(pool.getRestartCount() > restarts);
+    }
+
+    @Test
+    public void testQuarantine() throws Exception {
+        JniInchiInput poison = TestJniInchiWrapper.getEthane("");
+        JniInchiQuarantine quarantine = new JniInchiQuarantine();
+        quarantine.add(TestJniInchiQuarantine.encode(poison, false), "crashed");
+        pool.setQuarantine(quarantine);
+        try {
+            pool.getInchi(poison);
+            fail("quarantined");
+        } catch (JniInchiRejectedException e) {
+            assertTrue(e.getMessage().contains("crashed"));
+        }
+        try {
+            // Carries on with the batch
+            JniInchiInput input = new JniInchiInput(Main.getTestMolecule());
+            JniInchiOutput[] outputs = pool.getInchiBatch(Arrays.asList(input, poison, input));
+            assertEquals(ALANINE, outputs[0].getInchi());
+            assertEquals(INCHI_RET.FATAL, outputs[1].getReturnStatus());
+            assertNull(outputs[1].getInchi());
+            assertEquals(ALANINE, outputs[2].getInchi());
+
+            // Only the quarantined request is rejected
+            assertEquals(INCHI_RET.OKAY, pool.getStdInchi(poison).getReturnStatus());
+        } finally {
+            pool.setQuarantine(new JniInchiQuarantine());
+        }
+    }
+
+    /**
+     * Tests a request a worker dies on is quarantined, and the worker replaced.
+     */
+    @Test
+    public void testQuarantineAfterCrash() throws Exception {
+        final JniInchiWorkerPool crashPool = new JniInchiWorkerPool(1);
+        try {
+            for (int size = 1000; size > 900; size--) {
+                final JniInchiInput input = TestJniInchiWrapper.getBranchedChain(size);
+                ExecutorService executor = Executors.newSingleThreadExecutor();
+                Future<JniInchiOutput> result = executor.submit(new Callable<JniInchiOutput>() {
+                    public JniInchiOutput call() throws Exception {
+                        return crashPool.getStdInchi(input);
+                    }
+                });
+                executor.shutdown();
+                Thread.sleep(20);
+                crashPool.killWorkers();
+                try {
+                    result.get();
+                    continue; // finished first, try again
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof JniInchiException);
+                }
+                assertEquals(1, crashPool.getQuarantine().size());
+                assertEquals("getStdInchi", crashPool.getQuarantine().getEntries().get(0).getMethod());
+                try {
+                    crashPool.getStdInchi(input);
+                    fail("quarantined");
+                } catch (JniInchiRejectedException e) {
+                    // pass
+                }
+                assertEquals(ALANINE, crashPool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+                return;
+            }
+            fail("worker not killed mid-request");
+        } finally {
+            crashPool.close();
+        }
+    }
+
+    @Test
+    public void testHeartbeat() throws JniInchiException {
+        JniInchiWorkerPool beatingPool = new JniInchiWorkerPool(1, 30000, 20, TimeUnit.MILLISECONDS,
+                Collections.<String>emptyList());
+        try {
+            JniInchiInput input = TestJniInchiWrapper.getBranchedChain(1000);
+            assertEquals(JniInchiWrapper.getStdInchi(input).getInchi(), beatingPool.getStdInchi(input).getInchi());
+            assertEquals(0, beatingPool.getRestartCount());
+        } finally {
+            beatingPool.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 40; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return pool.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi();
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals(ALANINE, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStaticApiDelegation() throws JniInchiException {
+        JniInchiWrapper.setWorkerPool(pool);
+        try {
+            assertSame(pool, JniInchiWrapper.getWorkerPool());
+            assertEquals(ALANINE, JniInchiWrapper.getInchi(new JniInchiInput(Main.getTestMolecule())).getInchi());
+        } finally {
+            JniInchiWrapper.setWorkerPool(null);
+        }
+    }
+
+}
@@ -22,11 +22,14 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class TestJniInchiWrapper {
 
@@ -206,7 +209,7 @@ public class TestJniInchiWrapper {
     }
 
 
-    private static JniInchiInput getSodiumHydroxide(final String options)
+    static JniInchiInput getSodiumHydroxide(final String options)
             throws JniInchiException {
         JniInchiInput input = new JniInchiInput(options);
 
@@ -230,7 +233,7 @@ public class TestJniInchiWrapper {
      * @return
      * @throws JniInchiException
      */
-    private static JniInchiInput getEthane(final String options)
+    static JniInchiInput getEthane(final String options)
             throws JniInchiException {
         JniInchiInput input = new JniInchiInput(options);
 
@@ -404,7 +407,7 @@ public class TestJniInchiWrapper {
      * @return
      * @throws JniInchiException
      */
-    private static JniInchiInput getE12dichloroethene0D(final String options)
+    static JniInchiInput getE12dichloroethene0D(final String options)
             throws JniInchiException {
         JniInchiInput input = new JniInchiInput(options);
 
@@ -476,7 +479,7 @@ public class TestJniInchiWrapper {
      * @return
      * @throws JniInchiException
      */
-    private static JniInchiInput getLAlanine3D(final String options)
+    static JniInchiInput getLAlanine3D(final String options)
             throws JniInchiException {
         JniInchiInput input = new JniInchiInput(options);
 
@@ -820,6 +823,47 @@ public class TestJniInchiWrapper {
         return input;
     }
 
+    /**
+     * Builds a carbon backbone with a methyl branch on every other atom,
+     * giving a tetrahedral stereo parity at each branch point.
+     *
+     * @param numAtoms  Number of atoms, including branches
+     * @return
+     */
+    static JniInchiInput getBranchedChain(int numAtoms) {
+        JniInchiInput input = new JniInchiInput();
+        JniInchiAtom prev = null;
+        JniInchiAtom centre = null;
+        JniInchiAtom before = null;
+        JniInchiAtom methyl = null;
+        int n = 0;
+        for (int i = 0; n < numAtoms; i++) {
+            JniInchiAtom atom = input.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+            atom.setImplicitH(-1);
+            n++;
+            if (prev != null) {
+                input.addBond(new JniInchiBond(prev, atom, INCHI_BOND_TYPE.SINGLE));
+            }
+            if (centre != null) {
+                // implicit hydrogen on the centre is given as the centre itself
+                input.addStereo0D(JniInchiStereo0D.createNewTetrahedralStereo0D(
+                        centre, before, centre, atom, methyl,
+                        i % 4 == 0 ? INCHI_PARITY.ODD : INCHI_PARITY.EVEN));
+                centre = null;
+            }
+            if (prev != null && i % 2 == 1 && n + 2 <= numAtoms) {
+                methyl = input.addAtom(new JniInchiAtom(0, 0, 0, "C"));
+                methyl.setImplicitH(-1);
+                n++;
+                input.addBond(new JniInchiBond(atom, methyl, INCHI_BOND_TYPE.SINGLE));
+                centre = atom;
+                before = prev;
+            }
+            prev = atom;
+        }
+        return input;
+    }
+
 
     private JniInchiInput getNSC7414a(String options) throws JniInchiException {
 
@@ -1291,6 +1335,31 @@ NSC-7414a
         assertEquals(flag + "Compress " + flag + "SNon", options);
     }
 
+    /**
+     * Tests time-outs are accepted in option strings, in seconds.
+     *
+     * @throws JniInchiException
+     */
+    @Test
+    public void testCheckOptionsTimeout() throws JniInchiException {
+        String options = JniInchiWrapper.checkOptions("-w5 -FixedH /W60.000");
+        String flag = JniInchiWrapper.flagChar;
+        assertEquals(flag + "W5 " + flag + "FixedH " + flag + "W60", options);
+    }
+
+    @Test
+    public void testCheckOptionsSubSecondTimeout() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.isMillisecondTimeoutSupported());
+        String options = JniInchiWrapper.checkOptions("-FixedH /W0.250");
+        String flag = JniInchiWrapper.flagChar;
+        assertEquals(flag + "FixedH " + flag + "W0.25", options);
+    }
+
+    @Test(expected = JniInchiException.class)
+    public void testCheckOptionsBadTimeout() throws JniInchiException {
+        JniInchiWrapper.checkOptions("-W-5");
+    }
+
     // Test option handling
 
     /**
@@ -1871,6 +1940,60 @@ NSC-7414a
         assertEquals("RYYVLZVUVIJVGH-UHFFFAOYSA-N", output.getKey());
     }
 
+    @Test
+    public void testGetInchiKeyCached() throws JniInchiException {
+        JniInchiCache<String, JniInchiOutputKey> cache = new JniInchiCache<String, JniInchiOutputKey>(10);
+        JniInchiWrapper.setInchiKeyCache(cache);
+        try {
+            String inchi = "InChI=1S/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3";
+            JniInchiOutputKey first = JniInchiWrapper.getInchiKey(inchi);
+            JniInchiOutputKey second = JniInchiWrapper.getInchiKey(inchi);
+            assertEquals("RYYVLZVUVIJVGH-UHFFFAOYSA-N", first.getKey());
+            assertSame(first, second);
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+
+            // Failures are not cached
+            JniInchiWrapper.getInchiKey("InChI=1/-");
+            JniInchiWrapper.getInchiKey("InChI=1/-");
+            assertEquals(1, cache.size());
+            assertEquals(3, cache.getMissCount());
+        } finally {
+            JniInchiWrapper.setInchiKeyCache(null);
+        }
+    }
+
+    @Test
+    public void testGetInchiKeyXtra() throws JniInchiException {
+        String inchi = "InChI=1S/C8H10N4O2/c1-10-4-9-6-5(10)7(13)12(3)8(14)11(6)2/h4H,1-3H3";
+        JniInchiOutputKey plain = JniInchiWrapper.getInchiKey(inchi);
+        assertNull(plain.getXtra1());
+        assertNull(plain.getXtra2());
+
+        JniInchiOutputKey both = JniInchiWrapper.getInchiKey(inchi, true, true);
+        assertEquals(INCHI_KEY.OK, both.getReturnStatus());
+        assertEquals(plain.getKey(), both.getKey());
+        JniInchiOutputKey java = JniInchiKeyGenerator.getInchiKey(inchi, true, true);
+        assertEquals(java.getXtra1(), both.getXtra1());
+        assertEquals(java.getXtra2(), both.getXtra2());
+
+        JniInchiOutputKey major = JniInchiWrapper.getInchiKey(inchi, true, false);
+        assertEquals(both.getXtra1(), major.getXtra1());
+        assertNull(major.getXtra2());
+
+        JniInchiOutputKey minor = JniInchiWrapper.getInchiKey(inchi, false, true);
+        assertNull(minor.getXtra1());
+        assertEquals(both.getXtra2(), minor.getXtra2());
+    }
+
+    @Test
+    public void testGetInchiKeyXtraInvalid() throws JniInchiException {
+        JniInchiOutputKey output = JniInchiWrapper.getInchiKey("foo=1/C8H10N4O2", true, true);
+        assertEquals(INCHI_KEY.INVALID_INCHI_PREFIX, output.getReturnStatus());
+        assertNull(output.getXtra1());
+        assertNull(output.getXtra2());
+    }
+
     @Test
     public void testGetInchiKeyEmptyInput() throws JniInchiException {
         String inchi = "";
@@ -2129,6 +2252,459 @@ NSC-7414a
     }
 
 
+    @Test
+    public void testGetStdInchiWithKey() throws JniInchiException {
+        JniInchiInput input = getLAlanine0D("");
+        JniInchiOutputWithKey output = JniInchiWrapper.getStdInchiWithKey(input);
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals(
+                "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1",
+                output.getInchi());
+        assertEquals(JniInchiWrapper.getStdInchi(input).getAuxInfo(), output.getAuxInfo());
+        assertEquals(INCHI_KEY.OK, output.getKeyOutput().getReturnStatus());
+        assertEquals(JniInchiWrapper.getInchiKey(output.getInchi()).getKey(), output.getKey());
+    }
+
+    @Test
+    public void testGetStdInchiWithKeyFailed() throws JniInchiException {
+        JniInchiInput input = new JniInchiInput();
+        input.addAtom(new JniInchiAtom(0, 0, 0, "Zz"));
+        JniInchiOutputWithKey output = JniInchiWrapper.getStdInchiWithKey(input);
+        assertEquals(JniInchiWrapper.getStdInchi(input).getReturnStatus(), output.getReturnStatus());
+        assertNull(output.getKeyOutput());
+        assertNull(output.getKey());
+    }
+
+    @Test
+    public void testGetStdInchiWithKeyCached() throws JniInchiException {
+        JniInchiCache<String, JniInchiOutputKey> cache = new JniInchiCache<String, JniInchiOutputKey>(10);
+        JniInchiWrapper.setInchiKeyCache(cache);
+        try {
+            JniInchiOutputWithKey first = JniInchiWrapper.getStdInchiWithKey(getLAlanine0D(""));
+            JniInchiOutputWithKey second = JniInchiWrapper.getStdInchiWithKey(getLAlanine0D(""));
+            assertEquals(first.getKey(), second.getKey());
+            assertSame(first.getKeyOutput(), second.getKeyOutput());
+        } finally {
+            JniInchiWrapper.setInchiKeyCache(null);
+        }
+    }
+
+
+    @Test
+    public void testGetInchiBatch() throws JniInchiException {
+        List<JniInchiInput> inputs = new ArrayList<JniInchiInput>();
+        inputs.add(getLAlanine0D(""));
+        inputs.add(getChlorineAtom(""));
+        inputs.add(getEthene(""));
+        inputs.add(getLAlanine3D("-FixedH"));
+        JniInchiOutput[] outputs = JniInchiWrapper.getInchiBatch(inputs);
+        assertEquals(inputs.size(), outputs.length);
+        for (int i = 0; i < outputs.length; i++) {
+            JniInchiOutput expected = JniInchiWrapper.getInchi(inputs.get(i));
+            assertEquals(expected.getReturnStatus(), outputs[i].getReturnStatus());
+            assertEquals(expected.getInchi(), outputs[i].getInchi());
+            assertEquals(expected.getAuxInfo(), outputs[i].getAuxInfo());
+        }
+    }
+
+    @Test
+    public void testGetStdInchiBatch() throws JniInchiException {
+        List<JniInchiInput> inputs = new ArrayList<JniInchiInput>();
+        for (int i = 0; i < 1000; i++) {
+            inputs.add(getLAlanine0D(""));
+        }
+        JniInchiOutput[] outputs = JniInchiWrapper.getStdInchiBatch(inputs);
+        assertEquals(inputs.size(), outputs.length);
+        for (JniInchiOutput output : outputs) {
+            assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+            assertEquals(
+                    "InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1",
+                    output.getInchi());
+        }
+    }
+
+    @Test
+    public void testGetInchiOutputFields() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_OUTPUT_FIELDS));
+        JniInchiOutput expected = JniInchiWrapper.getInchi(getLAlanine3D(""));
+
+        JniInchiInput input = getLAlanine3D("");
+        input.setOutputFields(JniInchiOutput.FIELD_INCHI);
+        JniInchiOutput output = JniInchiWrapper.getInchi(input);
+        assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+        assertEquals(expected.getInchi(), output.getInchi());
+        assertNull(output.getAuxInfo());
+        assertNull(output.getMessage());
+        assertNull(output.getLog());
+
+        input.setOutputFields(JniInchiOutput.ALL_FIELDS);
+        output = JniInchiWrapper.getInchi(input);
+        assertEquals(expected.getInchi(), output.getInchi());
+        assertEquals(expected.getAuxInfo(), output.getAuxInfo());
+        assertEquals(expected.getMessage(), output.getMessage());
+        assertEquals(expected.getLog(), output.getLog());
+
+        input.setOutputFields(0);
+        output = JniInchiWrapper.getInchi(input);
+        assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+        assertNull(output.getInchi());
+    }
+
+    @Test
+    public void testGetInchiWithOptionsProfile() throws JniInchiException {
+        JniInchiOptions opts = JniInchiOptions.of(INCHI_OPTION.FixedH, INCHI_OPTION.RecMet);
+        JniInchiOutput expected = JniInchiWrapper.getInchi(getLAlanine3D("-FixedH -RecMet"));
+
+        JniInchiInput input = new JniInchiInput(getLAlanine3D(""), opts);
+        JniInchiOutput output = JniInchiWrapper.getInchi(input);
+        assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+        assertEquals(expected.getInchi(), output.getInchi());
+        assertEquals(expected.getAuxInfo(), output.getAuxInfo());
+
+        List<JniInchiInput> inputs = new ArrayList<JniInchiInput>();
+        inputs.add(input);
+        inputs.add(new JniInchiInput(getLAlanine3D(""), opts));
+        for (JniInchiOutput batch : JniInchiWrapper.getInchiBatch(inputs)) {
+            assertEquals(expected.getInchi(), batch.getInchi());
+        }
+
+        JniInchiOutput fromInchi = JniInchiWrapper.getInchiFromInchi(new JniInchiInputInchi(expected.getInchi(), opts));
+        assertEquals(JniInchiWrapper.getInchiFromInchi(new JniInchiInputInchi(expected.getInchi(), "-FixedH -RecMet")).getInchi(),
+                fromInchi.getInchi());
+    }
+
+    @Test
+    public void testGetInchiNoLog() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_NO_LOG));
+        JniInchiOutput expected = JniInchiWrapper.getStdInchi(getLAlanine3D(""));
+        assertNotNull(expected.getLog());
+        JniInchiOutput output = JniInchiWrapper.getStdInchi(getLAlanine3D("-NoLog"));
+        assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+        assertEquals(expected.getInchi(), output.getInchi());
+        assertEquals(expected.getAuxInfo(), output.getAuxInfo());
+        assertNull(output.getLog());
+    }
+
+    @Test
+    public void testGetInchiLeanOutput() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_NO_LOG));
+        JniInchiOutput expected = JniInchiWrapper.getInchi(getLAlanine3D("-FixedH"));
+        JniInchiInput input = getLAlanine3D("-FixedH");
+        input.setLeanOutput();
+        JniInchiOutput output = JniInchiWrapper.getInchi(input);
+        assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+        assertEquals(expected.getInchi(), output.getInchi());
+        assertEquals(expected.getMessage(), output.getMessage());
+        assertNull(output.getAuxInfo());
+        assertNull(output.getLog());
+
+        // Does not change the result of a failed calculation
+        input = getLAlanine3D("-FixedH");
+        input.getAtom(0).setImplicitH(-2);
+        expected = JniInchiWrapper.getInchi(input);
+        input.setLeanOutput();
+        output = JniInchiWrapper.getInchi(input);
+        assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+        assertEquals(expected.getMessage(), output.getMessage());
+    }
+
+    /**
+     * Tests a structure that runs out of time is reported as TIMEOUT, not ERROR.
+     */
+    @Test
+    public void testGetInchiTimeout() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.isMillisecondTimeoutSupported());
+        JniInchiInput chain = getBranchedChain(1000);
+        JniInchiOptions opts = JniInchiOptions.NONE.withTimeout(1, TimeUnit.MILLISECONDS);
+        JniInchiOutput output = JniInchiWrapper.getInchi(new JniInchiInput(chain, opts));
+        assertEquals(INCHI_RET.TIMEOUT, output.getReturnStatus());
+        assertNull(output.getInchi());
+
+        // With a masked output, and as an options string
+        JniInchiInput input = new JniInchiInput(chain, "-W0.001");
+        input.setOutputFields(JniInchiOutput.FIELD_INCHI);
+        assertEquals(INCHI_RET.TIMEOUT, JniInchiWrapper.getInchi(input).getReturnStatus());
+
+        // A generous budget changes nothing
+        output = JniInchiWrapper.getInchi(new JniInchiInput(chain, opts.withTimeout(60, TimeUnit.SECONDS)));
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals(JniInchiWrapper.getInchi(new JniInchiInput(chain)).getInchi(), output.getInchi());
+    }
+
+    /**
+     * Tests a cancelled calculation returns TIMEOUT, and later calculations
+     * on the same thread are unaffected.
+     */
+    @Test
+    public void testGetInchiCancellation() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.isCancellationSupported());
+        JniInchiInput chain = getBranchedChain(1000);
+        JniInchiCancellation cancellation = new JniInchiCancellation();
+        cancellation.cancelAfter(5, TimeUnit.MILLISECONDS);
+        JniInchiOutput output = JniInchiWrapper.getStdInchi(chain, cancellation);
+        assertEquals(INCHI_RET.TIMEOUT, output.getReturnStatus());
+        assertTrue(cancellation.isCancelled());
+
+        // Already cancelled
+        output = JniInchiWrapper.getInchi(getEthane(""), cancellation);
+        assertEquals(INCHI_RET.TIMEOUT, output.getReturnStatus());
+        assertNull(output.getInchi());
+
+        assertEquals(INCHI_RET.OKAY, JniInchiWrapper.getStdInchi(chain).getReturnStatus());
+        assertEquals(INCHI_RET.OKAY, JniInchiWrapper.getInchi(getEthane(""), new JniInchiCancellation()).getReturnStatus());
+    }
+
+    @Test
+    public void testGetInchiDeadline() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.isCancellationSupported());
+        JniInchiInput chain = getBranchedChain(1000);
+        assertEquals(INCHI_RET.TIMEOUT, JniInchiWrapper.getInchi(chain, 5, TimeUnit.MILLISECONDS).getReturnStatus());
+        JniInchiOutput output = JniInchiWrapper.getStdInchi(chain, 60, TimeUnit.SECONDS);
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals(JniInchiWrapper.getStdInchi(chain).getInchi(), output.getInchi());
+    }
+
+    @Test
+    public void testGetInchiCancellationUnsupported() throws JniInchiException {
+        assumeTrue(!JniInchiWrapper.isCancellationSupported());
+        try {
+            JniInchiWrapper.getInchi(getEthane(""), new JniInchiCancellation());
+            fail("Cancellation accepted");
+        } catch (JniInchiException e) {
+            // expected
+        }
+        try {
+            JniInchiWrapper.getStdInchi(getEthane(""), 60, TimeUnit.SECONDS);
+            fail("Deadline accepted");
+        } catch (JniInchiException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiNullCancellation() throws JniInchiException {
+        JniInchiWrapper.getInchi(getEthane(""), (JniInchiCancellation) null);
+    }
+
+    @Test
+    public void testGetStdInchiBatchOutputFields() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_OUTPUT_FIELDS));
+        List<JniInchiInput> inputs = new ArrayList<JniInchiInput>();
+        inputs.add(getLAlanine0D(""));
+        inputs.add(getEthene(""));
+        inputs.get(1).setOutputFields(JniInchiOutput.FIELD_AUX_INFO);
+        JniInchiOutput[] outputs = JniInchiWrapper.getStdInchiBatch(inputs);
+        assertEquals("InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1", outputs[0].getInchi());
+        assertNotNull(outputs[0].getAuxInfo());
+        assertNull(outputs[1].getInchi());
+        assertEquals(JniInchiWrapper.getStdInchi(getEthene("")).getAuxInfo(), outputs[1].getAuxInfo());
+    }
+
+    @Test
+    public void testGetInchiOutputFieldsCached() throws JniInchiException {
+        assumeTrue(JniInchiWrapper.hasFeature(JniInchiWrapper.FEATURE_OUTPUT_FIELDS));
+        JniInchiCache<JniInchiInputKey, JniInchiOutput> cache = new JniInchiCache<JniInchiInputKey, JniInchiOutput>(10);
+        JniInchiWrapper.setInchiCache(cache);
+        try {
+            JniInchiInput input = getLAlanine0D("");
+            input.setOutputFields(JniInchiOutput.FIELD_INCHI);
+            assertNull(JniInchiWrapper.getStdInchi(input).getAuxInfo());
+            // A full request is not answered from the masked output
+            assertNotNull(JniInchiWrapper.getStdInchi(getLAlanine0D("")).getAuxInfo());
+            assertEquals(2, cache.size());
+        } finally {
+            JniInchiWrapper.setInchiCache(null);
+        }
+    }
+
+    @Test
+    public void testGetInchiCached() throws JniInchiException {
+        JniInchiCache<JniInchiInputKey, JniInchiOutput> cache = new JniInchiCache<JniInchiInputKey, JniInchiOutput>(10);
+        JniInchiWrapper.setInchiCache(cache);
+        try {
+            JniInchiOutput first = JniInchiWrapper.getStdInchi(getLAlanine0D(""));
+            JniInchiOutput second = JniInchiWrapper.getStdInchi(getLAlanine0D(""));
+            assertSame(first, second);
+            assertEquals("InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1", second.getInchi());
+            assertEquals(1, cache.getHitCount());
+
+            // Different options, or a non-standard InChI, are different inputs
+            JniInchiOutput fixedH = JniInchiWrapper.getInchi(getLAlanine0D("-FixedH"));
+            assertNotSame(first, fixedH);
+            assertNotSame(first, JniInchiWrapper.getInchi(getLAlanine0D("")));
+            assertEquals(3, cache.size());
+
+            // Compact structures share the cache
+            JniInchiOutput compact = JniInchiWrapper.getInchi(new JniInchiCompactStructure(getLAlanine0D("")), "-FixedH");
+            assertSame(fixedH, compact);
+
+            // Errors are not cached
+            JniInchiInput bad = new JniInchiInput();
+            bad.addAtom(new JniInchiAtom(0, 0, 0, "Zz"));
+            assertEquals(INCHI_RET.ERROR, JniInchiWrapper.getInchi(bad).getReturnStatus());
+            assertEquals(3, cache.size());
+        } finally {
+            JniInchiWrapper.setInchiCache(null);
+        }
+    }
+
+    @Test
+    public void testGetInchiBatchCached() throws JniInchiException {
+        JniInchiCache<JniInchiInputKey, JniInchiOutput> cache = new JniInchiCache<JniInchiInputKey, JniInchiOutput>(10);
+        JniInchiWrapper.setInchiCache(cache);
+        try {
+            JniInchiOutput ethene = JniInchiWrapper.getInchi(getEthene(""));
+            List<JniInchiInput> inputs = new ArrayList<JniInchiInput>();
+            for (int i = 0; i < 100; i++) {
+                inputs.add(getLAlanine0D(""));
+                inputs.add(getEthene(""));
+                inputs.add(getChlorineAtom(""));
+            }
+            JniInchiOutput[] outputs = JniInchiWrapper.getInchiBatch(inputs);
+            assertEquals(300, outputs.length);
+            for (int i = 0; i < outputs.length; i += 3) {
+                assertEquals("InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1", outputs[i].getInchi());
+                assertSame(ethene, outputs[i + 1]);
+                assertEquals(JniInchiWrapper.getInchi(getChlorineAtom("")).getInchi(), outputs[i + 2].getInchi());
+            }
+            // Each distinct input is looked up once, and calculated once
+            assertEquals(3, cache.size());
+        } finally {
+            JniInchiWrapper.setInchiCache(null);
+        }
+    }
+
+    @Test
+    public void testGetInchiBatchEmpty() throws JniInchiException {
+        assertEquals(0, JniInchiWrapper.getInchiBatch(new ArrayList<JniInchiInput>()).length);
+    }
+
+
+    // Test structures encoded in buffers
+
+    private static void assertBufferInchi(JniInchiInput input, String options) throws JniInchiException {
+        JniInchiOutput expected = JniInchiWrapper.getInchi(input);
+        ByteBuffer direct = JniInchiStructureBuffer.encode(input);
+
+        // Unaligned, so copied by the native code before use
+        ByteBuffer unaligned = ByteBuffer.allocateDirect(direct.capacity() + 4);
+        unaligned.position(4);
+        JniInchiStructureBuffer.encode(input, unaligned);
+        unaligned.position(4);
+
+        ByteBuffer heap = ByteBuffer.allocate(direct.capacity());
+        JniInchiStructureBuffer.encode(input, heap);
+        heap.flip();
+
+        for (ByteBuffer buffer : new ByteBuffer[] {direct, unaligned, heap}) {
+            int position = buffer.position();
+            JniInchiOutput output = JniInchiWrapper.getInchi(buffer, options);
+            assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+            assertEquals(expected.getInchi(), output.getInchi());
+            assertEquals(expected.getAuxInfo(), output.getAuxInfo());
+            assertEquals(position, buffer.position());
+        }
+    }
+
+    @Test
+    public void testGetInchiBuffer() throws JniInchiException {
+        assertBufferInchi(getLAlanine0D(""), "");
+        assertBufferInchi(getLAlanine3D("-FixedH"), "-FixedH");
+        assertBufferInchi(getZ12dichloroethene2D(""), "");
+        assertBufferInchi(getE12dichloroethene0D(""), "");
+        assertBufferInchi(getHydrogenChlorideImplicitD(""), "");
+        assertBufferInchi(getChlorine37Atom(""), "");
+        assertBufferInchi(getMethylRadical(""), "");
+        assertBufferInchi(getSodiumHydroxide(""), "");
+    }
+
+    @Test
+    public void testGetStdInchiBuffer() throws JniInchiException {
+        JniInchiOutput output = JniInchiWrapper.getStdInchi(JniInchiStructureBuffer.encode(getLAlanine0D("")), "");
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals("InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1", output.getInchi());
+    }
+
+    // Test compact structures
+
+    @Test
+    public void testGetInchiCompact() throws JniInchiException {
+        JniInchiInput[] inputs = {getLAlanine0D(""), getLAlanine3D("-FixedH"), getZ12dichloroethene2D(""),
+                getE12dichloroethene0D(""), getHydrogenChlorideImplicitD(""), getChlorine37Atom(""),
+                getMethylRadical(""), getSodiumHydroxide("")};
+        for (JniInchiInput input : inputs) {
+            JniInchiOutput expected = JniInchiWrapper.getInchi(input);
+            JniInchiCompactStructure structure = new JniInchiCompactStructure(input);
+            JniInchiOutput output = JniInchiWrapper.getInchi(structure, input.getOptions());
+            assertEquals(expected.getReturnStatus(), output.getReturnStatus());
+            assertEquals(expected.getInchi(), output.getInchi());
+            assertEquals(expected.getAuxInfo(), output.getAuxInfo());
+        }
+    }
+
+    @Test
+    public void testGetStdInchiCompact() throws JniInchiException {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure();
+        int c1 = structure.addAtom("C");
+        int c2 = structure.addAtom("C");
+        int n = structure.addAtom("N");
+        int c3 = structure.addAtom("C");
+        int o1 = structure.addAtom("O");
+        int o2 = structure.addAtom("O");
+        int h = structure.addAtom("H");
+        structure.setImplicitH(n, 2);
+        structure.setImplicitH(c3, 3);
+        structure.setImplicitH(o1, 1);
+        structure.addBond(c1, c2, INCHI_BOND_TYPE.SINGLE);
+        structure.addBond(c1, n, INCHI_BOND_TYPE.SINGLE);
+        structure.addBond(c1, c3, INCHI_BOND_TYPE.SINGLE);
+        structure.addBond(c2, o1, INCHI_BOND_TYPE.SINGLE);
+        structure.addBond(c2, o2, INCHI_BOND_TYPE.DOUBLE);
+        structure.addBond(c1, h, INCHI_BOND_TYPE.SINGLE);
+        structure.addStereo0D(c1, n, c3, h, c2, INCHI_STEREOTYPE.TETRAHEDRAL, INCHI_PARITY.ODD);
+        JniInchiOutput output = JniInchiWrapper.getStdInchi(structure, "");
+        assertEquals(INCHI_RET.OKAY, output.getReturnStatus());
+        assertEquals("InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1", output.getInchi());
+
+        output = JniInchiWrapper.getStdInchi(structure, JniInchiOptions.of(INCHI_OPTION.AuxNone));
+        assertEquals("InChI=1S/C3H7NO2/c1-2(4)3(5)6/h2H,4H2,1H3,(H,5,6)/t2-/m0/s1", output.getInchi());
+        assertNull(output.getAuxInfo());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiCompactTooManyAtoms() throws JniInchiException {
+        JniInchiCompactStructure structure = new JniInchiCompactStructure();
+        for (int i = 0; i < 1025; i++) {
+            structure.addAtom("C");
+        }
+        JniInchiWrapper.getInchi(structure, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiBufferTooShort() throws JniInchiException {
+        ByteBuffer buffer = JniInchiStructureBuffer.encode(getLAlanine0D(""));
+        buffer.limit(buffer.limit() - 1);
+        JniInchiWrapper.getInchi(buffer, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiBufferTooManyBonds() throws JniInchiException {
+        ByteBuffer buffer = JniInchiStructureBuffer.encode(getLAlanine0D(""));
+        buffer.putShort(JniInchiStructureBuffer.HEADER_SIZE + JniInchiStructureBuffer.ATOM_NUM_BONDS,
+                (short) (JniInchiStructureBuffer.MAXVAL + 1));
+        JniInchiWrapper.getInchi(buffer, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiBufferElementNotTerminated() throws JniInchiException {
+        ByteBuffer buffer = JniInchiStructureBuffer.encode(getLAlanine0D(""));
+        for (int i = 0; i < 6; i++) {
+            buffer.put(JniInchiStructureBuffer.HEADER_SIZE + JniInchiStructureBuffer.ATOM_ELNAME + i, (byte) 'C');
+        }
+        JniInchiWrapper.getInchi(buffer, "");
+    }
+
+
     // Test null inputs
 
     @Test(expected = IllegalArgumentException.class)
@@ -2151,6 +2727,16 @@ NSC-7414a
         JniInchiWrapper.getInchi(null);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiBufferNull() throws JniInchiException {
+        JniInchiWrapper.getInchi((ByteBuffer) null, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiCompactNull() throws JniInchiException {
+        JniInchiWrapper.getInchi((JniInchiCompactStructure) null, "");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testGetInchiFromInchiNull() throws JniInchiException {
         JniInchiWrapper.getInchiFromInchi(null);
@@ -2166,6 +2752,16 @@ NSC-7414a
         JniInchiWrapper.getStdInchi(null);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetStdInchiWithKeyNull() throws JniInchiException {
+        JniInchiWrapper.getStdInchiWithKey(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInchiBatchNull() throws JniInchiException {
+        JniInchiWrapper.getInchiBatch(null);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testGetStructureFromInchiNull() throws JniInchiException {
         JniInchiWrapper.getStructureFromInchi(null);